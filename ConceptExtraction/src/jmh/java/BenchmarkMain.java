@@ -0,0 +1,33 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class runs the JMH benchmarks with the usual JMH command line, always
+ * adding the GC profiler so every result comes with its allocation rate. It
+ * must be started from the ConceptExtraction directory, where the samples and
+ * the WordNet dictionary are.
+ *
+ * <pre>
+ * mvn -Pjmh package -DskipTests
+ * java -jar target/benchmarks.jar [JMH options] [benchmark regexp]
+ * </pre>
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp() || cmd.shouldList()
+				|| cmd.shouldListWithParams() || cmd.shouldListProfilers()
+				|| cmd.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		Options options = new OptionsBuilder().parent(cmd)
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,72 @@
+package engine.core;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.core.Extractor.ClassifiedTokens;
+
+/**
+ * End to end cost of classifying a question, CoreNLP included, for every
+ * extractor. Each invocation classifies the next question of samples.input
+ * so the measurement covers the whole sample. Run with several threads (-t)
+ * to see how the extractors scale when they share their models.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ExtractorBenchmark {
+
+	@Param({ "NER", "WORDNET", "HYBRID" })
+	public String type;
+
+	String[] questions;
+	Extractor extractor;
+
+	@Setup(Level.Trial)
+	public void load() throws FileNotFoundException {
+		questions = Samples.questions();
+		extractor = ExtractorType.get(type).create();
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		extractor.close();
+	}
+
+	/**
+	 * Position of every benchmark thread in the samples.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+
+		String next(String[] questions) {
+			String question = questions[next];
+			next = (next + 1) % questions.length;
+			return question;
+		}
+	}
+
+	@Benchmark
+	public ClassifiedTokens classify(Cursor cursor) {
+		return extractor.classifyQuestionTokens(cursor.next(questions));
+	}
+
+}
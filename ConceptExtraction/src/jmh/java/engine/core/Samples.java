@@ -0,0 +1,73 @@
+package engine.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import engine.gazetteer.Gazetteer;
+import engine.gazetteer.GazetteerBuilder;
+import engine.util.FileLinesReader;
+
+/**
+ * The questions of samples.input the benchmarks run on.
+ */
+final class Samples {
+
+	private Samples() {
+	}
+
+	static String[] questions() throws FileNotFoundException {
+		List<String> lines = FileLinesReader.readLines(new File(
+				"samples.input"));
+		if (lines == null)
+			throw new FileNotFoundException(
+					"samples.input, run the benchmarks from ConceptExtraction");
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Gazetteer of the expected concepts of samples.output.
+	 */
+	static Gazetteer gazetteer() throws FileNotFoundException {
+		List<String> lines = FileLinesReader.readLines(new File(
+				"samples.output"));
+		if (lines == null)
+			throw new FileNotFoundException(
+					"samples.output, run the benchmarks from ConceptExtraction");
+		GazetteerBuilder builder = new GazetteerBuilder();
+		for (String line : lines) {
+			for (String concept : line.split(","))
+				builder.add(concept);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Annotate every sample question once with the pipeline of the
+	 * extractor.
+	 */
+	static Annotation[] annotate(Extractor extractor, String[] questions) {
+		Annotation[] annotations = new Annotation[questions.length];
+		for (int i = 0; i < questions.length; i++)
+			annotations[i] = extractor.annotate(questions[i]);
+		return annotations;
+	}
+
+	static List<CoreMap> sentences(Annotation annotation) {
+		return annotation.get(SentencesAnnotation.class);
+	}
+
+	static List<List<CoreLabel>> tokens(Annotation annotation) {
+		List<List<CoreLabel>> tokens = new ArrayList<List<CoreLabel>>();
+		for (CoreMap sentence : sentences(annotation))
+			tokens.add(sentence.get(TokensAnnotation.class));
+		return tokens;
+	}
+
+}
@@ -0,0 +1,201 @@
+package engine.core;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+
+/**
+ * Cost of the stages of the extractors, each measured over all the questions
+ * of samples.input that are annotated once in the setup. <br/>
+ * The grouping stages modify the token buffer they are given, so they start
+ * from a fresh buffer every time: subtract {@link #toCandidateConcepts} from
+ * {@link #groupByNE}, and {@link #groupByNE} from {@link #groupByPOS} to get
+ * the cost of the stage alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class StageBenchmark {
+
+	/**
+	 * CoreNLP pipelines of the WordNet extractor and of the other two.
+	 */
+	@State(Scope.Benchmark)
+	public static class Pipeline {
+
+		@Param({ "tokenize, ssplit, pos", "tokenize, ssplit, pos, lemma, ner" })
+		public String annotators;
+
+		String[] questions;
+		SharedPipeline pipeline;
+
+		@Setup(Level.Trial)
+		public void load() throws FileNotFoundException {
+			questions = Samples.questions();
+			pipeline = AnnotatorRegistry.getInstance().acquire(annotators);
+		}
+
+		@TearDown(Level.Trial)
+		public void close() {
+			AnnotatorRegistry.getInstance().release(pipeline);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Hybrid {
+
+		HybridExtractor extractor;
+		Annotation[] annotations;
+		TokenBuffer[] grouped;
+
+		@Setup(Level.Trial)
+		public void load() throws FileNotFoundException {
+			extractor = new HybridExtractor();
+			annotations = Samples.annotate(extractor, Samples.questions());
+			grouped = new TokenBuffer[annotations.length];
+			for (int i = 0; i < annotations.length; i++) {
+				grouped[i] = new TokenBuffer();
+				grouped[i].addSentences(Samples.sentences(annotations[i]));
+				extractor.groupByNE(grouped[i]);
+				extractor.groupByPOS(grouped[i]);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void close() {
+			extractor.close();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class NER {
+
+		NERExtractor extractor;
+		String[] questions;
+		List<List<List<CoreLabel>>> tokens;
+
+		@Setup(Level.Trial)
+		public void load() throws FileNotFoundException {
+			extractor = new NERExtractor();
+			questions = Samples.questions();
+			tokens = new ArrayList<List<List<CoreLabel>>>();
+			for (Annotation annotation : Samples.annotate(extractor, questions))
+				tokens.add(Samples.tokens(annotation));
+		}
+
+		@TearDown(Level.Trial)
+		public void close() {
+			extractor.close();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Gazetteer {
+
+		GazetteerExtractor extractor;
+		String[] questions;
+
+		@Setup(Level.Trial)
+		public void load() throws FileNotFoundException {
+			extractor = new GazetteerExtractor(Samples.gazetteer());
+			questions = Samples.questions();
+		}
+	}
+
+	@Benchmark
+	public void annotate(Pipeline state, Blackhole bh) {
+		for (String question : state.questions) {
+			Annotation annotation = new Annotation(question);
+			state.pipeline.annotate(annotation);
+			bh.consume(annotation);
+		}
+	}
+
+	@Benchmark
+	public int toCandidateConcepts(Hybrid state) {
+		int groups = 0;
+		for (Annotation annotation : state.annotations) {
+			TokenBuffer tokens = state.extractor.toCandidateConcepts(Samples
+					.sentences(annotation));
+			groups += tokens.sequenceSize;
+			tokens.release();
+		}
+		return groups;
+	}
+
+	@Benchmark
+	public int groupByNE(Hybrid state) {
+		HybridExtractor extractor = state.extractor;
+		int groups = 0;
+		for (Annotation annotation : state.annotations) {
+			TokenBuffer tokens = extractor.toCandidateConcepts(Samples
+					.sentences(annotation));
+			extractor.groupByNE(tokens);
+			groups += tokens.sequenceSize;
+			tokens.release();
+		}
+		return groups;
+	}
+
+	@Benchmark
+	public int groupByPOS(Hybrid state) {
+		HybridExtractor extractor = state.extractor;
+		int groups = 0;
+		for (Annotation annotation : state.annotations) {
+			TokenBuffer tokens = extractor.toCandidateConcepts(Samples
+					.sentences(annotation));
+			extractor.groupByNE(tokens);
+			extractor.groupByPOS(tokens);
+			groups += tokens.sequenceSize;
+			tokens.release();
+		}
+		return groups;
+	}
+
+	@Benchmark
+	public void computeAvgSynsetsDepth(Hybrid state, Blackhole bh) {
+		for (TokenBuffer tokens : state.grouped)
+			bh.consume(state.extractor.computeAvgSynsetsDepth(tokens));
+	}
+
+	@Benchmark
+	public void extractEntities(NER state, Blackhole bh) {
+		for (int i = 0; i < state.tokens.size(); i++) {
+			ClassifiedSpans spans = new ClassifiedSpans(state.questions[i]);
+			state.extractor.extractEntities(state.tokens.get(i), spans);
+			bh.consume(spans);
+		}
+	}
+
+	/**
+	 * Whole gazetteer extraction, to compare with {@link #annotate} since it
+	 * replaces the CoreNLP pipeline.
+	 */
+	@Benchmark
+	public void gazetteer(Gazetteer state, Blackhole bh) {
+		for (String question : state.questions)
+			bh.consume(state.extractor.classifyQuestionTokens(question));
+	}
+
+}
@@ -0,0 +1,54 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import engine.bulk.BulkExtractor;
+import engine.core.Extractor;
+import engine.core.ExtractorType;
+
+/**
+ * This class extracts the concepts of every question of a (possibly huge)
+ * file and writes them as JSON lines, one per question and in the order of
+ * the input.
+ *
+ * <pre>
+ * java BulkMain &lt;ner|wordnet|hybrid|gazetteer&gt; &lt;input&gt; &lt;output|-&gt; [threads] [in-flight]
+ * </pre>
+ */
+public class BulkMain {
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length < 3) {
+			System.err.println("Usage: BulkMain <ner|wordnet|hybrid|gazetteer> "
+					+ "<input> <output|-> [threads] [in-flight]");
+			System.exit(1);
+		}
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime
+				.getRuntime().availableProcessors();
+		int inFlight = args.length > 4 ? Integer.parseInt(args[4])
+				: threads * 64;
+
+		Extractor extractor = ExtractorType.get(args[0]).create();
+		boolean stdout = "-".equals(args[2]);
+		Writer output = new BufferedWriter(new OutputStreamWriter(
+				stdout ? System.out : new FileOutputStream(args[2]), "UTF-8"),
+				1 << 16);
+		try {
+			BulkExtractor bulk = new BulkExtractor(extractor, threads,
+					inFlight);
+			bulk.run(new File(args[1]), output);
+		} finally {
+			// System.out is not ours to close
+			if (stdout)
+				output.flush();
+			else
+				output.close();
+			extractor.close();
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import engine.core.CascadeExtractor;
+import engine.core.EscalationRule;
+import engine.core.EscalationRules;
+import engine.core.Extractor;
+import engine.core.ExtractorType;
+import engine.core.WordNetExtractor;
+import engine.eval.IREvaluator;
+import engine.util.FileLinesReader;
+
+/**
+ * This class compares, on the sample input, a cascade that classifies the
+ * questions with the WordNet extractor and escalates them to the NER or
+ * Hybrid extractor, with always running that extractor. It prints the share
+ * of the questions every tier handled, the F-Measure of both and the time
+ * they took. <br/>
+ * A question is escalated when any of the comma separated rules holds:
+ * "entities" when it may contain a named entity, "noconcepts" when WordNet
+ * found no concept, and "near:&lt;margin&gt;" when the depth of a token is
+ * within the margin of the threshold.
+ *
+ * <pre>
+ * java CascadeMain &lt;ner|hybrid&gt; [rules] [threads]
+ * </pre>
+ */
+public class CascadeMain {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: CascadeMain <ner|hybrid> "
+					+ "[entities,noconcepts,near:<margin>] [threads]");
+			System.exit(1);
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime
+				.getRuntime().availableProcessors();
+		List<String> questions = FileLinesReader.readLines(new File(
+				"samples.input"));
+		List<List<String>> concepts = new ArrayList<List<String>>(
+				questions.size());
+		for (String conceptsLine : FileLinesReader.readLines(new File(
+				"samples.output"))) {
+			List<String> cons = new ArrayList<String>();
+			for (String c : conceptsLine.split(","))
+				cons.add(c.trim());
+			concepts.add(cons);
+		}
+
+		Extractor full = ExtractorType.get(args[0]).create();
+		WordNetExtractor cheap = new WordNetExtractor();
+		List<EscalationRule> rules = new ArrayList<EscalationRule>();
+		for (String name : (args.length > 1 ? args[1] : "entities")
+				.split(",")) {
+			if (name.equals("entities"))
+				rules.add(EscalationRules.mayContainEntities());
+			else if (name.equals("noconcepts"))
+				rules.add(EscalationRules.noConcepts());
+			else if (name.startsWith("near:"))
+				rules.add(EscalationRules.nearThreshold(cheap, Double
+						.parseDouble(name.substring("near:".length()))));
+			else
+				throw new IllegalArgumentException("Unknown rule: " + name);
+		}
+		CascadeExtractor cascade = new CascadeExtractor(Arrays.asList(cheap,
+				full), Arrays.asList(EscalationRules.any(rules
+				.toArray(new EscalationRule[rules.size()]))));
+
+		// warm the models up so that neither run pays their first calls
+		cheap.classifyAll(questions, threads);
+		full.classifyAll(questions, threads);
+
+		IREvaluator fullEvaluator = new IREvaluator(questions, concepts);
+		long start = System.currentTimeMillis();
+		fullEvaluator.eval(full, threads);
+		long fullElapsed = System.currentTimeMillis() - start;
+
+		IREvaluator cascadeEvaluator = new IREvaluator(questions, concepts);
+		start = System.currentTimeMillis();
+		cascadeEvaluator.eval(cascade, threads);
+		long cascadeElapsed = System.currentTimeMillis() - start;
+
+		System.out.println(cascade);
+		for (int i = 0; i < cascade.getTierCount(); i++)
+			System.out.println(String.format("Tier %d %s = %.1f%% (%d)", i,
+					cascade.getTier(i).getClass().getSimpleName(),
+					100 * cascade.getShare(i), cascade.getHandled(i)));
+		System.out.println(String.format("Full F-Measure = %.4f in %d ms",
+				fullEvaluator.getFMeasure(), fullElapsed));
+		System.out.println(String.format(
+				"Cascade F-Measure = %.4f in %d ms", cascadeEvaluator
+						.getFMeasure(), cascadeElapsed));
+		System.out.println(String.format("Difference = %+.4f",
+				cascadeEvaluator.getFMeasure() - fullEvaluator.getFMeasure()));
+		cascade.close();
+	}
+
+}
@@ -1,26 +1,67 @@
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.AnnotationCache;
+import engine.core.AnnotatorRegistry;
 import engine.core.Extractor;
+import engine.core.ExtractorType;
 import engine.core.HybridExtractor;
 import engine.core.NERExtractor;
+import engine.core.SharedPipeline;
 import engine.core.WordNetExtractor;
 import engine.eval.IREvaluator;
+import engine.eval.ShardCoordinator;
+import engine.metrics.ExtractorMetrics;
 import engine.util.FileLinesReader;
 
 /**
  * This class will run both algorithm on the sample input and then use the
  * {@link IREvaluator} to compute the Accuracy, Precision, Recall, & FMeasure of
- * each approach.
+ * each approach. <br/>
+ * The questions are annotated once with the annotators of all the extractors,
+ * and every extractor classifies the same annotations. Giving a directory as
+ * the second argument keeps the annotations in an {@link AnnotationCache}
+ * there, so that the next runs do not annotate the questions again. Giving
+ * "separate" instead makes every extractor annotate the questions itself.
+ * Giving "shards:&lt;n&gt;" evaluates every extractor over n worker JVMs with
+ * a {@link ShardCoordinator}, each one using the given number of threads.
+ * 
+ * <pre>
+ * java FileMain [threads] [separate | shards:&lt;n&gt; | annotation cache dir]
+ * </pre>
  * 
  * @author Samer
  * 
  */
 public class FileMain {
 
-	public static void main(String[] args) throws FileNotFoundException {
+	/**
+	 * Number of threads the evaluator uses, given as the first argument.
+	 */
+	private static int threads = 1;
+
+	/**
+	 * Metrics the annotation of the questions shared by the extractors is
+	 * recorded to.
+	 */
+	private static final String SHARED_ANNOTATION = "SharedAnnotation";
+
+	/**
+	 * Prefix of the second argument giving the number of worker JVMs.
+	 */
+	private static final String SHARDS = "shards:";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0)
+			threads = Integer.parseInt(args[0]);
+		boolean separate = args.length > 1 && "separate".equals(args[1]);
+		int shards = args.length > 1 && args[1].startsWith(SHARDS) ? Integer
+				.parseInt(args[1].substring(SHARDS.length())) : 0;
+		File cacheDir = args.length > 1 && !separate && shards == 0 ? new File(
+				args[1]) : null;
 		List<String> questions = FileLinesReader.readLines(new File(
 				"samples.input"));
 		List<List<String>> concepts = new ArrayList<List<String>>(
@@ -36,45 +77,119 @@ public class FileMain {
 			}
 			concepts.add(cons);
 		}
+		if (shards > 0) {
+			runSharded(shards, questions, concepts);
+			return;
+		}
+
+		// the extractors share their models through the AnnotatorRegistry
+		// as long as they are all open
+		Extractor ner = new NERExtractor();
+		Extractor wordNet = new WordNetExtractor();
+		Extractor hybrid = new HybridExtractor();
+		System.out.println("Loaded models:");
+		System.out.print(AnnotatorRegistry.getInstance().report());
+
+		long start = System.currentTimeMillis();
+		List<Annotation> annotations = null;
+		if (!separate) {
+			SharedPipeline pipeline = AnnotatorRegistry.getInstance().acquire(
+					AnnotatorRegistry.union(ner.getAnnotators(),
+							wordNet.getAnnotators(), hybrid.getAnnotators()));
+			AnnotationCache cache = cacheDir != null ? new AnnotationCache(
+					cacheDir, pipeline) : null;
+			annotations = pipeline.annotateAll(questions, threads,
+					ExtractorMetrics.get(SHARED_ANNOTATION), cache);
+			AnnotatorRegistry.getInstance().release(pipeline);
+			if (cache != null)
+				System.out.println(cache);
+		}
+		runNER(ner, questions, annotations, concepts);
+		runWordNet(wordNet, questions, annotations, concepts);
+		runHybrid(hybrid, questions, annotations, concepts);
+		System.out.println(String.format("Evaluated in %d ms (%s annotation)",
+				System.currentTimeMillis() - start, separate ? "separate"
+						: "shared"));
+
+		System.out.println("Stage latencies:");
+		if (!separate)
+			System.out.print(ExtractorMetrics.get(SHARED_ANNOTATION).report());
+		System.out.print(ner.getMetrics().report());
+		System.out.print(wordNet.getMetrics().report());
+		System.out.print(hybrid.getMetrics().report());
 
-		runNER(questions, concepts);
-		runWordNet(questions, concepts);
-		runHybrid(questions, concepts);
+		ner.close();
+		wordNet.close();
+		hybrid.close();
 	}
 
-	private static void runNER(List<String> questions,
+	private static void runSharded(int shards, List<String> questions,
 			List<List<String>> concepts) {
-		Extractor extractor = new NERExtractor();
+		long start = System.currentTimeMillis();
+		for (ExtractorType type : new ExtractorType[] { ExtractorType.NER,
+				ExtractorType.WORDNET, ExtractorType.HYBRID }) {
+			ShardCoordinator coordinator = new ShardCoordinator(type, shards);
+			coordinator.setThreadsPerShard(threads);
+			IREvaluator evaluator = new IREvaluator(questions, concepts);
+			evaluator.eval(coordinator);
+			System.out.println("Results for " + type + ":");
+			System.out.println(String.format("Accuracy = %.4f", evaluator.getAccuracy()));
+			System.out.println(String.format("Precision = %.4f", evaluator.getPrecision()));
+			System.out.println(String.format("Recall = %.4f", evaluator.getRecall()));
+			System.out.println(String.format("F-Measure = %.4f", evaluator.getFMeasure()));
+			System.out.println(String.format("Failed questions = %d", evaluator
+					.getFailedQuestions().size()));
+			System.out.println(coordinator);
+		}
+		System.out.println(String.format("Evaluated in %d ms (%d shards)",
+				System.currentTimeMillis() - start, shards));
+	}
+
+	private static void runNER(Extractor extractor, List<String> questions,
+			List<Annotation> annotations, List<List<String>> concepts) {
 		IREvaluator evaluator = new IREvaluator(questions, concepts);
-		evaluator.eval(extractor);
+		if (annotations != null)
+			evaluator.eval(extractor, annotations, threads);
+		else
+			evaluator.eval(extractor, threads);
 		System.out.println("Results for NER:");
 		System.out.println(String.format("Accuracy = %.4f", evaluator.getAccuracy()));
 		System.out.println(String.format("Precision = %.4f", evaluator.getPrecision()));
 		System.out.println(String.format("Recall = %.4f", evaluator.getRecall()));
 		System.out.println(String.format("F-Measure = %.4f", evaluator.getFMeasure()));
+		System.out.println(String.format("Failed questions = %d", evaluator
+				.getFailedQuestions().size()));
 	}
 
-	private static void runWordNet(List<String> questions,
-			List<List<String>> concepts) {
-		Extractor extractor = new WordNetExtractor();
+	private static void runWordNet(Extractor extractor, List<String> questions,
+			List<Annotation> annotations, List<List<String>> concepts) {
 		IREvaluator evaluator = new IREvaluator(questions, concepts);
-		evaluator.eval(extractor);
+		if (annotations != null)
+			evaluator.eval(extractor, annotations, threads);
+		else
+			evaluator.eval(extractor, threads);
 		System.out.println("Results for WordNet");
 		System.out.println(String.format("Accuracy = %.4f", evaluator.getAccuracy()));
 		System.out.println(String.format("Precision = %.4f", evaluator.getPrecision()));
 		System.out.println(String.format("Recall = %.4f", evaluator.getRecall()));
 		System.out.println(String.format("F-Measure = %.4f", evaluator.getFMeasure()));
+		System.out.println(String.format("Failed questions = %d", evaluator
+				.getFailedQuestions().size()));
 	}
 	
-	private static void runHybrid(List<String> questions,
-			List<List<String>> concepts) {
-		Extractor extractor = new HybridExtractor();
+	private static void runHybrid(Extractor extractor, List<String> questions,
+			List<Annotation> annotations, List<List<String>> concepts) {
 		IREvaluator evaluator = new IREvaluator(questions, concepts);
-		evaluator.eval(extractor);
+		if (annotations != null)
+			evaluator.eval(extractor, annotations, threads);
+		else
+			evaluator.eval(extractor, threads);
 		System.out.println("Results for Hybrid");
 		System.out.println(String.format("Accuracy = %.4f", evaluator.getAccuracy()));
 		System.out.println(String.format("Precision = %.4f", evaluator.getPrecision()));
 		System.out.println(String.format("Recall = %.4f", evaluator.getRecall()));
 		System.out.println(String.format("F-Measure = %.4f", evaluator.getFMeasure()));
+		System.out.println(String.format("Failed questions = %d", evaluator
+				.getFailedQuestions().size()));
 	}
 }
@@ -0,0 +1,102 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import engine.bench.LoadGenerator;
+import engine.bench.LoadResult;
+import engine.core.Extractor;
+import engine.core.ExtractorType;
+import engine.core.MicroBatchingExtractor;
+import engine.util.FileLinesReader;
+
+/**
+ * This class drives one type of extractor with sustained load from a file of
+ * questions, samples.input by default, and prints the throughput and the
+ * latency percentiles. <br/>
+ * "scale:&lt;max&gt;" runs closed loops of 1, 2, 4... clients up to max, the
+ * number of processors by default, and prints the throughput against the
+ * threads. "closed:&lt;threads&gt;" runs a single closed loop, and
+ * "rate:&lt;per second&gt;[:&lt;threads&gt;]" an open loop sending the
+ * questions at a fixed rate. <br/>
+ * With the engine.batch property set to a batch size, the questions go
+ * through a {@link MicroBatchingExtractor} with one worker per processor.
+ * The engine.warmup property sets the seconds of warm-up before every run, 5
+ * by default.
+ *
+ * <pre>
+ * java [-Dengine.batch=16] LoadTestMain &lt;ner|wordnet|hybrid|gazetteer&gt; [scale[:max]|closed:threads|rate:qps[:threads]] [seconds] [questions]
+ * </pre>
+ */
+public class LoadTestMain {
+
+	private static final String BATCH_PROPERTY = "engine.batch";
+	private static final String WARM_UP_PROPERTY = "engine.warmup";
+	private static final long BATCH_WAIT_MILLIS = 2;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: LoadTestMain <ner|wordnet|hybrid|gazetteer> "
+					+ "[scale[:max]|closed:threads|rate:qps[:threads]] "
+					+ "[seconds] [questions]");
+			System.exit(1);
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		String[] mode = (args.length > 1 ? args[1] : "scale").split(":");
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		String input = args.length > 3 ? args[3] : "samples.input";
+		List<String> questions = FileLinesReader.readLines(new File(input));
+		if (questions == null) {
+			System.err.println("Cannot find " + input);
+			System.exit(1);
+		}
+
+		Extractor extractor = ExtractorType.get(args[0]).create();
+		String batch = System.getProperty(BATCH_PROPERTY);
+		if (batch != null)
+			extractor = new MicroBatchingExtractor(extractor, processors,
+					Integer.parseInt(batch), BATCH_WAIT_MILLIS,
+					TimeUnit.MILLISECONDS);
+		try {
+			LoadGenerator load = new LoadGenerator(extractor, questions);
+			load.setDuration(seconds, TimeUnit.SECONDS);
+			load.setWarmUp(Integer.getInteger(WARM_UP_PROPERTY, 5),
+					TimeUnit.SECONDS);
+			System.out.println(String.format(
+					"# %s%s, %d questions, %d s per run, %d processors, "
+							+ "Java %s", args[0], batch != null ? " batch:"
+							+ batch : "", questions.size(), seconds,
+					processors, System.getProperty("java.version")));
+
+			if (mode[0].equals("scale")) {
+				List<LoadResult> results = load.runScaling(mode.length > 1 ? Integer
+						.parseInt(mode[1]) : processors);
+				for (LoadResult result : results)
+					System.out.println(result);
+				System.out.println();
+				System.out.print(LoadGenerator.scalingTable(results));
+				System.out.println();
+				System.out.print(results.get(results.size() - 1).getLatency()
+						.percentileTable());
+			} else if (mode[0].equals("closed") || mode[0].equals("rate")) {
+				if (mode.length < 2)
+					throw new IllegalArgumentException("Missing value: "
+							+ args[1]);
+				LoadResult result;
+				if (mode[0].equals("closed"))
+					result = load.runClosed(Integer.parseInt(mode[1]));
+				else
+					result = load.runOpen(Double.parseDouble(mode[1]),
+							mode.length > 2 ? Integer.parseInt(mode[2])
+									: processors);
+				System.out.println(result);
+				System.out.println();
+				System.out.print(result.getLatency().percentileTable());
+			} else
+				throw new IllegalArgumentException("Unknown mode: " + args[1]);
+		} finally {
+			extractor.close();
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import engine.core.ExtractorType;
+import engine.service.ExtractionServer;
+import engine.util.FileLinesReader;
+
+/**
+ * This class serves one type of extractor over HTTP until the process is
+ * stopped. <br/>
+ * With a warm-up file, e.g. samples.input, its questions are replayed
+ * through the extractors before the server reports ready. <br/>
+ * With the engine.degraded property set to a cheaper type, e.g. wordnet, the
+ * server falls back on it under sustained overload.
+ *
+ * <pre>
+ * java [-Dengine.degraded=wordnet] ServerMain &lt;ner|wordnet|hybrid|gazetteer&gt; [port] [workers] [warm-up file]
+ * </pre>
+ */
+public class ServerMain {
+
+	private static final int WARM_UP_ROUNDS = 3;
+	private static final String DEGRADED_PROPERTY = "engine.degraded";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: ServerMain <ner|wordnet|hybrid|gazetteer> "
+					+ "[port] [workers] [warm-up file]");
+			System.exit(1);
+		}
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime
+				.getRuntime().availableProcessors();
+
+		final ExtractionServer server = new ExtractionServer(
+				ExtractorType.get(args[0]), workers);
+		if (args.length > 3) {
+			List<String> questions = FileLinesReader.readLines(new File(
+					args[3]));
+			if (questions == null) {
+				System.err.println("Cannot find " + args[3]);
+				System.exit(1);
+			}
+			server.setWarmUp(questions, WARM_UP_ROUNDS);
+		}
+		String degraded = System.getProperty(DEGRADED_PROPERTY);
+		if (degraded != null)
+			server.setDegradedType(ExtractorType.get(degraded));
+		port = server.start(port);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				server.stop();
+			}
+		});
+		System.out.println("Listening on port " + port);
+	}
+
+}
@@ -0,0 +1,90 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.AnnotationCache;
+import engine.core.AnnotatorRegistry;
+import engine.core.DepthThresholdExtractor;
+import engine.core.Extractor;
+import engine.core.ExtractorType;
+import engine.core.SharedPipeline;
+import engine.eval.ThresholdSweep;
+import engine.eval.ThresholdSweep.Point;
+import engine.util.FileLinesReader;
+
+/**
+ * This class prints the Precision, Recall & FMeasure of the WordNet or Hybrid
+ * extractor on the sample input for every factor of the average depth, as
+ * CSV, followed by the best factor. The questions are annotated once, and
+ * kept in an {@link AnnotationCache} when a directory is given.
+ *
+ * <pre>
+ * java SweepMain &lt;wordnet|hybrid&gt; [annotation cache dir]
+ * </pre>
+ */
+public class SweepMain {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SweepMain <wordnet|hybrid> "
+					+ "[annotation cache dir]");
+			System.exit(1);
+		}
+		Extractor extractor = ExtractorType.get(args[0]).create();
+		if (!(extractor instanceof DepthThresholdExtractor)) {
+			System.err.println("The " + args[0] + " extractor has no factor");
+			extractor.close();
+			System.exit(1);
+		}
+		DepthThresholdExtractor thresholded = (DepthThresholdExtractor) extractor;
+
+		List<String> questions = FileLinesReader.readLines(new File(
+				"samples.input"));
+		List<List<String>> concepts = new ArrayList<List<String>>(
+				questions.size());
+		for (String conceptsLine : FileLinesReader.readLines(new File(
+				"samples.output"))) {
+			List<String> cons = new ArrayList<String>();
+			for (String c : conceptsLine.split(","))
+				cons.add(c.trim());
+			concepts.add(cons);
+		}
+
+		SharedPipeline pipeline = AnnotatorRegistry.getInstance().acquire(
+				extractor.getAnnotators());
+		AnnotationCache cache = args.length > 1 ? new AnnotationCache(
+				new File(args[1]), pipeline) : null;
+		List<Annotation> annotations = pipeline.annotateAll(questions, Runtime
+				.getRuntime().availableProcessors(), extractor.getMetrics(),
+				cache);
+		AnnotatorRegistry.getInstance().release(pipeline);
+
+		long start = System.currentTimeMillis();
+		ThresholdSweep sweep = new ThresholdSweep(concepts);
+		List<Point> points = sweep.sweep(thresholded, annotations);
+		long elapsed = System.currentTimeMillis() - start;
+
+		System.out.println("factor,precision,recall,fmeasure");
+		for (Point point : points)
+			System.out.println(point);
+		Point best = ThresholdSweep.best(points);
+		if (best != null) {
+			int i = points.indexOf(best);
+			System.out.println(String.format(
+					"Best F-Measure = %.4f for factors in (%.4f, %.4f]", best
+							.getCounts().getFMeasure(), i > 0 ? points.get(
+							i - 1).getFactor() : Double.NEGATIVE_INFINITY,
+					best.getFactor()));
+		}
+		System.out.println(String.format("Current factor = %.4f",
+				thresholded.getFactorOfAvgDepth()));
+		System.out.println(String.format(
+				"Swept %d factors over %d questions in %d ms (%d failed)",
+				points.size(), questions.size(), elapsed, sweep
+						.getFailedQuestions().size()));
+		extractor.close();
+	}
+
+}
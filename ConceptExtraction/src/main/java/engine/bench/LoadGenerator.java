@@ -0,0 +1,331 @@
+package engine.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import engine.core.Extractor;
+import engine.core.Extractor.ClassifiedTokens;
+import engine.core.MicroBatchingExtractor;
+import engine.metrics.LatencyHistogram;
+
+/**
+ * Drives an extractor with sustained concurrent load from a list of
+ * questions, e.g. samples.input, replayed in a loop, and measures the
+ * throughput and the latency distribution. <br/>
+ * A closed loop runs a fixed number of clients that each send the next
+ * question as soon as their previous one is answered, which finds the
+ * throughput at saturation. An open loop sends the questions at a fixed rate
+ * whatever the answers, and measures each latency from the time the question
+ * was due to be sent, so that a stall of the extractor shows as the latency
+ * of every question that should have been sent meanwhile instead of being
+ * hidden by the clients waiting (coordinated omission). <br/>
+ * A {@link MicroBatchingExtractor} is driven through
+ * {@link MicroBatchingExtractor#submit(String)} in an open loop, so that the
+ * questions are queued without tying up a thread each. <br/>
+ * Every run is preceded by a warm-up of the same load whose latencies are
+ * dropped.
+ */
+public class LoadGenerator {
+
+	private final Extractor extractor;
+	private final List<String> questions;
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile long warmUpNanos = TimeUnit.SECONDS.toNanos(5);
+	private volatile long durationNanos = TimeUnit.SECONDS.toNanos(20);
+
+	/**
+	 * @param extractor
+	 *            Extractor to drive, called from all the threads at once.
+	 * @param questions
+	 *            Questions to send in a loop, the empty ones are skipped.
+	 */
+	public LoadGenerator(Extractor extractor, List<String> questions) {
+		if (extractor == null)
+			throw new IllegalArgumentException("Invalid extractor");
+		this.extractor = extractor;
+		this.questions = new ArrayList<String>();
+		if (questions != null) {
+			for (String question : questions) {
+				if (question != null && question.trim().length() > 0)
+					this.questions.add(question);
+			}
+		}
+		if (this.questions.isEmpty())
+			throw new IllegalArgumentException("No questions");
+	}
+
+	/**
+	 * @param warmUp
+	 *            Time the load runs before every measured run, 0 for none.
+	 * @param unit
+	 *            Unit of <code>warmUp</code>.
+	 */
+	public void setWarmUp(long warmUp, TimeUnit unit) {
+		if (warmUp < 0 || unit == null)
+			throw new IllegalArgumentException("Invalid warm-up: " + warmUp
+					+ " " + unit);
+		this.warmUpNanos = unit.toNanos(warmUp);
+	}
+
+	/**
+	 * @param duration
+	 *            Time the questions are sent for in a measured run.
+	 * @param unit
+	 *            Unit of <code>duration</code>.
+	 */
+	public void setDuration(long duration, TimeUnit unit) {
+		if (duration <= 0 || unit == null)
+			throw new IllegalArgumentException("Invalid duration: "
+					+ duration + " " + unit);
+		this.durationNanos = unit.toNanos(duration);
+	}
+
+	/**
+	 * Run a closed loop: every client sends its next question when the
+	 * previous one is answered.
+	 *
+	 * @param threads
+	 *            Number of clients.
+	 * @return the throughput and the latencies of the questions sent during
+	 *         the run
+	 */
+	public LoadResult runClosed(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+		if (warmUpNanos > 0)
+			closed(threads, warmUpNanos);
+		return closed(threads, durationNanos);
+	}
+
+	/**
+	 * Run a closed loop with 1, 2, 4... clients up to the given number, to see
+	 * how the throughput scales with the threads.
+	 *
+	 * @param maxThreads
+	 *            Number of clients of the last run, e.g. the number of cores.
+	 * @return one result per number of clients
+	 */
+	public List<LoadResult> runScaling(int maxThreads) {
+		if (maxThreads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ maxThreads);
+		List<LoadResult> results = new ArrayList<LoadResult>();
+		for (int threads = 1; threads < maxThreads; threads *= 2)
+			results.add(runClosed(threads));
+		results.add(runClosed(maxThreads));
+		return results;
+	}
+
+	/**
+	 * Run an open loop: the questions are sent at a fixed rate, whether the
+	 * previous ones were answered or not, and queue up when the extractor
+	 * cannot keep up. The run lasts until the last question sent is answered.
+	 *
+	 * @param rate
+	 *            Questions sent per second.
+	 * @param threads
+	 *            Number of threads classifying the questions, ignored for a
+	 *            {@link MicroBatchingExtractor} that has its own workers.
+	 * @return the throughput and the latencies of the questions, from the time
+	 *         each was due to be sent
+	 */
+	public LoadResult runOpen(double rate, int threads) {
+		if (!(rate > 0))
+			throw new IllegalArgumentException("Invalid rate: " + rate);
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+		if (warmUpNanos > 0)
+			open(rate, threads, warmUpNanos);
+		return open(rate, threads, durationNanos);
+	}
+
+	private String nextQuestion() {
+		return questions.get((next.getAndIncrement() & Integer.MAX_VALUE)
+				% questions.size());
+	}
+
+	private LoadResult closed(final int threads, long nanos) {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong failures = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[threads];
+		final long startTime = System.nanoTime() + TimeUnit.MILLISECONDS
+				.toNanos(10);
+		final long endTime = startTime + nanos;
+		Thread[] clients = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int client = t;
+			clients[t] = new Thread("load-" + t) {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long now = System.nanoTime();
+					// at least one question, even when the client is
+					// scheduled after the end of the run
+					do {
+						String question = nextQuestion();
+						try {
+							extractor.classifyQuestionTokens(question);
+						} catch (RuntimeException e) {
+							failures.incrementAndGet();
+						}
+						long done = System.nanoTime();
+						latency.record(done - now);
+						now = done;
+					} while (now - endTime < 0);
+					end[client] = now;
+				}
+			};
+			clients[t].start();
+		}
+		LockSupport.parkNanos(startTime - System.nanoTime());
+		start.countDown();
+		long lastEnd = startTime;
+		for (int t = 0; t < threads; t++) {
+			join(clients[t]);
+			if (end[t] - lastEnd > 0)
+				lastEnd = end[t];
+		}
+		return new LoadResult(threads, 0, latency.getCount(), failures.get(),
+				lastEnd - startTime, latency);
+	}
+
+	private LoadResult open(double rate, int threads, long nanos) {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong lastEnd = new AtomicLong();
+		long interval = Math.max(1, (long) (1e9 / rate));
+		int count = (int) Math.max(1, Math.min(Integer.MAX_VALUE, nanos
+				/ interval));
+		final CountDownLatch done = new CountDownLatch(count);
+		MicroBatchingExtractor batching = null;
+		if (extractor instanceof MicroBatchingExtractor)
+			batching = (MicroBatchingExtractor) extractor;
+		ExecutorService workers = batching == null ? Executors
+				.newFixedThreadPool(threads) : null;
+		long startTime = System.nanoTime();
+		lastEnd.set(startTime);
+		try {
+			for (int i = 0; i < count; i++) {
+				final long due = startTime + i * interval;
+				long wait = due - System.nanoTime();
+				if (wait > 0)
+					LockSupport.parkNanos(wait);
+				final String question = nextQuestion();
+				if (batching != null) {
+					CompletableFuture<ClassifiedTokens> future;
+					try {
+						future = batching.submit(question);
+					} catch (RuntimeException e) {
+						failures.incrementAndGet();
+						complete(due, latency, lastEnd, done);
+						continue;
+					}
+					future.whenComplete(
+							new BiConsumer<ClassifiedTokens, Throwable>() {
+								public void accept(ClassifiedTokens ct,
+										Throwable e) {
+									if (e != null)
+										failures.incrementAndGet();
+									complete(due, latency, lastEnd, done);
+								}
+							});
+				} else {
+					workers.execute(new Runnable() {
+						public void run() {
+							try {
+								extractor.classifyQuestionTokens(question);
+							} catch (RuntimeException e) {
+								failures.incrementAndGet();
+							} finally {
+								complete(due, latency, lastEnd, done);
+							}
+						}
+					});
+				}
+			}
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted", e);
+		} finally {
+			if (workers != null)
+				workers.shutdownNow();
+		}
+		return new LoadResult(batching == null ? threads : 0, rate,
+				latency.getCount(), failures.get(), lastEnd.get() - startTime,
+				latency);
+	}
+
+	private static void complete(long due, LatencyHistogram latency,
+			AtomicLong lastEnd, CountDownLatch done) {
+		long now = System.nanoTime();
+		latency.record(now - due);
+		long current;
+		while (now - (current = lastEnd.get()) > 0
+				&& !lastEnd.compareAndSet(current, now))
+			;
+		done.countDown();
+	}
+
+	private static void join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted", e);
+		}
+	}
+
+	/**
+	 * Format the results of {@link #runScaling(int)} as a table with one line
+	 * per number of threads: the throughput, the speedup and efficiency over
+	 * the first line, and the latency percentiles in milliseconds.
+	 *
+	 * @param results
+	 *            Results of closed loops, in increasing number of threads
+	 * @return the table
+	 */
+	public static String scalingTable(List<LoadResult> results) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%8s %12s %8s %10s %10s %10s %10s %10s %8s%n",
+				"Threads", "Throughput/s", "Speedup", "Efficiency", "p50",
+				"p99", "p99.9", "Max", "Failures"));
+		double base = results.isEmpty() ? 0 : results.get(0).getThroughput()
+				/ results.get(0).getThreads();
+		for (LoadResult result : results) {
+			double speedup = base == 0 ? 0 : result.getThroughput() / base;
+			LatencyHistogram latency = result.getLatency();
+			sb.append(String.format(
+					"%8d %12.1f %8.2f %9.0f%% %10.3f %10.3f %10.3f %10.3f %8d%n",
+					result.getThreads(), result.getThroughput(), speedup,
+					100 * speedup / result.getThreads(),
+					latency.getPercentileMillis(50),
+					latency.getPercentileMillis(99),
+					latency.getPercentileMillis(99.9),
+					latency.getMax() / 1e6, result.getFailures()));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "LoadGenerator(" + extractor.getClass().getSimpleName() + ", "
+				+ questions.size() + " questions)";
+	}
+
+}
@@ -0,0 +1,92 @@
+package engine.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import engine.metrics.LatencyHistogram;
+
+/**
+ * Throughput and latency distribution of one run of a {@link LoadGenerator}.
+ */
+public class LoadResult {
+
+	private final int threads;
+	private final double rate;
+	private final long completed;
+	private final long failures;
+	private final long elapsedNanos;
+	private final LatencyHistogram latency;
+
+	LoadResult(int threads, double rate, long completed, long failures,
+			long elapsedNanos, LatencyHistogram latency) {
+		this.threads = threads;
+		this.rate = rate;
+		this.completed = completed;
+		this.failures = failures;
+		this.elapsedNanos = elapsedNanos;
+		this.latency = latency;
+	}
+
+	/**
+	 * @return number of threads calling the extractor, the clients of a closed
+	 *         loop or the workers of an open loop, 0 when the workers of a
+	 *         {@link engine.core.MicroBatchingExtractor} did
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the questions sent per second by an open loop, 0 for a closed
+	 *         loop
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return number of questions classified, failures included
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return number of questions the extractor failed on
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return time from the first question sent to the last one completed
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+
+	/**
+	 * @return questions completed per second
+	 */
+	public double getThroughput() {
+		return elapsedNanos == 0 ? 0.0 : completed * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return the latencies of the questions, failures included
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if (threads > 0)
+			sb.append("threads=").append(threads).append(' ');
+		if (rate > 0)
+			sb.append(String.format("rate=%.1f/s ", rate));
+		return sb.append(String.format("throughput=%.1f/s failures=%d %s",
+				getThroughput(), failures, latency.summary())).toString();
+	}
+
+}
@@ -0,0 +1,228 @@
+package engine.bulk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import engine.core.Extractor;
+import engine.core.Extractor.ClassifiedTokens;
+import engine.util.Json;
+import engine.util.MappedLinesReader;
+
+/**
+ * Streams the questions of a file through an extractor and writes one JSON
+ * line per question, in the order of the input. <br/>
+ * A reader thread maps the input file and submits every question to a pool
+ * of workers. The futures of the submitted questions wait in a queue that the
+ * writer drains in order. The reader takes a slot before reading a question
+ * and the writer gives it back once the question is written, so the number
+ * of questions in memory never exceeds the in-flight bound, however large
+ * the input is.
+ */
+public class BulkExtractor {
+
+	/**
+	 * Marks the end of the input in the queue of pending results.
+	 */
+	private static final Future<String> END = new FutureTask<String>(
+			new Callable<String>() {
+				public String call() {
+					return null;
+				}
+			});
+
+	private final Extractor extractor;
+	private final int threads;
+	private final int maxInFlight;
+	private PrintStream progress = System.err;
+	private long progressIntervalMillis = 10000;
+
+	/**
+	 * @param extractor
+	 *            Extractor to run, called from all the worker threads.
+	 * @param threads
+	 *            Number of worker threads.
+	 * @param maxInFlight
+	 *            Maximum number of questions read but not written yet.
+	 */
+	public BulkExtractor(Extractor extractor, int threads, int maxInFlight) {
+		if (threads < 1 || maxInFlight < 1)
+			throw new IllegalArgumentException("Invalid threads/in-flight: "
+					+ threads + "/" + maxInFlight);
+		this.extractor = extractor;
+		this.threads = threads;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @param progress
+	 *            Stream to report progress to, or <code>null</code> for none.
+	 * @param intervalMillis
+	 *            Time between two progress reports.
+	 */
+	public void setProgress(PrintStream progress, long intervalMillis) {
+		this.progress = progress;
+		this.progressIntervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Extract the concepts of every non-empty line of the input.
+	 *
+	 * @param input
+	 *            File with one question per line.
+	 * @param output
+	 *            Writer that receives one JSON object per question.
+	 * @return number of questions written.
+	 * @throws IOException
+	 *             if the input cannot be read or the output written.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted.
+	 */
+	public long run(File input, Writer output) throws IOException,
+			InterruptedException {
+		final MappedLinesReader reader = new MappedLinesReader(input);
+		// one more than the slots, for END
+		final BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<Future<String>>(
+				maxInFlight + 1);
+		final Semaphore slots = new Semaphore(maxInFlight);
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		final Throwable[] readError = new Throwable[1];
+
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					long lineNumber = 0;
+					String line;
+					while (true) {
+						slots.acquire();
+						if ((line = reader.readLine()) == null)
+							break;
+						lineNumber++;
+						if (line.trim().length() == 0) {
+							slots.release();
+							continue;
+						}
+						pending.put(workers.submit(new ExtractTask(lineNumber,
+								line)));
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (Throwable e) {
+					readError[0] = e;
+				} finally {
+					// the consumer stops at END, whatever stopped the reading
+					if (!Thread.currentThread().isInterrupted()) {
+						try {
+							pending.put(END);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}
+			}
+		}, "bulk-reader");
+		producer.setDaemon(true);
+		producer.start();
+
+		long written = 0;
+		long start = System.currentTimeMillis();
+		long lastReport = start;
+		try {
+			Future<String> result;
+			while ((result = pending.take()) != END) {
+				output.write(get(result));
+				output.write('\n');
+				written++;
+				slots.release();
+				long now = System.currentTimeMillis();
+				if (progress != null
+						&& now - lastReport >= progressIntervalMillis) {
+					report(written, reader, now - start);
+					lastReport = now;
+				}
+			}
+			output.flush();
+		} finally {
+			producer.interrupt();
+			producer.join();
+			workers.shutdownNow();
+			reader.close();
+		}
+		Throwable error = readError[0];
+		if (error instanceof IOException)
+			throw (IOException) error;
+		if (error instanceof RuntimeException)
+			throw (RuntimeException) error;
+		if (error instanceof Error)
+			throw (Error) error;
+		if (progress != null)
+			report(written, reader, System.currentTimeMillis() - start);
+		return written;
+	}
+
+	private void report(long written, MappedLinesReader reader,
+			long elapsedMillis) {
+		progress.println(String.format(
+				"%d questions, %.1f%% of input, %.1f questions/s", written,
+				100.0 * reader.getPosition() / Math.max(1, reader.getSize()),
+				written * 1000.0 / Math.max(1, elapsedMillis)));
+	}
+
+	private static String get(Future<String> result)
+			throws InterruptedException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			// ExtractTask reports the failures of the extractor as JSON
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Extracts the concepts of one question and formats them as JSON.
+	 */
+	private class ExtractTask implements Callable<String> {
+
+		private final long lineNumber;
+		private final String question;
+
+		ExtractTask(long lineNumber, String question) {
+			this.lineNumber = lineNumber;
+			this.question = question;
+		}
+
+		public String call() {
+			ClassifiedTokens tokens = null;
+			String error = null;
+			try {
+				tokens = extractor.classifyQuestionTokens(question);
+			} catch (RuntimeException e) {
+				error = String.valueOf(e);
+			}
+
+			StringBuilder sb = new StringBuilder(question.length() * 4);
+			sb.append("{\"line\":").append(lineNumber)
+					.append(",\"question\":");
+			Json.appendString(sb, question);
+			if (tokens != null) {
+				sb.append(",\"result\":");
+				tokens.appendJson(sb);
+			} else {
+				sb.append(",\"error\":");
+				Json.appendString(sb, error);
+			}
+			return sb.append('}').toString();
+		}
+	}
+
+}
@@ -0,0 +1,503 @@
+package engine.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.IndexAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.LemmaAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.NormalizedNamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.OriginalTextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentenceIndexAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokenBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokenEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.ValueAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.TypesafeMap;
+import engine.metrics.ExtractorMetrics;
+
+/**
+ * Persistent cache of the annotations of questions, so that evaluation runs
+ * on the same corpus only pay for CoreNLP once. <br/>
+ * Every question is stored in its own file, named after the SHA-1 of the
+ * configuration of the pipeline and of the question text, in a directory
+ * named after the SHA-1 of the configuration alone. The configuration is the
+ * annotators list, whether the {@link NerGate} is on, the CoreNLP library and
+ * the version of the file format, so changing any of them makes the old
+ * entries unreachable. Every directory records its configuration in a
+ * marker file: the directories of other annotator sets are kept, so that
+ * tools running different pipelines can share the cache, while the ones made
+ * by another CoreNLP library or format version are deleted when the cache is
+ * opened. <br/>
+ * The files keep the tokens with their text, offsets, part-of-speech tag,
+ * lemma and named entity tags, grouped by sentence, in a compact binary
+ * format where every distinct string is written once:
+ *
+ * <pre>
+ * int magic, UTF question, varint strings, UTF[strings],
+ * varint sentences, per sentence: varint tokens, per token:
+ *   varint word, varint original text, varint begin, varint length,
+ *   varint pos, varint lemma, varint ner, varint normalized ner
+ * </pre>
+ *
+ * where the strings are indices in the table, plus one so that 0 stands for
+ * a missing annotation. <br/>
+ * Instances can be used from several threads; entries are written to a
+ * temporary file first, so readers never see a partial entry.
+ */
+public class AnnotationCache {
+
+	static final int MAGIC = 0x414e4331; // "ANC1"
+	private static final String EXTENSION = ".ann";
+	private static final String MARKER = "configuration.properties";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final SharedPipeline pipeline;
+	private final String configuration;
+	private final File dir;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	/**
+	 * Open the cache of the annotations made by a pipeline, deleting the
+	 * entries made by another CoreNLP library or format version.
+	 *
+	 * @param baseDir
+	 *            Directory holding the cache, created if needed.
+	 * @param pipeline
+	 *            Pipeline that annotates the questions that are not cached.
+	 * @throws IOException
+	 *             if the directory cannot be created.
+	 */
+	public AnnotationCache(File baseDir, SharedPipeline pipeline)
+			throws IOException {
+		this.pipeline = pipeline;
+		Properties marker = new Properties();
+		marker.setProperty("format", Integer.toString(MAGIC));
+		marker.setProperty("annotators", pipeline.getAnnotators());
+		marker.setProperty("nerGate",
+				Boolean.toString(pipeline.getNerGate() != null));
+		marker.setProperty("corenlp", coreNlpLocation());
+		this.configuration = sha1("format=" + MAGIC + "\nannotators="
+				+ pipeline.getAnnotators() + "\nnerGate="
+				+ (pipeline.getNerGate() != null) + "\ncorenlp="
+				+ coreNlpLocation());
+		this.dir = new File(baseDir, configuration);
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+		File markerFile = new File(dir, MARKER);
+		if (!markerFile.isFile()) {
+			OutputStream out = new FileOutputStream(markerFile);
+			try {
+				marker.store(out, "Configuration of the cached annotations");
+			} finally {
+				out.close();
+			}
+		}
+		invalidateStale(baseDir, marker);
+	}
+
+	/**
+	 * Get the annotations of a question from the cache, or annotate it with
+	 * the pipeline and store them.
+	 *
+	 * @param question
+	 *            Question to annotate
+	 * @param metrics
+	 *            Metrics the stages of the pipeline are recorded to.
+	 * @return the annotations of the question
+	 */
+	public Annotation annotate(String question, ExtractorMetrics metrics) {
+		Annotation annotation = get(question);
+		if (annotation != null)
+			return annotation;
+		annotation = new Annotation(question);
+		pipeline.annotate(annotation, metrics);
+		put(annotation);
+		return annotation;
+	}
+
+	/**
+	 * @return the pipeline of the cached annotations
+	 */
+	public SharedPipeline getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * Read the annotations of a question.
+	 *
+	 * @param question
+	 *            Question text
+	 * @return the annotations, or <code>null</code> if the question is not
+	 *         cached or its entry cannot be read.
+	 */
+	public Annotation get(String question) {
+		File file = file(question);
+		if (!file.isFile()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				Annotation annotation = read(in, question, file.length());
+				if (annotation != null) {
+					hits.incrementAndGet();
+					return annotation;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// a damaged entry is annotated again and overwritten
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Store the annotations of a question, replacing any previous entry.
+	 * Failing to write is not an error, the question is simply not cached.
+	 *
+	 * @param annotation
+	 *            Annotations made by the pipeline of the cache
+	 */
+	public void put(Annotation annotation) {
+		String question = annotation.get(TextAnnotation.class);
+		File file = file(question);
+		File tmp = new File(dir, file.getName() + "."
+				+ Thread.currentThread().getId() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				write(out, annotation);
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file))
+					throw new IOException("Cannot rename " + tmp);
+			}
+			writes.incrementAndGet();
+		} catch (IOException e) {
+			tmp.delete();
+			System.err.println("Cannot cache the annotations of \"" + question
+					+ "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Delete every entry of the current configuration.
+	 */
+	public void clear() {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (!file.getName().equals(MARKER))
+				file.delete();
+		}
+	}
+
+	File file(String question) {
+		return new File(dir, sha1(configuration + "\n" + question) + EXTENSION);
+	}
+
+	private static void write(DataOutputStream out, Annotation annotation)
+			throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		List<CoreMap> sentences = annotation.get(SentencesAnnotation.class);
+		for (CoreMap sentence : sentences) {
+			for (CoreLabel cl : sentence.get(TokensAnnotation.class)) {
+				intern(strings, cl.get(TextAnnotation.class));
+				intern(strings, cl.get(OriginalTextAnnotation.class));
+				intern(strings, cl.get(PartOfSpeechAnnotation.class));
+				intern(strings, cl.get(LemmaAnnotation.class));
+				intern(strings, cl.get(NamedEntityTagAnnotation.class));
+				intern(strings,
+						cl.get(NormalizedNamedEntityTagAnnotation.class));
+			}
+		}
+
+		out.writeInt(MAGIC);
+		out.writeUTF(annotation.get(TextAnnotation.class));
+		writeVarint(out, strings.size());
+		for (String s : strings.keySet())
+			out.writeUTF(s);
+		writeVarint(out, sentences.size());
+		for (CoreMap sentence : sentences) {
+			List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+			writeVarint(out, tokens.size());
+			for (CoreLabel cl : tokens) {
+				writeString(out, strings, cl.get(TextAnnotation.class));
+				writeString(out, strings, cl.get(OriginalTextAnnotation.class));
+				writeVarint(out, cl.beginPosition());
+				writeVarint(out, cl.endPosition() - cl.beginPosition());
+				writeString(out, strings, cl.get(PartOfSpeechAnnotation.class));
+				writeString(out, strings, cl.get(LemmaAnnotation.class));
+				writeString(out, strings,
+						cl.get(NamedEntityTagAnnotation.class));
+				writeString(out, strings,
+						cl.get(NormalizedNamedEntityTagAnnotation.class));
+			}
+		}
+	}
+
+	/**
+	 * Rebuild the annotations the way the CoreNLP pipeline lays them out.
+	 * Every count, string index and offset is checked, so that a damaged
+	 * entry is reported as an {@link IOException}.
+	 *
+	 * @param length
+	 *            Size of the entry in bytes, bounding the counts it holds
+	 * @return the annotations, or <code>null</code> if the entry is not the
+	 *         one of the question
+	 */
+	private static Annotation read(DataInputStream in, String question,
+			long length) throws IOException {
+		if (in.readInt() != MAGIC || !question.equals(in.readUTF()))
+			return null;
+		String[] strings = new String[readCount(in, length)];
+		for (int i = 0; i < strings.length; i++)
+			strings[i] = in.readUTF();
+
+		Annotation annotation = new Annotation(question);
+		int sentenceCount = readCount(in, length);
+		List<CoreMap> sentences = new ArrayList<CoreMap>(sentenceCount);
+		List<CoreLabel> allTokens = new ArrayList<CoreLabel>();
+		for (int s = 0; s < sentenceCount; s++) {
+			int tokenCount = readCount(in, length);
+			List<CoreLabel> tokens = new ArrayList<CoreLabel>(tokenCount);
+			for (int i = 0; i < tokenCount; i++) {
+				CoreLabel cl = new CoreLabel();
+				String word = readString(in, strings);
+				cl.set(ValueAnnotation.class, word);
+				cl.set(TextAnnotation.class, word);
+				setIfPresent(cl, OriginalTextAnnotation.class,
+						readString(in, strings));
+				int begin = readVarint(in);
+				int tokenLength = readVarint(in);
+				if (begin < 0 || tokenLength < 0
+						|| tokenLength > question.length() - begin)
+					throw new IOException("Invalid token offsets");
+				cl.set(CharacterOffsetBeginAnnotation.class, begin);
+				cl.set(CharacterOffsetEndAnnotation.class, begin + tokenLength);
+				setIfPresent(cl, PartOfSpeechAnnotation.class,
+						readString(in, strings));
+				setIfPresent(cl, LemmaAnnotation.class,
+						readString(in, strings));
+				setIfPresent(cl, NamedEntityTagAnnotation.class,
+						readString(in, strings));
+				setIfPresent(cl, NormalizedNamedEntityTagAnnotation.class,
+						readString(in, strings));
+				cl.set(IndexAnnotation.class, i + 1);
+				cl.set(SentenceIndexAnnotation.class, s);
+				tokens.add(cl);
+			}
+
+			int begin = tokens.isEmpty() ? 0 : tokens.get(0).beginPosition();
+			int end = tokens.isEmpty() ? 0 : tokens.get(tokens.size() - 1)
+					.endPosition();
+			if (begin > end)
+				throw new IOException("Invalid sentence offsets");
+			Annotation sentence = new Annotation(question.substring(begin, end));
+			sentence.set(CharacterOffsetBeginAnnotation.class, begin);
+			sentence.set(CharacterOffsetEndAnnotation.class, end);
+			sentence.set(TokensAnnotation.class, tokens);
+			sentence.set(TokenBeginAnnotation.class, allTokens.size());
+			allTokens.addAll(tokens);
+			sentence.set(TokenEndAnnotation.class, allTokens.size());
+			sentence.set(SentenceIndexAnnotation.class, s);
+			sentences.add(sentence);
+		}
+		annotation.set(TokensAnnotation.class, allTokens);
+		annotation.set(SentencesAnnotation.class, sentences);
+		return annotation;
+	}
+
+	private static void setIfPresent(CoreLabel cl,
+			Class<? extends TypesafeMap.Key<String>> key, String value) {
+		if (value != null)
+			cl.set(key, value);
+	}
+
+	private static void intern(Map<String, Integer> strings, String s) {
+		if (s != null && !strings.containsKey(s))
+			strings.put(s, strings.size());
+	}
+
+	private static void writeString(DataOutputStream out,
+			Map<String, Integer> strings, String s) throws IOException {
+		writeVarint(out, s == null ? 0 : strings.get(s) + 1);
+	}
+
+	private static String readString(DataInputStream in, String[] strings)
+			throws IOException {
+		int index = readVarint(in);
+		if (index < 0 || index > strings.length)
+			throw new IOException("Invalid string index");
+		return index == 0 ? null : strings[index - 1];
+	}
+
+	/**
+	 * Read a number of items, each of which takes at least one byte.
+	 */
+	private static int readCount(DataInputStream in, long length)
+			throws IOException {
+		int count = readVarint(in);
+		if (count < 0 || count > length)
+			throw new IOException("Invalid count");
+		return count;
+	}
+
+	private static void writeVarint(DataOutputStream out, int value)
+			throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Delete the entries of the configurations made by another CoreNLP
+	 * library or format version than the current one, or without a marker.
+	 */
+	private void invalidateStale(File baseDir, Properties current) {
+		File[] dirs = baseDir.listFiles();
+		if (dirs == null)
+			return;
+		for (File other : dirs) {
+			if (!other.isDirectory() || other.equals(dir)
+					|| !other.getName().matches("[0-9a-f]{40}"))
+				continue;
+			Properties marker = readMarker(new File(other, MARKER));
+			if (marker != null
+					&& current.getProperty("format").equals(
+							marker.getProperty("format"))
+					&& current.getProperty("corenlp").equals(
+							marker.getProperty("corenlp")))
+				continue;
+			File[] files = other.listFiles();
+			if (files != null) {
+				for (File file : files)
+					file.delete();
+			}
+			other.delete();
+		}
+	}
+
+	private static Properties readMarker(File file) {
+		if (!file.isFile())
+			return null;
+		Properties marker = new Properties();
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				marker.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return marker;
+	}
+
+	private static String coreNlpLocation() {
+		CodeSource source = StanfordCoreNLP.class.getProtectionDomain()
+				.getCodeSource();
+		return source == null ? "unknown" : source.getLocation().toString();
+	}
+
+	static String sha1(String s) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					s.getBytes(UTF_8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				sb.append(String.format("%02x", b & 0xff));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return number of questions read from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of questions that were not cached
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of entries written
+	 */
+	public long getWrites() {
+		return writes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+				"AnnotationCache [dir=%s, hits=%d, misses=%d, writes=%d]", dir,
+				getHits(), getMisses(), getWrites());
+	}
+
+}
@@ -0,0 +1,170 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * Process-wide registry of CoreNLP pipelines. Extractors that need the same
+ * annotators get the same {@link SharedPipeline}, so every model is loaded
+ * once no matter how many extractors are created. <br/>
+ * Pipelines are reference counted: every {@link #acquire(String)} must be
+ * matched by a {@link #release(SharedPipeline)}, and a pipeline is dropped
+ * when its last user releases it. <br/>
+ * The models themselves live in CoreNLP's annotator pool, which can only be
+ * cleared as a whole: the models of a dropped pipeline stay loaded as long
+ * as any other pipeline is registered, e.g. a NER model nobody uses anymore
+ * stays resident while a POS-only pipeline is alive. They are freed once
+ * every pipeline has been released, so a long-running process that stops
+ * using an expensive pipeline has to release all of its extractors, and
+ * create the ones it still needs again, to reclaim the memory.
+ */
+public class AnnotatorRegistry {
+
+	private static final AnnotatorRegistry INSTANCE = new AnnotatorRegistry();
+
+	private final Map<String, SharedPipeline> pipelines = new LinkedHashMap<String, SharedPipeline>();
+
+	private AnnotatorRegistry() {
+	}
+
+	/**
+	 * @return the registry of the running process
+	 */
+	public static AnnotatorRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the pipeline for the given annotators, loading its models if no
+	 * other extractor is using them.
+	 *
+	 * @param annotators
+	 *            Comma separated CoreNLP annotators, e.g.
+	 *            "tokenize, ssplit, pos"
+	 * @return the shared pipeline
+	 */
+	public synchronized SharedPipeline acquire(String annotators) {
+		String key = normalize(annotators);
+		SharedPipeline pipeline = pipelines.get(key);
+		if (pipeline == null) {
+			pipeline = load(key);
+			pipelines.put(key, pipeline);
+		}
+		pipeline.retain();
+		return pipeline;
+	}
+
+	/**
+	 * Give back a pipeline obtained from {@link #acquire(String)}. Once no
+	 * extractor references any pipeline, CoreNLP's own annotator pool is
+	 * cleared as well so that the models can be garbage collected; until
+	 * then the models of the released pipeline stay loaded, since the pool
+	 * cannot drop a single annotator.
+	 *
+	 * @param pipeline
+	 *            Pipeline that is no longer used by the caller.
+	 */
+	public synchronized void release(SharedPipeline pipeline) {
+		if (pipelines.get(pipeline.getAnnotators()) != pipeline)
+			throw new IllegalArgumentException("Pipeline is not registered: "
+					+ pipeline);
+		if (pipeline.release() > 0)
+			return;
+		pipelines.remove(pipeline.getAnnotators());
+		if (pipelines.isEmpty())
+			StanfordCoreNLP.clearAnnotatorPool();
+	}
+
+	/**
+	 * @return the pipelines that are currently loaded
+	 */
+	public synchronized List<SharedPipeline> getPipelines() {
+		return new ArrayList<SharedPipeline>(pipelines.values());
+	}
+
+	/**
+	 * @return a one line per pipeline description of the load time and heap
+	 *         footprint of the loaded models
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		for (SharedPipeline pipeline : getPipelines())
+			sb.append(pipeline).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Merge annotators lists into one that produces every annotation any of
+	 * them does, keeping the order in which the annotators first appear, e.g.
+	 * "tokenize, ssplit, pos" and "tokenize, ssplit, pos, lemma, ner" give
+	 * "tokenize,ssplit,pos,lemma,ner".
+	 *
+	 * @param annotators
+	 *            Comma separated CoreNLP annotators lists, <code>null</code>
+	 *            ones are ignored.
+	 * @return the normalized union of the lists
+	 */
+	public static String union(String... annotators) {
+		Set<String> union = new LinkedHashSet<String>();
+		for (String list : annotators) {
+			if (list == null)
+				continue;
+			union.addAll(Arrays.asList(normalize(list).split(",")));
+		}
+		if (union.isEmpty())
+			throw new IllegalArgumentException("No annotators");
+		StringBuilder sb = new StringBuilder();
+		for (String annotator : union) {
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(annotator);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Normalize an annotators list so that equivalent configurations share
+	 * the same key, e.g. "tokenize, ssplit,pos" becomes "tokenize,ssplit,pos".
+	 */
+	static String normalize(String annotators) {
+		if (annotators == null || annotators.trim().length() == 0)
+			throw new IllegalArgumentException("Invalid annotators: "
+					+ annotators);
+		StringBuilder sb = new StringBuilder();
+		for (String annotator : annotators.split(",")) {
+			annotator = annotator.trim();
+			if (annotator.length() == 0)
+				continue;
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(annotator);
+		}
+		return sb.toString();
+	}
+
+	private SharedPipeline load(String annotators) {
+		Properties props = new Properties();
+		props.put("annotators", annotators);
+		long heapBefore = usedHeap();
+		long start = System.currentTimeMillis();
+		StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+		long loadTime = System.currentTimeMillis() - start;
+		long heapBytes = Math.max(0L, usedHeap() - heapBefore);
+		return new SharedPipeline(annotators, pipeline, loadTime, heapBytes);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,344 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.metrics.ExtractorMetrics;
+
+/**
+ * Extractor that remembers the classification of the questions it already
+ * processed with another extractor. <br/>
+ * Questions are looked up by a normalized form: surrounding white space is
+ * removed and inner white space runs are collapsed, which never changes the
+ * tokens CoreNLP produces. Optionally the case can be ignored too, but that
+ * may change what the NER annotator finds. <br/>
+ * The cache is bounded both by a number of entries and by an approximate
+ * number of bytes, and evicts the least recently used questions first.
+ * Concurrent requests for a question that is not cached yet wait for the
+ * first one instead of running the pipeline again. <br/>
+ * The hits, misses, coalesced requests and evictions are also counted in the
+ * {@link ExtractorMetrics} of the cache, so they are published over JMX with
+ * the other metrics.
+ */
+public class CachingExtractor extends Extractor {
+
+	/**
+	 * Rough per-object overhead used to estimate the size of an entry.
+	 */
+	private static final int OBJECT_OVERHEAD = 48;
+
+	private final Extractor delegate;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final boolean ignoreCase;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+	private long bytes;
+	private final ConcurrentMap<String, FutureTask<Entry>> inFlight = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	/**
+	 * @param delegate
+	 *            Extractor that classifies the questions that are not cached.
+	 * @param maxEntries
+	 *            Maximum number of cached questions.
+	 * @param maxBytes
+	 *            Maximum approximate size of the cached questions and
+	 *            results.
+	 * @param ignoreCase
+	 *            Whether questions that only differ by case share an entry.
+	 */
+	public CachingExtractor(Extractor delegate, int maxEntries, long maxBytes,
+			boolean ignoreCase) {
+		if (delegate == null)
+			throw new IllegalArgumentException("Invalid extractor");
+		if (maxEntries < 1 || maxBytes < 1)
+			throw new IllegalArgumentException("Invalid cache bounds: "
+					+ maxEntries + "/" + maxBytes);
+		this.delegate = delegate;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.ignoreCase = ignoreCase;
+	}
+
+	@Override
+	protected ClassifiedTokens process(final String question) {
+		return lookup(question, new Callable<ClassifiedTokens>() {
+			public ClassifiedTokens call() {
+				return delegate.process(question);
+			}
+		});
+	}
+
+	@Override
+	protected ClassifiedTokens process(final Annotation questionAnnotations) {
+		return lookup(questionAnnotations.get(TextAnnotation.class),
+				new Callable<ClassifiedTokens>() {
+					public ClassifiedTokens call() {
+						return delegate.process(questionAnnotations);
+					}
+				});
+	}
+
+	private ClassifiedTokens lookup(String question,
+			Callable<ClassifiedTokens> compute) {
+		String key = normalize(question);
+		Entry entry = get(key);
+		if (entry != null) {
+			hits.incrementAndGet();
+			getMetrics().countCacheHit();
+			savedNanos.addAndGet(entry.computeNanos);
+			return entry.tokens;
+		}
+
+		Compute miss = new Compute(key, compute);
+		FutureTask<Entry> task = new FutureTask<Entry>(miss);
+		FutureTask<Entry> running = inFlight.putIfAbsent(key, task);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			getMetrics().countCacheCoalesced();
+			entry = await(running);
+			savedNanos.addAndGet(entry.computeNanos);
+			return entry.tokens;
+		}
+
+		try {
+			task.run();
+			entry = await(task);
+			if (miss.cached) {
+				hits.incrementAndGet();
+				getMetrics().countCacheHit();
+				savedNanos.addAndGet(entry.computeNanos);
+			} else {
+				misses.incrementAndGet();
+				getMetrics().countCacheMiss();
+				put(key, entry);
+			}
+			return entry.tokens;
+		} finally {
+			inFlight.remove(key, task);
+		}
+	}
+
+	private synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	private synchronized void put(String key, Entry entry) {
+		entry.bytes = estimateBytes(key, entry.tokens);
+		Entry previous = entries.put(key, entry);
+		if (previous != null)
+			bytes -= previous.bytes;
+		bytes += entry.bytes;
+
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (eldest.hasNext()
+				&& (entries.size() > maxEntries || bytes > maxBytes)) {
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+			evictions.incrementAndGet();
+			getMetrics().countCacheEviction();
+		}
+	}
+
+	/**
+	 * Remove every cached question.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Closes the wrapped extractor as well.
+	 */
+	@Override
+	public void close() {
+		clear();
+		delegate.close();
+	}
+
+	String normalize(String question) {
+		StringBuilder sb = new StringBuilder(question.length());
+		boolean space = false;
+		for (int i = 0; i < question.length(); i++) {
+			char c = question.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = sb.length() > 0;
+				continue;
+			}
+			if (space)
+				sb.append(' ');
+			space = false;
+			sb.append(ignoreCase ? Character.toLowerCase(c) : c);
+		}
+		return sb.toString();
+	}
+
+	private static long estimateBytes(String key, ClassifiedTokens tokens) {
+		long size = OBJECT_OVERHEAD * 4 + stringBytes(key);
+		for (String s : tokens.getConcepts())
+			size += stringBytes(s);
+		for (String s : tokens.getNotConcepts())
+			size += stringBytes(s);
+		return size;
+	}
+
+	private static long stringBytes(String s) {
+		return OBJECT_OVERHEAD + 2L * s.length();
+	}
+
+	private static Entry await(FutureTask<Entry> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return number of questions answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of questions that ran the wrapped extractor
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of questions that waited for an identical question
+	 *         being processed instead of running the wrapped extractor
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return number of questions evicted to respect the bounds
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return share of the questions that did not run the wrapped extractor
+	 */
+	public double getHitRate() {
+		long saved = hits.get() + coalesced.get();
+		long total = saved + misses.get();
+		return total == 0 ? 0.0 : ((double) saved) / total;
+	}
+
+	/**
+	 * Get the time the cache saved, i.e. the sum of the time it took to
+	 * compute every result each time it was reused.
+	 *
+	 * @return saved time in nanoseconds
+	 */
+	public long getSavedNanos() {
+		return savedNanos.get();
+	}
+
+	/**
+	 * @return number of cached questions
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return approximate size of the cached questions and results
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+				"CachingExtractor [entries=%d, bytes=%d, hitRate=%.4f, hits=%d, "
+						+ "misses=%d, coalesced=%d, evictions=%d, saved=%d ms]",
+				size(), getBytes(), getHitRate(), getHits(), getMisses(),
+				getCoalesced(), getEvictions(), getSavedNanos() / 1000000);
+	}
+
+	/**
+	 * Runs the wrapped extractor and keeps an immutable copy of its result
+	 * along with the time it took.
+	 */
+	private class Compute implements Callable<Entry> {
+
+		private final String key;
+		private final Callable<ClassifiedTokens> compute;
+		volatile boolean cached;
+
+		Compute(String key, Callable<ClassifiedTokens> compute) {
+			this.key = key;
+			this.compute = compute;
+		}
+
+		public Entry call() throws Exception {
+			// the previous computation of the question may have completed
+			// and left the in-flight map since the caller missed the cache
+			Entry entry = get(key);
+			if (entry != null) {
+				cached = true;
+				return entry;
+			}
+			long start = System.nanoTime();
+			ClassifiedTokens result = compute.call();
+			ClassifiedTokens ct = new ClassifiedTokens();
+			ct.setConcepts(immutableCopy(result.getConcepts()));
+			ct.setNotConcepts(immutableCopy(result.getNotConcepts()));
+			return new Entry(ct, System.nanoTime() - start);
+		}
+	}
+
+	private static Collection<String> immutableCopy(Collection<String> c) {
+		return Collections.unmodifiableCollection(new ArrayList<String>(c));
+	}
+
+	private static class Entry {
+		final ClassifiedTokens tokens;
+		final long computeNanos;
+		long bytes;
+
+		Entry(ClassifiedTokens tokens, long computeNanos) {
+			this.tokens = tokens;
+			this.computeNanos = computeNanos;
+		}
+	}
+
+}
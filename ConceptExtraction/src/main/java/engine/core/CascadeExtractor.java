@@ -0,0 +1,198 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+
+/**
+ * Extractor that classifies a question with a cheap extractor first, e.g. the
+ * WordNet one that only needs POS tags, and only goes on to the more
+ * expensive ones, e.g. the NER or Hybrid one, when an {@link EscalationRule}
+ * finds the result ambiguous. The result of the first tier whose rule does
+ * not escalate, or of the last tier, is returned. <br/>
+ * The annotation of a tier is given to the next one when it holds all the
+ * annotators of the next one; otherwise the next tier only runs the
+ * annotators that are missing, e.g. "lemma" and "ner" after
+ * "tokenize,ssplit,pos", on the annotation the cascade made. The questions
+ * given already annotated must hold the annotators of the first tier, the
+ * ones {@link #getAnnotators()} returns; since they are only read, the next
+ * tier annotates them again from the text. <br/>
+ * The ratios of the token depths a {@link DepthThresholdExtractor} tier
+ * thresholded are only computed for the rules that read them, e.g.
+ * {@link EscalationRules#nearThreshold(DepthThresholdExtractor, double)}.
+ * <br/>
+ * The number of questions every tier handled is counted, to tell the share of
+ * the traffic the expensive tiers still get.
+ */
+public class CascadeExtractor extends Extractor {
+
+	private final List<Extractor> tiers;
+	private final List<EscalationRule> rules;
+	private final AtomicLong[] handled;
+
+	/**
+	 * @param tiers
+	 *            Extractors from the cheapest to the most expensive
+	 * @param rules
+	 *            Rule deciding whether the result of a tier is escalated to
+	 *            the next one, one per tier but the last
+	 */
+	public CascadeExtractor(List<? extends Extractor> tiers,
+			List<? extends EscalationRule> rules) {
+		if (tiers == null || tiers.isEmpty() || tiers.contains(null))
+			throw new IllegalArgumentException("Invalid tiers: " + tiers);
+		if (rules == null || rules.size() != tiers.size() - 1
+				|| rules.contains(null))
+			throw new IllegalArgumentException("There must be one rule per "
+					+ "tier but the last: " + rules);
+		this.tiers = new ArrayList<Extractor>(tiers);
+		this.rules = new ArrayList<EscalationRule>(rules);
+		this.handled = new AtomicLong[tiers.size()];
+		for (int i = 0; i < handled.length; i++)
+			handled[i] = new AtomicLong();
+	}
+
+	/**
+	 * @return the annotators of the first tier
+	 */
+	@Override
+	public String getAnnotators() {
+		return tiers.get(0).getAnnotators();
+	}
+
+	@Override
+	protected ClassifiedTokens process(String question) {
+		return cascade(question, null);
+	}
+
+	@Override
+	protected ClassifiedTokens process(Annotation questionAnnotations) {
+		return cascade(questionAnnotations.get(TextAnnotation.class),
+				questionAnnotations);
+	}
+
+	private ClassifiedTokens cascade(String question, Annotation annotation) {
+		String annotators = getAnnotators();
+		// whether the annotation was made here, and can be completed
+		boolean owned = false;
+		for (int i = 0;; i++) {
+			Extractor tier = tiers.get(i);
+			if (annotation == null
+					|| !covers(annotators, tier.getAnnotators())) {
+				if (owned && tier.annotateMissing(annotation, annotators)) {
+					annotators = AnnotatorRegistry.union(annotators,
+							tier.getAnnotators());
+				} else {
+					annotation = tier.annotate(question);
+					annotators = tier.getAnnotators();
+					owned = true;
+				}
+			}
+			EscalationRule rule = i < rules.size() ? rules.get(i) : null;
+			DepthRatios ratios = EscalationRules.readsDepthRatios(rule)
+					? new DepthRatios() : null;
+			ClassifiedTokens ct = tier.classifyAnnotatedQuestion(annotation,
+					ratios);
+			if (rule == null || !escalate(rule, annotation, ct, ratios)) {
+				handled[i].incrementAndGet();
+				return ct;
+			}
+		}
+	}
+
+	private static boolean escalate(EscalationRule rule,
+			Annotation annotation, ClassifiedTokens ct, DepthRatios ratios) {
+		return ratios != null ? ((EscalationRules.RatioRule) rule).escalate(
+				annotation, ct, ratios) : rule.escalate(annotation, ct);
+	}
+
+	/**
+	 * @return whether an annotation made by the first annotators holds the
+	 *         annotations of the second ones
+	 */
+	private static boolean covers(String annotators, String needed) {
+		if (needed == null)
+			return true;
+		if (annotators == null)
+			return false;
+		return AnnotatorRegistry.union(annotators, needed).equals(
+				AnnotatorRegistry.union(annotators));
+	}
+
+	/**
+	 * Close all the tiers.
+	 */
+	@Override
+	public void close() {
+		for (Extractor tier : tiers)
+			tier.close();
+	}
+
+	/**
+	 * @return number of tiers
+	 */
+	public int getTierCount() {
+		return tiers.size();
+	}
+
+	/**
+	 * @param i
+	 *            index of the tier, 0 being the cheapest
+	 * @return the extractor of the tier
+	 */
+	public Extractor getTier(int i) {
+		return tiers.get(i);
+	}
+
+	/**
+	 * @return number of questions classified so far
+	 */
+	public long getQuestions() {
+		long questions = 0;
+		for (AtomicLong count : handled)
+			questions += count.get();
+		return questions;
+	}
+
+	/**
+	 * @param i
+	 *            index of the tier, 0 being the cheapest
+	 * @return number of questions whose result came from the tier
+	 */
+	public long getHandled(int i) {
+		return handled[i].get();
+	}
+
+	/**
+	 * @param i
+	 *            index of the tier, 0 being the cheapest
+	 * @return share of the questions whose result came from the tier
+	 */
+	public double getShare(int i) {
+		long questions = getQuestions();
+		return questions == 0 ? 0.0 : ((double) getHandled(i)) / questions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("CascadeExtractor [questions=");
+		sb.append(getQuestions());
+		for (int i = 0; i < tiers.size(); i++) {
+			sb.append(i == 0 ? ", " : " -> ");
+			if (i > 0)
+				sb.append(rules.get(i - 1)).append(" -> ");
+			sb.append(tiers.get(i).getClass().getSimpleName()).append(
+					String.format("=%.1f%%", 100 * getShare(i)));
+		}
+		return sb.append(']').toString();
+	}
+
+}
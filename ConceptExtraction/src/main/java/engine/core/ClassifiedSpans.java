@@ -0,0 +1,382 @@
+package engine.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import engine.util.Json;
+
+/**
+ * Classification of the tokens of a question as spans of the question text,
+ * kept as pairs of character offsets in primitive arrays. <br/>
+ * Every occurrence of a concept or a not-concept is a span, in the order the
+ * extractor found them, so the positions and the repetitions of the tokens
+ * are kept. The text of a span is only made on demand, as a
+ * {@link CharSequence} view of the question. It is the words of the tokens
+ * separated by a space, like the strings of {@link Extractor.ClassifiedTokens}
+ * ; when the tokenizer changed the text, e.g. "(" into "-LRB-", or the tokens
+ * are not separated by a single space, that text is kept along with the span.
+ */
+public class ClassifiedSpans {
+
+	private final String question;
+	private final Spans concepts = new Spans();
+	private final Spans notConcepts = new Spans();
+
+	/**
+	 * @param question
+	 *            Text of the question the offsets refer to
+	 */
+	ClassifiedSpans(String question) {
+		this.question = question;
+	}
+
+	/**
+	 * @return the text of the question
+	 */
+	public String getQuestion() {
+		return question;
+	}
+
+	/**
+	 * @return number of concept occurrences
+	 */
+	public int getConceptCount() {
+		return concepts.size;
+	}
+
+	/**
+	 * @param i
+	 *            index of the concept occurrence
+	 * @return offset of its first character in the question
+	 */
+	public int getConceptBegin(int i) {
+		return concepts.begin(i);
+	}
+
+	/**
+	 * @param i
+	 *            index of the concept occurrence
+	 * @return offset after its last character in the question
+	 */
+	public int getConceptEnd(int i) {
+		return concepts.end(i);
+	}
+
+	/**
+	 * @param i
+	 *            index of the concept occurrence
+	 * @return a view of its text
+	 */
+	public CharSequence getConcept(int i) {
+		return concepts.text(question, i);
+	}
+
+	/**
+	 * @return number of not-concept occurrences
+	 */
+	public int getNotConceptCount() {
+		return notConcepts.size;
+	}
+
+	/**
+	 * @param i
+	 *            index of the not-concept occurrence
+	 * @return offset of its first character in the question
+	 */
+	public int getNotConceptBegin(int i) {
+		return notConcepts.begin(i);
+	}
+
+	/**
+	 * @param i
+	 *            index of the not-concept occurrence
+	 * @return offset after its last character in the question
+	 */
+	public int getNotConceptEnd(int i) {
+		return notConcepts.end(i);
+	}
+
+	/**
+	 * @param i
+	 *            index of the not-concept occurrence
+	 * @return a view of its text
+	 */
+	public CharSequence getNotConcept(int i) {
+		return notConcepts.text(question, i);
+	}
+
+	/**
+	 * Add a concept occurrence. The same span added twice in a row, like a
+	 * group listed twice by the grouping, is only kept once.
+	 *
+	 * @param begin
+	 *            offset of its first character in the question
+	 * @param end
+	 *            offset after its last character
+	 * @param text
+	 *            its words separated by a space, only read during the call
+	 */
+	void addConcept(int begin, int end, CharSequence text) {
+		concepts.add(question, begin, end, text);
+	}
+
+	/**
+	 * Add a not-concept occurrence.
+	 *
+	 * @see #addConcept(int, int, CharSequence)
+	 */
+	void addNotConcept(int begin, int end, CharSequence text) {
+		notConcepts.add(question, begin, end, text);
+	}
+
+	/**
+	 * Add a concept occurrence whose text is the question between the
+	 * offsets.
+	 *
+	 * @see #addConcept(int, int, CharSequence)
+	 */
+	void addConcept(int begin, int end) {
+		concepts.add(question, begin, end, null);
+	}
+
+	/**
+	 * Add a not-concept occurrence whose text is the question between the
+	 * offsets.
+	 *
+	 * @see #addConcept(int, int, CharSequence)
+	 */
+	void addNotConcept(int begin, int end) {
+		notConcepts.add(question, begin, end, null);
+	}
+
+	/**
+	 * Add the tokens of the buffer from <code>from</code> to <code>to</code>
+	 * excluded as a concept or a not-concept.
+	 */
+	void add(boolean concept, TokenBuffer tokens, int from, int to) {
+		(concept ? concepts : notConcepts).add(question, tokens.begins[from],
+				tokens.ends[to - 1], tokens.text(from, to));
+	}
+
+	/**
+	 * @param text
+	 *            Text to look for
+	 * @return whether a concept occurrence has that text
+	 */
+	boolean isConcept(CharSequence text) {
+		for (int i = 0; i < concepts.size; i++) {
+			if (concepts.textEquals(question, i, text))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the distinct texts of the concepts
+	 */
+	Collection<String> conceptSet() {
+		return concepts.distinct(question);
+	}
+
+	/**
+	 * @return the distinct texts of the not-concepts
+	 */
+	Collection<String> notConceptSet() {
+		return notConcepts.distinct(question);
+	}
+
+	/**
+	 * Append the distinct texts of the concepts and the not-concepts as a
+	 * JSON object with a "concepts" and a "notConcepts" array, in the order of
+	 * their first occurrence, without making strings of them.
+	 *
+	 * @param sb
+	 *            Builder to append to
+	 * @return the builder
+	 */
+	public StringBuilder appendJson(StringBuilder sb) {
+		sb.append("{\"concepts\":");
+		concepts.appendJson(question, sb);
+		sb.append(",\"notConcepts\":");
+		notConcepts.appendJson(question, sb);
+		return sb.append('}');
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return appendJson(new StringBuilder("ClassifiedSpans ")).toString();
+	}
+
+	private static boolean contentEquals(CharSequence a, CharSequence b) {
+		int n = a.length();
+		if (n != b.length())
+			return false;
+		for (int i = 0; i < n; i++) {
+			if (a.charAt(i) != b.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Spans of one kind: the offsets of span i are at 2i and 2i+1, and its
+	 * text is in <code>texts[i]</code> when it is not the question text
+	 * between them.
+	 */
+	private static class Spans {
+
+		int size;
+		int[] offsets = new int[8];
+		String[] texts;
+
+		int begin(int i) {
+			check(i);
+			return offsets[2 * i];
+		}
+
+		int end(int i) {
+			check(i);
+			return offsets[2 * i + 1];
+		}
+
+		boolean hasText(int i) {
+			return texts != null && i < texts.length && texts[i] != null;
+		}
+
+		CharSequence text(String question, int i) {
+			check(i);
+			if (hasText(i))
+				return texts[i];
+			return new View(question, offsets[2 * i], offsets[2 * i + 1]);
+		}
+
+		/**
+		 * Compare the text of span i without making a view of it.
+		 */
+		boolean textEquals(String question, int i, CharSequence text) {
+			if (hasText(i))
+				return contentEquals(texts[i], text);
+			int begin = offsets[2 * i];
+			int n = offsets[2 * i + 1] - begin;
+			if (n != text.length())
+				return false;
+			for (int j = 0; j < n; j++) {
+				if (question.charAt(begin + j) != text.charAt(j))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Add a span, whose text is the question between the offsets when
+		 * <code>text</code> is <code>null</code>.
+		 */
+		void add(String question, int begin, int end, CharSequence text) {
+			if (text == null && (begin < 0 || begin > end
+					|| end > question.length()))
+				throw new IndexOutOfBoundsException(begin + ", " + end);
+			if (size > 0
+					&& offsets[2 * size - 2] == begin
+					&& offsets[2 * size - 1] == end
+					&& (text == null ? !hasText(size - 1) : textEquals(
+							question, size - 1, text)))
+				return;
+			if (2 * size == offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			offsets[2 * size] = begin;
+			offsets[2 * size + 1] = end;
+			boolean inQuestion = text == null || begin >= 0 && begin <= end
+					&& end <= question.length() && end - begin == text.length();
+			for (int i = 0; text != null && inQuestion && i < text.length(); i++)
+				inQuestion = question.charAt(begin + i) == text.charAt(i);
+			if (!inQuestion) {
+				if (texts == null)
+					texts = new String[offsets.length / 2];
+				else if (texts.length <= size)
+					texts = Arrays.copyOf(texts, offsets.length / 2);
+				texts[size] = text.toString();
+			}
+			size++;
+		}
+
+		Collection<String> distinct(String question) {
+			Collection<String> set = new HashSet<String>();
+			for (int i = 0; i < size; i++)
+				set.add(text(question, i).toString());
+			return set;
+		}
+
+		void appendJson(String question, StringBuilder sb) {
+			sb.append('[');
+			boolean first = true;
+			for (int i = 0; i < size; i++) {
+				CharSequence text = text(question, i);
+				if (seenBefore(question, i, text))
+					continue;
+				if (!first)
+					sb.append(',');
+				Json.appendString(sb, text);
+				first = false;
+			}
+			sb.append(']');
+		}
+
+		private boolean seenBefore(String question, int i, CharSequence text) {
+			for (int j = 0; j < i; j++) {
+				if (textEquals(question, j, text))
+					return true;
+			}
+			return false;
+		}
+
+		private void check(int i) {
+			if (i < 0 || i >= size)
+				throw new IndexOutOfBoundsException("Span " + i + " of "
+						+ size);
+		}
+	}
+
+	/**
+	 * Text of a span read from the question without copying it.
+	 */
+	private static class View implements CharSequence {
+
+		private final String question;
+		private final int begin;
+		private final int end;
+
+		View(String question, int begin, int end) {
+			this.question = question;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		public int length() {
+			return end - begin;
+		}
+
+		public char charAt(int index) {
+			if (index < 0 || index >= end - begin)
+				throw new IndexOutOfBoundsException("Index " + index);
+			return question.charAt(begin + index);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || start > end || end > this.end - begin)
+				throw new IndexOutOfBoundsException(start + ", " + end);
+			return new View(question, begin + start, begin + end);
+		}
+
+		@Override
+		public String toString() {
+			return question.substring(begin, end);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package engine.core;
+
+import java.util.Arrays;
+
+import engine.core.Extractor.ClassifiedTokens;
+
+/**
+ * Classifications of the tokens of one question by a
+ * {@link DepthThresholdExtractor} for every factor of the average depth. <br/>
+ * A token is selected when the ratio of its depth to the average depth of the
+ * question is at least the factor, so the classification only changes at the
+ * ratios of the tokens. With the distinct ratios r<sub>0</sub> &lt; ... &lt;
+ * r<sub>k-1</sub>, classification j holds for the factors in
+ * (r<sub>j-1</sub>, r<sub>j</sub>], classification 0 for the factors up to
+ * r<sub>0</sub> and classification k for the factors above
+ * r<sub>k-1</sub>. A question whose average depth is 0 or undefined has no
+ * ratio and a single classification.
+ */
+public class DepthProfile {
+
+	private final double[] ratios;
+	private final ClassifiedTokens[] classifications;
+
+	DepthProfile(double[] ratios, ClassifiedTokens[] classifications) {
+		if (classifications.length != ratios.length + 1)
+			throw new IllegalArgumentException(
+					"There must be one classification per interval");
+		this.ratios = ratios;
+		this.classifications = classifications;
+	}
+
+	/**
+	 * @return number of distinct ratios of the tokens
+	 */
+	public int getRatioCount() {
+		return ratios.length;
+	}
+
+	/**
+	 * @param j
+	 *            index of the ratio, 0 for the lowest
+	 * @return the j-th lowest ratio of a token depth to the average depth
+	 */
+	public double getRatio(int j) {
+		return ratios[j];
+	}
+
+	/**
+	 * @param j
+	 *            index of the interval, between 0 and
+	 *            {@link #getRatioCount()}
+	 * @return the classification for the factors between ratio j-1 excluded
+	 *         and ratio j included
+	 */
+	public ClassifiedTokens getClassification(int j) {
+		return classifications[j];
+	}
+
+	/**
+	 * Get the classification the extractor returns with a given factor, up
+	 * to the rounding of the ratios.
+	 *
+	 * @param factor
+	 *            factor of the average depth
+	 * @return the classification for that factor
+	 */
+	public ClassifiedTokens classify(double factor) {
+		int j = Arrays.binarySearch(ratios, factor);
+		return classifications[j >= 0 ? j : -j - 1];
+	}
+
+	/**
+	 * Sort the first values of an array and remove the duplicates.
+	 *
+	 * @return the distinct values in ascending order
+	 */
+	static double[] distinct(double[] values, int n) {
+		double[] sorted = Arrays.copyOf(values, n);
+		Arrays.sort(sorted);
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (k == 0 || sorted[i] != sorted[k - 1])
+				sorted[k++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, k);
+	}
+
+}
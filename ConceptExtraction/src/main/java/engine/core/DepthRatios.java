@@ -0,0 +1,60 @@
+package engine.core;
+
+import java.util.Arrays;
+
+/**
+ * Ratios of the depths of the tokens a {@link DepthThresholdExtractor}
+ * thresholded to the average depth of the question, filled by a tier of a
+ * {@link CascadeExtractor} along with its classification when the rule of
+ * the tier looks at them. Only the cascade asks for them, so the other calls
+ * to the extractors do not pay for them. <br/>
+ * An instance holds the ratios of one call, and is not thread-safe.
+ */
+final class DepthRatios {
+
+	private double[] ratios = new double[16];
+	private int size = -1;
+
+	/**
+	 * Start the ratios of a question, with none so far.
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @param ratio
+	 *            ratio of the depth of the next token to the average depth
+	 */
+	void add(double ratio) {
+		if (size == ratios.length)
+			ratios = Arrays.copyOf(ratios, size * 2);
+		ratios[size++] = ratio;
+	}
+
+	/**
+	 * @return whether the extractor filled the ratios, i.e. it thresholds
+	 *         depths
+	 */
+	boolean isFilled() {
+		return size >= 0;
+	}
+
+	/**
+	 * @return number of tokens the threshold applied to, 0 if the average
+	 *         depth is not positive
+	 */
+	int size() {
+		return Math.max(size, 0);
+	}
+
+	/**
+	 * @param i
+	 *            index of the token among the thresholded ones
+	 * @return the ratio of the depth of the token to the average depth
+	 */
+	double get(int i) {
+		return ratios[i];
+	}
+
+}
@@ -0,0 +1,37 @@
+package engine.core;
+
+import edu.stanford.nlp.pipeline.Annotation;
+
+/**
+ * Implemented by the extractors that select the tokens whose WordNet depth is
+ * at least a factor of the average depth of the question, so that the factor
+ * can be tuned without running the questions through the extractor once per
+ * candidate value.
+ */
+public interface DepthThresholdExtractor {
+
+	/**
+	 * @return factor of the average depth of the question a token must reach
+	 *         to be selected as a concept
+	 */
+	double getFactorOfAvgDepth();
+
+	/**
+	 * @param factor
+	 *            factor of the average depth of the question a token must
+	 *            reach to be selected as a concept, from the next question on.
+	 */
+	void setFactorOfAvgDepth(double factor);
+
+	/**
+	 * Compute the depths of the tokens of an annotated question once, and
+	 * classify them for every factor that gives a different result.
+	 *
+	 * @param questionAnnotations
+	 *            Annotations of the question, with at least the annotators of
+	 *            the extractor.
+	 * @return the classifications of the question by factor
+	 */
+	DepthProfile profileAnnotatedQuestion(Annotation questionAnnotations);
+
+}
@@ -0,0 +1,25 @@
+package engine.core;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.Extractor.ClassifiedTokens;
+
+/**
+ * Decides whether the classification of a question by a tier of a
+ * {@link CascadeExtractor} is too uncertain to be kept, so the question goes
+ * to the next, more expensive, tier. Common rules are made by
+ * {@link EscalationRules}. <br/>
+ * Rules are called from several threads at once.
+ */
+public interface EscalationRule {
+
+	/**
+	 * @param questionAnnotations
+	 *            Annotations the tier classified, with at least its
+	 *            annotators
+	 * @param result
+	 *            Classification given by the tier
+	 * @return whether the question must be classified by the next tier
+	 */
+	boolean escalate(Annotation questionAnnotations, ClassifiedTokens result);
+
+}
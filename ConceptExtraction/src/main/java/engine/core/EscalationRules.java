@@ -0,0 +1,210 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import engine.core.Extractor.ClassifiedTokens;
+
+/**
+ * The {@link EscalationRule}s a {@link CascadeExtractor} is usually configured
+ * with.
+ */
+public final class EscalationRules {
+
+	private EscalationRules() {
+	}
+
+	/**
+	 * A rule that reads the ratios of the token depths to the average depth
+	 * of the question. A {@link CascadeExtractor} only has its tier compute
+	 * them for such rules.
+	 */
+	interface RatioRule extends EscalationRule {
+
+		/**
+		 * @return whether the rule reads the ratios
+		 */
+		boolean readsDepthRatios();
+
+		/**
+		 * @param questionAnnotations
+		 *            Annotations the tier classified
+		 * @param result
+		 *            Classification given by the tier
+		 * @param ratios
+		 *            Ratios filled by the tier, left empty if it does not
+		 *            threshold depths
+		 * @return whether the question must be classified by the next tier
+		 */
+		boolean escalate(Annotation questionAnnotations,
+				ClassifiedTokens result, DepthRatios ratios);
+
+	}
+
+	/**
+	 * @return whether the rule reads the depth ratios of its tier
+	 */
+	static boolean readsDepthRatios(EscalationRule rule) {
+		return rule instanceof RatioRule
+				&& ((RatioRule) rule).readsDepthRatios();
+	}
+
+	/**
+	 * Escalate the questions the tier found no concept in.
+	 *
+	 * @return the rule
+	 */
+	public static EscalationRule noConcepts() {
+		return new EscalationRule() {
+			public boolean escalate(Annotation questionAnnotations,
+					ClassifiedTokens result) {
+				return result.getConcepts() == null
+						|| result.getConcepts().isEmpty();
+			}
+
+			@Override
+			public String toString() {
+				return "noConcepts";
+			}
+		};
+	}
+
+	/**
+	 * Escalate the questions that may contain a named entity, which a tier
+	 * without NER cannot group, according to the test of {@link NerGate}.
+	 * The tier must have tokenized and POS-tagged the question.
+	 *
+	 * @return the rule
+	 */
+	public static EscalationRule mayContainEntities() {
+		final NerGate gate = new NerGate();
+		return new EscalationRule() {
+			public boolean escalate(Annotation questionAnnotations,
+					ClassifiedTokens result) {
+				List<CoreMap> sentences = questionAnnotations
+						.get(SentencesAnnotation.class);
+				if (sentences == null)
+					return true;
+				for (CoreMap sentence : sentences) {
+					if (gate.mayContainEntities(sentence))
+						return true;
+				}
+				return false;
+			}
+
+			@Override
+			public String toString() {
+				return "mayContainEntities";
+			}
+		};
+	}
+
+	/**
+	 * Escalate the questions with a token whose depth is so close to the
+	 * threshold of a depth extractor that a slightly different factor would
+	 * change its classification. In a {@link CascadeExtractor} the tier
+	 * computes the ratios along with its classification; called on its own,
+	 * the rule profiles the question again.
+	 *
+	 * @param extractor
+	 *            The extractor of the tier
+	 * @param margin
+	 *            Largest difference between the ratio of a token depth to the
+	 *            average depth of the question and the factor of the extractor
+	 *            that is still ambiguous, e.g. 0.1
+	 * @return the rule
+	 */
+	public static EscalationRule nearThreshold(
+			final DepthThresholdExtractor extractor, final double margin) {
+		if (extractor == null || !(margin >= 0))
+			throw new IllegalArgumentException("Invalid threshold rule: "
+					+ extractor + ", " + margin);
+		return new RatioRule() {
+			public boolean readsDepthRatios() {
+				return true;
+			}
+
+			public boolean escalate(Annotation questionAnnotations,
+					ClassifiedTokens result, DepthRatios ratios) {
+				if (!ratios.isFilled())
+					return escalate(questionAnnotations, result);
+				double factor = extractor.getFactorOfAvgDepth();
+				for (int i = 0; i < ratios.size(); i++) {
+					if (Math.abs(ratios.get(i) - factor) <= margin)
+						return true;
+				}
+				return false;
+			}
+
+			public boolean escalate(Annotation questionAnnotations,
+					ClassifiedTokens result) {
+				double factor = extractor.getFactorOfAvgDepth();
+				DepthProfile profile = extractor
+						.profileAnnotatedQuestion(questionAnnotations);
+				for (int j = 0; j < profile.getRatioCount(); j++) {
+					if (Math.abs(profile.getRatio(j) - factor) <= margin)
+						return true;
+				}
+				return false;
+			}
+
+			@Override
+			public String toString() {
+				return "nearThreshold(" + margin + ")";
+			}
+		};
+	}
+
+	/**
+	 * Escalate the questions any of the rules escalates, in the given order.
+	 *
+	 * @param rules
+	 *            Rules to combine
+	 * @return the rule
+	 */
+	public static EscalationRule any(EscalationRule... rules) {
+		final List<EscalationRule> all = new ArrayList<EscalationRule>(
+				Arrays.asList(rules));
+		if (all.isEmpty() || all.contains(null))
+			throw new IllegalArgumentException("Invalid rules: " + all);
+		return new RatioRule() {
+			public boolean readsDepthRatios() {
+				for (EscalationRule rule : all) {
+					if (EscalationRules.readsDepthRatios(rule))
+						return true;
+				}
+				return false;
+			}
+
+			public boolean escalate(Annotation questionAnnotations,
+					ClassifiedTokens result, DepthRatios ratios) {
+				for (EscalationRule rule : all) {
+					if (rule instanceof RatioRule ? ((RatioRule) rule)
+							.escalate(questionAnnotations, result, ratios)
+							: rule.escalate(questionAnnotations, result))
+						return true;
+				}
+				return false;
+			}
+
+			public boolean escalate(Annotation questionAnnotations,
+					ClassifiedTokens result) {
+				for (EscalationRule rule : all) {
+					if (rule.escalate(questionAnnotations, result))
+						return true;
+				}
+				return false;
+			}
+
+			@Override
+			public String toString() {
+				return "any" + all;
+			}
+		};
+	}
+
+}
@@ -1,15 +1,114 @@
 package engine.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.metrics.ExtractorMetrics;
+import engine.util.Json;
 
 /**
  * The base class for all the concept extractor classes.
+ * <p>
+ * Concurrency contract: an extractor can be called from any number of threads
+ * at once without any lock around it, and every call returns the same result
+ * as a serial one. Every subclass must keep to it:
+ * <ul>
+ * <li>the models are built in the constructor and only read afterwards: the
+ * {@link SharedPipeline} of the {@link AnnotatorRegistry}, which CoreNLP lets
+ * several threads annotate with at once, and the immutable WordNet indexes
+ * and gazetteers;</li>
+ * <li>the scratch state of a call, e.g. the token buffers and matchers, is
+ * leased from an {@link engine.util.ScratchPool} for the call and given back
+ * at its end, and never kept in fields;</li>
+ * <li>settings that can be changed while calls are running, e.g. the factor
+ * of the average depth, are volatile and read once per call;</li>
+ * <li>counters are atomic, and the metrics are thread-safe.</li>
+ * </ul>
+ * {@link #close()} must only be called once no call is running. The JAWS
+ * WordNet database the WordNet and Hybrid extractors fall back on without an
+ * index or a lexicon takes a global lock for every lookup: such calls are
+ * still correct, but do not scale with the cores.
+ * </p>
  * 
  * @author Samer
  * 
  */
 public abstract class Extractor {
 
+	private SharedPipeline pipeline;
+	private final ExtractorMetrics metrics = ExtractorMetrics.get(getClass()
+			.getSimpleName().length() > 0 ? getClass().getSimpleName()
+			: getClass().getName());
+
+	/**
+	 * Create an extractor that does not need a CoreNLP pipeline.
+	 */
+	protected Extractor() {
+	}
+
+	/**
+	 * Create an extractor that annotates questions with the given CoreNLP
+	 * annotators. The models are taken from the {@link AnnotatorRegistry} so
+	 * they are shared with every other extractor that uses them.
+	 * 
+	 * @param annotators
+	 *            Comma separated CoreNLP annotators
+	 */
+	protected Extractor(String annotators) {
+		pipeline = AnnotatorRegistry.getInstance().acquire(annotators);
+	}
+
+	/**
+	 * Get the pipeline used to annotate the questions.
+	 * 
+	 * @return the shared pipeline, or <code>null</code> if the extractor does
+	 *         not use CoreNLP.
+	 */
+	protected SharedPipeline getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * Get the CoreNLP annotators the questions must be annotated with before
+	 * they are given to {@link #classifyAnnotatedQuestion(Annotation)}.
+	 * 
+	 * @return the normalized annotators list, e.g. "tokenize,ssplit,pos", or
+	 *         <code>null</code> if the extractor does not use CoreNLP.
+	 */
+	public String getAnnotators() {
+		return pipeline == null ? null : pipeline.getAnnotators();
+	}
+
+	/**
+	 * Get the metrics the calls to this extractor are recorded to. They are
+	 * shared by all the extractors of the same class.
+	 * 
+	 * @return the metrics of the extractor class
+	 */
+	public ExtractorMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Release the models held by the extractor. Models that are not used by
+	 * any other extractor are unloaded. The extractor must not be used
+	 * afterwards.
+	 */
+	public void close() {
+		if (pipeline != null) {
+			AnnotatorRegistry.getInstance().release(pipeline);
+			pipeline = null;
+		}
+	}
+
 	/**
 	 * The function takes as an input a string representing the question. It
 	 * will then classify every token in the question whether it is a
@@ -21,30 +120,231 @@ public abstract class Extractor {
 	 *         not-concept category.
 	 */
 	public final ClassifiedTokens classifyQuestionTokens(String question) {
+		checkQuestion(question);
+		return run(question);
+	}
+
+	/**
+	 * Classify the tokens of a question that was already annotated, e.g. once
+	 * for several extractors with the union of their annotators. The
+	 * annotation must hold at least the annotations of
+	 * {@link #getAnnotators()}, and is only read, so it can be given to
+	 * several extractors at once.
+	 * 
+	 * @param questionAnnotations
+	 *            Annotations of the question whose concepts will be extracted
+	 * @return Classification of the question tokens in either concept or
+	 *         not-concept category.
+	 */
+	public final ClassifiedTokens classifyAnnotatedQuestion(
+			Annotation questionAnnotations) {
+		if (questionAnnotations == null)
+			throw new IllegalArgumentException("Invalid annotation");
+		checkQuestion(questionAnnotations.get(TextAnnotation.class));
+		return run(null, questionAnnotations, null);
+	}
+
+	/**
+	 * Classify an annotated question for a tier of a {@link CascadeExtractor}
+	 * like {@link #classifyAnnotatedQuestion(Annotation)}, filling the depth
+	 * ratios when the extractor thresholds depths.
+	 */
+	final ClassifiedTokens classifyAnnotatedQuestion(
+			Annotation questionAnnotations, DepthRatios ratios) {
+		if (questionAnnotations == null)
+			throw new IllegalArgumentException("Invalid annotation");
+		checkQuestion(questionAnnotations.get(TextAnnotation.class));
+		return run(null, questionAnnotations, ratios);
+	}
+
+	/**
+	 * Classify the tokens of a batch of questions using as many threads as
+	 * there are available processors.
+	 * 
+	 * @param questions
+	 *            Questions whose concepts will be extracted
+	 * @return Classification of the tokens of every question, in the same
+	 *         order as the questions.
+	 * @see #classifyAll(List, int)
+	 */
+	public final List<ClassifiedTokens> classifyAll(List<String> questions) {
+		return classifyAll(questions, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Classify the tokens of a batch of questions. The questions are
+	 * annotated and scored on a pool of the given number of threads, which
+	 * all share the models of this extractor.
+	 * 
+	 * @param questions
+	 *            Questions whose concepts will be extracted
+	 * @param threads
+	 *            Number of threads to use.
+	 * @return Classification of the tokens of every question, in the same
+	 *         order as the questions.
+	 */
+	public final List<ClassifiedTokens> classifyAll(List<String> questions,
+			int threads) {
+		if (questions == null)
+			throw new IllegalArgumentException("Invalid questions list");
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+		for (String question : questions)
+			checkQuestion(question);
+
+		List<ClassifiedTokens> results = new ArrayList<ClassifiedTokens>(
+				questions.size());
+		if (threads == 1 || questions.size() < 2) {
+			for (String question : questions)
+				results.add(run(question));
+			return results;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, questions.size()));
+		try {
+			List<Future<ClassifiedTokens>> futures = new ArrayList<Future<ClassifiedTokens>>(
+					questions.size());
+			for (final String question : questions) {
+				futures.add(executor.submit(new Callable<ClassifiedTokens>() {
+					public ClassifiedTokens call() {
+						return run(question);
+					}
+				}));
+			}
+			for (Future<ClassifiedTokens> future : futures)
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while classifying", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+	private static void checkQuestion(String question) {
 		if (question == null || question.length() == 0)
 			throw new IllegalArgumentException("Invalid question: " + question);
-		return process(question);
+	}
+
+	private ClassifiedTokens run(String question) {
+		return run(question, null, null);
 	}
 
 	/**
-	 * Internal method that is implemented by every concept extractor.
+	 * Process the question, or its annotations if it is <code>null</code>,
+	 * recording the call to the metrics.
+	 */
+	private ClassifiedTokens run(String question, Annotation annotations,
+			DepthRatios ratios) {
+		long start = System.nanoTime();
+		long allocated = metrics.threadAllocatedBytes();
+		boolean failed = true;
+		try {
+			ClassifiedTokens ct = question != null ? process(question)
+					: ratios != null ? process(annotations, ratios)
+							: process(annotations);
+			failed = false;
+			return ct;
+		} finally {
+			metrics.recordCall(System.nanoTime() - start, allocated, failed);
+		}
+	}
+
+	/**
+	 * Annotate the question and classify its tokens.
 	 * 
 	 * @param question
 	 *            Question to process
 	 * @return Tokens classification.
 	 */
-	protected abstract ClassifiedTokens process(String question);
+	protected ClassifiedTokens process(String question) {
+		return process(annotate(question));
+	}
+
+	/**
+	 * Run the CoreNLP pipeline of the extractor on the question.
+	 * 
+	 * @param question
+	 *            Question to annotate
+	 * @return the question annotations, or an annotation holding only the
+	 *         text if the extractor does not use CoreNLP.
+	 */
+	protected Annotation annotate(String question) {
+		Annotation questionAnnotations = new Annotation(question);
+		if (pipeline != null)
+			pipeline.annotate(questionAnnotations, metrics);
+		return questionAnnotations;
+	}
+
+	/**
+	 * Run the annotators of the extractor that an annotation does not hold
+	 * yet, e.g. for a tier of a {@link CascadeExtractor} that needs more
+	 * annotators than the previous one.
+	 *
+	 * @param questionAnnotations
+	 *            Annotation to complete
+	 * @param annotators
+	 *            Annotators that already ran on it, or <code>null</code>
+	 * @return whether the annotation now holds the annotators of the
+	 *         extractor, <code>false</code> if it was left alone
+	 * @see SharedPipeline#annotateMissing(Annotation, String,
+	 *      ExtractorMetrics)
+	 */
+	boolean annotateMissing(Annotation questionAnnotations, String annotators) {
+		return pipeline == null
+				|| pipeline.annotateMissing(questionAnnotations, annotators,
+						metrics);
+	}
+
+	/**
+	 * Internal method that is implemented by every concept extractor. It must
+	 * only use local or leased state, since it is called from several threads
+	 * at once, e.g. by {@link #classifyAll(List, int)}.
+	 * 
+	 * @param questionAnnotations
+	 *            Annotations of the question to process
+	 * @return Tokens classification.
+	 */
+	protected abstract ClassifiedTokens process(Annotation questionAnnotations);
+
+	/**
+	 * Classify the tokens of a question for a tier of a
+	 * {@link CascadeExtractor}, filling the ratios of the token depths to the
+	 * average depth when the extractor thresholds depths. The other
+	 * extractors leave them empty.
+	 *
+	 * @param questionAnnotations
+	 *            Annotations of the question to process
+	 * @param ratios
+	 *            Ratios to fill
+	 * @return Tokens classification.
+	 */
+	ClassifiedTokens process(Annotation questionAnnotations, DepthRatios ratios) {
+		return process(questionAnnotations);
+	}
 
 	/**
 	 * Wrapper class that holds the classification of the tokens of the input
-	 * question.
+	 * question. <br/>
+	 * Extractors may give the classification as {@link ClassifiedSpans}
+	 * instead of strings, in which case the collections of strings are only
+	 * made the first time they are asked for.
 	 * 
 	 * @author Samer
 	 * 
 	 */
 	public class ClassifiedTokens {
-		private Collection<String> concepts;
-		private Collection<String> notConcepts;
+		private volatile Collection<String> concepts;
+		private volatile Collection<String> notConcepts;
+		private ClassifiedSpans spans;
 
 		/**
 		 * Get the list of tokens that was classified as <b>Concepts</b>
@@ -52,7 +352,10 @@ public abstract class Extractor {
 		 * @return the concepts
 		 */
 		public Collection<String> getConcepts() {
-			return concepts;
+			Collection<String> c = concepts;
+			if (c == null && spans != null)
+				concepts = c = spans.conceptSet();
+			return c;
 		}
 
 		/**
@@ -69,7 +372,10 @@ public abstract class Extractor {
 		 * @return the notConcepts
 		 */
 		public Collection<String> getNotConcepts() {
-			return notConcepts;
+			Collection<String> c = notConcepts;
+			if (c == null && spans != null)
+				notConcepts = c = spans.notConceptSet();
+			return c;
 		}
 
 		/**
@@ -80,6 +386,44 @@ public abstract class Extractor {
 			this.notConcepts = notConcepts;
 		}
 
+		/**
+		 * Get the classification as spans of the question, with every
+		 * occurrence of the tokens.
+		 * 
+		 * @return the spans, or <code>null</code> if the extractor only gave
+		 *         strings.
+		 */
+		public ClassifiedSpans getSpans() {
+			return spans;
+		}
+
+		/**
+		 * @param spans
+		 *            the spans the concepts and not-concepts are made of
+		 */
+		protected void setSpans(ClassifiedSpans spans) {
+			this.spans = spans;
+		}
+
+		/**
+		 * Append the classification as a JSON object with a "concepts" and a
+		 * "notConcepts" array. When the classification has spans, the arrays
+		 * list the distinct texts in the order they occur in the question.
+		 * 
+		 * @param sb
+		 *            Builder to append to
+		 * @return the builder
+		 */
+		public StringBuilder appendJson(StringBuilder sb) {
+			if (spans != null)
+				return spans.appendJson(sb);
+			sb.append("{\"concepts\":");
+			Json.appendArray(sb, getConcepts());
+			sb.append(",\"notConcepts\":");
+			Json.appendArray(sb, getNotConcepts());
+			return sb.append('}');
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * 
@@ -87,8 +431,8 @@ public abstract class Extractor {
 		 */
 		@Override
 		public String toString() {
-			return "ClassifiedTokens [concepts=" + concepts + ", notConcepts="
-					+ notConcepts + "]";
+			return "ClassifiedTokens [concepts=" + getConcepts()
+					+ ", notConcepts=" + getNotConcepts() + "]";
 		}
 	}
 
@@ -0,0 +1,233 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import engine.metrics.ExtractorMetrics;
+import engine.metrics.LatencyHistogram;
+
+/**
+ * Creates extractors in the background so the caller can start serving, or
+ * doing anything else, while the models load. <br/>
+ * Once the models are loaded the extractors can be warmed up by replaying a
+ * corpus of questions, e.g. samples.input, through
+ * {@link Extractor#classifyQuestionTokens(String)} so that the JIT has
+ * compiled the hot path before the first real question comes. The future
+ * returned by {@link #start()} completes when the extractors are loaded and
+ * warmed up. <br/>
+ * The factory reports how long the cold start took: loading, warming up,
+ * and until questions stopped being slower than twice the median of the
+ * last warm-up round.
+ */
+public class ExtractorFactory {
+
+	private final ExtractorType type;
+	private final int count;
+	private List<String> warmUpQuestions = Collections.emptyList();
+	private int warmUpRounds;
+
+	private CompletableFuture<List<Extractor>> ready;
+	private volatile long loadNanos = -1;
+	private volatile long warmUpNanos = -1;
+	private volatile long coldStartToFastNanos = -1;
+	private volatile int warmUpFailures;
+	private final LatencyHistogram warmUpLatency = new LatencyHistogram();
+
+	/**
+	 * @param type
+	 *            Type of the extractors to create.
+	 * @param count
+	 *            Number of extractors, they all share the same models.
+	 */
+	public ExtractorFactory(ExtractorType type, int count) {
+		if (count < 1)
+			throw new IllegalArgumentException("Invalid count: " + count);
+		this.type = type;
+		this.count = count;
+	}
+
+	/**
+	 * Replay the given questions after loading the models and before
+	 * reporting the extractors ready.
+	 *
+	 * @param questions
+	 *            Warm-up corpus
+	 * @param rounds
+	 *            Number of times the corpus is replayed, 0 to skip the
+	 *            warm-up.
+	 */
+	public void setWarmUp(List<String> questions, int rounds) {
+		if (rounds < 0)
+			throw new IllegalArgumentException("Invalid rounds: " + rounds);
+		this.warmUpQuestions = questions == null ? Collections
+				.<String> emptyList() : questions;
+		this.warmUpRounds = rounds;
+	}
+
+	/**
+	 * Start loading the models on a background thread. Calling it again
+	 * returns the same future.
+	 *
+	 * @return a future completed with the extractors once they are loaded
+	 *         and warmed up, or with the error that prevented loading them.
+	 */
+	public synchronized CompletableFuture<List<Extractor>> start() {
+		if (ready != null)
+			return ready;
+		ready = new CompletableFuture<List<Extractor>>();
+		final long start = System.nanoTime();
+		Thread loader = new Thread(new Runnable() {
+			public void run() {
+				try {
+					ready.complete(load(start));
+				} catch (Throwable e) {
+					ready.completeExceptionally(e);
+				}
+			}
+		}, "extractor-loader");
+		loader.setDaemon(true);
+		loader.start();
+		return ready;
+	}
+
+	/**
+	 * @return <code>true</code> once the extractors are loaded and warmed up
+	 */
+	public synchronized boolean isReady() {
+		return ready != null && ready.isDone()
+				&& !ready.isCompletedExceptionally();
+	}
+
+	/**
+	 * Create one extractor, called on the loading thread.
+	 *
+	 * @return a new extractor of the type of the factory
+	 */
+	protected Extractor create() {
+		return type.create();
+	}
+
+	private List<Extractor> load(long start) {
+		List<Extractor> extractors = new ArrayList<Extractor>(count);
+		try {
+			for (int i = 0; i < count; i++)
+				extractors.add(create());
+		} catch (RuntimeException e) {
+			for (Extractor extractor : extractors)
+				extractor.close();
+			throw e;
+		}
+		loadNanos = System.nanoTime() - start;
+
+		if (warmUpRounds == 0 || warmUpQuestions.isEmpty()) {
+			coldStartToFastNanos = loadNanos;
+			return extractors;
+		}
+		// the metrics are about real questions, and are shared with the
+		// extractors of the same type already serving them
+		ExtractorMetrics.suspendRecording();
+		try {
+			warmUp(extractors, start);
+		} finally {
+			ExtractorMetrics.resumeRecording();
+		}
+		warmUpNanos = System.nanoTime() - start - loadNanos;
+		return extractors;
+	}
+
+	/**
+	 * Replay the corpus through the extractors in turn, and find when the
+	 * questions became fast.
+	 */
+	private void warmUp(List<Extractor> extractors, long start) {
+		int n = warmUpQuestions.size();
+		long[] latencies = new long[n * warmUpRounds];
+		long[] ends = new long[latencies.length];
+		int failures = 0;
+		for (int i = 0; i < latencies.length; i++) {
+			Extractor extractor = extractors.get(i % extractors.size());
+			long begin = System.nanoTime();
+			try {
+				extractor.classifyQuestionTokens(warmUpQuestions.get(i % n));
+			} catch (RuntimeException e) {
+				failures++;
+			}
+			ends[i] = System.nanoTime();
+			latencies[i] = ends[i] - begin;
+			warmUpLatency.record(latencies[i]);
+		}
+		warmUpFailures = failures;
+
+		long[] lastRound = new long[n];
+		System.arraycopy(latencies, latencies.length - n, lastRound, 0, n);
+		Arrays.sort(lastRound);
+		long threshold = 2 * lastRound[n / 2];
+		int lastSlow = -1;
+		for (int i = 0; i < latencies.length; i++) {
+			if (latencies[i] > threshold)
+				lastSlow = i;
+		}
+		coldStartToFastNanos = (lastSlow < 0 ? loadNanos : ends[lastSlow]
+				- start);
+	}
+
+	/**
+	 * @return the time it took to create the extractors, -1 until then
+	 */
+	public long getLoadMillis() {
+		return toMillis(loadNanos);
+	}
+
+	/**
+	 * @return the time the warm-up took, -1 until then or without warm-up
+	 */
+	public long getWarmUpMillis() {
+		return toMillis(warmUpNanos);
+	}
+
+	/**
+	 * Get the time from {@link #start()} until the questions stopped being
+	 * slower than twice the median of the last warm-up round, i.e. until the
+	 * first fast response. Without warm-up it is the load time.
+	 *
+	 * @return the time in milliseconds, -1 until known
+	 */
+	public long getColdStartToFastMillis() {
+		return toMillis(coldStartToFastNanos);
+	}
+
+	/**
+	 * @return number of warm-up questions the extractors failed on
+	 */
+	public int getWarmUpFailures() {
+		return warmUpFailures;
+	}
+
+	/**
+	 * @return latency of the warm-up questions
+	 */
+	public LatencyHistogram getWarmUpLatency() {
+		return warmUpLatency;
+	}
+
+	private static long toMillis(long nanos) {
+		return nanos < 0 ? -1 : nanos / 1000000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("ExtractorFactory [type=%s, count=%d, load=%d ms, "
+				+ "warmUp=%d ms, coldStartToFast=%d ms, warmUpFailures=%d]",
+				type, count, getLoadMillis(), getWarmUpMillis(),
+				getColdStartToFastMillis(), getWarmUpFailures());
+	}
+
+}
@@ -0,0 +1,45 @@
+package engine.core;
+
+/**
+ * The concept extractors that can be chosen by name from the command line
+ * tools.
+ */
+public enum ExtractorType {
+
+	NER, WORDNET, HYBRID, GAZETTEER;
+
+	/**
+	 * Create a new extractor of this type. The models are shared with any
+	 * other open extractor through the {@link AnnotatorRegistry}.
+	 *
+	 * @return the new extractor
+	 */
+	public Extractor create() {
+		switch (this) {
+		case NER:
+			return new NERExtractor();
+		case WORDNET:
+			return new WordNetExtractor();
+		case GAZETTEER:
+			return new GazetteerExtractor();
+		default:
+			return new HybridExtractor();
+		}
+	}
+
+	/**
+	 * Get the type for a name given on the command line, ignoring case.
+	 *
+	 * @param name
+	 *            e.g. "ner", "wordnet", "hybrid" or "gazetteer"
+	 * @return the type
+	 */
+	public static ExtractorType get(String name) {
+		for (ExtractorType type : values()) {
+			if (type.name().equalsIgnoreCase(name))
+				return type;
+		}
+		throw new IllegalArgumentException("Unknown extractor: " + name);
+	}
+
+}
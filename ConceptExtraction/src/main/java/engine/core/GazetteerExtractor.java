@@ -0,0 +1,155 @@
+package engine.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.gazetteer.Gazetteer;
+import engine.util.ScratchPool;
+
+/**
+ * Concept extractor that looks the known entities of a {@link Gazetteer} up in
+ * the question text, without running any CoreNLP annotator. <br/>
+ * The occurrences of the entries are the concepts, the longest one winning
+ * among overlapping occurrences, and every other token of the question is a
+ * not-concept. Tokens are the runs of letters and digits, and every other
+ * character that is not a white space. <br/>
+ * The gazetteer is shared by every thread, and every call leases a matcher
+ * from a pool.
+ */
+public class GazetteerExtractor extends Extractor {
+
+	/**
+	 * Default gazetteer file, with one entry per line.
+	 */
+	public static final String DEFAULT_GAZETTEER_FILE = "./gazetteer.txt";
+
+	private final Gazetteer gazetteer;
+	private final ScratchPool<Gazetteer.Matcher> matchers = new ScratchPool<Gazetteer.Matcher>() {
+		@Override
+		protected Gazetteer.Matcher create() {
+			return gazetteer.matcher();
+		}
+	};
+
+	/**
+	 * Create an extractor of the entries of {@link #DEFAULT_GAZETTEER_FILE}, or
+	 * of the file given by the <code>engine.gazetteer</code> system property.
+	 *
+	 * @throws IllegalStateException
+	 *             if the file cannot be read
+	 */
+	public GazetteerExtractor() {
+		this(load(new File(System.getProperty("engine.gazetteer",
+				DEFAULT_GAZETTEER_FILE))));
+	}
+
+	/**
+	 * @param gazetteer
+	 *            Entries to look for
+	 */
+	public GazetteerExtractor(Gazetteer gazetteer) {
+		if (gazetteer == null)
+			throw new IllegalArgumentException("Invalid gazetteer");
+		this.gazetteer = gazetteer;
+	}
+
+	private static Gazetteer load(File file) {
+		try {
+			return Gazetteer.load(file);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the gazetteer "
+					+ file, e);
+		}
+	}
+
+	/**
+	 * @return the entries the extractor looks for
+	 */
+	public Gazetteer getGazetteer() {
+		return gazetteer;
+	}
+
+	@Override
+	protected ClassifiedTokens process(String question) {
+		return classify(question);
+	}
+
+	@Override
+	protected ClassifiedTokens process(Annotation questionAnnotations) {
+		return classify(questionAnnotations.get(TextAnnotation.class));
+	}
+
+	private ClassifiedTokens classify(String question) {
+		Gazetteer.Matcher matcher = matchers.lease();
+		try {
+			return classify(question, matcher);
+		} finally {
+			matchers.release(matcher);
+		}
+	}
+
+	private ClassifiedTokens classify(String question,
+			Gazetteer.Matcher matcher) {
+		int count = matcher.find(question);
+		ClassifiedSpans spans = new ClassifiedSpans(question);
+		int n = question.length();
+		int next = 0;
+		for (int i = 0; i < n;) {
+			if (next < count && matcher.getBegin(next) == i) {
+				int end = matcher.getEnd(next++);
+				addConcept(spans, question, i, end);
+				i = end;
+				continue;
+			}
+			char c = question.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			if (Character.isLetterOrDigit(c)) {
+				while (end < n && Character.isLetterOrDigit(question.charAt(end)))
+					end++;
+			}
+			spans.addNotConcept(i, end);
+			i = end;
+		}
+
+		ClassifiedTokens ct = new ClassifiedTokens();
+		ct.setSpans(spans);
+		return ct;
+	}
+
+	/**
+	 * Add an occurrence as a concept, its words separated by a single space
+	 * like the other extractors do.
+	 */
+	private static void addConcept(ClassifiedSpans spans, String question,
+			int begin, int end) {
+		boolean single = true;
+		for (int i = begin; single && i < end; i++) {
+			char c = question.charAt(i);
+			single = !Character.isWhitespace(c)
+					|| c == ' '
+					&& !Character.isWhitespace(question.charAt(i + 1));
+		}
+		if (single) {
+			spans.addConcept(begin, end);
+			return;
+		}
+		StringBuilder sb = new StringBuilder(end - begin);
+		boolean space = false;
+		for (int i = begin; i < end; i++) {
+			char c = question.charAt(i);
+			if (!Character.isWhitespace(c))
+				sb.append(c);
+			else if (!space)
+				sb.append(' ');
+			space = Character.isWhitespace(c);
+		}
+		spans.addConcept(begin, end, sb);
+	}
+
+}
@@ -1,102 +1,233 @@
 package engine.core;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
-import java.util.Set;
 
 import edu.smu.tspell.wordnet.NounSynset;
 import edu.smu.tspell.wordnet.Synset;
 import edu.smu.tspell.wordnet.SynsetType;
 import edu.smu.tspell.wordnet.WordNetDatabase;
-import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
-import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
-import engine.util.NamedEntityTags;
-import engine.util.PartOfSpeechTags;
+import engine.metrics.FlightEvents;
+import engine.wordnet.HypernymDepthIndex;
+import engine.wordnet.WordNetLexicon;
 
-public class HybridExtractor extends Extractor {
+public class HybridExtractor extends Extractor implements
+		DepthThresholdExtractor {
 
 	/**
-	 * Factor that specifies how much above-average that token average-depth
-	 * needs to be, in order for the extractor to select it as a concept.
+	 * Default factor that specifies how much above-average that token
+	 * average-depth needs to be, in order for the extractor to select it as a
+	 * concept.
 	 */
 	public static final double FACTOR_OF_AVG_DEPTH = 1.0;
 
-	private StanfordCoreNLP annotator;
 	private WordNetDatabase wnDatabase;
+	private HypernymDepthIndex depthIndex;
+	private WordNetLexicon lexicon;
+	private volatile double factorOfAvgDepth = FACTOR_OF_AVG_DEPTH;
 
 	public HybridExtractor() {
-		Properties props = new Properties();
-		props.put("annotators", "tokenize, ssplit, pos, lemma, ner");
-		annotator = new StanfordCoreNLP(props);
+		super("tokenize, ssplit, pos, lemma, ner");
 		System.setProperty("wordnet.database.dir", "./dict/");
 		wnDatabase = WordNetDatabase.getFileInstance();
+		depthIndex = HypernymDepthIndex.openDefault();
+		if (depthIndex == null)
+			lexicon = WordNetLexicon.openDefault();
+	}
+
+	public double getFactorOfAvgDepth() {
+		return factorOfAvgDepth;
+	}
+
+	public void setFactorOfAvgDepth(double factor) {
+		this.factorOfAvgDepth = factor;
 	}
 	
-	public ClassifiedTokens process(String question) {
-
-		Annotation questionAnnotations = new Annotation(question);
-		annotator.annotate(questionAnnotations);
-		List<CoreMap> sentences = questionAnnotations
-				.get(SentencesAnnotation.class);
-
-		List<CandidateConcept> allTokens = toCandidateConcepts(sentences);
-		allTokens = groupByNE(allTokens);
-		allTokens = groupByPOS(allTokens);
-		double overallAvgDepth = computeAvgSynsetsDepth(allTokens);
-		Set<String> concepts = new HashSet<String>();
-		Set<String> notConcepts = new HashSet<String>();
-
-		for (CandidateConcept cc : allTokens) {
-			if (!cc.isSingleToken()
-					|| Double.compare(cc.avgDepth, FACTOR_OF_AVG_DEPTH
-							* overallAvgDepth) >= 0)
-				concepts.add(cc.toString());
-			else
-				notConcepts.add(cc.toString());
+	public ClassifiedTokens process(Annotation questionAnnotations) {
+		return process(questionAnnotations, null);
+	}
+
+	@Override
+	ClassifiedTokens process(Annotation questionAnnotations, DepthRatios ratios) {
+		long time = System.nanoTime();
+		TokenBuffer tokens = toCandidateConcepts(questionAnnotations
+				.get(SentencesAnnotation.class));
+		try {
+			double overallAvgDepth = computeGroupDepths(tokens,
+					questionAnnotations, time);
+			if (ratios != null)
+				ratios(tokens, overallAvgDepth, ratios);
+			return classify(questionAnnotations.get(TextAnnotation.class),
+					tokens, factorOfAvgDepth * overallAvgDepth);
+		} finally {
+			tokens.release();
+		}
+	}
+
+	public DepthProfile profileAnnotatedQuestion(
+			Annotation questionAnnotations) {
+		long time = System.nanoTime();
+		TokenBuffer tokens = toCandidateConcepts(questionAnnotations
+				.get(SentencesAnnotation.class));
+		try {
+			return profile(tokens, questionAnnotations, time);
+		} finally {
+			tokens.release();
+		}
+	}
+
+	private DepthProfile profile(TokenBuffer tokens,
+			Annotation questionAnnotations, long time) {
+		double overallAvgDepth = computeGroupDepths(tokens,
+				questionAnnotations, time);
+		String question = questionAnnotations.get(TextAnnotation.class);
+		if (!(overallAvgDepth > 0))
+			return new DepthProfile(new double[0],
+					new ClassifiedTokens[] { classify(question, tokens,
+							overallAvgDepth) });
+
+		double[] depths = new double[tokens.sequenceSize];
+		int n = 0;
+		for (int i = 0; i < tokens.sequenceSize; i++) {
+			int cc = tokens.sequence[i];
+			if (tokens.isSingleToken(cc))
+				depths[n++] = tokens.groupDepths[cc];
+		}
+		depths = DepthProfile.distinct(depths, n);
+		double[] ratios = new double[depths.length];
+		ClassifiedTokens[] classifications = new ClassifiedTokens[depths.length + 1];
+		for (int j = 0; j < depths.length; j++) {
+			ratios[j] = depths[j] / overallAvgDepth;
+			classifications[j] = classify(question, tokens, depths[j]);
+		}
+		classifications[depths.length] = classify(question, tokens,
+				Double.POSITIVE_INFINITY);
+		return new DepthProfile(ratios, classifications);
+	}
+
+	/**
+	 * Fill the ratios of the depths of the single tokens to the average
+	 * depth, none if it is not positive.
+	 */
+	private static void ratios(TokenBuffer tokens, double overallAvgDepth,
+			DepthRatios ratios) {
+		ratios.clear();
+		if (!(overallAvgDepth > 0))
+			return;
+		for (int i = 0; i < tokens.sequenceSize; i++) {
+			int cc = tokens.sequence[i];
+			if (tokens.isSingleToken(cc))
+				ratios.add(tokens.groupDepths[cc] / overallAvgDepth);
+		}
+	}
+
+	/**
+	 * Group the candidate concepts and look up the depths of the groups,
+	 * recording the stages from the given start time, and each grouping and
+	 * the depths as {@link FlightEvents}.
+	 *
+	 * @return the average depth of the groups found in WordNet
+	 */
+	private double computeGroupDepths(TokenBuffer tokens,
+			Annotation questionAnnotations, long time) {
+		int length = questionAnnotations.get(TextAnnotation.class).length();
+		Object event = FlightEvents.beginStage();
+		groupByNE(tokens);
+		FlightEvents.endStage(event, getMetrics(), "groupByNE", length,
+				tokens.size);
+		event = FlightEvents.beginStage();
+		groupByPOS(tokens);
+		FlightEvents.endStage(event, getMetrics(), "groupByPOS", length,
+				tokens.size);
+		time = getMetrics().recordStage("grouping", time);
+		event = FlightEvents.beginStage();
+		double overallAvgDepth = computeAvgSynsetsDepth(tokens);
+		FlightEvents.endStage(event, getMetrics(), "depths", length,
+				tokens.size);
+		getMetrics().recordStage("wordnet", time);
+		return overallAvgDepth;
+	}
+
+	/**
+	 * Select the groups of several tokens, and the single tokens whose depth
+	 * is at least the threshold.
+	 */
+	private ClassifiedTokens classify(String question, TokenBuffer tokens,
+			double threshold) {
+		ClassifiedSpans spans = new ClassifiedSpans(question);
+		for (int i = 0; i < tokens.sequenceSize; i++) {
+			int cc = tokens.sequence[i];
+			spans.add(!tokens.isSingleToken(cc)
+					|| Double.compare(tokens.groupDepths[cc], threshold) >= 0,
+					tokens, tokens.groupStarts[cc], tokens.groupEnds[cc]);
 		}
 
 		ClassifiedTokens ct = new ClassifiedTokens();
-		ct.setConcepts(concepts);
-		ct.setNotConcepts(notConcepts);
+		ct.setSpans(spans);
 		return ct;
 	}
 
-	private double computeAvgSynsetsDepth(List<CandidateConcept> allTokens) {
+	double computeAvgSynsetsDepth(TokenBuffer tokens) {
 
 		double overallAvgDepth = 0.0;
 		int counterAvgs = 0;
-		for (CandidateConcept cc : allTokens) {
-			if (!cc.isSingleToken() || valuableSingleTokenPOS(cc)) {
-				Synset[] synsets = wnDatabase.getSynsets(cc.toString(),
+		int lookups = 0;
+		for (int i = 0; i < tokens.sequenceSize; i++) {
+			int cc = tokens.sequence[i];
+			if (!tokens.isSingleToken(cc) || valuableSingleTokenPOS(tokens, cc)) {
+				lookups++;
+				Object lookup = FlightEvents.beginLookup();
+				if (depthIndex != null || lexicon != null) {
+					CharSequence text = tokens.groupText(cc);
+					double depth;
+					int count;
+					if (depthIndex != null) {
+						depth = depthIndex.averageDepth(text);
+						count = Double.isNaN(depth) ? 0 : -1;
+					} else {
+						// the count is only needed by a recorded event
+						int[] synsetCount = lookup != null ? new int[1] : null;
+						depth = lexicon.averageDepth(text, synsetCount);
+						count = synsetCount != null ? synsetCount[0] : 0;
+					}
+					FlightEvents.endLookup(lookup, text, depthIndex != null
+							? FlightEvents.INDEX : FlightEvents.LEXICON, count,
+							depth);
+					if (!Double.isNaN(depth)) {
+						tokens.groupDepths[cc] = depth;
+						overallAvgDepth += depth;
+						counterAvgs++;
+					}
+					continue;
+				}
+				String group = tokens.groupString(cc);
+				Synset[] synsets = wnDatabase.getSynsets(group,
 						SynsetType.NOUN);
+				double depth = Double.NaN;
 				if (synsets != null && synsets.length > 0) {
-					overallAvgDepth += setAvgDepth(cc, synsets);
+					depth = setAvgDepth(tokens, cc, synsets);
+					overallAvgDepth += depth;
 					counterAvgs++;
 				}
+				FlightEvents.endLookup(lookup, group, FlightEvents.JAWS,
+						synsets == null ? 0 : synsets.length, depth);
 			}
 		}
+		getMetrics().countWordNetLookups(lookups);
 		return overallAvgDepth / counterAvgs;
 	}
 
-	private double setAvgDepth(CandidateConcept cc, Synset[] synsets) {
+	private double setAvgDepth(TokenBuffer tokens, int cc, Synset[] synsets) {
 		double depth = 0.0;
 		for (Synset synset : synsets) {
 			boolean terminate = false;
-			List<String> path = new ArrayList<String>();
+			int pathSize = 0;
 			NounSynset syns = (NounSynset) synset;
 			while (!terminate) {
-				String word = syns.getWordForms()[0];
-				path.add(word);
+				pathSize++;
 				NounSynset[] hyper = syns.getHypernyms();
 				NounSynset[] instHyper = syns.getInstanceHypernyms();
 				terminate = hyper.length == 0 && instHyper.length == 0;
@@ -108,140 +239,104 @@ public class HybridExtractor extends Extractor {
 				}
 			}
 
-			depth += path.size();
+			depth += pathSize;
 		}
 		depth /= synsets.length;
-		cc.avgDepth = depth;
+		tokens.groupDepths[cc] = depth;
 		return depth;
 	}
 
-	private boolean valuableSingleTokenPOS(CandidateConcept cc) {
-		PartOfSpeechTags pos = cc.getSingleTokenPOS();
-		return pos != null
-				&& (pos.isNoun() || pos.isVerb() || pos.isAdjective());
+	/**
+	 * Whether the first token of the group is a noun, a verb or an adjective.
+	 */
+	private boolean valuableSingleTokenPOS(TokenBuffer tokens, int cc) {
+		return tokens.posGroup(tokens.groupStarts[cc]) != 0;
 	}
 
-	private List<CandidateConcept> groupByNE(List<CandidateConcept> allTokens) {
-		List<CandidateConcept> groupedTokens = new ArrayList<CandidateConcept>(
-				allTokens.size());
-		if (allTokens.size() == 0)
-			return groupedTokens;
-		Iterator<CandidateConcept> itr = allTokens.iterator();
-		CandidateConcept currToken = itr.next();
-		while (itr.hasNext()) {
-			groupedTokens.add(currToken);
-			if (currToken.neTag == null) {
-				currToken = itr.next();
+	/**
+	 * Merge the consecutive tokens that have the same named entity tag. The
+	 * last group is listed twice when it reaches the end of the question.
+	 */
+	void groupByNE(TokenBuffer tokens) {
+		int n = tokens.sequenceSize;
+		if (n == 0)
+			return;
+		int[] candidates = tokens.sequence;
+		tokens.startSequence();
+		int next = 0;
+		int currToken = candidates[next++];
+		while (next < n) {
+			tokens.append(currToken);
+			int neTag = tokens.neTags[tokens.groupStarts[currToken]];
+			if (neTag == TokenBuffer.NO_TAG) {
+				currToken = candidates[next++];
 				continue;
 			}
 
-			while (itr.hasNext()) {
-				CandidateConcept nxtToken = itr.next();
-				if (currToken.neTag == nxtToken.neTag) {
-					currToken.tokens.addAll(nxtToken.tokens);
+			while (next < n) {
+				int nxtToken = candidates[next++];
+				if (neTag == tokens.neTags[tokens.groupStarts[nxtToken]]) {
+					tokens.merge(currToken, nxtToken);
 				} else {
 					currToken = nxtToken;
 					break;
 				}
 			}
 		}
-		groupedTokens.add(currToken);
-		return groupedTokens;
-	}
-
-	private List<CandidateConcept> groupByPOS(List<CandidateConcept> allTokens) {
-		List<CandidateConcept> groupedTokens = new ArrayList<CandidateConcept>(
-				allTokens.size());
-		if (allTokens.size() == 0)
-			return groupedTokens;
-		Iterator<CandidateConcept> itr = allTokens.iterator();
-		CandidateConcept currToken = itr.next();
-		while (itr.hasNext()) {
-			groupedTokens.add(currToken);
-			if (!currToken.isSingleToken()
-					|| !valuableSingleTokenPOS(currToken)) {
-				currToken = itr.next();
+		tokens.append(currToken);
+		tokens.endSequence();
+	}
+
+	/**
+	 * Merge the single tokens that follow a noun, a verb or an adjective and
+	 * are of the same kind. The last group is listed twice when it reaches the
+	 * end of the question.
+	 */
+	void groupByPOS(TokenBuffer tokens) {
+		int n = tokens.sequenceSize;
+		if (n == 0)
+			return;
+		int[] candidates = tokens.sequence;
+		tokens.startSequence();
+		int next = 0;
+		int currToken = candidates[next++];
+		while (next < n) {
+			tokens.append(currToken);
+			if (!tokens.isSingleToken(currToken)
+					|| !valuableSingleTokenPOS(tokens, currToken)) {
+				currToken = candidates[next++];
 				continue;
 			}
 
-			while (itr.hasNext()) {
-				CandidateConcept nxtToken = itr.next();
-				if (nxtToken.isSingleToken()
-						&& areSamePOSGroup(currToken, nxtToken)) {
-					currToken.tokens.addAll(nxtToken.tokens);
+			char posGroup = tokens.posGroup(tokens.groupStarts[currToken]);
+			while (next < n) {
+				int nxtToken = candidates[next++];
+				if (tokens.isSingleToken(nxtToken)
+						&& posGroup == tokens.posGroup(tokens.groupStarts[nxtToken])) {
+					tokens.merge(currToken, nxtToken);
 				} else {
 					currToken = nxtToken;
 					break;
 				}
 			}
 		}
-		groupedTokens.add(currToken);
-		return groupedTokens;
-	}
-
-	private boolean areSamePOSGroup(CandidateConcept currToken,
-			CandidateConcept nxtToken) {
-		PartOfSpeechTags pos1 = currToken.getSingleTokenPOS();
-		PartOfSpeechTags pos2 = nxtToken.getSingleTokenPOS();
-		if (pos1 == null || pos2 == null)
-			return false;
-		return (pos1.isNoun() && pos2.isNoun())
-				|| (pos1.isVerb() && pos2.isVerb())
-				|| (pos1.isAdjective() && pos2.isAdjective());
+		tokens.append(currToken);
+		tokens.endSequence();
 	}
 
 	/**
-	 * Transform the tokens of the sentences into {@link CandidateConcept}s
-	 * list.
+	 * Put the tokens of the sentences in a token buffer leased from the pool,
+	 * each in its own group.
 	 * 
 	 * @param sentences
 	 *            sentence with tokens annotated
-	 * @return list of candidate concepts each holding a single label
+	 * @return the buffer holding a group per token, to be released by the
+	 *         caller
 	 */
-	private List<CandidateConcept> toCandidateConcepts(List<CoreMap> sentences) {
-		List<CandidateConcept> cc = new ArrayList<CandidateConcept>();
-		for (CoreMap cm : sentences) {
-			List<CoreLabel> labels = cm.get(TokensAnnotation.class);
-			for (CoreLabel cl : labels)
-				cc.add(new CandidateConcept(cl));
-		}
-		return cc;
-	}
-
-	/**
-	 * Wrapper class that holds every token information.
-	 * 
-	 * @author Samer
-	 * 
-	 */
-	private class CandidateConcept {
-		double avgDepth = 0.0;
-		NamedEntityTags neTag;
-		List<CoreLabel> tokens = new ArrayList<CoreLabel>();
-
-		public CandidateConcept(CoreLabel cl) {
-			tokens.add(cl);
-			neTag = NamedEntityTags.get(cl.get(NamedEntityTagAnnotation.class));
-		}
-
-		@Override
-		public String toString() {
-			StringBuilder sb = new StringBuilder();
-			for (CoreLabel cl : tokens) {
-				sb.append(cl.get(TextAnnotation.class));
-				sb.append(' ');
-			}
-			return sb.toString().trim();
-		}
-
-		public boolean isSingleToken() {
-			return tokens.size() == 1;
-		}
-
-		public PartOfSpeechTags getSingleTokenPOS() {
-			return PartOfSpeechTags.get(tokens.get(0).get(
-					PartOfSpeechAnnotation.class));
-		}
+	TokenBuffer toCandidateConcepts(List<CoreMap> sentences) {
+		TokenBuffer tokens = TokenBuffer.get();
+		tokens.addSentences(sentences);
+		return tokens;
 	}
 
 }
@@ -0,0 +1,376 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.metrics.LatencyHistogram;
+
+/**
+ * Asynchronous front end of an extractor that classifies the questions of
+ * concurrent callers in micro-batches. <br/>
+ * The questions are queued, and every worker thread takes the oldest one and
+ * the ones that follow it, until the batch is full or the oldest one has
+ * waited for the wait window. The distinct questions of a batch are annotated
+ * together with {@link SharedPipeline#annotateBatch(List, ExtractorMetrics)}
+ * when the extractor has a pipeline, then classified one by one, and the
+ * callers asking the same question get the same result. <br/>
+ * The time the questions wait in the queue is recorded as the "queue" stage
+ * of the metrics of this extractor, the stages of the batch annotation as its
+ * other stages, and the whole processing of a batch as the "batch" stage.
+ * The synchronous methods of {@link Extractor} go through the queue as well,
+ * except the ones given an annotation, which are passed on to the
+ * extractor.
+ */
+public class MicroBatchingExtractor extends Extractor {
+
+	private final Extractor delegate;
+	private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+	private final Thread[] workers;
+	private volatile int maxBatchSize;
+	private volatile long maxWaitNanos;
+	private volatile boolean closed;
+
+	private final LatencyHistogram queueTime = new LatencyHistogram();
+	private final LatencyHistogram batchSizes = new LatencyHistogram();
+	private final DoubleAdder batchFills = new DoubleAdder();
+
+	/**
+	 * @param delegate
+	 *            Extractor that classifies the questions, called from all the
+	 *            workers.
+	 * @param workers
+	 *            Number of threads processing batches.
+	 * @param maxBatchSize
+	 *            Maximum number of questions of a batch.
+	 * @param maxWait
+	 *            Longest time a question waits for more questions to join its
+	 *            batch.
+	 * @param unit
+	 *            Unit of <code>maxWait</code>.
+	 */
+	public MicroBatchingExtractor(Extractor delegate, int workers,
+			int maxBatchSize, long maxWait, TimeUnit unit) {
+		if (delegate == null)
+			throw new IllegalArgumentException("Invalid extractor");
+		if (workers < 1)
+			throw new IllegalArgumentException("Invalid number of workers: "
+					+ workers);
+		setMaxBatchSize(maxBatchSize);
+		setMaxWait(maxWait, unit);
+		this.delegate = delegate;
+		this.workers = new Thread[workers];
+		for (int i = 0; i < workers; i++) {
+			this.workers[i] = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "micro-batch-" + i);
+			this.workers[i].setDaemon(true);
+			this.workers[i].start();
+		}
+	}
+
+	/**
+	 * @param maxBatchSize
+	 *            Maximum number of questions of a batch, from the next batch
+	 *            on.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("Invalid batch size: "
+					+ maxBatchSize);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param maxWait
+	 *            Longest time a question waits for more questions to join its
+	 *            batch, from the next batch on. 0 only batches the questions
+	 *            that are already waiting.
+	 * @param unit
+	 *            Unit of <code>maxWait</code>.
+	 */
+	public void setMaxWait(long maxWait, TimeUnit unit) {
+		if (maxWait < 0 || unit == null)
+			throw new IllegalArgumentException("Invalid wait: " + maxWait
+					+ " " + unit);
+		this.maxWaitNanos = unit.toNanos(maxWait);
+	}
+
+	/**
+	 * @return the maximum number of questions of a batch
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * @param unit
+	 *            Unit of the result
+	 * @return the longest time a question waits for more questions
+	 */
+	public long getMaxWait(TimeUnit unit) {
+		return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Queue a question to be classified in the next batch.
+	 *
+	 * @param question
+	 *            Question whose concepts will be extracted
+	 * @return the future classification of the question tokens, completed by
+	 *         a worker thread, or failed with the exception of the extractor.
+	 * @throws IllegalStateException
+	 *             if the extractor was closed
+	 */
+	public CompletableFuture<ClassifiedTokens> submit(String question) {
+		if (question == null || question.length() == 0)
+			throw new IllegalArgumentException("Invalid question: " + question);
+		if (closed)
+			throw new IllegalStateException("Extractor closed");
+		Pending pending = new Pending(question);
+		queue.add(pending);
+		// close() may have drained the queue before the question was added
+		if (closed && queue.remove(pending))
+			pending.future.completeExceptionally(new IllegalStateException(
+					"Extractor closed"));
+		return pending.future;
+	}
+
+	@Override
+	public String getAnnotators() {
+		return delegate.getAnnotators();
+	}
+
+	@Override
+	protected ClassifiedTokens process(String question) {
+		try {
+			return submit(question).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while classifying", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	@Override
+	protected ClassifiedTokens process(Annotation questionAnnotations) {
+		return delegate.classifyAnnotatedQuestion(questionAnnotations);
+	}
+
+	private void work() {
+		List<Pending> batch = new ArrayList<Pending>();
+		while (!closed) {
+			int size = maxBatchSize;
+			try {
+				size = collect(batch);
+			} catch (InterruptedException e) {
+				// closed while waiting, the questions taken are failed below
+			}
+			if (!batch.isEmpty()) {
+				try {
+					run(batch, size);
+				} catch (Error e) {
+					// only the batch fails: a dead worker would leave the
+					// questions queued after it waiting forever
+					fail(batch, e);
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Take the oldest question and the ones arriving until the batch is full
+	 * or the oldest one has waited long enough.
+	 *
+	 * @return the maximum size of the batch
+	 */
+	private int collect(List<Pending> batch) throws InterruptedException {
+		Pending first = queue.take();
+		batch.add(first);
+		int size = maxBatchSize;
+		long deadline = first.queued + maxWaitNanos;
+		while (batch.size() < size) {
+			long wait = deadline - System.nanoTime();
+			Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS)
+					: queue.poll();
+			if (next == null)
+				break;
+			batch.add(next);
+		}
+		return size;
+	}
+
+	private void run(List<Pending> batch, int size) {
+		long start = System.nanoTime();
+		LatencyHistogram queueStage = getMetrics().stage("queue");
+		for (Pending pending : batch) {
+			queueTime.record(start - pending.queued);
+			queueStage.record(start - pending.queued);
+		}
+		batchSizes.record(batch.size());
+		batchFills.add(batch.size() / (double) size);
+		if (closed) {
+			fail(batch, new IllegalStateException("Extractor closed"));
+			return;
+		}
+
+		Map<String, List<Pending>> distinct = new LinkedHashMap<String, List<Pending>>();
+		for (Pending pending : batch) {
+			List<Pending> same = distinct.get(pending.question);
+			if (same == null) {
+				same = new ArrayList<Pending>(1);
+				distinct.put(pending.question, same);
+			}
+			same.add(pending);
+		}
+		List<Annotation> annotations = annotate(distinct.keySet());
+		int i = 0;
+		for (Map.Entry<String, List<Pending>> entry : distinct.entrySet()) {
+			Annotation annotation = annotations == null ? null : annotations
+					.get(i++);
+			try {
+				ClassifiedTokens ct = annotation != null ? delegate
+						.classifyAnnotatedQuestion(annotation) : delegate
+						.classifyQuestionTokens(entry.getKey());
+				for (Pending pending : entry.getValue())
+					pending.future.complete(ct);
+			} catch (RuntimeException e) {
+				fail(entry.getValue(), e);
+			}
+		}
+		getMetrics().recordStage("batch", start);
+	}
+
+	/**
+	 * Annotate the questions of a batch together.
+	 *
+	 * @return the annotations, or <code>null</code> if the extractor has no
+	 *         pipeline or the batch could not be annotated, in which case the
+	 *         questions are classified one by one.
+	 */
+	private List<Annotation> annotate(Iterable<String> questions) {
+		SharedPipeline pipeline = delegate.getPipeline();
+		if (pipeline == null)
+			return null;
+		List<Annotation> annotations = new ArrayList<Annotation>();
+		for (String question : questions)
+			annotations.add(new Annotation(question));
+		try {
+			pipeline.annotateBatch(annotations, getMetrics());
+			return annotations;
+		} catch (RuntimeException e) {
+			// a single question may break the batch: annotate them apart
+			return null;
+		}
+	}
+
+	private static void fail(List<Pending> pendings, Throwable e) {
+		for (Pending pending : pendings)
+			pending.future.completeExceptionally(e);
+	}
+
+	/**
+	 * @return number of batches processed so far
+	 */
+	public long getBatches() {
+		return batchSizes.getCount();
+	}
+
+	/**
+	 * @return average number of questions of a batch
+	 */
+	public double getBatchSizeMean() {
+		return batchSizes.getMean();
+	}
+
+	/**
+	 * @return average share of the maximum batch size the batches filled,
+	 *         each batch against the maximum size it was collected with
+	 */
+	public double getBatchFill() {
+		long batches = batchSizes.getCount();
+		return batches == 0 ? 0.0 : batchFills.sum() / batches;
+	}
+
+	/**
+	 * @return time the questions of this extractor waited in the queue before
+	 *         their batch started
+	 */
+	public LatencyHistogram getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * @return number of questions waiting for a worker
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Stop the workers, fail the questions still waiting, and close the
+	 * extractor. The batches being processed are completed first.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (Thread worker : workers)
+			worker.interrupt();
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		List<Pending> left = new ArrayList<Pending>();
+		queue.drainTo(left);
+		fail(left, new IllegalStateException("Extractor closed"));
+		delegate.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+				"MicroBatchingExtractor [workers=%d, maxBatchSize=%d, "
+						+ "maxWait=%d us, batches=%d, batchSize=%.2f, "
+						+ "fill=%.2f, queue=%s]", workers.length,
+				maxBatchSize, getMaxWait(TimeUnit.MICROSECONDS), getBatches(),
+				getBatchSizeMean(), getBatchFill(), queueTime.summary());
+	}
+
+	/**
+	 * A question waiting for its batch.
+	 */
+	private static class Pending {
+
+		final String question;
+		final long queued = System.nanoTime();
+		final CompletableFuture<ClassifiedTokens> future = new CompletableFuture<ClassifiedTokens>();
+
+		Pending(String question) {
+			this.question = question;
+		}
+	}
+
+}
@@ -1,12 +1,7 @@
 package engine.core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
-import java.util.Set;
 
 import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
@@ -14,8 +9,8 @@ import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
+import engine.metrics.FlightEvents;
 import engine.util.NamedEntityTags;
 
 /**
@@ -28,96 +23,87 @@ import engine.util.NamedEntityTags;
  */
 public class NERExtractor extends Extractor {
 
-	private StanfordCoreNLP annotator;
-
 	public NERExtractor() {
-		Properties props = new Properties();
-		props.put("annotators", "tokenize, ssplit, pos, lemma, ner");
-		annotator = new StanfordCoreNLP(props);
+		super("tokenize, ssplit, pos, lemma, ner");
 	}
 
-	public ClassifiedTokens process(String question) {
+	public ClassifiedTokens process(Annotation questionAnnotations) {
 
-		ClassifiedTokens ct = new ClassifiedTokens();
-		Set<String> concepts = new HashSet<String>();
-		Annotation questionAnnotations = new Annotation(question);
-		annotator.annotate(questionAnnotations);
 		List<CoreMap> sentences = questionAnnotations
 				.get(SentencesAnnotation.class);
 
 		List<List<CoreLabel>> llcl = new ArrayList<List<CoreLabel>>();
-		Set<String> allTokens = new HashSet<String>();
-		for (CoreMap sentence : sentences) {
-			List<CoreLabel> coreLabels = sentence.get(TokensAnnotation.class);
-			for (CoreLabel coreLabel : coreLabels) {
-				allTokens.add(coreLabel.getString(TextAnnotation.class));
-			}
-			llcl.add(coreLabels);
+		for (CoreMap sentence : sentences)
+			llcl.add(sentence.get(TokensAnnotation.class));
+
+		long time = System.nanoTime();
+		String question = questionAnnotations.get(TextAnnotation.class);
+		Object event = FlightEvents.beginStage();
+		ClassifiedSpans spans = new ClassifiedSpans(question);
+		extractEntities(llcl, spans);
+		if (event != null) {
+			int tokens = 0;
+			for (List<CoreLabel> lcl : llcl)
+				tokens += lcl.size();
+			FlightEvents.endStage(event, getMetrics(), "groupByNE",
+					question.length(), tokens);
 		}
+		getMetrics().recordStage("entities", time);
 
-		HashMap<String, HashMap<String, Integer>> entities = extractEntities(llcl);
-		for (NamedEntityTags tag : NamedEntityTags.values()) {
-			if (entities.containsKey(tag.toString())) {
-				concepts.addAll(entities.get(tag.toString()).keySet());
+		// every token that is not an entity by itself is a not-concept
+		for (List<CoreLabel> lcl : llcl) {
+			for (CoreLabel cl : lcl) {
+				String word = cl.getString(TextAnnotation.class);
+				if (!spans.isConcept(word))
+					spans.addNotConcept(cl.beginPosition(), cl.endPosition(),
+							word);
 			}
 		}
 
-		ct.setConcepts(concepts);
-		allTokens.removeAll(concepts);
-		ct.setNotConcepts(allTokens);
+		ClassifiedTokens ct = new ClassifiedTokens();
+		ct.setSpans(spans);
 		return ct;
 	}
 
-	private HashMap<String, HashMap<String, Integer>> extractEntities(
-			List<List<CoreLabel>> llcl) {
-
-		HashMap<String, HashMap<String, Integer>> entities = new HashMap<String, HashMap<String, Integer>>();
-
+	/**
+	 * Add the sequences of tokens that have the same named entity tag as
+	 * concepts, when the tag is one of {@link NamedEntityTags}. An entity is
+	 * only complete when a token with another tag follows it, so an entity
+	 * that ends a sentence is not added.
+	 */
+	void extractEntities(List<List<CoreLabel>> llcl, ClassifiedSpans spans) {
+		StringBuilder value = new StringBuilder();
 		for (List<CoreLabel> lcl : llcl) {
-
-			Iterator<CoreLabel> iterator = lcl.iterator();
-
-			if (!iterator.hasNext())
-				continue;
-
-			CoreLabel cl = iterator.next();
-
-			while (iterator.hasNext()) {
-				String answer = cl.getString(NamedEntityTagAnnotation.class);
+			int n = lcl.size();
+			int i = 0;
+			while (i + 1 < n) {
+				String answer = lcl.get(i).getString(
+						NamedEntityTagAnnotation.class);
 
 				if (answer.equals("O")) {
-					cl = iterator.next();
+					i++;
 					continue;
 				}
 
-				if (!entities.containsKey(answer))
-					entities.put(answer, new HashMap<String, Integer>());
-
-				String value = cl.getString(TextAnnotation.class);
+				int first = i;
+				value.setLength(0);
+				value.append(lcl.get(i).getString(TextAnnotation.class));
 
-				while (iterator.hasNext()) {
-					cl = iterator.next();
+				while (i + 1 < n) {
+					CoreLabel cl = lcl.get(++i);
 					if (answer.equals(cl
-							.getString(NamedEntityTagAnnotation.class)))
-						value = value + " "
-								+ cl.getString(TextAnnotation.class);
-					else {
-						if (!entities.get(answer).containsKey(value))
-							entities.get(answer).put(value, 0);
-
-						entities.get(answer).put(value,
-								entities.get(answer).get(value) + 1);
-
+							.getString(NamedEntityTagAnnotation.class))) {
+						value.append(' ').append(
+								cl.getString(TextAnnotation.class));
+					} else {
+						if (NamedEntityTags.get(answer) != null)
+							spans.addConcept(lcl.get(first).beginPosition(),
+									lcl.get(i - 1).endPosition(), value);
 						break;
 					}
 				}
-
-				if (!iterator.hasNext())
-					break;
 			}
 		}
-
-		return entities;
 	}
 
 }
@@ -0,0 +1,255 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.ling.CoreAnnotations.DocDateAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Skips the "ner" annotator for the sentences that cannot contain a named
+ * entity, and tags their tokens "O" instead. <br/>
+ * The test runs after tokenize, ssplit and pos and is conservative: a
+ * sentence goes through NER if any of its tokens has a capital letter (but
+ * the first word of the sentence when it is a question or function word),
+ * has a digit, is tagged as a proper noun, a number or a currency, or is a
+ * number, date or time word the numeric and temporal classifiers recognize
+ * even in lower case, like "two", "first", "monday" or "tomorrow". <br/>
+ * In verify mode the skipped sentences are still annotated, and the gate
+ * counts the ones where NER found an entity, so the gate can be checked on
+ * real questions without changing any result.
+ */
+public class NerGate {
+
+	/**
+	 * Words that the numeric and temporal classifiers tag without a capital
+	 * letter or a digit.
+	 */
+	private static final Set<String> HINTS = new HashSet<String>(
+			Arrays.asList(
+					// numbers and ordinals
+					"zero", "one", "two", "three", "four", "five", "six",
+					"seven", "eight", "nine", "ten", "eleven", "twelve",
+					"thirteen", "fourteen", "fifteen", "sixteen", "seventeen",
+					"eighteen", "nineteen", "twenty", "thirty", "forty",
+					"fifty", "sixty", "seventy", "eighty", "ninety",
+					"hundred", "thousand", "million", "billion", "trillion",
+					"dozen", "dozens", "half", "quarter", "once", "twice",
+					"first", "second", "third", "fourth", "fifth", "sixth",
+					"seventh", "eighth", "ninth", "tenth", "eleventh",
+					"twelfth", "twentieth", "hundredth", "thousandth", "last",
+					"next", "percent", "%", "$", "#",
+					// currencies
+					"dollar", "dollars", "cent", "cents", "euro", "euros",
+					"pound", "pounds", "yen", "penny", "pence",
+					// dates and times
+					"january", "february", "march", "april", "may", "june",
+					"july", "august", "september", "october", "november",
+					"december", "monday", "tuesday", "wednesday", "thursday",
+					"friday", "saturday", "sunday", "today", "tomorrow",
+					"yesterday", "tonight", "now", "currently", "recently",
+					"present", "past", "future", "ago", "morning",
+					"afternoon", "evening", "night", "noon", "midnight",
+					"weekend", "spring", "summer", "autumn", "fall", "winter",
+					"seconds", "minute", "minutes", "hour", "hours",
+					"day", "days", "week", "weeks", "month", "months", "year",
+					"years", "decade", "decades", "century", "centuries",
+					"annual", "annually", "daily", "weekly", "monthly",
+					"yearly", "hourly", "christmas", "easter"));
+
+	/**
+	 * POS tags of the words that may start a sentence with a capital letter
+	 * without being part of a named entity.
+	 */
+	private static final Set<String> FUNCTION_TAGS = new HashSet<String>(
+			Arrays.asList("WDT", "WP", "WP$", "WRB", "DT", "PDT", "IN", "CC",
+					"PRP", "PRP$", "MD", "TO", "EX", "RB", "VB", "VBD", "VBG",
+					"VBN", "VBP", "VBZ", "UH"));
+
+	private final AtomicLong questions = new AtomicLong();
+	private final AtomicLong skippedQuestions = new AtomicLong();
+	private final AtomicLong sentences = new AtomicLong();
+	private final AtomicLong skippedSentences = new AtomicLong();
+	private final AtomicLong mismatches = new AtomicLong();
+	private volatile boolean verify;
+
+	/**
+	 * @param verify
+	 *            Whether the skipped sentences are annotated anyway to count
+	 *            the ones that did contain an entity.
+	 */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	/**
+	 * Run the NER annotator on the sentences of the annotation that may
+	 * contain an entity, and tag the tokens of the others "O".
+	 *
+	 * @param ner
+	 *            The "ner" annotator
+	 * @param annotation
+	 *            Annotation already tokenized and POS-tagged
+	 */
+	void annotate(Annotator ner, Annotation annotation) {
+		List<CoreMap> all = annotation.get(SentencesAnnotation.class);
+		if (all == null) {
+			ner.annotate(annotation);
+			return;
+		}
+		questions.incrementAndGet();
+		sentences.addAndGet(all.size());
+
+		List<CoreMap> candidates = new ArrayList<CoreMap>(all.size());
+		List<CoreMap> skipped = null;
+		for (CoreMap sentence : all) {
+			if (mayContainEntities(sentence)) {
+				candidates.add(sentence);
+			} else {
+				if (skipped == null)
+					skipped = new ArrayList<CoreMap>();
+				skipped.add(sentence);
+			}
+		}
+		if (skipped == null) {
+			ner.annotate(annotation);
+			return;
+		}
+
+		skippedSentences.addAndGet(skipped.size());
+		if (candidates.isEmpty())
+			skippedQuestions.incrementAndGet();
+		else
+			ner.annotate(subAnnotation(annotation, candidates));
+
+		if (verify) {
+			ner.annotate(subAnnotation(annotation, skipped));
+			for (CoreMap sentence : skipped) {
+				if (hasEntity(sentence))
+					mismatches.incrementAndGet();
+			}
+			return;
+		}
+		for (CoreMap sentence : skipped) {
+			for (CoreLabel cl : sentence.get(TokensAnnotation.class))
+				cl.set(NamedEntityTagAnnotation.class, "O");
+		}
+	}
+
+	/**
+	 * Whether a tokenized and POS-tagged sentence may contain a named entity.
+	 *
+	 * @param sentence
+	 *            Sentence to check
+	 * @return <code>false</code> only if no token looks like an entity
+	 */
+	public boolean mayContainEntities(CoreMap sentence) {
+		List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+		for (int i = 0; i < tokens.size(); i++) {
+			CoreLabel cl = tokens.get(i);
+			String word = cl.get(TextAnnotation.class);
+			String pos = cl.get(PartOfSpeechAnnotation.class);
+			if (pos == null || pos.startsWith("NNP") || pos.equals("CD")
+					|| pos.equals("$"))
+				return true;
+			boolean upper = false;
+			for (int j = 0; j < word.length(); j++) {
+				char c = word.charAt(j);
+				if (Character.isDigit(c))
+					return true;
+				if (Character.isUpperCase(c))
+					upper = true;
+			}
+			if (upper) {
+				if (i > 0 || !FUNCTION_TAGS.contains(pos))
+					return true;
+				if (HINTS.contains(word.toLowerCase()))
+					return true;
+			} else if (HINTS.contains(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Annotation subAnnotation(Annotation annotation,
+			List<CoreMap> sentences) {
+		Annotation sub = new Annotation(annotation.get(TextAnnotation.class));
+		String docDate = annotation.get(DocDateAnnotation.class);
+		if (docDate != null)
+			sub.set(DocDateAnnotation.class, docDate);
+		sub.set(SentencesAnnotation.class, sentences);
+		return sub;
+	}
+
+	private static boolean hasEntity(CoreMap sentence) {
+		for (CoreLabel cl : sentence.get(TokensAnnotation.class)) {
+			if (!"O".equals(cl.get(NamedEntityTagAnnotation.class)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of questions that went through the gate
+	 */
+	public long getQuestions() {
+		return questions.get();
+	}
+
+	/**
+	 * @return number of questions for which NER did not run at all
+	 */
+	public long getSkippedQuestions() {
+		return skippedQuestions.get();
+	}
+
+	/**
+	 * @return number of sentences that went through the gate
+	 */
+	public long getSentences() {
+		return sentences.get();
+	}
+
+	/**
+	 * @return number of sentences NER did not run on
+	 */
+	public long getSkippedSentences() {
+		return skippedSentences.get();
+	}
+
+	/**
+	 * @return number of skipped sentences in which NER found an entity, only
+	 *         counted in verify mode
+	 */
+	public long getMismatches() {
+		return mismatches.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+				"NerGate [questions=%d, skipped=%d, sentences=%d, "
+						+ "skippedSentences=%d, mismatches=%d]",
+				getQuestions(), getSkippedQuestions(), getSentences(),
+				getSkippedSentences(), getMismatches());
+	}
+
+}
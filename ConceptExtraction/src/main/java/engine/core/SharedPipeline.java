@@ -0,0 +1,387 @@
+package engine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+import engine.metrics.ExtractorMetrics;
+import engine.metrics.FlightEvents;
+
+/**
+ * A CoreNLP pipeline handed out by the {@link AnnotatorRegistry}. The same
+ * instance is shared by every extractor that asked for the same annotators,
+ * so it must only be used through {@link #annotate(Annotation)}, which CoreNLP
+ * allows to be called from several threads at once.
+ */
+public class SharedPipeline {
+
+	/**
+	 * System property that turns the {@link NerGate} off when set to
+	 * "false".
+	 */
+	public static final String NER_GATE_PROPERTY = "engine.nerGate";
+
+	/**
+	 * Annotators that only read and write the sentences of an annotation, so
+	 * the sentences of several questions can go through them at once.
+	 */
+	private static final Set<String> SENTENCE_ANNOTATORS = new HashSet<String>(
+			Arrays.asList("pos", "lemma", "ner", "regexner", "parse"));
+
+	private final String annotators;
+	private final StanfordCoreNLP pipeline;
+	private final String[] stageNames;
+	private final Annotator[] stages;
+	private final NerGate nerGate;
+	private final int batchStage;
+	private final long loadTimeMillis;
+	private final long heapBytes;
+	private int references;
+
+	SharedPipeline(String annotators, StanfordCoreNLP pipeline,
+			long loadTimeMillis, long heapBytes) {
+		this.annotators = annotators;
+		this.pipeline = pipeline;
+		this.loadTimeMillis = loadTimeMillis;
+		this.heapBytes = heapBytes;
+		this.stageNames = annotators.split(",");
+		this.stages = new Annotator[stageNames.length];
+		for (int i = 0; i < stageNames.length; i++)
+			stages[i] = StanfordCoreNLP.getExistingAnnotator(stageNames[i]);
+		this.nerGate = Arrays.asList(stageNames).contains("ner")
+				&& !"false".equals(System.getProperty(NER_GATE_PROPERTY)) ? new NerGate()
+				: null;
+		this.batchStage = batchStage(stageNames, stages);
+	}
+
+	/**
+	 * @return the first annotator after "ssplit", if all the annotators from
+	 *         there on work sentence by sentence, or -1
+	 */
+	private static int batchStage(String[] stageNames, Annotator[] stages) {
+		if (Arrays.asList(stages).contains(null))
+			return -1;
+		int first = Arrays.asList(stageNames).indexOf("ssplit") + 1;
+		if (first == 0)
+			return -1;
+		for (int i = first; i < stageNames.length; i++) {
+			if (!SENTENCE_ANNOTATORS.contains(stageNames[i]))
+				return -1;
+		}
+		return first;
+	}
+
+	/**
+	 * Run all the annotators of the pipeline on the given annotation.
+	 *
+	 * @param annotation
+	 *            Annotation to fill.
+	 */
+	public void annotate(Annotation annotation) {
+		pipeline.annotate(annotation);
+	}
+
+	/**
+	 * Run the annotators of the pipeline one by one, recording the time each
+	 * one takes as a stage of the given metrics, e.g. "pos" or "ner". The
+	 * "ner" annotator only runs on the sentences the {@link NerGate} lets
+	 * through. The whole annotation is an "annotate" {@link FlightEvents}
+	 * stage.
+	 *
+	 * @param annotation
+	 *            Annotation to fill.
+	 * @param metrics
+	 *            Metrics to record the stages to.
+	 */
+	public void annotate(Annotation annotation, ExtractorMetrics metrics) {
+		Object event = FlightEvents.beginStage();
+		annotateStages(annotation, metrics);
+		if (event != null)
+			endEvent(event, metrics, "annotate",
+					Collections.singletonList(annotation));
+	}
+
+	private void annotateStages(Annotation annotation, ExtractorMetrics metrics) {
+		long time = System.nanoTime();
+		for (int i = 0; i < stages.length; i++) {
+			if (stages[i] == null) {
+				// the annotator is not in CoreNLP's pool, time it all at once
+				pipeline.annotate(annotation);
+				metrics.recordStage("annotate", time);
+				return;
+			}
+		}
+		for (int i = 0; i < stages.length; i++) {
+			annotateStage(i, annotation);
+			time = metrics.recordStage(stageNames[i], time);
+		}
+	}
+
+	private void annotateStage(int i, Annotation annotation) {
+		if (nerGate != null && "ner".equals(stageNames[i]))
+			nerGate.annotate(stages[i], annotation);
+		else
+			stages[i].annotate(annotation);
+	}
+
+	/**
+	 * Run on an annotation only the annotators of the pipeline that did not
+	 * already run on it, e.g. "lemma" and "ner" on a question a
+	 * "tokenize,ssplit,pos" pipeline annotated, recording the stages like
+	 * {@link #annotate(Annotation, ExtractorMetrics)} does. The whole
+	 * annotation is an "annotateMissing" {@link FlightEvents} stage.
+	 *
+	 * @param annotation
+	 *            Annotation to complete.
+	 * @param annotators
+	 *            Normalized annotators that already ran on it, or
+	 *            <code>null</code> if none did.
+	 * @param metrics
+	 *            Metrics to record the stages to.
+	 * @return <code>false</code>, leaving the annotation alone, if an
+	 *         annotator is not in CoreNLP's pool so that the annotators
+	 *         cannot be run one by one
+	 */
+	public boolean annotateMissing(Annotation annotation, String annotators,
+			ExtractorMetrics metrics) {
+		if (Arrays.asList(stages).contains(null))
+			return false;
+		List<String> done = annotators == null ? Collections
+				.<String> emptyList() : Arrays.asList(annotators.split(","));
+		Object event = FlightEvents.beginStage();
+		long time = System.nanoTime();
+		for (int i = 0; i < stages.length; i++) {
+			if (done.contains(stageNames[i]))
+				continue;
+			annotateStage(i, annotation);
+			time = metrics.recordStage(stageNames[i], time);
+		}
+		if (event != null)
+			endEvent(event, metrics, "annotateMissing",
+					Collections.singletonList(annotation));
+		return true;
+	}
+
+	/**
+	 * Annotate several annotations in the calling thread like
+	 * {@link #annotate(Annotation, ExtractorMetrics)}, but with a single call
+	 * to every annotator after "ssplit", given the sentences of all of them
+	 * at once. The sentences are the ones of the annotations, so they get
+	 * annotated as if they had gone through the pipeline one by one. <br/>
+	 * The stages are recorded once for the whole batch, and the
+	 * {@link NerGate} counts it as a single question. If an annotator
+	 * follows that does not work sentence by sentence, the annotations are
+	 * annotated one by one. Should an annotator fail, the annotations may be
+	 * partly annotated.
+	 *
+	 * @param annotations
+	 *            Annotations to fill, holding only their text.
+	 * @param metrics
+	 *            Metrics to record the stages to.
+	 */
+	public void annotateBatch(List<Annotation> annotations,
+			ExtractorMetrics metrics) {
+		if (batchStage < 0 || annotations.size() < 2) {
+			for (Annotation annotation : annotations)
+				annotate(annotation, metrics);
+			return;
+		}
+		Object event = FlightEvents.beginStage();
+		annotateStages(annotations, metrics);
+		if (event != null)
+			endEvent(event, metrics, "annotateBatch", annotations);
+	}
+
+	private void annotateStages(List<Annotation> annotations,
+			ExtractorMetrics metrics) {
+		long time = System.nanoTime();
+		for (int i = 0; i < batchStage; i++) {
+			for (Annotation annotation : annotations)
+				stages[i].annotate(annotation);
+			time = metrics.recordStage(stageNames[i], time);
+		}
+		if (batchStage == stages.length)
+			return;
+
+		StringBuilder text = new StringBuilder();
+		List<CoreMap> sentences = new ArrayList<CoreMap>();
+		for (Annotation annotation : annotations) {
+			text.append(annotation.get(TextAnnotation.class)).append('\n');
+			sentences.addAll(annotation.get(SentencesAnnotation.class));
+		}
+		Annotation batch = new Annotation(text.toString());
+		batch.set(SentencesAnnotation.class, sentences);
+		for (int i = batchStage; i < stages.length; i++) {
+			annotateStage(i, batch);
+			time = metrics.recordStage(stageNames[i], time);
+		}
+	}
+
+	private static void endEvent(Object event, ExtractorMetrics metrics,
+			String stage, List<Annotation> annotations) {
+		int length = 0;
+		int tokens = 0;
+		for (Annotation annotation : annotations) {
+			length += annotation.get(TextAnnotation.class).length();
+			List<CoreLabel> labels = annotation.get(TokensAnnotation.class);
+			if (labels != null)
+				tokens += labels.size();
+		}
+		FlightEvents.endStage(event, metrics, stage, length, tokens);
+	}
+
+	/**
+	 * Annotate a batch of questions on a pool of the given number of threads,
+	 * e.g. once for all the extractors that are evaluated on them.
+	 *
+	 * @param questions
+	 *            Questions to annotate
+	 * @param threads
+	 *            Number of threads to use.
+	 * @param metrics
+	 *            Metrics to record the stages to.
+	 * @return the annotations, in the same order as the questions, with
+	 *         <code>null</code> for the questions that could not be annotated.
+	 */
+	public List<Annotation> annotateAll(List<String> questions, int threads,
+			ExtractorMetrics metrics) {
+		return annotateAll(questions, threads, metrics, null);
+	}
+
+	/**
+	 * Annotate a batch of questions like
+	 * {@link #annotateAll(List, int, ExtractorMetrics)}, reading the
+	 * annotations from a cache when they are in it, and writing them to it
+	 * otherwise.
+	 *
+	 * @param questions
+	 *            Questions to annotate
+	 * @param threads
+	 *            Number of threads to use.
+	 * @param metrics
+	 *            Metrics to record the stages to.
+	 * @param cache
+	 *            Cache of the annotations of this pipeline, or
+	 *            <code>null</code>
+	 * @return the annotations, in the same order as the questions, with
+	 *         <code>null</code> for the questions that could not be annotated.
+	 */
+	public List<Annotation> annotateAll(List<String> questions, int threads,
+			final ExtractorMetrics metrics, final AnnotationCache cache) {
+		if (cache != null && cache.getPipeline() != this)
+			throw new IllegalArgumentException("Cache of another pipeline: "
+					+ cache);
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+		List<Annotation> annotations = new ArrayList<Annotation>(
+				questions.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, Math.max(1, questions.size())));
+		try {
+			List<Future<Annotation>> futures = new ArrayList<Future<Annotation>>(
+					questions.size());
+			for (final String question : questions) {
+				futures.add(executor.submit(new Callable<Annotation>() {
+					public Annotation call() {
+						if (cache != null)
+							return cache.annotate(question, metrics);
+						Annotation annotation = new Annotation(question);
+						annotate(annotation, metrics);
+						return annotation;
+					}
+				}));
+			}
+			for (Future<Annotation> future : futures) {
+				try {
+					annotations.add(future.get());
+				} catch (ExecutionException e) {
+					annotations.add(null);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while annotating", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return annotations;
+	}
+
+	/**
+	 * @return the gate in front of the "ner" annotator, or <code>null</code>
+	 *         if the pipeline has no such annotator or the gate is off
+	 */
+	public NerGate getNerGate() {
+		return nerGate;
+	}
+
+	/**
+	 * @return the normalized annotators list, e.g. "tokenize,ssplit,pos"
+	 */
+	public String getAnnotators() {
+		return annotators;
+	}
+
+	/**
+	 * @return the time it took to load the models of the pipeline
+	 */
+	public long getLoadTimeMillis() {
+		return loadTimeMillis;
+	}
+
+	/**
+	 * Get the heap the pipeline took when it was loaded. Models that were
+	 * already loaded for another pipeline are not counted again.
+	 *
+	 * @return approximate number of bytes
+	 */
+	public long getHeapBytes() {
+		return heapBytes;
+	}
+
+	/**
+	 * @return number of extractors currently using the pipeline
+	 */
+	public synchronized int getReferences() {
+		return references;
+	}
+
+	synchronized int retain() {
+		return ++references;
+	}
+
+	synchronized int release() {
+		return --references;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("[%s, references=%d, load=%d ms, heap=%.1f MB%s]",
+				annotators, getReferences(), loadTimeMillis,
+				heapBytes / (1024.0 * 1024.0), nerGate == null ? "" : ", "
+						+ nerGate);
+	}
+
+}
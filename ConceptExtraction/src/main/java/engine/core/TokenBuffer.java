@@ -0,0 +1,253 @@
+package engine.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import engine.util.NamedEntityTags;
+import engine.util.PartOfSpeechTags;
+import engine.util.ScratchPool;
+
+/**
+ * The tokens of a question and the groups they are merged into, kept in
+ * parallel primitive arrays that are reused from one question to the next.
+ * <br/>
+ * Token <code>i</code> has its text in <code>words[i]</code>, its offsets in
+ * the question in <code>begins[i]</code> and <code>ends[i]</code>, and its
+ * tags as the ordinals of {@link PartOfSpeechTags} and
+ * {@link NamedEntityTags}, or {@link #NO_TAG}. <br/>
+ * A group <code>g</code> covers the tokens from <code>groupStarts[g]</code>
+ * to <code>groupEnds[g]</code> excluded, and the groups of the question are
+ * listed, in order, by the group ids in <code>sequence</code>. The same id may
+ * be listed twice, like a candidate concept that is added twice to a list.
+ * <br/>
+ * Every call leases its own buffer with {@link #get()} and gives it back with
+ * {@link #release()}, so the arrays only grow with the longest question a
+ * buffer has seen, nothing is allocated per token, and there are only as
+ * many buffers as questions classified at once.
+ */
+final class TokenBuffer {
+
+	static final int NO_TAG = -1;
+
+	private static final PartOfSpeechTags[] POS_TAGS = PartOfSpeechTags
+			.values();
+
+	/**
+	 * Part-of-speech group of every {@link PartOfSpeechTags} ordinal: 'N' for
+	 * nouns, 'V' for verbs, 'J' for adjectives and 0 for the others.
+	 */
+	private static final char[] POS_GROUPS = new char[POS_TAGS.length];
+
+	static {
+		for (PartOfSpeechTags tag : POS_TAGS) {
+			if (tag.isNoun())
+				POS_GROUPS[tag.ordinal()] = 'N';
+			else if (tag.isVerb())
+				POS_GROUPS[tag.ordinal()] = 'V';
+			else if (tag.isAdjective())
+				POS_GROUPS[tag.ordinal()] = 'J';
+		}
+	}
+
+	private static final ScratchPool<TokenBuffer> BUFFERS = new ScratchPool<TokenBuffer>() {
+		@Override
+		protected TokenBuffer create() {
+			return new TokenBuffer();
+		}
+	};
+
+	int size;
+	String[] words = new String[32];
+	int[] begins = new int[32];
+	int[] ends = new int[32];
+	int[] posTags = new int[32];
+	int[] neTags = new int[32];
+	double[] depths = new double[32];
+
+	int[] groupStarts = new int[32];
+	int[] groupEnds = new int[32];
+	double[] groupDepths = new double[32];
+
+	int sequenceSize;
+	int[] sequence = new int[32];
+	private int[] nextSequence = new int[32];
+	private int nextSequenceSize;
+
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * @return an empty buffer no other call holds, to be given back with
+	 *         {@link #release()}
+	 */
+	static TokenBuffer get() {
+		TokenBuffer buffer = BUFFERS.lease();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Give the buffer back to the pool once the question is classified. It
+	 * must not be used afterwards.
+	 */
+	void release() {
+		BUFFERS.release(this);
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++)
+			words[i] = null;
+		size = 0;
+		sequenceSize = 0;
+	}
+
+	/**
+	 * Add the tokens of the sentences, each one in its own group.
+	 *
+	 * @param sentences
+	 *            Sentences with tokens annotated
+	 */
+	void addSentences(List<CoreMap> sentences) {
+		for (CoreMap sentence : sentences) {
+			List<CoreLabel> labels = sentence.get(TokensAnnotation.class);
+			for (CoreLabel cl : labels)
+				add(cl);
+		}
+	}
+
+	/**
+	 * Add a token in its own group.
+	 *
+	 * @param cl
+	 *            Token to add
+	 * @return the index of the token
+	 */
+	int add(CoreLabel cl) {
+		if (size == words.length)
+			growTokens();
+		int i = size++;
+		words[i] = cl.get(TextAnnotation.class);
+		begins[i] = cl.beginPosition();
+		ends[i] = cl.endPosition();
+		posTags[i] = ordinal(PartOfSpeechTags.get(cl
+				.get(PartOfSpeechAnnotation.class)));
+		neTags[i] = ordinal(NamedEntityTags.get(cl
+				.get(NamedEntityTagAnnotation.class)));
+		depths[i] = 0.0;
+
+		groupStarts[i] = i;
+		groupEnds[i] = i + 1;
+		groupDepths[i] = 0.0;
+		if (sequenceSize == sequence.length)
+			sequence = Arrays.copyOf(sequence, sequence.length * 2);
+		sequence[sequenceSize++] = i;
+		return i;
+	}
+
+	private static int ordinal(Enum<?> tag) {
+		return tag == null ? NO_TAG : tag.ordinal();
+	}
+
+	/**
+	 * @return the part-of-speech group of the token: 'N', 'V', 'J' or 0 if
+	 *         it is none of a noun, a verb or an adjective
+	 */
+	char posGroup(int token) {
+		int pos = posTags[token];
+		return pos == NO_TAG ? 0 : POS_GROUPS[pos];
+	}
+
+	boolean isSingleToken(int group) {
+		return groupEnds[group] - groupStarts[group] == 1;
+	}
+
+	/**
+	 * Append a group to the one just before it in the question.
+	 */
+	void merge(int group, int next) {
+		groupEnds[group] = groupEnds[next];
+	}
+
+	/**
+	 * Start building a new sequence of groups, e.g. while merging them. The
+	 * current sequence stays readable until {@link #endSequence()}.
+	 */
+	void startSequence() {
+		// merging may list the last group twice, and a selection of the
+		// tokens may be longer than the current sequence
+		int capacity = Math.max(sequenceSize, size);
+		if (nextSequence.length <= capacity)
+			nextSequence = new int[capacity * 2];
+		nextSequenceSize = 0;
+	}
+
+	/**
+	 * Add a group to the sequence being built.
+	 */
+	void append(int group) {
+		nextSequence[nextSequenceSize++] = group;
+	}
+
+	/**
+	 * Replace the current sequence by the one built since
+	 * {@link #startSequence()}.
+	 */
+	void endSequence() {
+		int[] previous = sequence;
+		sequence = nextSequence;
+		sequenceSize = nextSequenceSize;
+		nextSequence = previous;
+	}
+
+	/**
+	 * Get the words of a group separated by a space. The returned builder is
+	 * reused by the next call.
+	 */
+	CharSequence groupText(int group) {
+		return text(groupStarts[group], groupEnds[group]);
+	}
+
+	/**
+	 * Get the words of the tokens from <code>from</code> to <code>to</code>
+	 * excluded separated by a space. The returned builder is reused by the
+	 * next call.
+	 */
+	CharSequence text(int from, int to) {
+		text.setLength(0);
+		for (int i = from; i < to; i++) {
+			if (i > from)
+				text.append(' ');
+			text.append(words[i]);
+		}
+		return text;
+	}
+
+	/**
+	 * @return the words of a group as a new string, or the word itself for a
+	 *         single token
+	 */
+	String groupString(int group) {
+		if (isSingleToken(group))
+			return words[groupStarts[group]].trim();
+		return groupText(group).toString().trim();
+	}
+
+	private void growTokens() {
+		int capacity = words.length * 2;
+		words = Arrays.copyOf(words, capacity);
+		begins = Arrays.copyOf(begins, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+		posTags = Arrays.copyOf(posTags, capacity);
+		neTags = Arrays.copyOf(neTags, capacity);
+		depths = Arrays.copyOf(depths, capacity);
+		groupStarts = Arrays.copyOf(groupStarts, capacity);
+		groupEnds = Arrays.copyOf(groupEnds, capacity);
+		groupDepths = Arrays.copyOf(groupDepths, capacity);
+	}
+
+}
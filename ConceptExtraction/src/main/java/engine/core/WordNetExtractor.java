@@ -1,25 +1,18 @@
 package engine.core;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
-import java.util.Set;
 
 import edu.smu.tspell.wordnet.NounSynset;
 import edu.smu.tspell.wordnet.Synset;
 import edu.smu.tspell.wordnet.SynsetType;
 import edu.smu.tspell.wordnet.WordNetDatabase;
-import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
-import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
-import engine.util.PartOfSpeechTags;
+import engine.metrics.FlightEvents;
+import engine.wordnet.HypernymDepthIndex;
+import engine.wordnet.WordNetLexicon;
 
 /**
  * Initial extract based on <b>WordNet</b>. This approach still needs a lot of
@@ -38,160 +31,264 @@ import engine.util.PartOfSpeechTags;
  * @author Samer
  * 
  */
-public class WordNetExtractor extends Extractor {
+public class WordNetExtractor extends Extractor implements
+		DepthThresholdExtractor {
 
 	/**
-	 * Factor that specifies how much above-average that token average-depth
-	 * needs to be, in order for the extractor to select it as a concept.
+	 * Default factor that specifies how much above-average that token
+	 * average-depth needs to be, in order for the extractor to select it as a
+	 * concept.
 	 */
 	public static final double FACTOR_OF_AVG_DEPTH = 1.5;
 
-	private StanfordCoreNLP annotator;
 	private WordNetDatabase wnDatabase;
+	private HypernymDepthIndex depthIndex;
+	private WordNetLexicon lexicon;
+	private volatile double factorOfAvgDepth = FACTOR_OF_AVG_DEPTH;
 
 	public WordNetExtractor() {
-		Properties props = new Properties();
-		props.put("annotators", "tokenize, ssplit, pos");
-		annotator = new StanfordCoreNLP(props);
+		super("tokenize, ssplit, pos");
 		System.setProperty("wordnet.database.dir", "./dict/");
 		wnDatabase = WordNetDatabase.getFileInstance();
+		depthIndex = HypernymDepthIndex.openDefault();
+		if (depthIndex == null)
+			lexicon = WordNetLexicon.openDefault();
 	}
 
-	public ClassifiedTokens process(String question) {
+	public double getFactorOfAvgDepth() {
+		return factorOfAvgDepth;
+	}
+
+	public void setFactorOfAvgDepth(double factor) {
+		this.factorOfAvgDepth = factor;
+	}
+
+	public ClassifiedTokens process(Annotation questionAnnotations) {
+		return process(questionAnnotations, null);
+	}
 
-		Annotation questionAnnotations = new Annotation(question);
-		annotator.annotate(questionAnnotations);
+	@Override
+	ClassifiedTokens process(Annotation questionAnnotations, DepthRatios ratios) {
+		TokenBuffer tokens = TokenBuffer.get();
+		try {
+			double avgAllDepth = computeDepths(tokens, questionAnnotations);
+			if (ratios != null)
+				ratios(tokens, avgAllDepth, ratios);
+			long time = System.nanoTime();
+			String question = questionAnnotations.get(TextAnnotation.class);
+			Object event = FlightEvents.beginStage();
+			ClassifiedTokens ct = classify(question, tokens, factorOfAvgDepth
+					* avgAllDepth);
+			FlightEvents.endStage(event, getMetrics(), "groupByPOS",
+					question.length(), tokens.size);
+			getMetrics().recordStage("grouping", time);
+			return ct;
+		} finally {
+			tokens.release();
+		}
+	}
+
+	public DepthProfile profileAnnotatedQuestion(
+			Annotation questionAnnotations) {
+		TokenBuffer tokens = TokenBuffer.get();
+		try {
+			return profile(tokens, questionAnnotations);
+		} finally {
+			tokens.release();
+		}
+	}
+
+	private DepthProfile profile(TokenBuffer tokens,
+			Annotation questionAnnotations) {
+		double avgAllDepth = computeDepths(tokens, questionAnnotations);
+		String question = questionAnnotations.get(TextAnnotation.class);
+		if (!(avgAllDepth > 0))
+			return new DepthProfile(new double[0],
+					new ClassifiedTokens[] { classify(question, tokens,
+							avgAllDepth) });
+
+		double[] depths = new double[tokens.size];
+		int n = 0;
+		for (int i = 0; i < tokens.size; i++) {
+			if (tokens.posTags[i] != TokenBuffer.NO_TAG)
+				depths[n++] = tokens.depths[i];
+		}
+		depths = DepthProfile.distinct(depths, n);
+		double[] ratios = new double[depths.length];
+		ClassifiedTokens[] classifications = new ClassifiedTokens[depths.length + 1];
+		for (int j = 0; j < depths.length; j++) {
+			ratios[j] = depths[j] / avgAllDepth;
+			classifications[j] = classify(question, tokens, depths[j]);
+		}
+		classifications[depths.length] = classify(question, tokens,
+				Double.POSITIVE_INFINITY);
+		return new DepthProfile(ratios, classifications);
+	}
+
+	/**
+	 * Fill the ratios of the depths of the tagged tokens to the average
+	 * depth, none if it is not positive.
+	 */
+	private static void ratios(TokenBuffer tokens, double avgAllDepth,
+			DepthRatios ratios) {
+		ratios.clear();
+		if (!(avgAllDepth > 0))
+			return;
+		for (int i = 0; i < tokens.size; i++) {
+			if (tokens.posTags[i] != TokenBuffer.NO_TAG)
+				ratios.add(tokens.depths[i] / avgAllDepth);
+		}
+	}
+
+	/**
+	 * Put the tokens of the question in the token buffer with their depths,
+	 * as a "depths" {@link FlightEvents} stage.
+	 *
+	 * @return the average depth of the tagged tokens
+	 */
+	private double computeDepths(TokenBuffer tokens,
+			Annotation questionAnnotations) {
 		List<CoreMap> sentences = questionAnnotations
 				.get(SentencesAnnotation.class);
 
-		List<TokenData> allTokens = new ArrayList<TokenData>();
-		int index = 0;
-		for (CoreMap sentence : sentences) {
-			List<CoreLabel> coreLabels = sentence.get(TokensAnnotation.class);
-			for (CoreLabel coreLabel : coreLabels) {
-				String word = coreLabel.getString(TextAnnotation.class);
-				PartOfSpeechTags lblPOSTag = PartOfSpeechTags.get(coreLabel
-						.getString(PartOfSpeechAnnotation.class));
-
-				if (lblPOSTag != null) {
-					TokenData tokenData = new TokenData(index, lblPOSTag,
-							coreLabel);
-					if (lblPOSTag.isNoun() || lblPOSTag.isVerb()
-							|| lblPOSTag.isAdjective()) {
-						Synset[] synsets = wnDatabase.getSynsets(word,
-								SynsetType.NOUN);
-						if (synsets != null && synsets.length > 0) {
-							tokenData = new TokenData(index, lblPOSTag,
-									coreLabel, synsets);
-						}
+		long time = System.nanoTime();
+		Object event = FlightEvents.beginStage();
+		tokens.addSentences(sentences);
+		int lookups = 0;
+		int tagged = 0;
+		double avgAllDepth = 0.0;
+		for (int i = 0; i < tokens.size; i++) {
+			if (tokens.posTags[i] == TokenBuffer.NO_TAG)
+				continue;
+			tagged++;
+			if (tokens.posGroup(i) != 0) {
+				lookups++;
+				Object lookup = FlightEvents.beginLookup();
+				if (depthIndex != null) {
+					double depth = depthIndex.averageDepth(tokens.words[i]);
+					FlightEvents.endLookup(lookup, tokens.words[i],
+							FlightEvents.INDEX, Double.isNaN(depth) ? 0 : -1,
+							depth);
+					if (!Double.isNaN(depth))
+						tokens.depths[i] = depth;
+				} else if (lexicon != null) {
+					// the count is only needed by a recorded event
+					int[] synsetCount = lookup != null ? new int[1] : null;
+					double depth = lexicon.averageDepth(tokens.words[i],
+							synsetCount);
+					FlightEvents.endLookup(lookup, tokens.words[i],
+							FlightEvents.LEXICON, synsetCount != null
+									? synsetCount[0] : 0, depth);
+					if (!Double.isNaN(depth))
+						tokens.depths[i] = depth;
+				} else {
+					Synset[] synsets = wnDatabase.getSynsets(tokens.words[i],
+							SynsetType.NOUN);
+					double depth = Double.NaN;
+					if (synsets != null && synsets.length > 0) {
+						depth = avgDepth(synsets);
+						tokens.depths[i] = depth;
 					}
-					allTokens.add(tokenData);
+					FlightEvents.endLookup(lookup, tokens.words[i],
+							FlightEvents.JAWS, synsets == null ? 0
+									: synsets.length, depth);
 				}
-				index++;
 			}
+			avgAllDepth += tokens.depths[i];
 		}
+		avgAllDepth /= tagged;
+		if (event != null)
+			FlightEvents.endStage(event, getMetrics(), "depths",
+					questionAnnotations.get(TextAnnotation.class).length(),
+					tokens.size);
+		getMetrics().countWordNetLookups(lookups);
+		getMetrics().recordStage("wordnet", time);
+		return avgAllDepth;
+	}
 
-		double avgAllDepth = 0.0;
-		for (TokenData td : allTokens)
-			avgAllDepth += td.depth;
-		avgAllDepth /= allTokens.size();
-
-		List<TokenData> selectedTokens = new ArrayList<TokenData>();
-		Set<String> notConcepts = new HashSet<String>();
-		for (TokenData td : allTokens) {
-			if (Double.compare(td.depth, FACTOR_OF_AVG_DEPTH * avgAllDepth) >= 0)
-				selectedTokens.add(td);
+	/**
+	 * Select the tagged tokens whose depth is at least the threshold, and
+	 * group them.
+	 */
+	private ClassifiedTokens classify(String question, TokenBuffer tokens,
+			double threshold) {
+		ClassifiedSpans spans = new ClassifiedSpans(question);
+		// the selected tokens replace the sequence of groups
+		tokens.startSequence();
+		for (int i = 0; i < tokens.size; i++) {
+			if (tokens.posTags[i] == TokenBuffer.NO_TAG)
+				continue;
+			if (Double.compare(tokens.depths[i], threshold) >= 0)
+				tokens.append(i);
 			else
-				notConcepts.add(td.tokenLbl.get(TextAnnotation.class));
+				spans.add(false, tokens, i, i + 1);
 		}
-		Set<String> concepts = new HashSet<String>(groupTokens(selectedTokens));
+		tokens.endSequence();
+		groupTokens(tokens, spans);
 
 		ClassifiedTokens ct = new ClassifiedTokens();
-		ct.setConcepts(concepts);
-		ct.setNotConcepts(notConcepts);
+		ct.setSpans(spans);
 		return ct;
 	}
 
-	private List<String> groupTokens(List<TokenData> selectedTokens) {
-		List<String> concepts = new ArrayList<String>();
-		if (selectedTokens.size() == 0)
-			return concepts;
-		Iterator<TokenData> itr = selectedTokens.iterator();
-		TokenData currToken = itr.next();
-		while (itr.hasNext()) {
-			String tmp = currToken.tokenLbl.get(TextAnnotation.class);
-			PartOfSpeechTags tmpPOS = currToken.pos;
-			int prevIndx = currToken.index;
-
-			while (itr.hasNext()) {
-				currToken = itr.next();
-				if (currToken.index == prevIndx + 1 && currToken.pos == tmpPOS) {
-					tmp = tmp + " "
-							+ currToken.tokenLbl.get(TextAnnotation.class);
+	/**
+	 * Join every selected token with the next one when it immediately
+	 * follows it in the question and has the same POS tag, and add the groups
+	 * as concepts.
+	 */
+	private void groupTokens(TokenBuffer tokens, ClassifiedSpans spans) {
+		int n = tokens.sequenceSize;
+		int[] selectedTokens = tokens.sequence;
+		if (n == 0)
+			return;
+		int next = 0;
+		int currToken = selectedTokens[next++];
+		while (next < n) {
+			int tmpPOS = tokens.posTags[currToken];
+			int prevIndx = currToken;
+			int last = currToken;
+
+			while (next < n) {
+				currToken = selectedTokens[next++];
+				if (currToken == prevIndx + 1
+						&& tokens.posTags[currToken] == tmpPOS) {
+					last = currToken;
 				} else
 					break;
 			}
 
-			concepts.add(tmp);
-			if (!itr.hasNext()) {
-				concepts.add(currToken.tokenLbl.get(TextAnnotation.class));
+			spans.add(true, tokens, prevIndx, last + 1);
+			if (next == n) {
+				spans.add(true, tokens, currToken, currToken + 1);
 			}
 		}
-		return concepts;
 	}
 
 	/**
-	 * Wrapper class that holds every token information.
-	 * 
-	 * @author Samer
-	 * 
+	 * Average length of the hypernym paths from the synsets to the root.
 	 */
-	private class TokenData {
-		int index;
-		PartOfSpeechTags pos;
-		CoreLabel tokenLbl;
-		Synset[] tokenSyns = null;
+	private static double avgDepth(Synset[] synsets) {
 		double depth = 0.0;
-
-		public TokenData(int index, PartOfSpeechTags pos, CoreLabel lbl) {
-			this.index = index;
-			this.pos = pos;
-			tokenLbl = lbl;
-		}
-
-		public TokenData(int index, PartOfSpeechTags pos, CoreLabel lbl,
-				Synset[] synsets) {
-			this.index = index;
-			this.pos = pos;
-			tokenLbl = lbl;
-			tokenSyns = synsets;
-			for (Synset synset : tokenSyns) {
-				boolean terminate = false;
-				List<String> path = new ArrayList<String>();
-				NounSynset syns = (NounSynset) synset;
-				while (!terminate) {
-					String word = syns.getWordForms()[0];
-					path.add(word);
-					NounSynset[] hyper = syns.getHypernyms();
-					NounSynset[] instHyper = syns.getInstanceHypernyms();
-					terminate = hyper.length == 0 && instHyper.length == 0;
-					if (!terminate) {
-						if (hyper.length > 0)
-							syns = hyper[0];
-						else
-							syns = instHyper[0];
-					}
+		for (Synset synset : synsets) {
+			boolean terminate = false;
+			int pathSize = 0;
+			NounSynset syns = (NounSynset) synset;
+			while (!terminate) {
+				pathSize++;
+				NounSynset[] hyper = syns.getHypernyms();
+				NounSynset[] instHyper = syns.getInstanceHypernyms();
+				terminate = hyper.length == 0 && instHyper.length == 0;
+				if (!terminate) {
+					if (hyper.length > 0)
+						syns = hyper[0];
+					else
+						syns = instHyper[0];
 				}
-
-				depth += path.size();
 			}
-			depth /= tokenSyns.length;
-		}
 
-		public String toString() {
-			return String.format("[%s, %s, %d, %.4f]",
-					tokenLbl.get(TextAnnotation.class), pos, index, depth);
+			depth += pathSize;
 		}
+		return depth / synsets.length;
 	}
 
 }
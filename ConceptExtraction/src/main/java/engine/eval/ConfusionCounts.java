@@ -0,0 +1,137 @@
+package engine.eval;
+
+import java.util.Collection;
+import java.util.Set;
+
+import engine.core.Extractor.ClassifiedTokens;
+
+/**
+ * Confusion matrix counts of an extractor over a set of questions. Instances
+ * are not thread-safe: every worker keeps its own counts and they are
+ * combined with {@link #merge(ConfusionCounts)} once the workers are done.
+ */
+public class ConfusionCounts {
+
+	private long truePos;
+	private long falsePos;
+	private long trueNeg;
+	private long falseNeg;
+
+	public ConfusionCounts() {
+	}
+
+	ConfusionCounts(long truePos, long falsePos, long trueNeg, long falseNeg) {
+		this.truePos = truePos;
+		this.falsePos = falsePos;
+		this.trueNeg = trueNeg;
+		this.falseNeg = falseNeg;
+	}
+
+	/**
+	 * Count the tokens of one question against its ground-truth concepts.
+	 *
+	 * @param tokens
+	 *            Classification returned by the extractor.
+	 * @param gtConcepts
+	 *            Ground-truth concepts of the question.
+	 */
+	public void count(ClassifiedTokens tokens, Set<String> gtConcepts) {
+		Collection<String> retrieved = tokens.getConcepts();
+		Collection<String> notRetrieved = tokens.getNotConcepts();
+
+		for (String retCon : retrieved) {
+			if (gtConcepts.contains(retCon))
+				truePos++;
+			else
+				falsePos++;
+		}
+
+		for (String nRetCon : notRetrieved) {
+			if (gtConcepts.contains(nRetCon))
+				falseNeg++;
+			else
+				trueNeg++;
+		}
+	}
+
+	/**
+	 * Add the counts of another worker to these counts.
+	 *
+	 * @param other
+	 *            Counts to add.
+	 */
+	public void merge(ConfusionCounts other) {
+		truePos += other.truePos;
+		falsePos += other.falsePos;
+		trueNeg += other.trueNeg;
+		falseNeg += other.falseNeg;
+	}
+
+	/**
+	 * Set all the counts back to zero.
+	 */
+	public void reset() {
+		truePos = falsePos = trueNeg = falseNeg = 0;
+	}
+
+	public long getTruePos() {
+		return truePos;
+	}
+
+	public long getFalsePos() {
+		return falsePos;
+	}
+
+	public long getTrueNeg() {
+		return trueNeg;
+	}
+
+	public long getFalseNeg() {
+		return falseNeg;
+	}
+
+	/**
+	 * @return fraction of the retrieved concepts that are ground-truth
+	 *         concepts
+	 */
+	public double getPrecision() {
+		return ((double) truePos) / (truePos + falsePos);
+	}
+
+	/**
+	 * @return fraction of the ground-truth concepts that were retrieved
+	 */
+	public double getRecall() {
+		return ((double) truePos) / (truePos + falseNeg);
+	}
+
+	/**
+	 * @return fraction of the tokens that were classified correctly
+	 */
+	public double getAccuracy() {
+		return ((double) (truePos + trueNeg))
+				/ (truePos + falsePos + trueNeg + falseNeg);
+	}
+
+	/**
+	 * @return harmonic mean of the precision and the recall
+	 */
+	public double getFMeasure() {
+		double p = getPrecision();
+		double r = getRecall();
+		return (2.0 * p * r) / (p + r);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ConfusionCounts [truePos=" + truePos + ", falsePos="
+				+ falsePos + ", trueNeg=" + trueNeg + ", falseNeg=" + falseNeg
+				+ "]";
+	}
+
+}
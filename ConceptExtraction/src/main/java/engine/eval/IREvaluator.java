@@ -1,12 +1,14 @@
 package engine.eval;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import edu.stanford.nlp.pipeline.Annotation;
 import engine.core.Extractor;
-import engine.core.Extractor.ClassifiedTokens;
 
 /**
  * Evaluator that is used to compute IR metrics to measure the performance of
@@ -17,12 +19,16 @@ import engine.core.Extractor.ClassifiedTokens;
  */
 public class IREvaluator {
 
+	/**
+	 * Number of questions below which a parallel evaluation task is not split
+	 * any further.
+	 */
+	private static final int MIN_TASK_QUESTIONS = 16;
+
 	private List<String> questions;
 	private List<List<String>> concepts;
-	private int truePos;
-	private int falsePos;
-	private int trueNeg;
-	private int falseNeg;
+	private ConfusionCounts counts = new ConfusionCounts();
+	private List<Integer> failedQuestions = new ArrayList<Integer>();
 
 	/**
 	 * Create an instance of the evaluator given questions and their
@@ -53,42 +59,126 @@ public class IREvaluator {
 	 *            Extractor to be evaluated.
 	 */
 	public void eval(Extractor extractor) {
-		int N = questions.size();
-		for (int i = 0; i < N; i++) {
-			String q = questions.get(i);
-			try {
-				Set<String> gtConcepts = new HashSet<String>(concepts.get(i));
-
-				// process the current question
-				ClassifiedTokens tokens = extractor.classifyQuestionTokens(q);
-				Collection<String> retrieved = tokens.getConcepts();
-				Collection<String> notRetrieved = tokens.getNotConcepts();
-
-				for (String retCon : retrieved) {
-					if (gtConcepts.contains(retCon))
-						truePos++;
-					else
-						falsePos++;
-				}
+		EvalTask task = new EvalTask(extractor, null, 0, questions.size());
+		task.evalRange();
+		merge(task);
+	}
 
-				for (String nRetCon : notRetrieved) {
-					if (gtConcepts.contains(nRetCon))
-						falseNeg++;
-					else
-						trueNeg++;
-				}
-			} catch (Exception e) {
-				System.err.println("Question #" + i + ": " + q);
-				e.printStackTrace();
+	/**
+	 * Evaluate an extractor by splitting the questions over a fork-join pool.
+	 * Every task counts its own questions and the counts are merged at the
+	 * end, so the metrics are the same as the ones of {@link #eval(Extractor)}
+	 * . The extractor is called from several threads at once.
+	 * 
+	 * @param extractor
+	 *            Extractor to be evaluated.
+	 * @param parallelism
+	 *            Number of threads of the pool.
+	 */
+	public void eval(Extractor extractor, int parallelism) {
+		if (parallelism <= 1) {
+			eval(extractor);
+			return;
+		}
+		EvalTask task = new EvalTask(extractor, null, 0, questions.size());
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(task);
+		} finally {
+			pool.shutdown();
+		}
+		merge(task);
+	}
+
+	/**
+	 * Evaluate an extractor on questions that were already annotated, e.g.
+	 * once for all the extractors being compared, so that only the processing of
+	 * the extractor runs. A <code>null</code> annotation counts as a failed
+	 * question.
+	 * 
+	 * @param extractor
+	 *            Extractor to be evaluated.
+	 * @param annotations
+	 *            Annotations of the questions, in the same order, with at
+	 *            least the annotators of the extractor.
+	 * @param parallelism
+	 *            Number of threads of the pool.
+	 * @see Extractor#classifyAnnotatedQuestion(Annotation)
+	 */
+	public void eval(Extractor extractor, List<Annotation> annotations,
+			int parallelism) {
+		if (annotations == null || annotations.size() != questions.size())
+			throw new IllegalArgumentException("There must be one annotation "
+					+ "per question");
+		EvalTask task = new EvalTask(extractor, annotations, 0,
+				questions.size());
+		if (parallelism <= 1) {
+			task.evalRange();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(task);
+			} finally {
+				pool.shutdown();
 			}
 		}
+		merge(task);
+	}
+
+	/**
+	 * Evaluate an extractor over the worker JVMs of a coordinator, each one
+	 * evaluating a shard of the questions with its own extractor. The partial
+	 * counts of the workers are merged, so the metrics are the same as the ones
+	 * of {@link #eval(Extractor)} with an extractor of the same type.
+	 * 
+	 * @param coordinator
+	 *            Coordinator of the workers.
+	 * @throws IllegalStateException
+	 *             if a worker fails
+	 */
+	public void eval(ShardCoordinator coordinator) {
+		List<Integer> failed = new ArrayList<Integer>();
+		ConfusionCounts shardCounts = coordinator.evaluate(questions,
+				concepts, failed);
+		synchronized (this) {
+			counts.merge(shardCounts);
+			failedQuestions.addAll(failed);
+		}
+	}
+
+	private synchronized void merge(EvalTask task) {
+		counts.merge(task.counts);
+		failedQuestions.addAll(task.failed);
 	}
 
 	/**
 	 * Resets the counters of the evaluator.
 	 */
-	public void resetEvaluator() {
-		truePos = trueNeg = falsePos = falseNeg = 0;
+	public synchronized void resetEvaluator() {
+		counts.reset();
+		failedQuestions.clear();
+	}
+
+	/**
+	 * Get the indices of the questions the extractor failed to process. Those
+	 * questions are not counted in any of the metrics.
+	 * 
+	 * @return indices in ascending order.
+	 */
+	public synchronized List<Integer> getFailedQuestions() {
+		return Collections.unmodifiableList(new ArrayList<Integer>(
+				failedQuestions));
+	}
+
+	/**
+	 * Get the confusion counts accumulated since the last reset.
+	 * 
+	 * @return a copy of the counts.
+	 */
+	public synchronized ConfusionCounts getCounts() {
+		ConfusionCounts copy = new ConfusionCounts();
+		copy.merge(counts);
+		return copy;
 	}
 
 	/**
@@ -99,7 +189,7 @@ public class IREvaluator {
 	 *         extractor.
 	 */
 	public double getPrecision() {
-		return ((double) truePos) / (truePos + falsePos);
+		return getCounts().getPrecision();
 	}
 
 	/**
@@ -110,7 +200,7 @@ public class IREvaluator {
 	 *         extractor.
 	 */
 	public double getRecall() {
-		return ((double) truePos) / (truePos + falseNeg);
+		return getCounts().getRecall();
 	}
 
 	/**
@@ -121,8 +211,7 @@ public class IREvaluator {
 	 *         extractor.
 	 */
 	public double getAccuracy() {
-		return ((double) (truePos + trueNeg))
-				/ (truePos + falsePos + trueNeg + falseNeg);
+		return getCounts().getAccuracy();
 	}
 
 	/**
@@ -133,8 +222,66 @@ public class IREvaluator {
 	 *         extractor.
 	 */
 	public double getFMeasure() {
-		double p = getPrecision();
-		double r = getRecall();
-		return (2.0 * p * r) / (p + r);
+		return getCounts().getFMeasure();
+	}
+
+	/**
+	 * Evaluates a range of the questions, splitting it in two halves when it
+	 * runs in a fork-join pool and the range is large enough.
+	 */
+	private class EvalTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Extractor extractor;
+		private final List<Annotation> annotations;
+		private final int from;
+		private final int to;
+		private final ConfusionCounts counts = new ConfusionCounts();
+		private final List<Integer> failed = new ArrayList<Integer>();
+
+		EvalTask(Extractor extractor, List<Annotation> annotations, int from,
+				int to) {
+			this.extractor = extractor;
+			this.annotations = annotations;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= MIN_TASK_QUESTIONS) {
+				evalRange();
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			EvalTask left = new EvalTask(extractor, annotations, from, mid);
+			EvalTask right = new EvalTask(extractor, annotations, mid, to);
+			invokeAll(left, right);
+			for (EvalTask half : new EvalTask[] { left, right }) {
+				counts.merge(half.counts);
+				failed.addAll(half.failed);
+			}
+		}
+
+		void evalRange() {
+			for (int i = from; i < to; i++) {
+				try {
+					counts.count(annotations == null ? extractor
+							.classifyQuestionTokens(questions.get(i))
+							: extractor.classifyAnnotatedQuestion(annotations
+									.get(i)), new HashSet<String>(concepts
+							.get(i)));
+				} catch (Exception e) {
+					failed.add(i);
+					// one block per question, whatever the other threads print
+					synchronized (System.err) {
+						System.err.println("Question #" + i + ": "
+								+ questions.get(i));
+						e.printStackTrace();
+					}
+				}
+			}
+		}
 	}
 }
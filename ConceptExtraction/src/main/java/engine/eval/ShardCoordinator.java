@@ -0,0 +1,318 @@
+package engine.eval;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import engine.core.ExtractorType;
+
+/**
+ * Evaluates or runs an extractor over several worker JVMs on this machine, so
+ * that the CoreNLP models of every worker live in a heap of their own instead
+ * of one heap shared by ever more threads. <br/>
+ * The questions are split in contiguous shards, one per worker. Every worker
+ * is a {@link ShardWorker} that gets its shard on its standard input and
+ * streams its partial confusion counts or its results back on its standard
+ * output, which the coordinator merges into the same metrics as a single
+ * process {@link IREvaluator}. The protocol only needs a pair of streams, so
+ * the workers could as well run on other machines. <br/>
+ * The workers are started with the class path, the maximum heap and the
+ * <code>engine.*</code> system properties of this JVM, unless other JVM
+ * options are given.
+ */
+public class ShardCoordinator {
+
+	private final ExtractorType type;
+	private final int shards;
+	private int threadsPerShard = 1;
+	private List<String> jvmOptions;
+	private final long[] shardMillis;
+
+	/**
+	 * @param type
+	 *            Type of the extractor every worker creates.
+	 * @param shards
+	 *            Number of worker JVMs.
+	 */
+	public ShardCoordinator(ExtractorType type, int shards) {
+		if (type == null || shards < 1)
+			throw new IllegalArgumentException("Invalid type/shards: " + type
+					+ "/" + shards);
+		this.type = type;
+		this.shards = shards;
+		this.shardMillis = new long[shards];
+	}
+
+	/**
+	 * @param threadsPerShard
+	 *            Number of threads every worker evaluates its shard with.
+	 */
+	public void setThreadsPerShard(int threadsPerShard) {
+		if (threadsPerShard < 1)
+			throw new IllegalArgumentException("Invalid threads: "
+					+ threadsPerShard);
+		this.threadsPerShard = threadsPerShard;
+	}
+
+	/**
+	 * @param jvmOptions
+	 *            Options of the worker JVMs, e.g. "-Xmx2g", instead of the
+	 *            heap size and the engine properties of this JVM.
+	 */
+	public void setJvmOptions(List<String> jvmOptions) {
+		this.jvmOptions = jvmOptions == null ? null : new ArrayList<String>(
+				jvmOptions);
+	}
+
+	/**
+	 * @return number of worker JVMs
+	 */
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * @param shard
+	 *            index of the shard
+	 * @return time the worker of the shard took during the last run, from its
+	 *         start to its exit
+	 */
+	public long getShardMillis(int shard) {
+		return shardMillis[shard];
+	}
+
+	/**
+	 * Evaluate the extractor on the questions.
+	 *
+	 * @param questions
+	 *            The input questions
+	 * @param concepts
+	 *            The ground-truth concepts of every question
+	 * @param failed
+	 *            List the indexes of the questions the workers failed to
+	 *            process are added to, in ascending order.
+	 * @return the merged confusion counts of the workers
+	 * @throws IllegalStateException
+	 *             if a worker cannot be started or does not finish its shard
+	 * @see IREvaluator#eval(ShardCoordinator)
+	 */
+	public ConfusionCounts evaluate(List<String> questions,
+			List<List<String>> concepts, List<Integer> failed) {
+		if (questions == null || concepts == null
+				|| questions.size() != concepts.size())
+			throw new IllegalArgumentException("There must be concepts for "
+					+ "every question");
+		final ConfusionCounts counts = new ConfusionCounts();
+		final List<Integer> failures = new ArrayList<Integer>();
+		run(ShardWorker.EVAL, questions, concepts, new Output() {
+			public void line(String line) {
+				if (line.startsWith(ShardWorker.COUNTS)) {
+					String[] c = line.substring(ShardWorker.COUNTS.length())
+							.split(" ");
+					counts.merge(new ConfusionCounts(Long.parseLong(c[0]), Long
+							.parseLong(c[1]), Long.parseLong(c[2]), Long
+							.parseLong(c[3])));
+				} else if (line.startsWith(ShardWorker.FAILED)) {
+					failures.add(Integer.valueOf(line
+							.substring(ShardWorker.FAILED.length())));
+				}
+			}
+		});
+		Collections.sort(failures);
+		failed.addAll(failures);
+		return counts;
+	}
+
+	/**
+	 * Classify the questions.
+	 *
+	 * @param questions
+	 *            Questions whose concepts will be extracted
+	 * @return the classification of every question as JSON, as
+	 *         {@link engine.core.Extractor.ClassifiedTokens#appendJson(StringBuilder)}
+	 *         writes it, or <code>null</code> for the questions that failed.
+	 * @throws IllegalStateException
+	 *             if a worker cannot be started or does not finish its shard
+	 */
+	public List<String> extract(List<String> questions) {
+		if (questions == null)
+			throw new IllegalArgumentException("Invalid questions");
+		final String[] results = new String[questions.size()];
+		run(ShardWorker.EXTRACT, questions, null, new Output() {
+			public void line(String line) {
+				if (!line.startsWith(ShardWorker.RESULT))
+					return;
+				int space = line.indexOf(' ', ShardWorker.RESULT.length());
+				results[Integer.parseInt(line.substring(
+						ShardWorker.RESULT.length(), space))] = line
+						.substring(space + 1);
+			}
+		});
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Run one worker per shard and give the protocol lines of all of them to
+	 * the output, one line at a time.
+	 */
+	private void run(final String mode, final List<String> questions,
+			final List<List<String>> concepts, final Output output) {
+		ExecutorService pool = Executors.newFixedThreadPool(shards);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < shards; i++) {
+				final int shard = i;
+				final int from = (int) ((long) questions.size() * i / shards);
+				final int to = (int) ((long) questions.size() * (i + 1) / shards);
+				futures.add(pool.submit(new Callable<Void>() {
+					public Void call() throws IOException, InterruptedException {
+						runShard(shard, mode, questions, concepts, from, to,
+								output);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for "
+					+ "the workers", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private void runShard(int shard, String mode, List<String> questions,
+			List<List<String>> concepts, int from, int to, Output output)
+			throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		Process process = new ProcessBuilder(command(mode)).redirectError(
+				ProcessBuilder.Redirect.INHERIT).start();
+		try {
+			Writer in = new BufferedWriter(new OutputStreamWriter(
+					process.getOutputStream(), "UTF-8"));
+			try {
+				for (int i = from; i < to; i++) {
+					in.write(Integer.toString(i));
+					in.write(ShardWorker.SEPARATOR);
+					in.write(clean(questions.get(i)));
+					if (concepts != null) {
+						in.write(ShardWorker.SEPARATOR);
+						in.write(clean(join(concepts.get(i))));
+					}
+					in.write('\n');
+				}
+			} finally {
+				in.close();
+			}
+
+			boolean done = false;
+			BufferedReader out = new BufferedReader(new InputStreamReader(
+					process.getInputStream(), "UTF-8"));
+			try {
+				String line;
+				while ((line = out.readLine()) != null) {
+					if (line.startsWith(ShardWorker.DONE)) {
+						done = true;
+					} else if (line.startsWith("@")) {
+						synchronized (output) {
+							output.line(line);
+						}
+					}
+				}
+			} finally {
+				out.close();
+			}
+			int exit = process.waitFor();
+			if (!done || exit != 0)
+				throw new IllegalStateException("Worker of shard " + shard
+						+ " exited with code " + exit + " before the end of "
+						+ "its " + (to - from) + " questions");
+		} finally {
+			process.destroy();
+			shardMillis[shard] = System.currentTimeMillis() - start;
+		}
+	}
+
+	private List<String> command(String mode) {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"),
+				"java").getPath());
+		if (jvmOptions != null) {
+			command.addAll(jvmOptions);
+		} else {
+			command.add("-Xmx" + (Runtime.getRuntime().maxMemory() >> 20) + "m");
+			for (Map.Entry<Object, Object> e : System.getProperties()
+					.entrySet()) {
+				if (String.valueOf(e.getKey()).startsWith("engine."))
+					command.add("-D" + e.getKey() + "=" + e.getValue());
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardWorker.class.getName());
+		command.add(type.name().toLowerCase());
+		command.add(mode);
+		command.add(Integer.toString(threadsPerShard));
+		return command;
+	}
+
+	private static String join(List<String> concepts) {
+		StringBuilder sb = new StringBuilder();
+		for (String concept : concepts) {
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(concept);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Replace the characters that separate the fields and the lines of the
+	 * protocol, which the tokenizer ignores anyway.
+	 */
+	private static String clean(String text) {
+		return text.replace(ShardWorker.SEPARATOR, ' ').replace('\n', ' ')
+				.replace('\r', ' ');
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ShardCoordinator [type=" + type + ", shards=" + shards
+				+ ", threadsPerShard=" + threadsPerShard + ", shardMillis="
+				+ Arrays.toString(shardMillis) + "]";
+	}
+
+	/**
+	 * Receives the protocol lines of the workers, one at a time.
+	 */
+	private interface Output {
+
+		void line(String line);
+	}
+
+}
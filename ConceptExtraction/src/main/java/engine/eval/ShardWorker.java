@@ -0,0 +1,122 @@
+package engine.eval;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import engine.core.Extractor;
+import engine.core.Extractor.ClassifiedTokens;
+import engine.core.ExtractorType;
+
+/**
+ * Worker process of a {@link ShardCoordinator}. It reads its shard of the
+ * questions from the standard input until the end of the stream, one per
+ * line as <code>index TAB question [TAB concept,concept...]</code>, processes
+ * them with a new extractor of the given type, and writes its results to the
+ * standard output. The lines of the protocol start with '@' so that anything
+ * else the libraries print is ignored:
+ *
+ * <pre>
+ * &#064;counts truePos falsePos trueNeg falseNeg   partial counts (eval)
+ * &#064;result index json                          classification (extract)
+ * &#064;failed index                               question that failed
+ * &#064;done questions                             end of the shard
+ * </pre>
+ *
+ * The indexes are the ones of the coordinator, so that the failed questions
+ * and the results are reported against the whole question file.
+ *
+ * <pre>
+ * java engine.eval.ShardWorker &lt;ner|wordnet|hybrid|gazetteer&gt; &lt;eval|extract&gt; [threads]
+ * </pre>
+ */
+public class ShardWorker {
+
+	static final String EVAL = "eval";
+	static final String EXTRACT = "extract";
+	static final String COUNTS = "@counts ";
+	static final String RESULT = "@result ";
+	static final String FAILED = "@failed ";
+	static final String DONE = "@done ";
+	static final char SEPARATOR = '\t';
+
+	private ShardWorker() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2
+				|| !(EVAL.equals(args[1]) || EXTRACT.equals(args[1]))) {
+			System.err.println("Usage: ShardWorker "
+					+ "<ner|wordnet|hybrid|gazetteer> <eval|extract> [threads]");
+			System.exit(1);
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<String> questions = new ArrayList<String>();
+		List<List<String>> concepts = new ArrayList<List<String>>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				System.in, "UTF-8"));
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+			indexes.add(Integer.valueOf(fields[0]));
+			questions.add(fields[1]);
+			List<String> cons = new ArrayList<String>();
+			if (fields.length > 2 && fields[2].length() > 0)
+				cons.addAll(Arrays.asList(fields[2].split(",")));
+			concepts.add(cons);
+		}
+
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out,
+				"UTF-8"), true);
+		Extractor extractor = ExtractorType.get(args[0]).create();
+		try {
+			if (EVAL.equals(args[1]))
+				eval(extractor, indexes, questions, concepts, threads, out);
+			else
+				extract(extractor, indexes, questions, out);
+			out.println(DONE + questions.size());
+		} finally {
+			out.flush();
+			extractor.close();
+		}
+	}
+
+	private static void eval(Extractor extractor, List<Integer> indexes,
+			List<String> questions, List<List<String>> concepts, int threads,
+			PrintWriter out) {
+		IREvaluator evaluator = new IREvaluator(questions, concepts);
+		evaluator.eval(extractor, threads);
+		ConfusionCounts counts = evaluator.getCounts();
+		out.println(COUNTS + counts.getTruePos() + " " + counts.getFalsePos()
+				+ " " + counts.getTrueNeg() + " " + counts.getFalseNeg());
+		for (int i : evaluator.getFailedQuestions())
+			out.println(FAILED + indexes.get(i));
+	}
+
+	/**
+	 * Stream the classification of every question as soon as it is done.
+	 */
+	private static void extract(Extractor extractor, List<Integer> indexes,
+			List<String> questions, PrintWriter out) {
+		for (int i = 0; i < questions.size(); i++) {
+			ClassifiedTokens tokens;
+			try {
+				tokens = extractor.classifyQuestionTokens(questions.get(i));
+			} catch (Exception e) {
+				out.println(FAILED + indexes.get(i));
+				continue;
+			}
+			StringBuilder sb = new StringBuilder(RESULT).append(
+					indexes.get(i)).append(' ');
+			out.println(tokens.appendJson(sb));
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package engine.eval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.DepthProfile;
+import engine.core.DepthThresholdExtractor;
+
+/**
+ * Computes the metrics of a {@link DepthThresholdExtractor} for every factor
+ * of the average depth at once. <br/>
+ * The depths of the tokens of every question are computed a single time, and
+ * the question is counted for each interval of factors that gives it a
+ * different classification. The changes of the counts at the ratios of all the
+ * questions are then sorted and accumulated, so the whole curve costs one pass
+ * over the questions and a sort, instead of one evaluation per factor.
+ */
+public class ThresholdSweep {
+
+	private final List<List<String>> concepts;
+	private final List<Integer> failedQuestions = new ArrayList<Integer>();
+
+	/**
+	 * @param concepts
+	 *            The Ground-Truth concepts of the questions that will be swept.
+	 */
+	public ThresholdSweep(List<List<String>> concepts) {
+		if (concepts == null)
+			throw new IllegalArgumentException("Invalid concepts list");
+		this.concepts = concepts;
+	}
+
+	/**
+	 * Sweep the factor of an extractor over annotated questions. A
+	 * <code>null</code> annotation counts as a failed question.
+	 *
+	 * @param extractor
+	 *            Extractor to be evaluated.
+	 * @param annotations
+	 *            Annotations of the questions, in the same order as the
+	 *            concepts, with at least the annotators of the extractor.
+	 * @return a point for every distinct ratio of a token depth to the
+	 *         average depth of its question, in ascending order of factor.
+	 *         The counts of a point hold for all the factors above the one of
+	 *         the previous point, up to its own; at the factors of the points
+	 *         themselves the extractor may round the other way. The last
+	 *         point, of factor {@link Double#POSITIVE_INFINITY}, holds for
+	 *         the factors above the highest ratio.
+	 */
+	public List<Point> sweep(DepthThresholdExtractor extractor,
+			List<Annotation> annotations) {
+		if (annotations == null || annotations.size() != concepts.size())
+			throw new IllegalArgumentException("There must be one annotation "
+					+ "per question");
+		failedQuestions.clear();
+		long[] total = new long[4];
+		List<Step> steps = new ArrayList<Step>();
+		for (int i = 0; i < annotations.size(); i++) {
+			DepthProfile profile;
+			try {
+				if (annotations.get(i) == null)
+					throw new IllegalArgumentException("Invalid annotation");
+				profile = extractor.profileAnnotatedQuestion(annotations.get(i));
+			} catch (Exception e) {
+				failedQuestions.add(i);
+				continue;
+			}
+			Set<String> gtConcepts = new HashSet<String>(concepts.get(i));
+			long[] previous = count(profile, 0, gtConcepts);
+			add(total, previous, 1);
+			for (int j = 0; j < profile.getRatioCount(); j++) {
+				long[] next = count(profile, j + 1, gtConcepts);
+				long[] change = new long[4];
+				add(change, next, 1);
+				add(change, previous, -1);
+				steps.add(new Step(profile.getRatio(j), change));
+				previous = next;
+			}
+		}
+		Collections.sort(steps);
+
+		// a point holds the counts up to its factor, so the changes of the
+		// questions that stop selecting a token there come after it
+		List<Point> points = new ArrayList<Point>();
+		int i = 0;
+		while (i < steps.size()) {
+			double factor = steps.get(i).ratio;
+			points.add(new Point(factor, total));
+			for (; i < steps.size() && steps.get(i).ratio == factor; i++)
+				add(total, steps.get(i).change, 1);
+		}
+		// above every ratio, e.g. only the groups of several tokens are
+		// selected by the Hybrid extractor
+		points.add(new Point(Double.POSITIVE_INFINITY, total));
+		return points;
+	}
+
+	/**
+	 * Get the point with the highest F-Measure.
+	 *
+	 * @param points
+	 *            Points returned by {@link #sweep(DepthThresholdExtractor, List)}
+	 * @return the best point, the one of the lowest factor among equal ones,
+	 *         or <code>null</code> if there is none. The points whose
+	 *         F-Measure is undefined, as nothing was selected, are skipped.
+	 */
+	public static Point best(List<Point> points) {
+		Point best = null;
+		for (Point point : points) {
+			if (Double.isNaN(point.getCounts().getFMeasure()))
+				continue;
+			if (best == null
+					|| Double.compare(point.getCounts().getFMeasure(), best
+							.getCounts().getFMeasure()) > 0)
+				best = point;
+		}
+		return best;
+	}
+
+	/**
+	 * Get the indices of the questions the extractor failed to process in the
+	 * last sweep. Those questions are not counted in any of the points.
+	 *
+	 * @return indices in ascending order.
+	 */
+	public List<Integer> getFailedQuestions() {
+		return Collections.unmodifiableList(new ArrayList<Integer>(
+				failedQuestions));
+	}
+
+	private static long[] count(DepthProfile profile, int j,
+			Set<String> gtConcepts) {
+		ConfusionCounts c = new ConfusionCounts();
+		c.count(profile.getClassification(j), gtConcepts);
+		return new long[] { c.getTruePos(), c.getFalsePos(), c.getTrueNeg(),
+				c.getFalseNeg() };
+	}
+
+	private static void add(long[] to, long[] counts, int sign) {
+		for (int i = 0; i < to.length; i++)
+			to[i] += sign * counts[i];
+	}
+
+	/**
+	 * Change of the counts of a question when the factor goes above one of its
+	 * ratios.
+	 */
+	private static class Step implements Comparable<Step> {
+
+		final double ratio;
+		final long[] change;
+
+		Step(double ratio, long[] change) {
+			this.ratio = ratio;
+			this.change = change;
+		}
+
+		public int compareTo(Step other) {
+			return Double.compare(ratio, other.ratio);
+		}
+	}
+
+	/**
+	 * Metrics of the extractor for a factor of the average depth.
+	 */
+	public static class Point {
+
+		private final double factor;
+		private final ConfusionCounts counts;
+
+		Point(double factor, long[] counts) {
+			this.factor = factor;
+			this.counts = new ConfusionCounts(counts[0], counts[1], counts[2],
+					counts[3]);
+		}
+
+		public double getFactor() {
+			return factor;
+		}
+
+		public ConfusionCounts getCounts() {
+			return counts;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%.4f,%.4f,%.4f,%.4f", factor,
+					counts.getPrecision(), counts.getRecall(),
+					counts.getFMeasure());
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+package engine.gazetteer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Case-insensitive Aho-Corasick automaton over a list of entries, e.g. the
+ * names of known products, people and places, built by
+ * {@link GazetteerBuilder}. <br/>
+ * The trie is kept in primitive arrays indexed by node, the nodes being
+ * numbered in breadth-first order so the children of a node are consecutive
+ * and sorted by character: a transition is a binary search in
+ * <code>labels</code> between <code>childStart[node]</code> and
+ * <code>childStart[node + 1]</code>. Every node also has a failure link, to
+ * the node of its longest proper suffix, and an output link, to the node of
+ * its longest proper suffix that ends an entry. <br/>
+ * Instances are immutable and can be shared between threads; the matching
+ * state is kept in a {@link Matcher} per caller.
+ */
+public class Gazetteer {
+
+	private final int entries;
+	private final int nodes;
+	private final int[] childStart;
+	private final char[] labels;
+	private final char[] lengths;
+	private final int[] failure;
+	private final int[] output;
+
+	/**
+	 * @param entries
+	 *            number of distinct entries
+	 * @param nodes
+	 *            number of nodes, the root included
+	 * @param childStart
+	 *            first child of every node, and the number of nodes at the end
+	 * @param labels
+	 *            character leading to every node from its parent
+	 * @param lengths
+	 *            length of the entry every node ends, or 0
+	 */
+	Gazetteer(int entries, int nodes, int[] childStart, char[] labels,
+			char[] lengths) {
+		this.entries = entries;
+		this.nodes = nodes;
+		this.childStart = childStart;
+		this.labels = labels;
+		this.lengths = lengths;
+		this.failure = new int[nodes];
+		this.output = new int[nodes];
+		link();
+	}
+
+	/**
+	 * Compile the lines of a file.
+	 *
+	 * @param file
+	 *            File with one entry per line
+	 * @return the gazetteer
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @see GazetteerBuilder#addLines(File)
+	 */
+	public static Gazetteer load(File file) throws IOException {
+		return new GazetteerBuilder().addLines(file).build();
+	}
+
+	/**
+	 * Set the failure and output links, in breadth-first order so the links
+	 * of the shorter suffixes are known.
+	 */
+	private void link() {
+		for (int p = 0; p < nodes; p++) {
+			for (int v = childStart[p]; v < childStart[p + 1]; v++) {
+				int f = 0;
+				if (p != 0) {
+					f = failure[p];
+					int t;
+					while ((t = child(f, labels[v])) < 0 && f != 0)
+						f = failure[f];
+					f = Math.max(t, 0);
+				}
+				failure[v] = f;
+				output[v] = lengths[f] > 0 ? f : output[f];
+			}
+		}
+	}
+
+	/**
+	 * @return the child of the node for the character, or -1
+	 */
+	private int child(int node, char c) {
+		int low = childStart[node];
+		int high = childStart[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char label = labels[mid];
+			if (label < c)
+				low = mid + 1;
+			else if (label > c)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the state after reading the character in the given state
+	 */
+	private int next(int state, char c) {
+		int t;
+		while ((t = child(state, c)) < 0 && state != 0)
+			state = failure[state];
+		return Math.max(t, 0);
+	}
+
+	/**
+	 * @return number of distinct entries
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * @return number of nodes of the trie, the root included
+	 */
+	public int getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * @return approximate number of bytes held by the automaton
+	 */
+	public long getMemoryBytes() {
+		return 4L * (childStart.length + failure.length + output.length) + 2L
+				* (labels.length + lengths.length);
+	}
+
+	/**
+	 * @return a new matcher for this gazetteer, to be used by a single thread
+	 */
+	public Matcher matcher() {
+		return new Matcher();
+	}
+
+	/**
+	 * Case folding applied to the entries and to the questions.
+	 */
+	static char fold(char c) {
+		return Character.isWhitespace(c) ? ' ' : Character
+				.toLowerCase(Character.toUpperCase(c));
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c);
+	}
+
+	/**
+	 * @return whether a token may start or end at the offset
+	 */
+	static boolean isBoundary(CharSequence text, int offset) {
+		return offset == 0 || offset == text.length()
+				|| !isWordChar(text.charAt(offset - 1))
+				|| !isWordChar(text.charAt(offset));
+	}
+
+	/**
+	 * Finds the occurrences of the entries in a text in a single scan. Only
+	 * the occurrences that start and end at token boundaries count, i.e. not
+	 * between two letters or digits, and among overlapping occurrences the
+	 * leftmost one is kept, the longest when several start at the same
+	 * offset. <br/>
+	 * The buffers of a matcher grow to the longest text it was given and are
+	 * reused, so it must not be shared between threads.
+	 */
+	public class Matcher {
+
+		private int[] positions = new int[64];
+		private int[] longest = new int[64];
+		private int[] found = new int[16];
+		private int count;
+
+		/**
+		 * Find the occurrences of the entries in a text.
+		 *
+		 * @param text
+		 *            Text to scan
+		 * @return number of occurrences found
+		 */
+		public int find(CharSequence text) {
+			int n = text.length();
+			if (positions.length < n) {
+				positions = new int[Math.max(n, positions.length * 2)];
+				longest = new int[positions.length];
+			}
+			Arrays.fill(longest, 0, n, 0);
+
+			// offsets in the text of the characters fed to the automaton,
+			// which sees a single space for every white space run
+			int fed = 0;
+			int state = 0;
+			boolean space = true;
+			for (int i = 0; i < n; i++) {
+				char c = text.charAt(i);
+				if (Character.isWhitespace(c)) {
+					if (space)
+						continue;
+					space = true;
+				} else
+					space = false;
+				positions[fed] = i;
+				state = next(state, fold(c));
+				int m = lengths[state] > 0 ? state : output[state];
+				for (; m != 0; m = output[m]) {
+					int begin = positions[fed - lengths[m] + 1];
+					if (i + 1 > longest[begin] && isBoundary(text, begin)
+							&& isBoundary(text, i + 1))
+						longest[begin] = i + 1;
+				}
+				fed++;
+			}
+
+			count = 0;
+			for (int begin = 0; begin < n;) {
+				int end = longest[begin];
+				if (end == 0) {
+					begin++;
+					continue;
+				}
+				if (2 * count == found.length)
+					found = Arrays.copyOf(found, found.length * 2);
+				found[2 * count] = begin;
+				found[2 * count + 1] = end;
+				count++;
+				begin = end;
+			}
+			return count;
+		}
+
+		/**
+		 * @return number of occurrences found by the last call to
+		 *         {@link #find(CharSequence)}
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @param i
+		 *            index of the occurrence, in the order of the text
+		 * @return offset of its first character
+		 */
+		public int getBegin(int i) {
+			check(i);
+			return found[2 * i];
+		}
+
+		/**
+		 * @param i
+		 *            index of the occurrence, in the order of the text
+		 * @return offset after its last character
+		 */
+		public int getEnd(int i) {
+			check(i);
+			return found[2 * i + 1];
+		}
+
+		private void check(int i) {
+			if (i < 0 || i >= count)
+				throw new IndexOutOfBoundsException("Occurrence " + i + " of "
+						+ count);
+		}
+	}
+
+}
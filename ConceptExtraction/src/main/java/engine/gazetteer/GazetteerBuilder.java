@@ -0,0 +1,236 @@
+package engine.gazetteer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import engine.util.MappedLinesReader;
+
+/**
+ * Compiles a list of entries into a {@link Gazetteer}. <br/>
+ * The entries are kept folded in a single character array while they are
+ * added, sorted in place, and the trie is then made one depth at a time: the
+ * distinct prefixes of a depth, taken in sorted order, are the nodes of that
+ * depth in breadth-first order and the children of a node are consecutive. No
+ * object is made per entry or per node, so the memory needed is about the
+ * size of the entries plus 12 bytes per entry while building, and 16 bytes
+ * per node of the trie once built. <br/>
+ * Instances are not thread-safe.
+ */
+public class GazetteerBuilder {
+
+	/**
+	 * Longest entry, in characters once the white space is collapsed.
+	 */
+	public static final int MAX_ENTRY_LENGTH = Character.MAX_VALUE;
+
+	private static final int INSERTION_SORT_SIZE = 12;
+
+	private char[] chars = new char[4096];
+	private int length;
+	private int[] offsets = new int[257];
+	private int entries;
+
+	/**
+	 * Add an entry. The case is ignored, surrounding white space is removed
+	 * and inner white space runs match any white space run of a question.
+	 * Blank entries are ignored.
+	 *
+	 * @param entry
+	 *            Entry to add
+	 * @return this builder
+	 */
+	public GazetteerBuilder add(CharSequence entry) {
+		if (entry == null)
+			throw new IllegalArgumentException("Invalid entry");
+		int start = length;
+		boolean space = true;
+		for (int i = 0; i < entry.length(); i++) {
+			char c = entry.charAt(i);
+			if (Character.isWhitespace(c)) {
+				if (space)
+					continue;
+				space = true;
+			} else
+				space = false;
+			if (length == chars.length)
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			chars[length++] = Gazetteer.fold(c);
+		}
+		if (length > start && chars[length - 1] == ' ')
+			length--;
+		if (length == start)
+			return this;
+		if (length - start > MAX_ENTRY_LENGTH) {
+			length = start;
+			throw new IllegalArgumentException("Entry longer than "
+					+ MAX_ENTRY_LENGTH + " characters");
+		}
+		if (entries + 1 == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		offsets[entries] = start;
+		offsets[++entries] = length;
+		return this;
+	}
+
+	/**
+	 * Add every line of a UTF-8 file as an entry. Anything after a tab, like
+	 * the type of the entry, is ignored, and so are the lines starting with
+	 * '#'.
+	 *
+	 * @param file
+	 *            File to read
+	 * @return this builder
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public GazetteerBuilder addLines(File file) throws IOException {
+		MappedLinesReader reader = new MappedLinesReader(file);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#"))
+					continue;
+				int tab = line.indexOf('\t');
+				add(tab < 0 ? line : line.substring(0, tab));
+			}
+		} finally {
+			reader.close();
+		}
+		return this;
+	}
+
+	/**
+	 * @return number of entries added so far, counting the duplicates
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * Compile the entries added so far. The builder can be used again
+	 * afterwards.
+	 *
+	 * @return the gazetteer
+	 */
+	public Gazetteer build() {
+		int[] order = new int[entries];
+		for (int i = 0; i < entries; i++)
+			order[i] = i;
+		sort(order, 0, entries, 0);
+
+		// nodes in breadth-first order, the root being 0
+		int capacity = Math.max(16, length / 2);
+		char[] labels = new char[capacity];
+		int[] firstChild = new int[capacity];
+		char[] lengths = new char[capacity];
+		int nodes = 1;
+		int distinct = 0;
+
+		int[] keyNode = new int[entries];
+		int active = entries;
+		for (int depth = 0; active > 0; depth++) {
+			int kept = 0;
+			int parent = -1;
+			char label = 0;
+			int node = 0;
+			for (int i = 0; i < active; i++) {
+				int k = order[i];
+				char c = chars[offsets[k] + depth];
+				if (keyNode[k] != parent || c != label) {
+					parent = keyNode[k];
+					label = c;
+					if (nodes == labels.length) {
+						labels = Arrays.copyOf(labels, nodes * 2);
+						firstChild = Arrays.copyOf(firstChild, nodes * 2);
+						lengths = Arrays.copyOf(lengths, nodes * 2);
+					}
+					node = nodes++;
+					labels[node] = c;
+					if (firstChild[parent] == 0)
+						firstChild[parent] = node;
+				}
+				keyNode[k] = node;
+				if (offsets[k + 1] - offsets[k] == depth + 1) {
+					if (lengths[node] == 0)
+						distinct++;
+					lengths[node] = (char) (depth + 1);
+				} else
+					order[kept++] = k;
+			}
+			active = kept;
+		}
+		order = null;
+		keyNode = null;
+
+		// children of node p are childStart[p] to childStart[p + 1] excluded
+		int[] childStart = Arrays.copyOf(firstChild, nodes + 1);
+		childStart[nodes] = nodes;
+		for (int p = nodes - 1; p >= 0; p--) {
+			if (childStart[p] == 0)
+				childStart[p] = childStart[p + 1];
+		}
+		firstChild = null;
+		return new Gazetteer(distinct, nodes, childStart, Arrays.copyOf(
+				labels, nodes), Arrays.copyOf(lengths, nodes));
+	}
+
+	/**
+	 * Character of an entry at a depth, or -1 past its end.
+	 */
+	private int charAt(int k, int depth) {
+		int i = offsets[k] + depth;
+		return i < offsets[k + 1] ? chars[i] : -1;
+	}
+
+	/**
+	 * Three-way radix quicksort of the entries from <code>from</code> to
+	 * <code>to</code> excluded, which share their first <code>depth</code>
+	 * characters.
+	 */
+	private void sort(int[] order, int from, int to, int depth) {
+		while (to - from > INSERTION_SORT_SIZE) {
+			int pivot = charAt(order[(from + to) >>> 1], depth);
+			int lt = from;
+			int gt = to - 1;
+			int i = from;
+			while (i <= gt) {
+				int c = charAt(order[i], depth);
+				if (c < pivot)
+					swap(order, lt++, i++);
+				else if (c > pivot)
+					swap(order, i, gt--);
+				else
+					i++;
+			}
+			sort(order, from, lt, depth);
+			sort(order, gt + 1, to, depth);
+			if (pivot < 0)
+				return;
+			from = lt;
+			to = gt + 1;
+			depth++;
+		}
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i; j > from
+					&& compare(order[j - 1], order[j], depth) > 0; j--)
+				swap(order, j - 1, j);
+		}
+	}
+
+	private int compare(int a, int b, int depth) {
+		for (;; depth++) {
+			int ca = charAt(a, depth);
+			int cb = charAt(b, depth);
+			if (ca != cb || ca < 0)
+				return ca - cb;
+		}
+	}
+
+	private static void swap(int[] order, int i, int j) {
+		int t = order[i];
+		order[i] = order[j];
+		order[j] = t;
+	}
+
+}
@@ -0,0 +1,354 @@
+package engine.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency of every stage, allocations, WordNet lookups and cache counters of
+ * the calls made to one type of extractor. All the extractors of a type share the same
+ * instance, which is published over JMX as
+ * <code>engine:type=Extractor,name=&lt;type&gt;</code> along with one
+ * <code>engine:type=Extractor,name=&lt;type&gt;,stage=&lt;stage&gt;</code>
+ * bean per stage. <br/>
+ * Recording a stage costs two {@link System#nanoTime()} calls and a few atomic
+ * increments, and measuring the allocations of a call one thread counter
+ * read, which is negligible next to the milliseconds a question takes. <br/>
+ * A thread can suspend the recording of its own calls, e.g. while it warms
+ * the extractors up, without losing what the other threads record to the
+ * same metrics.
+ */
+public class ExtractorMetrics implements ExtractorMetricsMXBean {
+
+	/**
+	 * Stage every call is recorded to, from start to end.
+	 */
+	public static final String TOTAL = "total";
+
+	private static final ConcurrentMap<String, ExtractorMetrics> TYPES = new ConcurrentHashMap<String, ExtractorMetrics>();
+
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	private static final ThreadLocal<Boolean> SUSPENDED = new ThreadLocal<Boolean>();
+
+	private final String type;
+	private final ConcurrentMap<String, LatencyHistogram> stages = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final List<String> stageNames = new CopyOnWriteArrayList<String>();
+	private final LatencyHistogram total;
+	private final LatencyHistogram allocatedBytes = new LatencyHistogram();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong wordNetLookups = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private final AtomicLong cacheCoalesced = new AtomicLong();
+	private final AtomicLong cacheEvictions = new AtomicLong();
+
+	private ExtractorMetrics(String type) {
+		this.type = type;
+		total = stage(TOTAL);
+	}
+
+	/**
+	 * Get the metrics of an extractor type, publishing them over JMX the
+	 * first time.
+	 *
+	 * @param type
+	 *            Name of the extractor type, e.g. "HybridExtractor"
+	 * @return the metrics shared by all the extractors of the type
+	 */
+	public static ExtractorMetrics get(String type) {
+		ExtractorMetrics metrics = TYPES.get(type);
+		if (metrics != null)
+			return metrics;
+		metrics = new ExtractorMetrics(type);
+		ExtractorMetrics existing = TYPES.putIfAbsent(type, metrics);
+		if (existing != null)
+			return existing;
+		register(metrics, "engine:type=Extractor,name=" + quote(type));
+		return metrics;
+	}
+
+	/**
+	 * @return the metrics of every extractor type used so far
+	 */
+	public static Map<String, ExtractorMetrics> getAll() {
+		return TYPES;
+	}
+
+	/**
+	 * @return the name of the extractor type
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Get the latency histogram of a stage, creating it the first time.
+	 *
+	 * @param name
+	 *            Name of the stage, e.g. "pos" or "grouping"
+	 * @return the histogram of the stage
+	 */
+	public LatencyHistogram stage(String name) {
+		LatencyHistogram stage = stages.get(name);
+		if (stage != null)
+			return stage;
+		stage = new LatencyHistogram();
+		LatencyHistogram existing = stages.putIfAbsent(name, stage);
+		if (existing != null)
+			return existing;
+		stageNames.add(name);
+		register(new StageMetrics(stage), "engine:type=Extractor,name="
+				+ quote(type) + ",stage=" + quote(name));
+		return stage;
+	}
+
+	/**
+	 * Record the time a stage took, for the stages of a call to be timed one
+	 * after the other:
+	 *
+	 * <pre>
+	 * long time = System.nanoTime();
+	 * groupByNE(tokens);
+	 * time = metrics.recordStage(&quot;grouping&quot;, time);
+	 * computeDepths(tokens);
+	 * time = metrics.recordStage(&quot;wordnet&quot;, time);
+	 * </pre>
+	 *
+	 * @param name
+	 *            Name of the stage
+	 * @param startNanos
+	 *            {@link System#nanoTime()} when the stage started
+	 * @return {@link System#nanoTime()} when the stage ended
+	 */
+	public long recordStage(String name, long startNanos) {
+		long now = System.nanoTime();
+		if (isRecording())
+			stage(name).record(now - startNanos);
+		return now;
+	}
+
+	/**
+	 * Stop recording the calls, stages and lookups of the current thread to
+	 * any metrics, until {@link #resumeRecording()}.
+	 */
+	public static void suspendRecording() {
+		SUSPENDED.set(Boolean.TRUE);
+	}
+
+	/**
+	 * Record the calls of the current thread again.
+	 */
+	public static void resumeRecording() {
+		SUSPENDED.remove();
+	}
+
+	/**
+	 * @return whether the calls of the current thread are recorded
+	 */
+	public static boolean isRecording() {
+		return SUSPENDED.get() == null;
+	}
+
+	/**
+	 * @return the number of bytes the current thread allocated so far, or 0
+	 *         if the JVM cannot tell
+	 */
+	public long threadAllocatedBytes() {
+		if (THREADS == null)
+			return 0;
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Record a call to the extractor.
+	 *
+	 * @param nanos
+	 *            How long the call took
+	 * @param startAllocatedBytes
+	 *            {@link #threadAllocatedBytes()} when the call started
+	 * @param failed
+	 *            Whether the call threw
+	 */
+	public void recordCall(long nanos, long startAllocatedBytes, boolean failed) {
+		if (!isRecording())
+			return;
+		total.record(nanos);
+		if (THREADS != null)
+			allocatedBytes.record(threadAllocatedBytes() - startAllocatedBytes);
+		if (failed)
+			failures.incrementAndGet();
+	}
+
+	/**
+	 * @param lookups
+	 *            Number of WordNet lookups made by one call
+	 */
+	public void countWordNetLookups(int lookups) {
+		if (lookups > 0 && isRecording())
+			wordNetLookups.addAndGet(lookups);
+	}
+
+	/**
+	 * Count a question a cache answered without computing it.
+	 */
+	public void countCacheHit() {
+		if (isRecording())
+			cacheHits.incrementAndGet();
+	}
+
+	/**
+	 * Count a question a cache had to compute.
+	 */
+	public void countCacheMiss() {
+		if (isRecording())
+			cacheMisses.incrementAndGet();
+	}
+
+	/**
+	 * Count a question a cache answered by waiting for the same question
+	 * being computed for another call.
+	 */
+	public void countCacheCoalesced() {
+		if (isRecording())
+			cacheCoalesced.incrementAndGet();
+	}
+
+	/**
+	 * Count a question a cache evicted to respect its bounds.
+	 */
+	public void countCacheEviction() {
+		cacheEvictions.incrementAndGet();
+	}
+
+	public long getCalls() {
+		return total.getCount();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getWordNetLookups() {
+		return wordNetLookups.get();
+	}
+
+	public double getWordNetLookupsPerCall() {
+		long calls = getCalls();
+		return calls == 0 ? 0.0 : ((double) getWordNetLookups()) / calls;
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	public long getCacheCoalesced() {
+		return cacheCoalesced.get();
+	}
+
+	public long getCacheEvictions() {
+		return cacheEvictions.get();
+	}
+
+	public double getCacheHitRate() {
+		long saved = getCacheHits() + getCacheCoalesced();
+		long total = saved + getCacheMisses();
+		return total == 0 ? 0.0 : ((double) saved) / total;
+	}
+
+	public double getAllocatedBytesMean() {
+		return allocatedBytes.getMean();
+	}
+
+	public long getAllocatedBytesP50() {
+		return allocatedBytes.getPercentile(50);
+	}
+
+	public long getAllocatedBytesP99() {
+		return allocatedBytes.getPercentile(99);
+	}
+
+	public long getAllocatedBytesMax() {
+		return allocatedBytes.getMax();
+	}
+
+	public String[] getStages() {
+		return stageNames.toArray(new String[0]);
+	}
+
+	public void reset() {
+		for (LatencyHistogram stage : stages.values())
+			stage.reset();
+		allocatedBytes.reset();
+		failures.set(0);
+		wordNetLookups.set(0);
+		cacheHits.set(0);
+		cacheMisses.set(0);
+		cacheCoalesced.set(0);
+		cacheEvictions.set(0);
+	}
+
+	/**
+	 * @return one line per stage with its latency summary
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(
+				"%s: failures=%d wordNetLookups/call=%.2f allocated/call=%.0f B%n",
+				type, getFailures(), getWordNetLookupsPerCall(),
+				getAllocatedBytesMean()));
+		if (getCacheHits() + getCacheMisses() + getCacheCoalesced() > 0)
+			sb.append(String.format(
+					"  cache: hitRate=%.4f hits=%d misses=%d coalesced=%d "
+							+ "evictions=%d%n", getCacheHitRate(),
+					getCacheHits(), getCacheMisses(), getCacheCoalesced(),
+					getCacheEvictions()));
+		for (String name : stageNames)
+			sb.append(String.format("  %-10s %s%n", name, stages.get(name)
+					.summary()));
+		return sb.toString();
+	}
+
+	private static void register(Object bean, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(bean, new ObjectName(name));
+		} catch (JMException e) {
+			System.err.println("Cannot publish " + name + ": " + e);
+		}
+	}
+
+	private static String quote(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (",=:\"*?\n".indexOf(value.charAt(i)) >= 0)
+				return ObjectName.quote(value);
+		}
+		return value;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		if (!counter.isThreadAllocatedMemorySupported())
+			return null;
+		if (!counter.isThreadAllocatedMemoryEnabled())
+			counter.setThreadAllocatedMemoryEnabled(true);
+		return counter;
+	}
+
+}
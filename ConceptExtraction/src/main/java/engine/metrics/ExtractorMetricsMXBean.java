@@ -0,0 +1,39 @@
+package engine.metrics;
+
+/**
+ * Counters of one extractor type, as published over JMX. The latency of
+ * every stage is published by its own {@link StageMetricsMXBean}.
+ */
+public interface ExtractorMetricsMXBean {
+
+	long getCalls();
+
+	long getFailures();
+
+	long getWordNetLookups();
+
+	double getWordNetLookupsPerCall();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	long getCacheCoalesced();
+
+	long getCacheEvictions();
+
+	double getCacheHitRate();
+
+	double getAllocatedBytesMean();
+
+	long getAllocatedBytesP50();
+
+	long getAllocatedBytesP99();
+
+	long getAllocatedBytesMax();
+
+	String[] getStages();
+
+	void reset();
+
+}
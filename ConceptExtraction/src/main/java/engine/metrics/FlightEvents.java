@@ -0,0 +1,139 @@
+package engine.metrics;
+
+/**
+ * Java Flight Recorder events of the extraction stages and of the WordNet
+ * lookups, so that a recording shows which question and which stage a slow
+ * call spent its time in, next to the GC and I/O events of the same time. <br/>
+ * The events are only created when the JVM has JFR (the jdk.jfr module of JDK
+ * 11 and later, or 8u262 and later) and a running recording enables them.
+ * Otherwise the begin methods return <code>null</code> and the end methods
+ * return at once, so nothing is allocated. Setting the
+ * <code>engine.jfr</code> system property to "false" turns them off. <br/>
+ * No class of this package that uses jdk.jfr is loaded unless it is
+ * available, so the extractors still run on JVMs without it:
+ *
+ * <pre>
+ * Object event = FlightEvents.beginStage();
+ * groupByNE(tokens);
+ * FlightEvents.endStage(event, getMetrics(), &quot;groupByNE&quot;, question.length(),
+ * 		tokens.size);
+ * </pre>
+ */
+public final class FlightEvents {
+
+	/**
+	 * System property that turns the events off when set to "false".
+	 */
+	public static final String JFR_PROPERTY = "engine.jfr";
+
+	/**
+	 * Source of a WordNet lookup answered by the {@link
+	 * engine.wordnet.HypernymDepthIndex}.
+	 */
+	public static final String INDEX = "index";
+
+	/**
+	 * Source of a WordNet lookup answered by the {@link
+	 * engine.wordnet.WordNetLexicon}.
+	 */
+	public static final String LEXICON = "lexicon";
+
+	/**
+	 * Source of a WordNet lookup answered by the JAWS
+	 * <code>getSynsets</code>.
+	 */
+	public static final String JAWS = "jaws";
+
+	private static final boolean AVAILABLE = available();
+
+	private FlightEvents() {
+	}
+
+	private static boolean available() {
+		if ("false".equalsIgnoreCase(System.getProperty(JFR_PROPERTY)))
+			return false;
+		try {
+			Class.forName(FlightEvents.class.getPackage().getName()
+					+ ".JfrEvents");
+			return true;
+		} catch (Throwable e) {
+			// no jdk.jfr, or JFR disabled in this JVM
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether the JVM can record the events
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Start timing a stage of the extraction of a question.
+	 *
+	 * @return the event, or <code>null</code> if no recording enables it
+	 */
+	public static Object beginStage() {
+		return AVAILABLE ? JfrEvents.beginStage() : null;
+	}
+
+	/**
+	 * End a stage and commit its event.
+	 *
+	 * @param event
+	 *            Event returned by {@link #beginStage()}, may be
+	 *            <code>null</code>
+	 * @param metrics
+	 *            Metrics of the extractor running the stage, giving its
+	 *            type
+	 * @param stage
+	 *            Name of the stage, e.g. "annotate", "groupByNE",
+	 *            "groupByPOS" or "depths"
+	 * @param questionLength
+	 *            Number of characters of the question, or of all the
+	 *            questions of a batch
+	 * @param tokenCount
+	 *            Number of tokens the stage processed
+	 */
+	public static void endStage(Object event, ExtractorMetrics metrics,
+			String stage, int questionLength, int tokenCount) {
+		if (event != null)
+			JfrEvents.endStage(event, metrics.getType(), stage,
+					questionLength, tokenCount);
+	}
+
+	/**
+	 * Start timing the lookup of a word in WordNet.
+	 *
+	 * @return the event, or <code>null</code> if no recording enables it
+	 */
+	public static Object beginLookup() {
+		return AVAILABLE ? JfrEvents.beginLookup() : null;
+	}
+
+	/**
+	 * End a lookup and commit its event.
+	 *
+	 * @param event
+	 *            Event returned by {@link #beginLookup()}, may be
+	 *            <code>null</code>
+	 * @param word
+	 *            Word or group of words looked up, only read before the
+	 *            method returns
+	 * @param source
+	 *            {@link #INDEX}, {@link #LEXICON} or {@link #JAWS}
+	 * @param synsetCount
+	 *            Number of noun synsets found, or -1 if the source only
+	 *            keeps their average depth
+	 * @param depth
+	 *            Average hypernym depth of the synsets, {@link Double#NaN}
+	 *            if there are none
+	 */
+	public static void endLookup(Object event, CharSequence word,
+			String source, int synsetCount, double depth) {
+		if (event != null)
+			JfrEvents.endLookup(event, word, source, synsetCount, depth);
+	}
+
+}
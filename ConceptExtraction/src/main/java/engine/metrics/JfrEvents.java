@@ -0,0 +1,111 @@
+package engine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR events behind {@link FlightEvents}, in a class of their own that is
+ * only loaded when jdk.jfr is available.
+ */
+final class JfrEvents {
+
+	private static final EventType STAGE = EventType
+			.getEventType(StageEvent.class);
+	private static final EventType LOOKUP = EventType
+			.getEventType(LookupEvent.class);
+
+	private JfrEvents() {
+	}
+
+	static Object beginStage() {
+		if (!STAGE.isEnabled())
+			return null;
+		StageEvent event = new StageEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endStage(Object started, String extractor, String stage,
+			int questionLength, int tokenCount) {
+		StageEvent event = (StageEvent) started;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		event.extractor = extractor;
+		event.stage = stage;
+		event.questionLength = questionLength;
+		event.tokenCount = tokenCount;
+		event.commit();
+	}
+
+	static Object beginLookup() {
+		if (!LOOKUP.isEnabled())
+			return null;
+		LookupEvent event = new LookupEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endLookup(Object started, CharSequence word, String source,
+			int synsetCount, double depth) {
+		LookupEvent event = (LookupEvent) started;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		event.word = word.toString();
+		event.source = source;
+		event.synsetCount = synsetCount;
+		event.depth = depth;
+		event.commit();
+	}
+
+	@Name("engine.ExtractionStage")
+	@Label("Extraction Stage")
+	@Category("Concept Extraction")
+	@Description("A stage of the extraction of the concepts of a question")
+	@StackTrace(false)
+	static class StageEvent extends Event {
+
+		@Label("Extractor")
+		String extractor;
+
+		@Label("Stage")
+		String stage;
+
+		@Label("Question Length")
+		@Description("Number of characters of the question, or of all the "
+				+ "questions of a batch")
+		int questionLength;
+
+		@Label("Token Count")
+		int tokenCount;
+	}
+
+	@Name("engine.WordNetLookup")
+	@Label("WordNet Lookup")
+	@Category("Concept Extraction")
+	@Description("The lookup of the noun synsets of a word or group of words")
+	@StackTrace(false)
+	static class LookupEvent extends Event {
+
+		@Label("Word")
+		String word;
+
+		@Label("Source")
+		@Description("index, lexicon or jaws")
+		String source;
+
+		@Label("Synset Count")
+		@Description("-1 if the source only keeps the average depth")
+		int synsetCount;
+
+		@Label("Average Depth")
+		double depth;
+	}
+
+}
@@ -0,0 +1,187 @@
+package engine.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. Values are kept in
+ * log-linear buckets, 64 per power of two, so every percentile is reported
+ * within 1.6% of the recorded value with a fixed footprint of about 30 KB,
+ * whatever the number of recorded values. <br/>
+ * Recording is safe from any number of threads; reading while recording gives
+ * a view that may miss the values recorded meanwhile.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record one latency.
+	 *
+	 * @param nanos
+	 *            Latency in nanoseconds, negative values are counted as zero.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long current;
+		while (nanos > (current = max.get())
+				&& !max.compareAndSet(current, nanos))
+			;
+	}
+
+	/**
+	 * Add all the values recorded by another histogram.
+	 *
+	 * @param other
+	 *            Histogram to add.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0)
+				counts.addAndGet(i, c);
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		long otherMax = other.max.get();
+		long current;
+		while (otherMax > (current = max.get())
+				&& !max.compareAndSet(current, otherMax))
+			;
+	}
+
+	/**
+	 * Forget every recorded value.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return largest recorded value in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return mean of the recorded values in nanoseconds
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0.0 : ((double) sum.get()) / n;
+	}
+
+	/**
+	 * Get the value below which the given share of the recorded values fall.
+	 *
+	 * @param percentile
+	 *            Percentile between 0 and 100, e.g. 99.9
+	 * @return the value in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts.get(i);
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100.0 * n);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestEquivalent(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Get a percentile in milliseconds.
+	 *
+	 * @see #getPercentile(double)
+	 */
+	public double getPercentileMillis(double percentile) {
+		return toMillis(getPercentile(percentile));
+	}
+
+	/**
+	 * @return one line with the count, mean, p50, p99, p99.9 and max
+	 */
+	public String summary() {
+		return String.format(
+				"count=%d mean=%.3fms p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+				getCount(), getMean() / 1e6, getPercentileMillis(50),
+				getPercentileMillis(99), getPercentileMillis(99.9),
+				toMillis(getMax()));
+	}
+
+	/**
+	 * Print the distribution as a percentile table, one line per percentile
+	 * from 0 to 100 in halving steps, the way HdrHistogram does.
+	 *
+	 * @return the table
+	 */
+	public String percentileTable() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%12s %12s%n", "Value(ms)", "Percentile"));
+		double percentile = 0;
+		double step = 50;
+		while (percentile < 99.999) {
+			sb.append(String.format("%12.3f %12.5f%n",
+					getPercentileMillis(percentile), percentile / 100));
+			percentile += step;
+			if (percentile >= 100 - step)
+				step /= 2;
+		}
+		sb.append(String.format("%12.3f %12.5f%n", toMillis(getMax()), 1.0));
+		return sb.toString();
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	static long highestEquivalent(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+}
@@ -0,0 +1,38 @@
+package engine.metrics;
+
+/**
+ * Publishes a {@link LatencyHistogram} as a {@link StageMetricsMXBean}.
+ */
+class StageMetrics implements StageMetricsMXBean {
+
+	private final LatencyHistogram latency;
+
+	StageMetrics(LatencyHistogram latency) {
+		this.latency = latency;
+	}
+
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	public double getMeanMillis() {
+		return latency.getMean() / 1e6;
+	}
+
+	public double getP50Millis() {
+		return latency.getPercentileMillis(50);
+	}
+
+	public double getP99Millis() {
+		return latency.getPercentileMillis(99);
+	}
+
+	public double getMaxMillis() {
+		return latency.getMax() / 1e6;
+	}
+
+	public void reset() {
+		latency.reset();
+	}
+
+}
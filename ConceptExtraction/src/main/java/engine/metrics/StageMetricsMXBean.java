@@ -0,0 +1,20 @@
+package engine.metrics;
+
+/**
+ * Latency of one stage of an extractor, as published over JMX.
+ */
+public interface StageMetricsMXBean {
+
+	long getCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+
+}
@@ -0,0 +1,412 @@
+package engine.service;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the extractors: at most a fixed number of
+ * requests run at once, the others wait in a bounded queue until their
+ * deadline. A request arriving while the queue is full, or still waiting at
+ * its deadline, is shed with a {@link RejectedExecutionException} instead of
+ * letting the latency of every request grow. <br/>
+ * When the queue stays at or above a high watermark for a sustained time, the
+ * controller switches to degraded mode, in which the admitted requests are
+ * expected to be served by a cheaper extractor, e.g. the WordNet one instead
+ * of the NER or Hybrid one. It switches back once the queue stayed at or below
+ * a low watermark for the same time. <br/>
+ * Instances are thread-safe.
+ */
+public class AdmissionController {
+
+	private final int maxConcurrent;
+	private volatile int maxQueued;
+	private final Semaphore permits;
+	private final AtomicInteger queued = new AtomicInteger();
+	private volatile long deadlineNanos;
+
+	private volatile int highWatermark = Integer.MAX_VALUE;
+	private volatile int lowWatermark;
+	private volatile long sustainNanos;
+	private volatile boolean degraded;
+	private long overSince = -1;
+	private long underSince = -1;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong degradedServed = new AtomicLong();
+	private final AtomicLong shedQueueFull = new AtomicLong();
+	private final AtomicLong shedDeadline = new AtomicLong();
+	private final AtomicLong late = new AtomicLong();
+	private final AtomicLong modeSwitches = new AtomicLong();
+
+	/**
+	 * Create a controller that never degrades, until
+	 * {@link #setDegradation(int, int, long, TimeUnit)} is called.
+	 *
+	 * @param maxConcurrent
+	 *            Number of requests running at once, e.g. the number of
+	 *            extractors.
+	 * @param maxQueued
+	 *            Number of requests waiting to run beyond which new ones are
+	 *            shed at once.
+	 * @param deadline
+	 *            Default time a request may wait before it is shed.
+	 * @param unit
+	 *            Unit of <code>deadline</code>.
+	 */
+	public AdmissionController(int maxConcurrent, int maxQueued,
+			long deadline, TimeUnit unit) {
+		if (maxConcurrent < 1 || maxQueued < 0)
+			throw new IllegalArgumentException("Invalid concurrency/queue: "
+					+ maxConcurrent + "/" + maxQueued);
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.permits = new Semaphore(maxConcurrent, true);
+		setDeadline(deadline, unit);
+	}
+
+	/**
+	 * @param maxQueued
+	 *            Number of requests waiting to run beyond which new ones are
+	 *            shed at once, 0 to shed every request that cannot run at
+	 *            once.
+	 */
+	public void setMaxQueued(int maxQueued) {
+		if (maxQueued < 0)
+			throw new IllegalArgumentException("Invalid queue: " + maxQueued);
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * @param deadline
+	 *            Default time a request may wait before it is shed.
+	 * @param unit
+	 *            Unit of <code>deadline</code>.
+	 */
+	public void setDeadline(long deadline, TimeUnit unit) {
+		if (deadline < 0 || unit == null)
+			throw new IllegalArgumentException("Invalid deadline: " + deadline
+					+ " " + unit);
+		this.deadlineNanos = unit.toNanos(deadline);
+	}
+
+	/**
+	 * Switch to degraded mode when at least <code>highWatermark</code>
+	 * requests have been waiting for <code>sustain</code>, and back to normal
+	 * when at most <code>lowWatermark</code> have been waiting for as long.
+	 *
+	 * @param highWatermark
+	 *            Queue length that means overload
+	 * @param lowWatermark
+	 *            Queue length that means the overload is over, lower than
+	 *            the high one
+	 * @param sustain
+	 *            Time the queue must stay above or below a watermark
+	 * @param unit
+	 *            Unit of <code>sustain</code>.
+	 */
+	public synchronized void setDegradation(int highWatermark,
+			int lowWatermark, long sustain, TimeUnit unit) {
+		if (lowWatermark < 0 || highWatermark <= lowWatermark || sustain < 0
+				|| unit == null)
+			throw new IllegalArgumentException("Invalid degradation: "
+					+ highWatermark + "/" + lowWatermark + "/" + sustain + " "
+					+ unit);
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+		this.sustainNanos = unit.toNanos(sustain);
+		overSince = -1;
+		underSince = -1;
+	}
+
+	/**
+	 * Admit a request with the default deadline.
+	 *
+	 * @return the ticket of the request, to be released when it is done
+	 * @throws RejectedExecutionException
+	 *             if the request is shed
+	 * @see #admit(long, TimeUnit)
+	 */
+	public Ticket admit() {
+		return admit(deadlineNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Admit a request, waiting for one of the running requests to finish if
+	 * needed.
+	 *
+	 * @param deadline
+	 *            Time the request may wait before it is shed.
+	 * @param unit
+	 *            Unit of <code>deadline</code>.
+	 * @return the ticket of the request, to be released when it is done
+	 * @throws RejectedExecutionException
+	 *             if the queue is full, or the request waited until its
+	 *             deadline
+	 */
+	public Ticket admit(long deadline, TimeUnit unit) {
+		long start = System.nanoTime();
+		long deadlineAt = start + unit.toNanos(deadline);
+		requests.incrementAndGet();
+		boolean acquired;
+		try {
+			// the timed form, unlike tryAcquire(), lets the waiting requests
+			// of the fair semaphore go first
+			acquired = permits.tryAcquire(0, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			shedDeadline.incrementAndGet();
+			throw new RejectedExecutionException("Interrupted while waiting", e);
+		}
+		if (!acquired) {
+			int waiting = queued.incrementAndGet();
+			try {
+				if (waiting > maxQueued) {
+					shedQueueFull.incrementAndGet();
+					throw new RejectedExecutionException("Overloaded: "
+							+ maxQueued + " requests already waiting");
+				}
+				updateMode(waiting, start);
+				if (!permits.tryAcquire(deadlineAt - System.nanoTime(),
+						TimeUnit.NANOSECONDS)) {
+					shedDeadline.incrementAndGet();
+					throw new RejectedExecutionException("Overloaded: "
+							+ "deadline reached while waiting");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				shedDeadline.incrementAndGet();
+				throw new RejectedExecutionException("Interrupted while "
+						+ "waiting", e);
+			} finally {
+				queued.decrementAndGet();
+			}
+		}
+		updateMode(queued.get(), System.nanoTime());
+		admitted.incrementAndGet();
+		return new Ticket(degraded, start, deadlineAt);
+	}
+
+	/**
+	 * Follow the length of the queue seen by the requests to switch modes.
+	 */
+	private synchronized void updateMode(int waiting, long now) {
+		if (!degraded) {
+			if (waiting < highWatermark) {
+				overSince = -1;
+			} else if (overSince < 0) {
+				overSince = now;
+			}
+			if (overSince >= 0 && now - overSince >= sustainNanos) {
+				degraded = true;
+				underSince = -1;
+				modeSwitches.incrementAndGet();
+			}
+		} else {
+			if (waiting > lowWatermark) {
+				underSince = -1;
+			} else if (underSince < 0) {
+				underSince = now;
+			}
+			if (underSince >= 0 && now - underSince >= sustainNanos) {
+				degraded = false;
+				overSince = -1;
+				modeSwitches.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return whether the requests admitted now are degraded
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * @return number of requests running at once
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * @return number of requests waiting to run beyond which new ones are
+	 *         shed
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * @return number of requests waiting to run
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * @return whether requests are parked waiting for a permit, which the
+	 *         queued ones only are once they reach the semaphore
+	 */
+	boolean hasWaiters() {
+		return permits.hasQueuedThreads();
+	}
+
+	/**
+	 * @return number of requests received so far
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return number of requests admitted so far
+	 */
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * @return number of requests shed because the queue was full
+	 */
+	public long getShedQueueFull() {
+		return shedQueueFull.get();
+	}
+
+	/**
+	 * @return number of requests shed because they reached their deadline
+	 */
+	public long getShedDeadline() {
+		return shedDeadline.get();
+	}
+
+	/**
+	 * @return number of admitted requests that finished after their deadline
+	 */
+	public long getLate() {
+		return late.get();
+	}
+
+	/**
+	 * @return number of switches to or from degraded mode
+	 */
+	public long getModeSwitches() {
+		return modeSwitches.get();
+	}
+
+	/**
+	 * @return share of the requests that were shed
+	 */
+	public double getShedRate() {
+		long total = requests.get();
+		return total == 0 ? 0.0 : ((double) shedQueueFull.get() + shedDeadline
+				.get()) / total;
+	}
+
+	/**
+	 * @return share of the admitted requests that were served in degraded
+	 *         mode, see {@link Ticket#servedDegraded()}
+	 */
+	public double getDegradedRate() {
+		long total = admitted.get();
+		return total == 0 ? 0.0 : ((double) degradedServed.get()) / total;
+	}
+
+	/**
+	 * Append the counters as a JSON object.
+	 *
+	 * @param sb
+	 *            Builder to append to
+	 * @return the builder
+	 */
+	public StringBuilder appendJson(StringBuilder sb) {
+		return sb.append(String.format("{\"degraded\":%s,\"queued\":%d,"
+				+ "\"requests\":%d,\"admitted\":%d,\"shedQueueFull\":%d,"
+				+ "\"shedDeadline\":%d,\"late\":%d,\"modeSwitches\":%d,"
+				+ "\"shedRate\":%.4f,\"degradedRate\":%.4f}", degraded,
+				getQueued(), getRequests(), getAdmitted(), getShedQueueFull(),
+				getShedDeadline(), getLate(), getModeSwitches(),
+				getShedRate(), getDegradedRate()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return appendJson(new StringBuilder("AdmissionController ")).toString();
+	}
+
+	/**
+	 * An admitted request, which holds one of the running slots until it is
+	 * released.
+	 */
+	public class Ticket {
+
+		private final boolean degraded;
+		private final long queuedNanos;
+		private final long deadlineAt;
+		private boolean servedDegraded;
+		private boolean released;
+
+		Ticket(boolean degraded, long start, long deadlineAt) {
+			this.degraded = degraded;
+			this.queuedNanos = System.nanoTime() - start;
+			this.deadlineAt = deadlineAt;
+		}
+
+		/**
+		 * @return whether the request must be served in degraded mode
+		 */
+		public boolean isDegraded() {
+			return degraded;
+		}
+
+		/**
+		 * Count the request as served in degraded mode, once the cheaper
+		 * extractor took it. A degraded request the full extractor serves,
+		 * e.g. while the cheaper ones are still loading, is not counted.
+		 * Only the first call counts.
+		 */
+		public synchronized void servedDegraded() {
+			if (servedDegraded)
+				return;
+			servedDegraded = true;
+			degradedServed.incrementAndGet();
+		}
+
+		/**
+		 * @return time the request waited before it was admitted
+		 */
+		public long getQueuedNanos() {
+			return queuedNanos;
+		}
+
+		/**
+		 * @return time left before the deadline of the request, negative once
+		 *         it is past
+		 */
+		public long getRemainingNanos() {
+			return deadlineAt - System.nanoTime();
+		}
+
+		/**
+		 * Free the slot of the request. Only the first call counts.
+		 */
+		public synchronized void release() {
+			if (released)
+				return;
+			released = true;
+			if (getRemainingNanos() < 0)
+				late.incrementAndGet();
+			permits.release();
+		}
+	}
+
+}
@@ -0,0 +1,434 @@
+package engine.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import engine.core.Extractor;
+import engine.core.Extractor.ClassifiedTokens;
+import engine.core.ExtractorFactory;
+import engine.core.ExtractorType;
+import engine.metrics.LatencyHistogram;
+import engine.service.AdmissionController.Ticket;
+import engine.util.Json;
+
+/**
+ * HTTP front end for the extractors, built on the JDK's own HTTP server. <br/>
+ * The server keeps a bounded pool of extractors of one type, all sharing the
+ * same models, and lends one to every request. Connections are handled on
+ * virtual threads when the JDK has them, or on a thread pool otherwise. <br/>
+ * Requests go through an {@link AdmissionController}: beyond the extractors
+ * busy and a bounded queue, or past their deadline, they are answered with
+ * 503 at once. With a degraded type, a cheaper pool of extractors serves the
+ * requests while the controller is in degraded mode, and their answers are
+ * tagged with <code>"degraded":true</code>. The deadline of a request can be
+ * given in milliseconds with the X-Deadline-Ms header.
+ *
+ * <pre>
+ * GET  /extract?q=question   classify the question
+ * POST /extract              classify the request body
+ * GET  /health               the server is running
+ * GET  /ready                the models are loaded
+ * GET  /metrics              latency per endpoint, shed and degraded rates
+ * </pre>
+ */
+public class ExtractionServer {
+
+	private static final String UTF_8 = "UTF-8";
+	private static final String DEADLINE_HEADER = "X-Deadline-Ms";
+	private static final int MAX_QUEUED_PER_WORKER = 16;
+
+	private final ExtractorFactory factory;
+	private final int workers;
+	private final BlockingQueue<Extractor> extractors;
+	private final AdmissionController admission;
+	private ExtractorFactory degradedFactory;
+	private final BlockingQueue<Extractor> degradedExtractors;
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+	private volatile boolean ready;
+	private volatile boolean degradedReady;
+	private volatile boolean stopped;
+	private HttpServer server;
+	private ExecutorService connections;
+
+	/**
+	 * @param type
+	 *            Type of the extractors to serve.
+	 * @param workers
+	 *            Number of extractors, i.e. of questions processed at once.
+	 */
+	public ExtractionServer(ExtractorType type, int workers) {
+		if (workers < 1)
+			throw new IllegalArgumentException("Invalid workers: " + workers);
+		this.factory = new ExtractorFactory(type, workers);
+		this.workers = workers;
+		this.extractors = new ArrayBlockingQueue<Extractor>(workers);
+		this.degradedExtractors = new ArrayBlockingQueue<Extractor>(workers);
+		this.admission = new AdmissionController(workers, workers
+				* MAX_QUEUED_PER_WORKER, 30, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param borrowTimeoutMillis
+	 *            How long a request waits for a free extractor before it is
+	 *            answered with 503, unless it gives its own deadline.
+	 */
+	public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+		admission.setDeadline(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Serve the requests admitted in degraded mode with extractors of a
+	 * cheaper type, loaded with the others. Unless the degradation of
+	 * {@link #getAdmission()} is set, the server degrades once as many
+	 * requests as extractors have been waiting for a second, and recovers
+	 * once none has been waiting for a second. Must be called before
+	 * {@link #start(int)}.
+	 *
+	 * @param type
+	 *            Type of the degraded extractors, e.g. WordNet that does
+	 *            without NER.
+	 */
+	public void setDegradedType(ExtractorType type) {
+		if (server != null)
+			throw new IllegalStateException("Server already started");
+		degradedFactory = new ExtractorFactory(type, workers);
+		admission.setDegradation(workers, 0, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return the controller admitting the requests, to tune the queue, the
+	 *         deadline and the degradation
+	 */
+	public AdmissionController getAdmission() {
+		return admission;
+	}
+
+	/**
+	 * Replay the given questions through the extractors before reporting
+	 * ready, so that the first requests do not run on cold code.
+	 *
+	 * @param questions
+	 *            Warm-up corpus, e.g. samples.input
+	 * @param rounds
+	 *            Number of times the corpus is replayed.
+	 * @see ExtractorFactory#setWarmUp(List, int)
+	 */
+	public void setWarmUp(List<String> questions, int rounds) {
+		factory.setWarmUp(questions, rounds);
+	}
+
+	/**
+	 * Start listening and load the extractors in the background. Until they
+	 * are loaded and warmed up /ready and /extract answer 503.
+	 *
+	 * @param port
+	 *            Port to listen on, 0 for any free port.
+	 * @return the port the server listens on
+	 * @throws IOException
+	 *             if the server cannot be started
+	 */
+	public int start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		connections = newConnectionExecutor();
+		server.setExecutor(connections);
+		server.createContext("/extract", new TimedHandler("/extract") {
+			void handle(HttpExchange exchange, String question)
+					throws IOException {
+				extract(exchange, question);
+			}
+		});
+		server.createContext("/health", new TimedHandler("/health") {
+			void handle(HttpExchange exchange, String question)
+					throws IOException {
+				send(exchange, 200, "{\"status\":\"UP\"}");
+			}
+		});
+		server.createContext("/ready", new TimedHandler("/ready") {
+			void handle(HttpExchange exchange, String question)
+					throws IOException {
+				send(exchange, ready ? 200 : 503, "{\"ready\":" + ready + "}");
+			}
+		});
+		server.createContext("/metrics", new TimedHandler("/metrics") {
+			void handle(HttpExchange exchange, String question)
+					throws IOException {
+				send(exchange, 200, metrics());
+			}
+		});
+		server.start();
+
+		factory.start().whenComplete(
+				new BiConsumer<List<Extractor>, Throwable>() {
+					public void accept(List<Extractor> loaded, Throwable e) {
+						if (e != null) {
+							System.err.println("Cannot load the extractors: "
+									+ e);
+							return;
+						}
+						extractors.addAll(loaded);
+						ready = true;
+						if (stopped)
+							closeExtractors();
+					}
+				});
+		if (degradedFactory != null) {
+			degradedFactory.start().whenComplete(
+					new BiConsumer<List<Extractor>, Throwable>() {
+						public void accept(List<Extractor> loaded, Throwable e) {
+							if (e != null) {
+								System.err.println("Cannot load the degraded "
+										+ "extractors: " + e);
+								return;
+							}
+							degradedExtractors.addAll(loaded);
+							degradedReady = true;
+							if (stopped)
+								closeExtractors();
+						}
+					});
+		}
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stop the server and release the models of the extractors.
+	 */
+	public void stop() {
+		stopped = true;
+		ready = false;
+		server.stop(0);
+		connections.shutdownNow();
+		closeExtractors();
+	}
+
+	private void closeExtractors() {
+		ready = false;
+		degradedReady = false;
+		Extractor extractor;
+		while ((extractor = extractors.poll()) != null)
+			extractor.close();
+		while ((extractor = degradedExtractors.poll()) != null)
+			extractor.close();
+	}
+
+	/**
+	 * @return the factory loading the extractors, with the cold start
+	 *         timings
+	 */
+	public ExtractorFactory getFactory() {
+		return factory;
+	}
+
+	/**
+	 * @return <code>true</code> once every extractor is loaded
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	private void extract(HttpExchange exchange, String question)
+			throws IOException {
+		if (question == null || question.trim().length() == 0) {
+			send(exchange, 400, "{\"error\":\"missing question\"}");
+			return;
+		}
+		if (!ready) {
+			send(exchange, 503, "{\"error\":\"not ready\"}");
+			return;
+		}
+		long deadline;
+		try {
+			deadline = readDeadline(exchange);
+		} catch (NumberFormatException e) {
+			send(exchange, 400, "{\"error\":\"invalid deadline\"}");
+			return;
+		}
+		Ticket ticket;
+		try {
+			ticket = deadline < 0 ? admission.admit() : admission.admit(
+					deadline, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			StringBuilder sb = new StringBuilder("{\"error\":");
+			Json.appendString(sb, e.getMessage());
+			send(exchange, 503, sb.append('}').toString());
+			return;
+		}
+		try {
+			extract(exchange, question, ticket, ticket.isDegraded()
+					&& degradedReady);
+		} finally {
+			ticket.release();
+		}
+	}
+
+	/**
+	 * Classify an admitted question. The controller admits no more requests
+	 * than extractors, so one is free unless the pool is being closed.
+	 */
+	private void extract(HttpExchange exchange, String question,
+			Ticket ticket, boolean degraded) throws IOException {
+		BlockingQueue<Extractor> pool = degraded ? degradedExtractors
+				: extractors;
+		Extractor extractor = pool.poll();
+		if (extractor == null) {
+			send(exchange, 503, "{\"error\":\"all workers are busy\"}");
+			return;
+		}
+		if (degraded)
+			ticket.servedDegraded();
+		ClassifiedTokens tokens;
+		try {
+			tokens = extractor.classifyQuestionTokens(question);
+		} catch (RuntimeException e) {
+			StringBuilder sb = new StringBuilder("{\"error\":");
+			Json.appendString(sb, String.valueOf(e));
+			send(exchange, 500, sb.append('}').toString());
+			return;
+		} finally {
+			pool.add(extractor);
+		}
+		StringBuilder sb = tokens.appendJson(new StringBuilder());
+		if (degraded) {
+			sb.setLength(sb.length() - 1);
+			sb.append(",\"degraded\":true}");
+			exchange.getResponseHeaders().set("X-Degraded", "true");
+		}
+		send(exchange, 200, sb.toString());
+	}
+
+	/**
+	 * @return the deadline of the request in milliseconds, or -1 for the
+	 *         default one
+	 */
+	private static long readDeadline(HttpExchange exchange) {
+		String value = exchange.getRequestHeaders().getFirst(DEADLINE_HEADER);
+		if (value == null)
+			return -1;
+		long deadline = Long.parseLong(value.trim());
+		if (deadline < 0)
+			throw new NumberFormatException("Negative deadline: " + value);
+		return deadline;
+	}
+
+	private String metrics() {
+		StringBuilder sb = new StringBuilder("{");
+		sb.append(String.format("\"startup\":{\"ready\":%s,\"loadMs\":%d,"
+				+ "\"warmUpMs\":%d,\"coldStartToFastMs\":%d}", ready,
+				factory.getLoadMillis(), factory.getWarmUpMillis(),
+				factory.getColdStartToFastMillis()));
+		sb.append(",\"admission\":");
+		admission.appendJson(sb);
+		for (Map.Entry<String, LatencyHistogram> e : latencies.entrySet()) {
+			if (sb.length() > 1)
+				sb.append(',');
+			LatencyHistogram h = e.getValue();
+			Json.appendString(sb, e.getKey());
+			sb.append(String.format(
+					":{\"count\":%d,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+					h.getCount(), h.getPercentileMillis(50),
+					h.getPercentileMillis(99), h.getMax() / 1e6));
+		}
+		return sb.append('}').toString();
+	}
+
+	private static void send(HttpExchange exchange, int status, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		try {
+			os.write(bytes);
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Use a virtual thread per connection on JDKs that have them, without
+	 * requiring them at compile time.
+	 */
+	private ExecutorService newConnectionExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			return Executors.newFixedThreadPool(Math.max(16, workers * 4));
+		}
+	}
+
+	/**
+	 * Records the latency of every request of an endpoint and reads the
+	 * question from the "q" parameter or from the request body.
+	 */
+	private abstract class TimedHandler implements HttpHandler {
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		TimedHandler(String endpoint) {
+			latencies.put(endpoint, latency);
+		}
+
+		public void handle(HttpExchange exchange) throws IOException {
+			long start = System.nanoTime();
+			try {
+				handle(exchange, readQuestion(exchange));
+			} finally {
+				exchange.close();
+				latency.record(System.nanoTime() - start);
+			}
+		}
+
+		abstract void handle(HttpExchange exchange, String question)
+				throws IOException;
+	}
+
+	private static String readQuestion(HttpExchange exchange)
+			throws IOException {
+		if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+			InputStream is = exchange.getRequestBody();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = is.read(buffer)) > 0)
+				body.write(buffer, 0, n);
+			return body.toString(UTF_8);
+		}
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null)
+			return null;
+		for (String param : query.split("&")) {
+			if (param.startsWith("q="))
+				return decode(param.substring(2));
+		}
+		return null;
+	}
+
+	private static String decode(String value)
+			throws UnsupportedEncodingException {
+		return URLDecoder.decode(value, UTF_8);
+	}
+
+}
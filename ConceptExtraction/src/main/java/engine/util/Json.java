@@ -0,0 +1,78 @@
+package engine.util;
+
+import java.util.Collection;
+
+/**
+ * Minimal JSON writing helpers for the command line tools and the server,
+ * which only need to output strings and lists of strings.
+ */
+public class Json {
+
+	private Json() {
+	}
+
+	/**
+	 * Append a string as a quoted and escaped JSON string.
+	 *
+	 * @param sb
+	 *            Builder to append to.
+	 * @param value
+	 *            String to append, <code>null</code> is written as null.
+	 * @return the builder
+	 */
+	public static StringBuilder appendString(StringBuilder sb,
+			CharSequence value) {
+		if (value == null)
+			return sb.append("null");
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"');
+	}
+
+	/**
+	 * Append a collection of strings as a JSON array.
+	 *
+	 * @param sb
+	 *            Builder to append to.
+	 * @param values
+	 *            Strings to append.
+	 * @return the builder
+	 */
+	public static StringBuilder appendArray(StringBuilder sb,
+			Collection<? extends CharSequence> values) {
+		sb.append('[');
+		boolean first = true;
+		for (CharSequence value : values) {
+			if (!first)
+				sb.append(',');
+			appendString(sb, value);
+			first = false;
+		}
+		return sb.append(']');
+	}
+
+}
@@ -0,0 +1,117 @@
+package engine.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the lines of a UTF-8 file through a sliding memory-mapped window, so
+ * files of any size can be streamed without loading them in the heap the way
+ * {@link FileLinesReader} does. <br/>
+ * Instances are not thread-safe.
+ */
+public class MappedLinesReader implements Closeable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int DEFAULT_WINDOW = 64 * 1024 * 1024;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int window;
+	private MappedByteBuffer buffer;
+	private long bufferStart;
+	private long position;
+	private byte[] lineBytes = new byte[256];
+
+	public MappedLinesReader(File file) throws IOException {
+		this(file, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param file
+	 *            File to read.
+	 * @param window
+	 *            Number of bytes mapped at once. Lines may span several
+	 *            windows.
+	 */
+	public MappedLinesReader(File file, int window) throws IOException {
+		if (window <= 0)
+			throw new IllegalArgumentException("Invalid window: " + window);
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.size = channel.size();
+		this.window = window;
+	}
+
+	/**
+	 * Read the next line, without its line terminator.
+	 *
+	 * @return the line, or <code>null</code> at the end of the file.
+	 * @throws IOException
+	 *             if the file cannot be mapped.
+	 */
+	public String readLine() throws IOException {
+		if (position >= size)
+			return null;
+		int length = 0;
+		while (true) {
+			if (buffer == null || position >= bufferStart + buffer.limit())
+				map(position, window);
+			int index = (int) (position - bufferStart);
+			int limit = buffer.limit();
+			while (index < limit) {
+				byte b = buffer.get(index++);
+				if (b == '\n') {
+					position = bufferStart + index;
+					return decode(length);
+				}
+				if (length == lineBytes.length) {
+					byte[] larger = new byte[length * 2];
+					System.arraycopy(lineBytes, 0, larger, 0, length);
+					lineBytes = larger;
+				}
+				lineBytes[length++] = b;
+			}
+			position = bufferStart + limit;
+			if (position >= size)
+				return decode(length);
+		}
+	}
+
+	/**
+	 * @return number of bytes read so far.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return size of the file in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public void close() throws IOException {
+		buffer = null;
+		file.close();
+	}
+
+	private void map(long start, int length) throws IOException {
+		bufferStart = start;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+				Math.min(length, size - start));
+	}
+
+	private String decode(int length) {
+		if (length > 0 && lineBytes[length - 1] == '\r')
+			length--;
+		return new String(lineBytes, 0, length, UTF_8);
+	}
+
+}
@@ -1,10 +1,20 @@
 package engine.util;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum NamedEntityTags {
 
 	LOCATION("LOCATION"), PERSON("PERSON"), ORGANIZATION("ORGANIZATION"), DATE(
 			"DATE"), NUMBER("NUMBER"), TIME("TIME"), PERCENT("PERCENT");
 
+	private static final Map<String, NamedEntityTags> TAGS = new HashMap<String, NamedEntityTags>();
+
+	static {
+		for (NamedEntityTags v : values())
+			TAGS.put(v.getTag(), v);
+	}
+
 	private final String tag;
 
 	private NamedEntityTags(String tag) {
@@ -19,14 +29,15 @@ public enum NamedEntityTags {
 		return this.tag;
 	}
 
+	/**
+	 * Get the tag with the given encoding.
+	 * 
+	 * @param value
+	 *            Encoding of the tag, as produced by CoreNLP
+	 * @return the tag, or <code>null</code> if the encoding is unknown
+	 */
 	public static NamedEntityTags get(String value) {
-		for (NamedEntityTags v : values()) {
-			if (value.equals(v.getTag())) {
-				return v;
-			}
-		}
-
-		return null;
+		return TAGS.get(value);
 	}
 
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package engine.util;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Represents the English parts-of-speech, encoded using the de facto <a
  * href="http://www.cis.upenn.edu/~treebank/">Penn Treebank Project</a>
@@ -101,6 +104,13 @@ public enum PartOfSpeechTags {
 	 */
 	SENTENCE_TERMINATOR(".");
 
+	private static final Map<String, PartOfSpeechTags> TAGS = new HashMap<String, PartOfSpeechTags>();
+
+	static {
+		for (PartOfSpeechTags v : values())
+			TAGS.put(v.getTag(), v);
+	}
+
 	private final String tag;
 
 	private PartOfSpeechTags(String tag) {
@@ -121,14 +131,15 @@ public enum PartOfSpeechTags {
 		return this.tag;
 	}
 
+	/**
+	 * Get the tag with the given encoding.
+	 * 
+	 * @param value
+	 *            Encoding of the tag, as produced by CoreNLP
+	 * @return the tag, or <code>null</code> if the encoding is unknown
+	 */
 	public static PartOfSpeechTags get(String value) {
-		for (PartOfSpeechTags v : values()) {
-			if (value.equals(v.getTag())) {
-				return v;
-			}
-		}
-
-		return null;
+		return TAGS.get(value);
 	}
 	
 	public boolean isNoun() {
@@ -0,0 +1,120 @@
+package engine.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of the scratch objects an extractor reuses from one question to the
+ * next, e.g. token buffers or matchers. A call leases one object and gives it
+ * back once done, so there are only as many objects as calls running at once.
+ * A {@link ThreadLocal} keeps one per thread that ever called instead, which
+ * is one per request with virtual threads or short-lived pools. <br/>
+ * The idle objects sit in a fixed array of slots, and every thread starts
+ * looking for one from its own slot, so a thread usually gets back the object
+ * it released, and threads rarely contend on the same slot. An object
+ * released while all the slots are taken is left to the garbage collector.
+ * <br/>
+ * Instances are thread-safe. An object must be released at most once, and not
+ * used after it is released.
+ *
+ * @param <T>
+ *            Type of the scratch objects
+ */
+public abstract class ScratchPool<T> {
+
+	private final AtomicReferenceArray<T> slots;
+	private final AtomicLong created = new AtomicLong();
+
+	/**
+	 * Create a pool with 4 slots per processor, and at least 16.
+	 */
+	protected ScratchPool() {
+		this(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * @param capacity
+	 *            Number of idle objects the pool keeps.
+	 */
+	protected ScratchPool(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		this.slots = new AtomicReferenceArray<T>(capacity);
+	}
+
+	/**
+	 * @return a new scratch object, when no idle one is left
+	 */
+	protected abstract T create();
+
+	/**
+	 * Take an idle object, or create one.
+	 *
+	 * @return an object no other caller holds, in the state it was released
+	 *         in
+	 */
+	public T lease() {
+		int n = slots.length();
+		int home = home(n);
+		for (int i = 0; i < n; i++) {
+			int slot = home + i < n ? home + i : home + i - n;
+			if (slots.get(slot) != null) {
+				T scratch = slots.getAndSet(slot, null);
+				if (scratch != null)
+					return scratch;
+			}
+		}
+		created.incrementAndGet();
+		return create();
+	}
+
+	/**
+	 * Give back an object taken with {@link #lease()}.
+	 *
+	 * @param scratch
+	 *            Object the caller no longer uses
+	 */
+	public void release(T scratch) {
+		if (scratch == null)
+			throw new IllegalArgumentException("Invalid scratch object");
+		int n = slots.length();
+		int home = home(n);
+		for (int i = 0; i < n; i++) {
+			int slot = home + i < n ? home + i : home + i - n;
+			if (slots.get(slot) == null
+					&& slots.compareAndSet(slot, null, scratch))
+				return;
+		}
+	}
+
+	private static int home(int n) {
+		return (int) (Thread.currentThread().getId() % n);
+	}
+
+	/**
+	 * @return number of idle objects kept by the pool
+	 */
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * @return number of objects created so far
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * @return number of idle objects in the pool now
+	 */
+	public int getIdle() {
+		int idle = 0;
+		for (int i = 0; i < slots.length(); i++) {
+			if (slots.get(i) != null)
+				idle++;
+		}
+		return idle;
+	}
+
+}
@@ -0,0 +1,215 @@
+package engine.wordnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view over the binary index written by
+ * {@link HypernymDepthIndexBuilder}. The index maps every WordNet noun word
+ * form to the average length of the hypernym paths of its synsets, which is
+ * exactly the value the extractors used to compute by walking the synsets
+ * returned by <code>WordNetDatabase.getSynsets(word, SynsetType.NOUN)</code>.
+ * <br/>
+ * The file is memory-mapped and queried through a binary search over its
+ * sorted keys, so a lookup neither allocates nor touches the JAWS library. <br/>
+ * Instances are immutable and can be shared between threads.
+ *
+ * <pre>
+ * header : int magic, int version, int entries, int keysLength
+ * offsets: int[entries + 1]  start of every key in the keys area
+ * own    : int[entries * 2]  (depth sum, synset count) of the word itself
+ * full   : int[entries * 2]  (depth sum, synset count) including base forms
+ * keys   : byte[keysLength]  sorted, lower-cased, '_' instead of spaces
+ * </pre>
+ */
+public class HypernymDepthIndex {
+
+	/**
+	 * Default location of the index, next to the WordNet files it was built
+	 * from.
+	 */
+	public static final String DEFAULT_INDEX_FILE = "./dict/noun.depth";
+
+	static final int MAGIC = 0x574e4449; // "WNDI"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	/**
+	 * WordNet rules of detachment for nouns, applied the same way JAWS does
+	 * when a word form is not found as is.
+	 */
+	static final String[] NOUN_SUFFIXES = { "s", "ses", "xes", "zes", "ches",
+			"shes", "men", "ies" };
+	static final String[] NOUN_ENDINGS = { "", "s", "x", "z", "ch", "sh",
+			"man", "y" };
+
+	private final MappedByteBuffer buffer;
+	private final int entries;
+	private final int offsetsStart;
+	private final int ownStart;
+	private final int fullStart;
+	private final int keysStart;
+
+	private HypernymDepthIndex(MappedByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException("Not a hypernym depth index");
+		this.buffer = buffer;
+		this.entries = buffer.getInt(8);
+		this.offsetsStart = HEADER_SIZE;
+		this.ownStart = offsetsStart + (entries + 1) * 4;
+		this.fullStart = ownStart + entries * 8;
+		this.keysStart = fullStart + entries * 8;
+	}
+
+	/**
+	 * Map an index file in memory.
+	 *
+	 * @param file
+	 *            Index written by {@link HypernymDepthIndexBuilder}
+	 * @return the opened index
+	 * @throws IOException
+	 *             if the file cannot be read or is not an index
+	 */
+	public static HypernymDepthIndex open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return new HypernymDepthIndex(channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Open the index at {@link #DEFAULT_INDEX_FILE} if it was built.
+	 *
+	 * @return the index, or <code>null</code> if there is no usable index in
+	 *         which case callers fall back to walking the synsets with JAWS.
+	 */
+	public static HypernymDepthIndex openDefault() {
+		File file = new File(DEFAULT_INDEX_FILE);
+		if (!file.isFile())
+			return null;
+		try {
+			return open(file);
+		} catch (IOException e) {
+			System.err.println("Ignoring hypernym depth index " + file + ": "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Get the number of word forms in the index.
+	 *
+	 * @return number of entries
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * Get the average hypernym depth of all the noun synsets of a word, the
+	 * same value that walking the synsets of
+	 * <code>getSynsets(word, SynsetType.NOUN)</code> gives. <br/>
+	 * Word forms that are not in WordNet are resolved through the rules of
+	 * detachment. In that case the depths of the resulting base forms are
+	 * combined, which only differs from JAWS if two base forms share a synset.
+	 *
+	 * @param word
+	 *            Word form, or several words separated by spaces.
+	 * @return the average depth, or {@link Double#NaN} if the word has no noun
+	 *         synsets.
+	 */
+	public double averageDepth(CharSequence word) {
+		int len = word.length();
+		int entry = find(word, len, "");
+		if (entry >= 0)
+			return ((double) buffer.getInt(fullStart + entry * 8))
+					/ buffer.getInt(fullStart + entry * 8 + 4);
+
+		int depthSum = 0;
+		int synsets = 0;
+		for (int i = 0; i < NOUN_SUFFIXES.length; i++) {
+			if (!endsWith(word, NOUN_SUFFIXES[i]))
+				continue;
+			entry = find(word, len - NOUN_SUFFIXES[i].length(), NOUN_ENDINGS[i]);
+			if (entry >= 0) {
+				depthSum += buffer.getInt(ownStart + entry * 8);
+				synsets += buffer.getInt(ownStart + entry * 8 + 4);
+			}
+		}
+		if (synsets == 0)
+			return Double.NaN;
+		return ((double) depthSum) / synsets;
+	}
+
+	/**
+	 * Binary search for the key made of the first <code>stemLength</code>
+	 * characters of <code>word</code> followed by <code>ending</code>.
+	 */
+	private int find(CharSequence word, int stemLength, String ending) {
+		int low = 0;
+		int high = entries - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareKey(mid, word, stemLength, ending);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private int compareKey(int entry, CharSequence word, int stemLength,
+			String ending) {
+		int start = keysStart + buffer.getInt(offsetsStart + entry * 4);
+		int end = keysStart + buffer.getInt(offsetsStart + entry * 4 + 4);
+		int keyLength = end - start;
+		int length = stemLength + ending.length();
+		int n = Math.min(keyLength, length);
+		for (int i = 0; i < n; i++) {
+			char c = i < stemLength ? toKeyChar(word.charAt(i)) : ending
+					.charAt(i - stemLength);
+			int diff = (buffer.get(start + i) & 0xff) - c;
+			if (diff != 0)
+				return diff;
+		}
+		return keyLength - length;
+	}
+
+	/**
+	 * Case-sensitive, like the rules of detachment of JAWS which only apply
+	 * to lower-case suffixes.
+	 */
+	static boolean endsWith(CharSequence word, String suffix) {
+		int offset = word.length() - suffix.length();
+		if (offset < 0)
+			return false;
+		for (int i = 0; i < suffix.length(); i++) {
+			if (word.charAt(offset + i) != suffix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Translate a character to the WordNet database format, which is lower
+	 * case with underscores in place of spaces.
+	 */
+	static char toKeyChar(char c) {
+		if (c == ' ')
+			return '_';
+		return Character.toLowerCase(c);
+	}
+
+}
@@ -0,0 +1,282 @@
+package engine.wordnet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Offline tool that reads the WordNet noun files once and writes the
+ * {@link HypernymDepthIndex} used by the extractors at runtime. <br/>
+ * The depth of a synset is the number of synsets on the path that follows
+ * its first hypernym (or first instance hypernym) up to the root, the same
+ * walk <code>WordNetExtractor</code> and <code>HybridExtractor</code> do with
+ * JAWS.
+ *
+ * <pre>
+ * java engine.wordnet.HypernymDepthIndexBuilder [dict dir] [index file]
+ * </pre>
+ */
+public class HypernymDepthIndexBuilder {
+
+	private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+	private static final long NO_HYPERNYM = -1L;
+
+	private final File dictDir;
+	private Map<String, long[]> lemmaSynsets;
+	private Map<Long, Long> hypernyms;
+	private Map<String, List<String>> exceptions;
+	private Map<Long, Integer> depths = new HashMap<Long, Integer>();
+
+	/**
+	 * Create a builder for the WordNet database in the given directory.
+	 *
+	 * @param dictDir
+	 *            Directory that holds <code>index.noun</code>,
+	 *            <code>data.noun</code> and <code>noun.exc</code>.
+	 */
+	public HypernymDepthIndexBuilder(File dictDir) {
+		this.dictDir = dictDir;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File dictDir = new File(args.length > 0 ? args[0] : "./dict/");
+		File out = new File(args.length > 1 ? args[1]
+				: HypernymDepthIndex.DEFAULT_INDEX_FILE);
+		long start = System.currentTimeMillis();
+		int entries = new HypernymDepthIndexBuilder(dictDir).build(out);
+		System.out.println(String.format("Wrote %d word forms to %s in %d ms",
+				entries, out, System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * Read the WordNet files and write the index.
+	 *
+	 * @param out
+	 *            File to write the index to.
+	 * @return number of word forms written.
+	 * @throws IOException
+	 *             if the WordNet files cannot be read or the index written.
+	 */
+	public int build(File out) throws IOException {
+		lemmaSynsets = readIndex(new File(dictDir, "index.noun"));
+		hypernyms = readHypernyms(new File(dictDir, "data.noun"));
+		exceptions = readExceptions(new File(dictDir, "noun.exc"));
+
+		TreeMap<String, int[]> entries = new TreeMap<String, int[]>();
+		Set<String> keys = new LinkedHashSet<String>(lemmaSynsets.keySet());
+		keys.addAll(exceptions.keySet());
+		for (String key : keys) {
+			Set<Long> own = new LinkedHashSet<Long>();
+			addSynsets(key, own);
+			Set<Long> full = new LinkedHashSet<Long>(own);
+			List<String> bases = exceptions.get(key);
+			if (bases != null) {
+				for (String base : bases)
+					addSynsets(base, full);
+			}
+			for (int i = 0; i < HypernymDepthIndex.NOUN_SUFFIXES.length; i++) {
+				String suffix = HypernymDepthIndex.NOUN_SUFFIXES[i];
+				if (key.endsWith(suffix))
+					addSynsets(key.substring(0, key.length() - suffix.length())
+							+ HypernymDepthIndex.NOUN_ENDINGS[i], full);
+			}
+			if (full.isEmpty())
+				continue;
+			entries.put(key, new int[] { depthSum(own), own.size(),
+					depthSum(full), full.size() });
+		}
+
+		write(entries, out);
+		return entries.size();
+	}
+
+	private void addSynsets(String lemma, Set<Long> synsets) {
+		long[] offsets = lemmaSynsets.get(lemma);
+		if (offsets == null)
+			return;
+		for (long offset : offsets)
+			synsets.add(offset);
+	}
+
+	private int depthSum(Set<Long> synsets) {
+		int sum = 0;
+		for (Long offset : synsets)
+			sum += depth(offset);
+		return sum;
+	}
+
+	/**
+	 * Number of synsets on the hypernym path from the given synset to the
+	 * root, both included.
+	 */
+	private int depth(long offset) {
+		Integer known = depths.get(offset);
+		if (known != null)
+			return known;
+		List<Long> path = new ArrayList<Long>();
+		long current = offset;
+		int base = 0;
+		while (current != NO_HYPERNYM) {
+			Integer d = depths.get(current);
+			if (d != null) {
+				base = d;
+				break;
+			}
+			path.add(current);
+			Long next = hypernyms.get(current);
+			current = next == null ? NO_HYPERNYM : next;
+		}
+		for (int i = path.size() - 1; i >= 0; i--)
+			depths.put(path.get(i), ++base);
+		return depths.get(offset);
+	}
+
+	private void write(TreeMap<String, int[]> entries, File out)
+			throws IOException {
+		List<byte[]> keys = new ArrayList<byte[]>(entries.size());
+		int keysLength = 0;
+		for (String key : entries.keySet()) {
+			byte[] bytes = key.getBytes(LATIN_1);
+			keys.add(bytes);
+			keysLength += bytes.length;
+		}
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(out)));
+		try {
+			dos.writeInt(HypernymDepthIndex.MAGIC);
+			dos.writeInt(HypernymDepthIndex.VERSION);
+			dos.writeInt(entries.size());
+			dos.writeInt(keysLength);
+			int offset = 0;
+			for (byte[] key : keys) {
+				dos.writeInt(offset);
+				offset += key.length;
+			}
+			dos.writeInt(offset);
+			for (int[] values : entries.values()) {
+				dos.writeInt(values[0]);
+				dos.writeInt(values[1]);
+			}
+			for (int[] values : entries.values()) {
+				dos.writeInt(values[2]);
+				dos.writeInt(values[3]);
+			}
+			for (byte[] key : keys)
+				dos.write(key);
+		} finally {
+			dos.close();
+		}
+	}
+
+	/**
+	 * Read <code>index.noun</code> into a map from lemma to its synset offsets.
+	 */
+	static Map<String, long[]> readIndex(File file) throws IOException {
+		Map<String, long[]> index = new HashMap<String, long[]>();
+		BufferedReader reader = open(file);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(" "))
+					continue;
+				String[] fields = line.trim().split(" +");
+				int synsetCount = Integer.parseInt(fields[2]);
+				int pointerCount = Integer.parseInt(fields[3]);
+				int first = 4 + pointerCount + 2;
+				long[] offsets = new long[synsetCount];
+				for (int i = 0; i < synsetCount; i++)
+					offsets[i] = Long.parseLong(fields[first + i]);
+				index.put(fields[0], offsets);
+			}
+		} finally {
+			reader.close();
+		}
+		return index;
+	}
+
+	/**
+	 * Read <code>data.noun</code> into a map from every synset to the synset
+	 * of its first hypernym, or of its first instance hypernym if it has no
+	 * regular one.
+	 */
+	static Map<Long, Long> readHypernyms(File file) throws IOException {
+		Map<Long, Long> hypernyms = new HashMap<Long, Long>();
+		BufferedReader reader = open(file);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(" "))
+					continue;
+				String[] fields = line.split(" ");
+				long offset = Long.parseLong(fields[0]);
+				int wordCount = Integer.parseInt(fields[3], 16);
+				int p = 4 + wordCount * 2;
+				int pointerCount = Integer.parseInt(fields[p++]);
+				long hypernym = NO_HYPERNYM;
+				long instanceHypernym = NO_HYPERNYM;
+				for (int i = 0; i < pointerCount; i++, p += 4) {
+					if (hypernym == NO_HYPERNYM && "@".equals(fields[p]))
+						hypernym = Long.parseLong(fields[p + 1]);
+					else if (instanceHypernym == NO_HYPERNYM
+							&& "@i".equals(fields[p]))
+						instanceHypernym = Long.parseLong(fields[p + 1]);
+				}
+				hypernyms.put(offset, hypernym != NO_HYPERNYM ? hypernym
+						: instanceHypernym);
+			}
+		} finally {
+			reader.close();
+		}
+		return hypernyms;
+	}
+
+	/**
+	 * Read a morphological exception list into a map from the inflected form
+	 * to its base forms.
+	 */
+	static Map<String, List<String>> readExceptions(File file)
+			throws IOException {
+		Map<String, List<String>> exceptions = new HashMap<String, List<String>>();
+		if (!file.isFile())
+			return exceptions;
+		BufferedReader reader = open(file);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.trim().split(" +");
+				if (fields.length < 2)
+					continue;
+				List<String> bases = exceptions.get(fields[0]);
+				if (bases == null) {
+					bases = new ArrayList<String>(fields.length - 1);
+					exceptions.put(fields[0], bases);
+				}
+				for (int i = 1; i < fields.length; i++)
+					bases.add(fields[i]);
+			}
+		} finally {
+			reader.close();
+		}
+		return exceptions;
+	}
+
+	private static BufferedReader open(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(
+				file), LATIN_1));
+	}
+
+}
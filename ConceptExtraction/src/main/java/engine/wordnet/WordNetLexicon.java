@@ -0,0 +1,562 @@
+package engine.wordnet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.smu.tspell.wordnet.SynsetType;
+import engine.util.ScratchPool;
+
+/**
+ * Resolves word forms to WordNet synset offsets straight from the database
+ * files, giving the same synsets as
+ * <code>WordNetDatabase.getSynsets(word, type)</code> without going through
+ * JAWS. <br/>
+ * The <code>index.*</code> files are sorted by lemma, so they are
+ * memory-mapped and searched in place by binary search over their lines. The
+ * <code>*.exc</code> exception lists are loaded once into open addressing hash
+ * tables. A lookup therefore neither reads a file nor builds a string: the
+ * word is compared byte by byte with the lemmas, and the base form candidates
+ * are never materialized. <br/>
+ * Base forms are found the way JAWS does it: the word itself, the base forms
+ * listed for its lower-cased form in the exception list, and the candidates
+ * of the rules of detachment, whose suffixes are matched with the case of the
+ * word. The adjective rules are those of JAWS, which differ slightly from the
+ * WordNet ones. <br/>
+ * When <code>data.noun</code> is present the lexicon also walks the noun
+ * hypernym paths, like {@link HypernymDepthIndexBuilder} does offline. <br/>
+ * Instances are immutable and can be shared between threads.
+ */
+public class WordNetLexicon {
+
+	/**
+	 * Default location of the WordNet database.
+	 */
+	public static final String DEFAULT_DICT_DIR = "./dict/";
+
+	private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+	private static final int NOUN = 0;
+	private static final int VERB = 1;
+	private static final int ADJECTIVE = 2;
+	private static final int ADVERB = 3;
+	private static final String[] NAMES = { "noun", "verb", "adj", "adv" };
+
+	private static final String[][] SUFFIXES = {
+			HypernymDepthIndex.NOUN_SUFFIXES,
+			{ "s", "ies", "es", "es", "ed", "ed", "ing", "ing" },
+			{ "er", "est", "er", "er" }, {} };
+	private static final String[][] ENDINGS = {
+			HypernymDepthIndex.NOUN_ENDINGS,
+			{ "", "y", "e", "", "e", "", "e", "" }, { "", "", "", "" }, {} };
+
+	private static final ScratchPool<Offsets> SCRATCH = new ScratchPool<Offsets>() {
+		@Override
+		protected Offsets create() {
+			return new Offsets();
+		}
+	};
+
+	private final Lexicon[] lexicons = new Lexicon[NAMES.length];
+
+	private WordNetLexicon() {
+	}
+
+	/**
+	 * Map the index and data files and load the exception lists of every part
+	 * of speech found in a WordNet database directory.
+	 *
+	 * @param dictDir
+	 *            Directory that holds <code>index.noun</code>,
+	 *            <code>data.noun</code>, <code>noun.exc</code>, and so on.
+	 * @return the lexicon
+	 * @throws IOException
+	 *             if there is no <code>index.noun</code> or a file cannot be
+	 *             read.
+	 */
+	public static WordNetLexicon open(File dictDir) throws IOException {
+		if (!new File(dictDir, "index.noun").isFile())
+			throw new IOException("No index.noun in " + dictDir);
+		WordNetLexicon lexicon = new WordNetLexicon();
+		for (int i = 0; i < NAMES.length; i++) {
+			File index = new File(dictDir, "index." + NAMES[i]);
+			if (!index.isFile())
+				continue;
+			File data = new File(dictDir, "data." + NAMES[i]);
+			lexicon.lexicons[i] = new Lexicon(map(index),
+					data.isFile() ? map(data) : null,
+					ExceptionTable.read(new File(dictDir, NAMES[i] + ".exc")),
+					SUFFIXES[i], ENDINGS[i]);
+		}
+		return lexicon;
+	}
+
+	/**
+	 * Open the database at {@link #DEFAULT_DICT_DIR} if its noun files are
+	 * there.
+	 *
+	 * @return the lexicon, or <code>null</code> if there is no
+	 *         <code>index.noun</code> or <code>data.noun</code> in which case
+	 *         callers fall back to JAWS.
+	 */
+	public static WordNetLexicon openDefault() {
+		File dir = new File(DEFAULT_DICT_DIR);
+		if (!new File(dir, "index.noun").isFile()
+				|| !new File(dir, "data.noun").isFile())
+			return null;
+		try {
+			return open(dir);
+		} catch (IOException e) {
+			System.err.println("Ignoring WordNet lexicon " + dir + ": "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return whether the hypernym paths of nouns can be walked, i.e.
+	 *         <code>data.noun</code> was found.
+	 */
+	public boolean hasNounData() {
+		return lexicons[NOUN].data != null;
+	}
+
+	/**
+	 * Get the offsets of the synsets of a word form, in the order JAWS returns
+	 * them: the synsets of the word itself first, then those of its base
+	 * forms. <br/>
+	 * Head adjectives and satellites are told apart through
+	 * <code>data.adj</code>; without it both types give all the adjective
+	 * synsets.
+	 *
+	 * @param word
+	 *            Word form, or several words separated by spaces.
+	 * @param type
+	 *            Part of speech of the synsets.
+	 * @return the offsets of the synsets in the <code>data.*</code> file of
+	 *         the type, empty if there are none.
+	 */
+	public int[] getSynsetOffsets(CharSequence word, SynsetType type) {
+		Offsets offsets = SCRATCH.lease();
+		try {
+			collect(word, type, offsets);
+			return Arrays.copyOf(offsets.values, offsets.size);
+		} finally {
+			SCRATCH.release(offsets);
+		}
+	}
+
+	/**
+	 * Get the average hypernym depth of the noun synsets of a word, the value
+	 * the extractors compute by walking the synsets of
+	 * <code>getSynsets(word, SynsetType.NOUN)</code>.
+	 *
+	 * @param word
+	 *            Word form, or several words separated by spaces.
+	 * @return the average depth, or {@link Double#NaN} if the word has no noun
+	 *         synsets.
+	 * @throws IllegalStateException
+	 *             if there is no <code>data.noun</code>
+	 */
+	public double averageDepth(CharSequence word) {
+		return averageDepth(word, null);
+	}
+
+	/**
+	 * Get the average hypernym depth of the noun synsets of a word, and the
+	 * number of those synsets.
+	 *
+	 * @param word
+	 *            Word form, or several words separated by spaces.
+	 * @param synsetCount
+	 *            Array whose first element receives the number of noun
+	 *            synsets, or <code>null</code>.
+	 * @return the average depth, or {@link Double#NaN} if the word has no noun
+	 *         synsets.
+	 * @throws IllegalStateException
+	 *             if there is no <code>data.noun</code>
+	 * @see #averageDepth(CharSequence)
+	 */
+	public double averageDepth(CharSequence word, int[] synsetCount) {
+		if (!hasNounData())
+			throw new IllegalStateException("No data.noun");
+		Offsets offsets = SCRATCH.lease();
+		try {
+			collect(word, SynsetType.NOUN, offsets);
+			if (synsetCount != null)
+				synsetCount[0] = offsets.size;
+			if (offsets.size == 0)
+				return Double.NaN;
+			int depthSum = 0;
+			for (int i = 0; i < offsets.size; i++)
+				depthSum += hypernymDepth(offsets.values[i]);
+			return ((double) depthSum) / offsets.size;
+		} finally {
+			SCRATCH.release(offsets);
+		}
+	}
+
+	/**
+	 * Get the number of synsets on the path that follows the first hypernym,
+	 * or first instance hypernym, of a noun synset up to the root, both
+	 * included.
+	 *
+	 * @param offset
+	 *            Offset of the synset in <code>data.noun</code>
+	 * @return the depth of the synset, 1 for a root
+	 */
+	public int hypernymDepth(int offset) {
+		Lexicon nouns = lexicons[NOUN];
+		int depth = 1;
+		int next;
+		while ((next = nouns.firstHypernym(offset)) >= 0) {
+			depth++;
+			offset = next;
+		}
+		return depth;
+	}
+
+	private void collect(CharSequence word, SynsetType type, Offsets offsets) {
+		offsets.size = 0;
+		int pos = index(type);
+		Lexicon lexicon = lexicons[pos];
+		if (lexicon == null)
+			return;
+		char ssType = 0;
+		if (pos == ADJECTIVE && lexicon.data != null)
+			ssType = type == SynsetType.ADJECTIVE_SATELLITE ? 's' : 'a';
+
+		int len = word.length();
+		lexicon.addSynsets(word, len, "", ssType, offsets);
+		String[] bases = lexicon.exceptions.get(word);
+		if (bases != null) {
+			for (String base : bases)
+				lexicon.addSynsets(base, base.length(), "", ssType, offsets);
+		}
+		for (int i = 0; i < lexicon.suffixes.length; i++) {
+			if (HypernymDepthIndex.endsWith(word, lexicon.suffixes[i]))
+				lexicon.addSynsets(word, len - lexicon.suffixes[i].length(),
+						lexicon.endings[i], ssType, offsets);
+		}
+	}
+
+	private static int index(SynsetType type) {
+		if (type == SynsetType.NOUN)
+			return NOUN;
+		if (type == SynsetType.VERB)
+			return VERB;
+		if (type == SynsetType.ADJECTIVE
+				|| type == SynsetType.ADJECTIVE_SATELLITE)
+			return ADJECTIVE;
+		if (type == SynsetType.ADVERB)
+			return ADVERB;
+		throw new IllegalArgumentException("Invalid synset type: " + type);
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * The mapped files, exceptions and rules of detachment of one part of
+	 * speech.
+	 */
+	private static class Lexicon {
+
+		final MappedByteBuffer index;
+		final MappedByteBuffer data;
+		final ExceptionTable exceptions;
+		final String[] suffixes;
+		final String[] endings;
+		/** Start of every lemma line of the index, in order. */
+		final int[] lines;
+
+		Lexicon(MappedByteBuffer index, MappedByteBuffer data,
+				ExceptionTable exceptions, String[] suffixes, String[] endings) {
+			this.index = index;
+			this.data = data;
+			this.exceptions = exceptions;
+			this.suffixes = suffixes;
+			this.endings = endings;
+			this.lines = lineStarts(index);
+		}
+
+		/**
+		 * The license lines at the top of the files start with spaces.
+		 */
+		private static int[] lineStarts(MappedByteBuffer buffer) {
+			int[] starts = new int[1024];
+			int count = 0;
+			int limit = buffer.limit();
+			int start = 0;
+			while (start < limit) {
+				if (buffer.get(start) != ' ') {
+					if (count == starts.length)
+						starts = Arrays.copyOf(starts, count * 2);
+					starts[count++] = start;
+				}
+				while (start < limit && buffer.get(start) != '\n')
+					start++;
+				start++;
+			}
+			return Arrays.copyOf(starts, count);
+		}
+
+		/**
+		 * Add the synsets of the lemma made of the first
+		 * <code>stemLength</code> characters of <code>word</code> followed by
+		 * <code>ending</code>.
+		 */
+		void addSynsets(CharSequence word, int stemLength, String ending,
+				char ssType, Offsets offsets) {
+			int line = find(word, stemLength, ending);
+			if (line < 0)
+				return;
+			// lemma pos synset_cnt p_cnt [ptr_symbol...] sense_cnt
+			// tagsense_cnt synset_offset...
+			int p = skipField(line);
+			p = skipField(p);
+			int synsets = (int) readNumber(p);
+			p = skipField(p);
+			int pointers = (int) readNumber(p);
+			p = skipField(p);
+			for (int i = 0; i < pointers + 2; i++)
+				p = skipField(p);
+			for (int i = 0; i < synsets; i++) {
+				int offset = (int) readNumber(p);
+				p = skipField(p);
+				if (ssType == 0 || data.get(offset + 12) == ssType)
+					offsets.add(offset);
+			}
+		}
+
+		private int find(CharSequence word, int stemLength, String ending) {
+			int low = 0;
+			int high = lines.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compareLemma(lines[mid], word, stemLength, ending);
+				if (cmp < 0)
+					low = mid + 1;
+				else if (cmp > 0)
+					high = mid - 1;
+				else
+					return lines[mid];
+			}
+			return -1;
+		}
+
+		/**
+		 * Compare the lemma of the line at <code>start</code> with the word in
+		 * the database format: lower case with underscores in place of
+		 * spaces.
+		 */
+		private int compareLemma(int start, CharSequence word, int stemLength,
+				String ending) {
+			int length = stemLength + ending.length();
+			for (int i = 0;; i++) {
+				int b = index.get(start + i) & 0xff;
+				boolean lemmaEnd = b == ' ';
+				if (i == length)
+					return lemmaEnd ? 0 : 1;
+				if (lemmaEnd)
+					return -1;
+				char c = i < stemLength ? HypernymDepthIndex.toKeyChar(word
+						.charAt(i)) : ending.charAt(i - stemLength);
+				if (b != c)
+					return b - c;
+			}
+		}
+
+		private int skipField(int p) {
+			while (index.get(p) != ' ')
+				p++;
+			return p + 1;
+		}
+
+		private long readNumber(int p) {
+			return readNumber(index, p, 10);
+		}
+
+		/**
+		 * Offset of the first hypernym of a noun synset, or of its first
+		 * instance hypernym if it has no regular one, -1 for a root.
+		 */
+		int firstHypernym(int offset) {
+			// synset_offset lex_filenum ss_type w_cnt [word lex_id...] p_cnt
+			// [ptr_symbol synset_offset pos source/target...]
+			int p = offset;
+			for (int i = 0; i < 3; i++)
+				p = skipDataField(p);
+			int words = (int) readNumber(data, p, 16);
+			p = skipDataField(p);
+			for (int i = 0; i < words * 2; i++)
+				p = skipDataField(p);
+			int pointers = (int) readNumber(data, p, 10);
+			p = skipDataField(p);
+			int instanceHypernym = -1;
+			for (int i = 0; i < pointers; i++) {
+				int symbol = p;
+				p = skipDataField(p);
+				if (data.get(symbol) == '@') {
+					int length = p - 1 - symbol;
+					if (length == 1)
+						return (int) readNumber(data, p, 10);
+					if (length == 2 && data.get(symbol + 1) == 'i'
+							&& instanceHypernym < 0)
+						instanceHypernym = (int) readNumber(data, p, 10);
+				}
+				for (int j = 0; j < 3; j++)
+					p = skipDataField(p);
+			}
+			return instanceHypernym;
+		}
+
+		private int skipDataField(int p) {
+			while (data.get(p) != ' ')
+				p++;
+			return p + 1;
+		}
+
+		private static long readNumber(MappedByteBuffer buffer, int p,
+				int radix) {
+			long value = 0;
+			int digit;
+			while ((digit = Character.digit(buffer.get(p++), radix)) >= 0)
+				value = value * radix + digit;
+			return value;
+		}
+	}
+
+	/**
+	 * Open addressing hash table from the inflected forms of an exception list
+	 * to their base forms. Keys are kept in the external format, with spaces,
+	 * and looked up by the lower-cased word, like JAWS does.
+	 */
+	static class ExceptionTable {
+
+		private final String[] keys;
+		private final int[] hashes;
+		private final String[][] values;
+		private final int mask;
+
+		private ExceptionTable(Map<String, String[]> exceptions) {
+			int capacity = Integer.highestOneBit(Math.max(
+					exceptions.size() * 2, 2) - 1) << 1;
+			keys = new String[capacity];
+			hashes = new int[capacity];
+			values = new String[capacity][];
+			mask = capacity - 1;
+			for (Map.Entry<String, String[]> e : exceptions.entrySet()) {
+				String key = e.getKey();
+				int hash = hash(key);
+				int slot = hash & mask;
+				while (keys[slot] != null)
+					slot = (slot + 1) & mask;
+				keys[slot] = key;
+				hashes[slot] = hash;
+				values[slot] = e.getValue();
+			}
+		}
+
+		/**
+		 * Read an exception list, a missing file gives an empty table. A
+		 * form listed twice keeps the base forms of its last line.
+		 */
+		static ExceptionTable read(File file) throws IOException {
+			Map<String, String[]> exceptions = new LinkedHashMap<String, String[]>();
+			if (file.isFile()) {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(new FileInputStream(file),
+								LATIN_1));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						String[] fields = line.trim().split(" +");
+						if (fields.length < 2)
+							continue;
+						List<String> bases = new ArrayList<String>(
+								fields.length - 1);
+						for (int i = 1; i < fields.length; i++)
+							bases.add(fields[i].replace('_', ' '));
+						exceptions.put(fields[0].replace('_', ' '),
+								bases.toArray(new String[bases.size()]));
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			return new ExceptionTable(exceptions);
+		}
+
+		/**
+		 * @return the base forms of the lower-cased word, or
+		 *         <code>null</code>
+		 */
+		String[] get(CharSequence word) {
+			int hash = hash(word);
+			int slot = hash & mask;
+			String key;
+			while ((key = keys[slot]) != null) {
+				if (hashes[slot] == hash && equalsLowerCase(key, word))
+					return values[slot];
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private static int hash(CharSequence word) {
+			int h = 0;
+			for (int i = 0; i < word.length(); i++)
+				h = 31 * h + Character.toLowerCase(word.charAt(i));
+			return h ^ (h >>> 16);
+		}
+
+		private static boolean equalsLowerCase(String key, CharSequence word) {
+			if (key.length() != word.length())
+				return false;
+			for (int i = 0; i < key.length(); i++) {
+				if (key.charAt(i) != Character.toLowerCase(word.charAt(i)))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Distinct synset offsets found by a lookup, reused through a pool.
+	 */
+	private static class Offsets {
+		int[] values = new int[64];
+		int size;
+
+		void add(int offset) {
+			for (int i = 0; i < size; i++) {
+				if (values[i] == offset)
+					return;
+			}
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = offset;
+		}
+	}
+
+}
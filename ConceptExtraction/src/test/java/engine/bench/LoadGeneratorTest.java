@@ -0,0 +1,72 @@
+package engine.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import engine.core.CapitalizedWordsExtractor;
+import engine.core.Extractor;
+import engine.core.MicroBatchingExtractor;
+
+public class LoadGeneratorTest {
+
+	private static final List<String> QUESTIONS = Arrays.asList(
+			"How old is Obama?", "", "Where is Paris?", "Why would it fail?");
+
+	private static LoadGenerator load(Extractor extractor) {
+		LoadGenerator load = new LoadGenerator(extractor, QUESTIONS);
+		load.setWarmUp(50, TimeUnit.MILLISECONDS);
+		load.setDuration(200, TimeUnit.MILLISECONDS);
+		return load;
+	}
+
+	@Test
+	public void closedLoopCountsEveryQuestion() {
+		LoadResult result = load(new CapitalizedWordsExtractor())
+				.runClosed(2);
+		assertEquals(2, result.getThreads());
+		assertTrue(result.getCompleted() > 0);
+		assertEquals(result.getCompleted(), result.getLatency().getCount());
+		// one question in three fails, the empty one is skipped
+		assertEquals(result.getCompleted() / 3.0, result.getFailures(),
+				2 + result.getCompleted() / 30.0);
+		assertTrue(result.getElapsedMillis() >= 200);
+	}
+
+	@Test
+	public void scalingDoublesTheThreads() {
+		List<LoadResult> results = load(new CapitalizedWordsExtractor())
+				.runScaling(3);
+		assertEquals(3, results.size());
+		assertEquals(1, results.get(0).getThreads());
+		assertEquals(2, results.get(1).getThreads());
+		assertEquals(3, results.get(2).getThreads());
+		String table = LoadGenerator.scalingTable(results);
+		assertEquals(4, table.split("\n").length);
+	}
+
+	@Test
+	public void openLoopSendsAtTheRate() {
+		LoadResult result = load(new CapitalizedWordsExtractor()).runOpen(
+				500, 2);
+		assertEquals(100, result.getCompleted());
+		assertEquals(500.0, result.getRate(), 0);
+
+		MicroBatchingExtractor batching = new MicroBatchingExtractor(
+				new CapitalizedWordsExtractor(), 2, 8, 1, TimeUnit.MILLISECONDS);
+		try {
+			result = load(batching).runOpen(500, 1);
+			assertEquals(100, result.getCompleted());
+			assertEquals(0, result.getThreads());
+			assertTrue(result.getFailures() > 0);
+		} finally {
+			batching.close();
+		}
+	}
+
+}
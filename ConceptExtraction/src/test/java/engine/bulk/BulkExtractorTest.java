@@ -0,0 +1,100 @@
+package engine.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.CapitalizedWordsExtractor;
+
+public class BulkExtractorTest {
+
+	private static final int QUESTIONS = 200;
+	private static final int MAX_IN_FLIGHT = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Extractor whose every fourth question is slow, so that the workers
+	 * finish the questions out of order, and which records the largest
+	 * number of questions started but not written yet.
+	 */
+	private static class OutOfOrderExtractor extends
+			CapitalizedWordsExtractor {
+
+		final AtomicInteger started = new AtomicInteger();
+		final AtomicInteger written = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+
+		@Override
+		protected ClassifiedTokens process(Annotation questionAnnotations) {
+			int inFlight = started.incrementAndGet() - written.get();
+			int max;
+			while (inFlight > (max = maxInFlight.get())
+					&& !maxInFlight.compareAndSet(max, inFlight))
+				;
+			String question = questionAnnotations.get(TextAnnotation.class);
+			if (Integer.parseInt(question.substring(1)) % 4 == 0) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.process(questionAnnotations);
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void writesInOrderWithinTheBound() throws IOException,
+			InterruptedException {
+		File input = folder.newFile("questions.txt");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(input),
+				"UTF-8");
+		try {
+			for (int i = 0; i < QUESTIONS; i++) {
+				writer.write("q" + i + "\n");
+				if (i % 50 == 0)
+					writer.write("\n");
+			}
+		} finally {
+			writer.close();
+		}
+
+		final OutOfOrderExtractor extractor = new OutOfOrderExtractor();
+		StringWriter output = new StringWriter() {
+			@Override
+			public void write(int c) {
+				super.write(c);
+				if (c == '\n')
+					extractor.written.incrementAndGet();
+			}
+		};
+		BulkExtractor bulk = new BulkExtractor(extractor, 4, MAX_IN_FLIGHT);
+		bulk.setProgress(null, 0);
+		assertEquals(QUESTIONS, bulk.run(input, output));
+
+		String[] lines = output.toString().split("\n");
+		assertEquals(QUESTIONS, lines.length);
+		for (int i = 0; i < QUESTIONS; i++)
+			assertTrue(lines[i], lines[i].contains("\"question\":\"q" + i
+					+ "\""));
+		assertTrue(extractor.maxInFlight.get() > 1);
+		assertTrue("In flight: " + extractor.maxInFlight.get(),
+				extractor.maxInFlight.get() <= MAX_IN_FLIGHT);
+	}
+
+}
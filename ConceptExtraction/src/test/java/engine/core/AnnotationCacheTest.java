@@ -0,0 +1,194 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import engine.metrics.ExtractorMetrics;
+
+public class AnnotationCacheTest {
+
+	private static final String QUESTION = "Who is Barack Obama? Where is he?";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SharedPipeline pipeline;
+
+	@Before
+	public void acquire() {
+		pipeline = AnnotatorRegistry.getInstance().acquire("tokenize,ssplit");
+	}
+
+	@After
+	public void release() {
+		AnnotatorRegistry.getInstance().release(pipeline);
+	}
+
+	/**
+	 * Annotate the question, with tags standing for the ones of the POS and
+	 * NER annotators.
+	 */
+	private Annotation annotate() {
+		Annotation annotation = new Annotation(QUESTION);
+		pipeline.annotate(annotation);
+		for (CoreLabel cl : annotation.get(TokensAnnotation.class)) {
+			String word = cl.get(TextAnnotation.class);
+			cl.set(PartOfSpeechAnnotation.class, word.toUpperCase());
+			cl.set(NamedEntityTagAnnotation.class, Character.isUpperCase(word
+					.charAt(0)) ? "PERSON" : "O");
+		}
+		return annotation;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		AnnotationCache cache = new AnnotationCache(folder.getRoot(), pipeline);
+		assertNull(cache.get(QUESTION));
+		Annotation expected = annotate();
+		cache.put(expected);
+
+		Annotation actual = cache.get(QUESTION);
+		assertNotNull(actual);
+		assertEquals(QUESTION, actual.get(TextAnnotation.class));
+		List<CoreMap> sentences = actual.get(SentencesAnnotation.class);
+		assertEquals(2, sentences.size());
+		assertEquals("Where is he?", sentences.get(1).get(TextAnnotation.class));
+		assertEquals(4, sentences.get(1).get(TokensAnnotation.class).size());
+
+		List<CoreLabel> expectedTokens = expected.get(TokensAnnotation.class);
+		List<CoreLabel> actualTokens = actual.get(TokensAnnotation.class);
+		assertEquals(expectedTokens.size(), actualTokens.size());
+		for (int i = 0; i < expectedTokens.size(); i++) {
+			CoreLabel e = expectedTokens.get(i);
+			CoreLabel a = actualTokens.get(i);
+			assertEquals(e.word(), a.word());
+			assertEquals(e.beginPosition(), a.beginPosition());
+			assertEquals(e.endPosition(), a.endPosition());
+			assertEquals(e.index(), a.index());
+			assertEquals(e.tag(), a.tag());
+			assertEquals(e.ner(), a.ner());
+			assertNull(a.lemma());
+		}
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getWrites());
+	}
+
+	@Test
+	public void annotateOnMiss() throws IOException {
+		AnnotationCache cache = new AnnotationCache(folder.getRoot(), pipeline);
+		ExtractorMetrics metrics = ExtractorMetrics.get("AnnotationCacheTest");
+		List<Annotation> first = pipeline.annotateAll(Arrays.asList(QUESTION,
+				"Hello."), 2, metrics, cache);
+		assertEquals(2, cache.getWrites());
+		List<Annotation> second = pipeline.annotateAll(Arrays.asList(QUESTION,
+				"Hello."), 2, metrics, cache);
+		assertEquals(2, cache.getHits());
+		assertEquals(first.get(0).get(TokensAnnotation.class).size(), second
+				.get(0).get(TokensAnnotation.class).size());
+		assertSame(pipeline, cache.getPipeline());
+	}
+
+	@Test
+	public void damagedEntryIsAMiss() throws IOException {
+		AnnotationCache cache = new AnnotationCache(folder.getRoot(), pipeline);
+		cache.put(annotate());
+		FileWriter writer = new FileWriter(cache.file(QUESTION));
+		try {
+			writer.write("damaged");
+		} finally {
+			writer.close();
+		}
+		assertNull(cache.get(QUESTION));
+		assertNotNull(cache.annotate(QUESTION,
+				ExtractorMetrics.get("AnnotationCacheTest")));
+		assertNotNull(cache.get(QUESTION));
+	}
+
+	/**
+	 * Truncate the entry at every length and flip every bit of it in turn:
+	 * reading it either gives annotations or is a miss, never an exception.
+	 */
+	@Test
+	public void damagedBodyIsAMiss() throws IOException {
+		AnnotationCache cache = new AnnotationCache(folder.getRoot(), pipeline);
+		cache.put(annotate());
+		File file = cache.file(QUESTION);
+		byte[] entry = Files.readAllBytes(file.toPath());
+		for (int length = 0; length < entry.length; length++) {
+			Files.write(file.toPath(), Arrays.copyOf(entry, length));
+			assertNull(cache.get(QUESTION));
+		}
+		for (int i = 0; i < entry.length; i++) {
+			for (int bit = 0; bit < 8; bit++) {
+				byte[] damaged = entry.clone();
+				damaged[i] ^= 1 << bit;
+				Files.write(file.toPath(), damaged);
+				cache.get(QUESTION);
+			}
+		}
+		Files.write(file.toPath(), entry);
+		assertNotNull(cache.get(QUESTION));
+	}
+
+	@Test
+	public void staleConfigurationsAreDeleted() throws IOException {
+		File unmarked = folder.newFolder(AnnotationCache.sha1("old"));
+		new File(unmarked, "entry.ann").createNewFile();
+		File oldFormat = folder.newFolder(AnnotationCache.sha1("older"));
+		FileWriter writer = new FileWriter(new File(oldFormat,
+				"configuration.properties"));
+		try {
+			writer.write("format=0\n");
+		} finally {
+			writer.close();
+		}
+		File unrelated = folder.newFolder("notes");
+		new AnnotationCache(folder.getRoot(), pipeline);
+		assertEquals(false, unmarked.exists());
+		assertEquals(false, oldFormat.exists());
+		assertEquals(true, unrelated.exists());
+	}
+
+	@Test
+	public void otherAnnotatorSetsAreKept() throws IOException {
+		new AnnotationCache(folder.getRoot(), pipeline).put(annotate());
+		SharedPipeline other = AnnotatorRegistry.getInstance().acquire(
+				"tokenize");
+		try {
+			new AnnotationCache(folder.getRoot(), other);
+		} finally {
+			AnnotatorRegistry.getInstance().release(other);
+		}
+		AnnotationCache cache = new AnnotationCache(folder.getRoot(), pipeline);
+		assertNotNull(cache.get(QUESTION));
+		cache.clear();
+		assertNull(cache.get(QUESTION));
+		new AnnotationCache(folder.getRoot(), pipeline).put(annotate());
+		assertNotNull(cache.get(QUESTION));
+	}
+
+}
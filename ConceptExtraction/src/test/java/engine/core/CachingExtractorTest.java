@@ -0,0 +1,148 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.Extractor.ClassifiedTokens;
+import engine.metrics.ExtractorMetrics;
+
+public class CachingExtractorTest {
+
+	/**
+	 * Counts how many questions reach the wrapped extractor, and makes them
+	 * slow enough for concurrent requests to overlap.
+	 */
+	private static class SlowExtractor extends CapitalizedWordsExtractor {
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		protected ClassifiedTokens process(Annotation questionAnnotations) {
+			calls.incrementAndGet();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.process(questionAnnotations);
+		}
+	}
+
+	/**
+	 * Counts how many questions reach the wrapped extractor.
+	 */
+	private static class CountingExtractor extends CapitalizedWordsExtractor {
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		protected ClassifiedTokens process(Annotation questionAnnotations) {
+			calls.incrementAndGet();
+			return super.process(questionAnnotations);
+		}
+	}
+
+	@Test
+	public void normalizedQuestionsHit() {
+		SlowExtractor delegate = new SlowExtractor();
+		CachingExtractor cache = new CachingExtractor(delegate, 10, 1 << 20,
+				false);
+		ClassifiedTokens first = cache
+				.classifyQuestionTokens("How old is Obama?");
+		ClassifiedTokens second = cache
+				.classifyQuestionTokens("  How  old is\tObama? ");
+		cache.classifyQuestionTokens("how old is obama?");
+
+		assertEquals(2, delegate.calls.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(first.getConcepts(), second.getConcepts());
+		assertTrue(cache.getSavedNanos() > 0);
+	}
+
+	@Test
+	public void concurrentQuestionsRunOnce() {
+		SlowExtractor delegate = new SlowExtractor();
+		CachingExtractor cache = new CachingExtractor(delegate, 10, 1 << 20,
+				true);
+		List<String> questions = new ArrayList<String>();
+		for (int i = 0; i < 8; i++)
+			questions.add(i % 2 == 0 ? "Where is Paris?" : "where is paris?");
+		List<ClassifiedTokens> results = cache.classifyAll(questions, 8);
+
+		assertEquals(1, delegate.calls.get());
+		assertEquals(8, results.size());
+		assertEquals(1, cache.getMisses());
+		assertEquals(7, cache.getHits() + cache.getCoalesced());
+	}
+
+	/**
+	 * Many rounds of threads asking the same new question at once: however
+	 * their calls interleave with the end of the computation, the question
+	 * reaches the wrapped extractor once.
+	 */
+	@Test
+	public void finishedComputationsAreNotRepeated()
+			throws InterruptedException {
+		final CountingExtractor delegate = new CountingExtractor();
+		final CachingExtractor cache = new CachingExtractor(delegate, 1000,
+				1 << 20, false);
+		final int rounds = 300;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < rounds; i++)
+						cache.classifyQuestionTokens("Is Rome " + i + " old?");
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(rounds, delegate.calls.get());
+		assertEquals(rounds, cache.getMisses());
+		assertEquals(rounds * (threads.length - 1), cache.getHits()
+				+ cache.getCoalesced());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		SlowExtractor delegate = new SlowExtractor();
+		CachingExtractor cache = new CachingExtractor(delegate, 2, 1 << 20,
+				false);
+		ExtractorMetrics metrics = cache.getMetrics();
+		long hits = metrics.getCacheHits();
+		long misses = metrics.getCacheMisses();
+		long evictions = metrics.getCacheEvictions();
+		for (String q : Arrays.asList("Who is A?", "Who is B?", "Who is A?",
+				"Who is C?", "Who is A?", "Who is B?"))
+			cache.classifyQuestionTokens(q);
+
+		assertEquals(4, delegate.calls.get());
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getEvictions());
+		// published with the metrics of the type
+		assertEquals(2, metrics.getCacheHits() - hits);
+		assertEquals(4, metrics.getCacheMisses() - misses);
+		assertEquals(2, metrics.getCacheEvictions() - evictions);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failuresAreNotCached() {
+		CachingExtractor cache = new CachingExtractor(new SlowExtractor(), 10,
+				1 << 20, false);
+		try {
+			cache.classifyQuestionTokens("please fail");
+		} finally {
+			assertEquals(0, cache.size());
+		}
+	}
+
+}
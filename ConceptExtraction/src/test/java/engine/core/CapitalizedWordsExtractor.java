@@ -0,0 +1,37 @@
+package engine.core;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+
+/**
+ * Extractor without models used by the tests: every capitalized word is a
+ * concept, every other word is not. Questions containing the word "fail"
+ * make it throw.
+ */
+public class CapitalizedWordsExtractor extends Extractor {
+
+	@Override
+	protected ClassifiedTokens process(Annotation questionAnnotations) {
+		Set<String> concepts = new HashSet<String>();
+		Set<String> notConcepts = new HashSet<String>();
+		String question = questionAnnotations.get(TextAnnotation.class);
+		for (String word : question.split("[\\s?]+")) {
+			if (word.equals("fail"))
+				throw new IllegalStateException("Cannot process " + question);
+			if (word.length() == 0)
+				continue;
+			if (Character.isUpperCase(word.charAt(0)))
+				concepts.add(word);
+			else
+				notConcepts.add(word);
+		}
+		ClassifiedTokens ct = new ClassifiedTokens();
+		ct.setConcepts(concepts);
+		ct.setNotConcepts(notConcepts);
+		return ct;
+	}
+
+}
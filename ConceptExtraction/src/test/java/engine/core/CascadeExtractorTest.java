@@ -0,0 +1,148 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.Extractor.ClassifiedTokens;
+import engine.gazetteer.GazetteerBuilder;
+
+public class CascadeExtractorTest {
+
+	private static CascadeExtractor cascade() {
+		return new CascadeExtractor(Arrays.asList(new GazetteerExtractor(
+				new GazetteerBuilder().add("Barack Obama").build()),
+				new CapitalizedWordsExtractor()), Arrays.asList(EscalationRules
+				.noConcepts()));
+	}
+
+	@Test
+	public void escalatesAmbiguousQuestions() {
+		CascadeExtractor cascade = cascade();
+		ClassifiedTokens known = cascade
+				.classifyQuestionTokens("How old is Barack Obama?");
+		assertEquals(Collections.singleton("Barack Obama"), known
+				.getConcepts());
+		ClassifiedTokens escalated = cascade
+				.classifyQuestionTokens("Where is Paris?");
+		assertEquals(new HashSet<String>(Arrays.asList("Where", "Paris")),
+				escalated.getConcepts());
+
+		assertEquals(2, cascade.getQuestions());
+		assertEquals(1, cascade.getHandled(0));
+		assertEquals(1, cascade.getHandled(1));
+		assertEquals(0.5, cascade.getShare(1), 0.0);
+		cascade.close();
+	}
+
+	@Test
+	public void nearThresholdReadsTheRatiosOfTheTier() {
+		final AtomicInteger profiles = new AtomicInteger();
+		WordDepthsExtractor cheap = new WordDepthsExtractor() {
+			@Override
+			public DepthProfile profileAnnotatedQuestion(
+					Annotation questionAnnotations) {
+				profiles.incrementAndGet();
+				return super.profileAnnotatedQuestion(questionAnnotations);
+			}
+		};
+		EscalationRule rule = EscalationRules.nearThreshold(cheap, 0.5);
+		CascadeExtractor cascade = new CascadeExtractor(Arrays.asList(
+				(Extractor) cheap, new CapitalizedWordsExtractor()),
+				Arrays.asList(EscalationRules.any(EscalationRules.noConcepts(),
+						rule)));
+		// ratios 2 and 0, then 1.2 and 0.8 around the factor 1
+		cascade.classifyQuestionTokens("dog:10 the:0");
+		cascade.classifyQuestionTokens("Dog:6 The:4");
+		assertEquals(1, cascade.getHandled(0));
+		assertEquals(1, cascade.getHandled(1));
+		assertEquals(0, profiles.get());
+
+		// on its own the rule profiles the question
+		Annotation annotation = new Annotation("Dog:6 The:4");
+		assertTrue(rule.escalate(annotation,
+				cheap.classifyAnnotatedQuestion(annotation)));
+		assertEquals(1, profiles.get());
+		cascade.close();
+	}
+
+	@Test
+	public void escalationOnlyRunsTheMissingAnnotators() {
+		final List<Annotation> seen = new ArrayList<Annotation>();
+		final List<Object> tokens = new ArrayList<Object>();
+		Extractor tokenizing = new Extractor("tokenize") {
+			@Override
+			protected ClassifiedTokens process(Annotation questionAnnotations) {
+				seen.add(questionAnnotations);
+				tokens.add(questionAnnotations.get(TokensAnnotation.class));
+				return new ClassifiedTokens();
+			}
+		};
+		Extractor splitting = new Extractor("tokenize, ssplit") {
+			@Override
+			protected ClassifiedTokens process(Annotation questionAnnotations) {
+				seen.add(questionAnnotations);
+				tokens.add(questionAnnotations.get(TokensAnnotation.class));
+				assertNotNull(questionAnnotations
+						.get(SentencesAnnotation.class));
+				return new ClassifiedTokens();
+			}
+		};
+		CascadeExtractor cascade = new CascadeExtractor(Arrays.asList(
+				tokenizing, splitting), Arrays.asList(EscalationRules
+				.noConcepts()));
+		try {
+			cascade.classifyQuestionTokens("Where is Paris?");
+			assertEquals(1, cascade.getHandled(1));
+			assertSame(seen.get(0), seen.get(1));
+			assertSame(tokens.get(0), tokens.get(1));
+
+			// an annotation given by the caller is only read
+			seen.clear();
+			Annotation given = tokenizing.annotate("Where is Rome?");
+			cascade.classifyAnnotatedQuestion(given);
+			assertSame(given, seen.get(0));
+			assertNotSame(given, seen.get(1));
+			assertNull(given.get(SentencesAnnotation.class));
+		} finally {
+			cascade.close();
+		}
+	}
+
+	@Test
+	public void countsEveryQuestionOfABatch() {
+		CascadeExtractor cascade = cascade();
+		List<String> questions = new ArrayList<String>();
+		for (int i = 0; i < 100; i++)
+			questions.add(i % 4 == 0 ? "Is Barack Obama tall?" : "Who is "
+					+ i + "?");
+		cascade.classifyAll(questions, 4);
+		assertEquals(100, cascade.getQuestions());
+		assertEquals(25, cascade.getHandled(0));
+		assertEquals(75, cascade.getHandled(1));
+		cascade.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void oneRulePerEscalation() {
+		new CascadeExtractor(Arrays.asList(new CapitalizedWordsExtractor(),
+				new CapitalizedWordsExtractor()),
+				new ArrayList<EscalationRule>());
+	}
+
+}
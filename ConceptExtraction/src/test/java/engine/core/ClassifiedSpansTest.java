@@ -0,0 +1,70 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import engine.core.Extractor.ClassifiedTokens;
+
+public class ClassifiedSpansTest {
+
+	private static final String QUESTION = "Is New  York (big) or New York?";
+
+	private static ClassifiedSpans spans() {
+		ClassifiedSpans spans = new ClassifiedSpans(QUESTION);
+		spans.addNotConcept(0, 2, "Is");
+		// the tokens are separated by two spaces in the question
+		spans.addConcept(3, 12, "New York");
+		spans.addNotConcept(13, 14, "-LRB-");
+		spans.addConcept(14, 17, "big");
+		spans.addConcept(14, 17, "big");
+		spans.addNotConcept(17, 18, "-RRB-");
+		spans.addNotConcept(19, 21, "or");
+		spans.addConcept(22, 30, "New York");
+		spans.addNotConcept(30, 31, "?");
+		return spans;
+	}
+
+	@Test
+	public void offsetsAndTexts() {
+		ClassifiedSpans spans = spans();
+		assertSame(QUESTION, spans.getQuestion());
+		assertEquals(3, spans.getConceptCount());
+		assertEquals(5, spans.getNotConceptCount());
+		assertEquals(22, spans.getConceptBegin(2));
+		assertEquals(30, spans.getConceptEnd(2));
+		assertEquals("New York", spans.getConcept(0).toString());
+		assertEquals("New York", spans.getConcept(2).toString());
+		assertEquals("big", spans.getConcept(1).toString());
+		assertEquals('b', spans.getConcept(1).charAt(0));
+		assertEquals("ew", spans.getConcept(2).subSequence(1, 3).toString());
+		assertEquals("-LRB-", spans.getNotConcept(1).toString());
+		assertTrue(spans.isConcept("New York"));
+		assertTrue(!spans.isConcept("New"));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void outOfBounds() {
+		spans().getConcept(3);
+	}
+
+	@Test
+	public void adapter() {
+		ClassifiedTokens ct = new CapitalizedWordsExtractor().new ClassifiedTokens();
+		ct.setSpans(spans());
+		assertEquals(new HashSet<String>(Arrays.asList("New York", "big")),
+				ct.getConcepts());
+		assertEquals(new HashSet<String>(Arrays.asList("Is", "-LRB-", "-RRB-",
+				"or", "?")), ct.getNotConcepts());
+		assertSame(ct.getConcepts(), ct.getConcepts());
+		assertEquals("{\"concepts\":[\"New York\",\"big\"],"
+				+ "\"notConcepts\":[\"Is\",\"-LRB-\",\"-RRB-\",\"or\",\"?\"]}",
+				ct.appendJson(new StringBuilder()).toString());
+	}
+
+}
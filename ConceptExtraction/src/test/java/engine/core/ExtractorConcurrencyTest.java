@@ -0,0 +1,122 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import engine.gazetteer.GazetteerBuilder;
+import engine.util.FileLinesReader;
+
+/**
+ * Checks the concurrency contract of {@link Extractor}: many threads calling
+ * the same extractor at once, without any lock, get the results of a serial
+ * run.
+ */
+public class ExtractorConcurrencyTest {
+
+	private static final int THREADS = 8;
+
+	/**
+	 * Classify every question serially, then from all the threads at once,
+	 * each one starting at a different question, and compare the JSON of
+	 * every result.
+	 */
+	private static void assertConcurrentMatchesSerial(
+			final Extractor extractor, final List<String> questions,
+			int rounds) throws InterruptedException {
+		final List<String> serial = new ArrayList<String>();
+		for (String question : questions)
+			serial.add(json(extractor, question));
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<String> mismatch = new AtomicReference<String>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t * questions.size() / THREADS;
+			final int repeat = rounds;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					int n = questions.size();
+					for (int r = 0; r < repeat; r++) {
+						for (int k = 0; k < n; k++) {
+							int i = (offset + k) % n;
+							String json = json(extractor, questions.get(i));
+							if (!json.equals(serial.get(i)))
+								mismatch.compareAndSet(null, questions.get(i)
+										+ ": " + json + " instead of "
+										+ serial.get(i));
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(null, mismatch.get());
+	}
+
+	private static String json(Extractor extractor, String question) {
+		return extractor.classifyQuestionTokens(question)
+				.appendJson(new StringBuilder()).toString();
+	}
+
+	@Test
+	public void gazetteerMatchesSerial() throws InterruptedException {
+		GazetteerBuilder builder = new GazetteerBuilder();
+		List<String> questions = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			builder.add("entity " + i);
+			questions.add("Is entity " + i + " older than entity "
+					+ (i * 7 % 500) + " or entity" + i + "?");
+		}
+		assertConcurrentMatchesSerial(new GazetteerExtractor(builder.build()),
+				questions, 20);
+	}
+
+	/**
+	 * Runs the WordNet and Hybrid extractors on the sample questions.
+	 * Skipped when the models cannot be run.
+	 */
+	@Test
+	public void modelsMatchSerial() throws FileNotFoundException,
+			InterruptedException {
+		List<String> questions = FileLinesReader.readLines(new File(
+				"samples.input"));
+		Extractor wordNet = null;
+		Extractor hybrid = null;
+		try {
+			try {
+				wordNet = new WordNetExtractor();
+				hybrid = new HybridExtractor();
+				wordNet.classifyQuestionTokens("Is it working?");
+				hybrid.classifyQuestionTokens("Is it working?");
+			} catch (Throwable e) {
+				// the models created so far are released below
+				assumeNoException(e);
+			}
+			assertConcurrentMatchesSerial(wordNet, questions, 3);
+			assertConcurrentMatchesSerial(hybrid, questions, 3);
+		} finally {
+			if (wordNet != null)
+				wordNet.close();
+			if (hybrid != null)
+				hybrid.close();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ExtractorFactoryTest {
+
+	private static ExtractorFactory factory(int count) {
+		return new ExtractorFactory(ExtractorType.NER, count) {
+			@Override
+			protected Extractor create() {
+				return new CapitalizedWordsExtractor();
+			}
+		};
+	}
+
+	@Test
+	public void readyAfterWarmUp() throws Exception {
+		// a live extractor of the same type keeps its metrics
+		Extractor serving = new CapitalizedWordsExtractor();
+		serving.classifyQuestionTokens("Is Rome old?");
+		long calls = serving.getMetrics().getCalls();
+		ExtractorFactory factory = factory(2);
+		factory.setWarmUp(
+				Arrays.asList("Who is Obama?", "please fail", "Where is Paris?"),
+				4);
+		assertFalse(factory.isReady());
+
+		List<Extractor> extractors = factory.start().get(10, TimeUnit.SECONDS);
+		assertSame(factory.start(), factory.start());
+		assertTrue(factory.isReady());
+		assertEquals(2, extractors.size());
+		assertEquals(4, factory.getWarmUpFailures());
+		assertEquals(12, factory.getWarmUpLatency().getCount());
+		assertTrue(factory.getLoadMillis() >= 0);
+		assertTrue(factory.getWarmUpMillis() >= 0);
+		assertTrue(factory.getColdStartToFastMillis() >= factory
+				.getLoadMillis());
+		// the warm-up questions are not counted as real ones
+		assertEquals(calls, extractors.get(0).getMetrics().getCalls());
+		assertTrue(calls > 0);
+	}
+
+	@Test
+	public void withoutWarmUp() throws Exception {
+		ExtractorFactory factory = factory(1);
+		factory.start().get(10, TimeUnit.SECONDS);
+		assertEquals(-1, factory.getWarmUpMillis());
+		assertEquals(factory.getLoadMillis(),
+				factory.getColdStartToFastMillis());
+	}
+
+	@Test(expected = ExecutionException.class)
+	public void loadingFailureCompletesTheFuture() throws Exception {
+		ExtractorFactory factory = new ExtractorFactory(ExtractorType.NER, 1) {
+			@Override
+			protected Extractor create() {
+				throw new IllegalStateException("No model");
+			}
+		};
+		try {
+			factory.start().get(10, TimeUnit.SECONDS);
+		} finally {
+			assertFalse(factory.isReady());
+		}
+	}
+
+}
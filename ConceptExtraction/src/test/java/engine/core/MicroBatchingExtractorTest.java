@@ -0,0 +1,132 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.Extractor.ClassifiedTokens;
+
+public class MicroBatchingExtractorTest {
+
+	/**
+	 * Counts how many questions reach the wrapped extractor.
+	 */
+	private static class CountingExtractor extends CapitalizedWordsExtractor {
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		protected ClassifiedTokens process(Annotation questionAnnotations) {
+			calls.incrementAndGet();
+			return super.process(questionAnnotations);
+		}
+	}
+
+	@Test
+	public void batchesQuestionsArrivingTogether() throws Exception {
+		CountingExtractor delegate = new CountingExtractor();
+		MicroBatchingExtractor batching = new MicroBatchingExtractor(delegate,
+				1, 8, 10, TimeUnit.SECONDS);
+		List<CompletableFuture<ClassifiedTokens>> futures = new ArrayList<CompletableFuture<ClassifiedTokens>>();
+		for (int i = 0; i < 7; i++)
+			futures.add(batching.submit("Is Paris " + i + " old?"));
+		futures.add(batching.submit("Is Paris 0 old?"));
+
+		for (int i = 0; i < futures.size(); i++)
+			assertEquals(new HashSet<String>(Arrays.asList("Is", "Paris")),
+					futures.get(i).get(5, TimeUnit.SECONDS).getConcepts());
+		assertEquals(1, batching.getBatches());
+		assertEquals(1.0, batching.getBatchFill(), 0.0);
+		assertEquals(8, batching.getQueueTime().getCount());
+		assertEquals(7, delegate.calls.get());
+		assertSame(futures.get(0).get(), futures.get(7).get());
+		batching.close();
+	}
+
+	@Test
+	public void fillIsMeasuredAgainstTheSizeOfEachBatch() throws Exception {
+		MicroBatchingExtractor batching = new MicroBatchingExtractor(
+				new CapitalizedWordsExtractor(), 1, 4, 10, TimeUnit.SECONDS);
+		List<CompletableFuture<ClassifiedTokens>> futures = new ArrayList<CompletableFuture<ClassifiedTokens>>();
+		for (int i = 0; i < 4; i++)
+			futures.add(batching.submit("Is Paris " + i + " old?"));
+		for (CompletableFuture<ClassifiedTokens> future : futures)
+			future.get(5, TimeUnit.SECONDS);
+		batching.setMaxBatchSize(8);
+		futures.clear();
+		for (int i = 0; i < 8; i++)
+			futures.add(batching.submit("Is Rome " + i + " old?"));
+		for (CompletableFuture<ClassifiedTokens> future : futures)
+			future.get(5, TimeUnit.SECONDS);
+		assertEquals(2, batching.getBatches());
+		assertEquals(6.0, batching.getBatchSizeMean(), 0.0);
+		assertEquals(1.0, batching.getBatchFill(), 0.0);
+		batching.close();
+	}
+
+	@Test
+	public void failuresOnlyFailTheirQuestion() throws Exception {
+		MicroBatchingExtractor batching = new MicroBatchingExtractor(
+				new CapitalizedWordsExtractor(), 2, 4, 1, TimeUnit.MILLISECONDS);
+		CompletableFuture<ClassifiedTokens> failed = batching
+				.submit("Will it fail?");
+		CompletableFuture<ClassifiedTokens> done = batching
+				.submit("Where is Paris?");
+		try {
+			failed.get(5, TimeUnit.SECONDS);
+			fail("The question must fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("Where", "Paris")),
+				done.get(5, TimeUnit.SECONDS).getConcepts());
+		assertEquals(new HashSet<String>(Arrays.asList("Where", "Rome")),
+				batching.classifyQuestionTokens("Where is Rome?").getConcepts());
+		batching.close();
+	}
+
+	@Test
+	public void errorsKeepTheWorkerRunning() throws Exception {
+		MicroBatchingExtractor batching = new MicroBatchingExtractor(
+				new CapitalizedWordsExtractor() {
+					@Override
+					protected ClassifiedTokens process(
+							Annotation questionAnnotations) {
+						if (questionAnnotations.toString().contains("crash"))
+							throw new AssertionError("crash");
+						return super.process(questionAnnotations);
+					}
+				}, 1, 4, 0, TimeUnit.MILLISECONDS);
+		try {
+			batching.submit("Will it crash?").get(5, TimeUnit.SECONDS);
+			fail("The question must fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("Where", "Paris")),
+				batching.submit("Where is Paris?").get(5, TimeUnit.SECONDS)
+						.getConcepts());
+		batching.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void closedExtractorRejectsQuestions() {
+		MicroBatchingExtractor batching = new MicroBatchingExtractor(
+				new CapitalizedWordsExtractor(), 1, 4, 0, TimeUnit.MILLISECONDS);
+		batching.close();
+		batching.submit("Where is Paris?");
+	}
+
+}
@@ -0,0 +1,92 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import engine.metrics.ExtractorMetrics;
+import engine.util.FileLinesReader;
+
+public class NerGateTest {
+
+	private static CoreMap sentence(String... wordsAndTags) {
+		List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+		for (int i = 0; i < wordsAndTags.length; i += 2) {
+			CoreLabel cl = new CoreLabel();
+			cl.set(TextAnnotation.class, wordsAndTags[i]);
+			cl.set(PartOfSpeechAnnotation.class, wordsAndTags[i + 1]);
+			tokens.add(cl);
+		}
+		CoreMap sentence = new ArrayCoreMap();
+		sentence.set(TokensAnnotation.class, tokens);
+		return sentence;
+	}
+
+	@Test
+	public void gate() {
+		NerGate gate = new NerGate();
+		assertFalse(gate.mayContainEntities(sentence("What", "WP", "metal",
+				"NN", "has", "VBZ", "the", "DT", "highest", "JJS", "melting",
+				"NN", "point", "NN", "?", ".")));
+		assertTrue(gate.mayContainEntities(sentence("How", "WRB", "old", "JJ",
+				"is", "VBZ", "Obama", "NNP", "?", ".")));
+		assertTrue(gate.mayContainEntities(sentence("Egypt", "NN",
+				"population", "NN", "?", ".")));
+		assertTrue(gate.mayContainEntities(sentence("what", "WP", "two",
+				"CD", "companies", "NNS")));
+		assertTrue(gate.mayContainEntities(sentence("who", "WP", "won",
+				"VBD", "in", "IN", "1992", "NN")));
+		assertTrue(gate.mayContainEntities(sentence("what", "WP", "happened",
+				"VBD", "yesterday", "NN")));
+		assertTrue(gate.mayContainEntities(sentence("Tomorrow", "RB", "is",
+				"VBZ", "good", "JJ")));
+	}
+
+	/**
+	 * Runs NER on the skipped samples to check that none of them had an
+	 * entity. Skipped when the NER models cannot be run.
+	 */
+	@Test
+	public void samplesHaveNoMissedEntities() throws FileNotFoundException {
+		List<String> questions = FileLinesReader.readLines(new File(
+				"samples.input"));
+		SharedPipeline pipeline = null;
+		try {
+			try {
+				pipeline = AnnotatorRegistry.getInstance().acquire(
+						"tokenize, ssplit, pos, lemma, ner");
+				pipeline.annotate(new Annotation("Is it working?"),
+						ExtractorMetrics.get("NerGateTest"));
+			} catch (Throwable e) {
+				// a pipeline acquired already is released below
+				assumeNoException(e);
+			}
+			NerGate gate = pipeline.getNerGate();
+			gate.setVerify(true);
+			for (String question : questions)
+				pipeline.annotate(new Annotation(question),
+						ExtractorMetrics.get("NerGateTest"));
+			assertTrue(gate.getSkippedSentences() > 0);
+			assertEquals(0, gate.getMismatches());
+		} finally {
+			if (pipeline != null)
+				AnnotatorRegistry.getInstance().release(pipeline);
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package engine.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import engine.util.NamedEntityTags;
+import engine.util.PartOfSpeechTags;
+
+public class TokenBufferTest {
+
+	private static CoreLabel token(String word, String pos, String ne) {
+		CoreLabel cl = new CoreLabel();
+		cl.set(TextAnnotation.class, word);
+		cl.set(PartOfSpeechAnnotation.class, pos);
+		cl.set(NamedEntityTagAnnotation.class, ne);
+		return cl;
+	}
+
+	@Test
+	public void tagsAndGroups() {
+		TokenBuffer tokens = TokenBuffer.get();
+		tokens.add(token("Barack", "NNP", "PERSON"));
+		tokens.add(token("Obama", "NNP", "PERSON"));
+		tokens.add(token("?", "?", "O"));
+
+		assertEquals(PartOfSpeechTags.NOUN_PROPER_SINGULAR.ordinal(),
+				tokens.posTags[0]);
+		assertEquals(NamedEntityTags.PERSON.ordinal(), tokens.neTags[1]);
+		assertEquals(TokenBuffer.NO_TAG, tokens.posTags[2]);
+		assertEquals(TokenBuffer.NO_TAG, tokens.neTags[2]);
+		assertEquals('N', tokens.posGroup(0));
+		assertEquals(0, tokens.posGroup(2));
+
+		tokens.startSequence();
+		tokens.merge(0, 1);
+		tokens.append(0);
+		tokens.append(2);
+		tokens.append(2);
+		tokens.endSequence();
+		assertEquals(3, tokens.sequenceSize);
+		assertEquals("Barack Obama", tokens.groupString(tokens.sequence[0]));
+		assertEquals("?", tokens.groupString(tokens.sequence[2]));
+	}
+
+	@Test
+	public void growsAndIsReused() {
+		TokenBuffer tokens = TokenBuffer.get();
+		for (int i = 0; i < 100; i++)
+			tokens.add(token("w" + i, "NN", "O"));
+		assertEquals(100, tokens.size);
+		assertEquals("w99", tokens.groupString(99));
+
+		tokens = TokenBuffer.get();
+		assertEquals(0, tokens.size);
+		assertEquals(0, tokens.sequenceSize);
+		tokens.add(token("again", "RB", "O"));
+		assertEquals("again", tokens.groupString(0));
+	}
+
+}
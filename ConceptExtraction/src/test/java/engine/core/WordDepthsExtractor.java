@@ -0,0 +1,102 @@
+package engine.core;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+
+/**
+ * Extractor without models used by the tests: the questions are made of
+ * words followed by their depth, like "dog:5 the:0", and the words whose depth
+ * is at least the factor of the average depth are concepts.
+ */
+public class WordDepthsExtractor extends Extractor implements
+		DepthThresholdExtractor {
+
+	private volatile double factorOfAvgDepth = 1.0;
+
+	public double getFactorOfAvgDepth() {
+		return factorOfAvgDepth;
+	}
+
+	public void setFactorOfAvgDepth(double factor) {
+		this.factorOfAvgDepth = factor;
+	}
+
+	@Override
+	protected ClassifiedTokens process(Annotation questionAnnotations) {
+		return process(questionAnnotations, null);
+	}
+
+	@Override
+	ClassifiedTokens process(Annotation questionAnnotations, DepthRatios ratios) {
+		String[] words = words(questionAnnotations);
+		double[] depths = depths(words);
+		double average = average(depths);
+		if (ratios != null) {
+			ratios.clear();
+			for (int i = 0; average > 0 && i < depths.length; i++)
+				ratios.add(depths[i] / average);
+		}
+		return classify(words, depths, factorOfAvgDepth * average);
+	}
+
+	public DepthProfile profileAnnotatedQuestion(
+			Annotation questionAnnotations) {
+		String[] words = words(questionAnnotations);
+		double[] depths = depths(words);
+		double average = average(depths);
+		if (!(average > 0))
+			return new DepthProfile(new double[0],
+					new ClassifiedTokens[] { classify(words, depths, average) });
+		double[] distinct = DepthProfile.distinct(depths, depths.length);
+		double[] ratios = new double[distinct.length];
+		ClassifiedTokens[] classifications = new ClassifiedTokens[distinct.length + 1];
+		for (int j = 0; j < distinct.length; j++) {
+			ratios[j] = distinct[j] / average;
+			classifications[j] = classify(words, depths, distinct[j]);
+		}
+		classifications[distinct.length] = classify(words, depths,
+				Double.POSITIVE_INFINITY);
+		return new DepthProfile(ratios, classifications);
+	}
+
+	private static String[] words(Annotation questionAnnotations) {
+		return questionAnnotations.get(TextAnnotation.class).split(" ");
+	}
+
+	private static double[] depths(String[] words) {
+		double[] depths = new double[words.length];
+		for (int i = 0; i < words.length; i++) {
+			int colon = words[i].indexOf(':');
+			depths[i] = Double.parseDouble(words[i].substring(colon + 1));
+			words[i] = words[i].substring(0, colon);
+		}
+		return depths;
+	}
+
+	private static double average(double[] depths) {
+		double sum = 0.0;
+		for (double depth : depths)
+			sum += depth;
+		return sum / depths.length;
+	}
+
+	private ClassifiedTokens classify(String[] words, double[] depths,
+			double threshold) {
+		Set<String> concepts = new HashSet<String>();
+		Set<String> notConcepts = new HashSet<String>();
+		for (int i = 0; i < words.length; i++) {
+			if (Double.compare(depths[i], threshold) >= 0)
+				concepts.add(words[i]);
+			else
+				notConcepts.add(words[i]);
+		}
+		ClassifiedTokens ct = new ClassifiedTokens();
+		ct.setConcepts(concepts);
+		ct.setNotConcepts(notConcepts);
+		return ct;
+	}
+
+}
@@ -0,0 +1,60 @@
+package engine.eval;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.CapitalizedWordsExtractor;
+import engine.core.Extractor;
+
+public class IREvaluatorTest {
+
+	@Test
+	public void parallelMatchesSerial() {
+		List<String> questions = new ArrayList<String>();
+		List<List<String>> concepts = new ArrayList<List<String>>();
+		for (int i = 0; i < 1000; i++) {
+			if (i % 97 == 0)
+				questions.add("please fail " + i);
+			else
+				questions.add("How old is Obama " + i + " in Paris?");
+			concepts.add(i % 2 == 0 ? Arrays.asList("Obama") : Arrays.asList(
+					"Paris", "old"));
+		}
+		Extractor extractor = new CapitalizedWordsExtractor();
+
+		IREvaluator serial = new IREvaluator(questions, concepts);
+		serial.eval(extractor);
+		IREvaluator parallel = new IREvaluator(questions, concepts);
+		parallel.eval(extractor, 4);
+
+		assertEquals(serial.getCounts().toString(), parallel.getCounts()
+				.toString());
+		assertEquals(serial.getFailedQuestions(), parallel.getFailedQuestions());
+		assertEquals(11, parallel.getFailedQuestions().size());
+		assertEquals(serial.getFMeasure(), parallel.getFMeasure(), 0.0);
+
+		List<Annotation> annotations = new ArrayList<Annotation>();
+		for (String question : questions)
+			annotations.add(question.endsWith("0") ? null : new Annotation(
+					question));
+		IREvaluator annotated = new IREvaluator(questions, concepts);
+		annotated.eval(extractor, annotations, 4);
+		IREvaluator expected = new IREvaluator(questions, concepts);
+		for (int i = 0; i < questions.size(); i++) {
+			if (annotations.get(i) == null)
+				questions.set(i, "fail");
+		}
+		expected.eval(extractor);
+		assertEquals(expected.getCounts().toString(), annotated.getCounts()
+				.toString());
+		assertEquals(expected.getFailedQuestions(),
+				annotated.getFailedQuestions());
+	}
+
+}
@@ -0,0 +1,63 @@
+package engine.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import engine.core.Extractor;
+import engine.core.ExtractorType;
+import engine.core.GazetteerExtractor;
+import engine.gazetteer.Gazetteer;
+
+public class ShardCoordinatorTest {
+
+	@Test
+	public void shardsMatchASingleProcess() throws IOException {
+		File file = File.createTempFile("gazetteer", ".txt");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		writer.write("Barack Obama\nParis\n");
+		writer.close();
+
+		List<String> questions = new ArrayList<String>();
+		List<List<String>> concepts = new ArrayList<List<String>>();
+		for (int i = 0; i < 100; i++) {
+			questions.add(i % 31 == 0 ? "" : "How far is Paris from "
+					+ (i % 2 == 0 ? "Barack Obama " : "Rome ") + i + "?");
+			concepts.add(Arrays.asList("Paris", i % 3 == 0 ? "Rome"
+					: "Barack Obama"));
+		}
+		Extractor extractor = new GazetteerExtractor(Gazetteer.load(file));
+		IREvaluator expected = new IREvaluator(questions, concepts);
+		expected.eval(extractor);
+
+		ShardCoordinator coordinator = new ShardCoordinator(
+				ExtractorType.GAZETTEER, 3);
+		coordinator.setJvmOptions(Arrays.asList("-Dengine.gazetteer="
+				+ file.getPath()));
+		IREvaluator sharded = new IREvaluator(questions, concepts);
+		sharded.eval(coordinator);
+		assertEquals(expected.getCounts().toString(), sharded.getCounts()
+				.toString());
+		assertEquals(expected.getFailedQuestions(),
+				sharded.getFailedQuestions());
+		assertEquals(4, sharded.getFailedQuestions().size());
+
+		List<String> results = coordinator.extract(questions);
+		assertNull(results.get(0));
+		assertEquals(extractor.classifyQuestionTokens(questions.get(1))
+				.appendJson(new StringBuilder()).toString(), results.get(1));
+	}
+
+}
@@ -0,0 +1,81 @@
+package engine.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import engine.core.WordDepthsExtractor;
+import engine.eval.ThresholdSweep.Point;
+
+public class ThresholdSweepTest {
+
+	@Test
+	public void sweepMatchesEvaluation() {
+		Random random = new Random(42);
+		List<String> questions = new ArrayList<String>();
+		List<List<String>> concepts = new ArrayList<List<String>>();
+		List<Annotation> annotations = new ArrayList<Annotation>();
+		for (int i = 0; i < 200; i++) {
+			StringBuilder question = new StringBuilder();
+			List<String> gt = new ArrayList<String>();
+			int words = 1 + random.nextInt(8);
+			for (int w = 0; w < words; w++) {
+				String word = "w" + random.nextInt(30);
+				int depth = i % 50 == 0 ? 0 : random.nextInt(12);
+				question.append(w > 0 ? " " : "").append(word).append(':')
+						.append(depth);
+				if (depth > 6)
+					gt.add(word);
+			}
+			questions.add(question.toString());
+			concepts.add(gt);
+			annotations.add(i == 7 ? null : new Annotation(question
+					.toString()));
+		}
+		WordDepthsExtractor extractor = new WordDepthsExtractor();
+		ThresholdSweep sweep = new ThresholdSweep(concepts);
+		List<Point> points = sweep.sweep(extractor, annotations);
+		assertEquals(Arrays.asList(7), sweep.getFailedQuestions());
+		assertTrue(points.size() > 10);
+
+		double previous = 0.0;
+		for (Point point : points) {
+			assertTrue(point.getFactor() >= previous);
+			// at the point itself, or between equal ratios computed from
+			// different depths, the rounding may go either way
+			double factor = (previous + point.getFactor()) / 2;
+			boolean rounding = point.getFactor() - previous < 1e-9;
+			previous = point.getFactor();
+			if (factor <= 0 || rounding || Double.isInfinite(factor))
+				continue;
+			extractor.setFactorOfAvgDepth(factor);
+			IREvaluator evaluator = new IREvaluator(questions, concepts);
+			evaluator.eval(extractor, annotations, 1);
+			assertEquals(String.valueOf(factor), evaluator.getCounts()
+					.toString(), point.getCounts().toString());
+		}
+
+		Point last = points.get(points.size() - 1);
+		assertEquals(Double.POSITIVE_INFINITY, last.getFactor(), 0);
+		extractor.setFactorOfAvgDepth(2 * points.get(points.size() - 2)
+				.getFactor());
+		IREvaluator evaluator = new IREvaluator(questions, concepts);
+		evaluator.eval(extractor, annotations, 1);
+		assertEquals(evaluator.getCounts().toString(), last.getCounts()
+				.toString());
+
+		Point best = ThresholdSweep.best(points);
+		for (Point point : points)
+			assertTrue(Double.isNaN(point.getCounts().getFMeasure())
+					|| point.getCounts().getFMeasure() <= best.getCounts()
+							.getFMeasure());
+	}
+
+}
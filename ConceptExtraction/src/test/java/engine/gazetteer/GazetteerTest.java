@@ -0,0 +1,132 @@
+package engine.gazetteer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import engine.core.Extractor.ClassifiedTokens;
+import engine.core.GazetteerExtractor;
+
+public class GazetteerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<String> find(Gazetteer gazetteer, String text) {
+		Gazetteer.Matcher matcher = gazetteer.matcher();
+		List<String> found = new ArrayList<String>();
+		for (int i = 0; i < matcher.find(text); i++)
+			found.add(text.substring(matcher.getBegin(i), matcher.getEnd(i)));
+		return found;
+	}
+
+	@Test
+	public void longestMatchAtTokenBoundaries() {
+		Gazetteer gazetteer = new GazetteerBuilder().add("New York")
+				.add("york").add("New York City").add("city hall")
+				.add("Obama").add("new").build();
+		assertEquals(6, gazetteer.size());
+		assertEquals(Arrays.asList("new york city"), find(gazetteer,
+				"new york city hall"));
+		assertEquals(Arrays.asList("NEW\t YORK", "Obama"), find(gazetteer,
+				"Is NEW\t YORK where Obama lives?"));
+		assertEquals(Arrays.asList("York"), find(gazetteer, "Anew York"));
+		assertEquals(Arrays.asList(), find(gazetteer, "Obamas and newyork"));
+		assertEquals(Arrays.asList("city hall"), find(gazetteer,
+				"Yorkshire city hall"));
+	}
+
+	@Test
+	public void sameAsNaiveSearch() {
+		Random random = new Random(42);
+		GazetteerBuilder builder = new GazetteerBuilder();
+		List<String> entries = new ArrayList<String>();
+		Set<String> distinct = new HashSet<String>();
+		for (int i = 0; i < 2000; i++) {
+			String entry = words(random, 1 + random.nextInt(3));
+			entries.add(entry);
+			distinct.add(entry.toLowerCase());
+			builder.add(entry);
+		}
+		Gazetteer gazetteer = builder.build();
+		assertEquals(distinct.size(), gazetteer.size());
+		for (int i = 0; i < 500; i++) {
+			String text = words(random, 1 + random.nextInt(12));
+			assertEquals(text, naive(entries, text), find(gazetteer, text));
+		}
+	}
+
+	@Test
+	public void extractorClassifiesOtherTokensAsNotConcepts()
+			throws IOException {
+		File file = folder.newFile("gazetteer.txt");
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write("# people\nBarack Obama\tPERSON\n\nWhite House\n");
+		} finally {
+			writer.close();
+		}
+		GazetteerExtractor extractor = new GazetteerExtractor(
+				Gazetteer.load(file));
+		assertEquals(2, extractor.getGazetteer().size());
+		ClassifiedTokens ct = extractor.classifyQuestionTokens("Does barack "
+				+ " obama live in the White House?");
+		assertEquals(new HashSet<String>(Arrays.asList("barack obama",
+				"White House")), ct.getConcepts());
+		assertEquals(new HashSet<String>(Arrays.asList("Does", "live", "in",
+				"the", "?")), ct.getNotConcepts());
+		assertEquals(5, ct.getSpans().getNotConceptCount());
+		assertEquals(5, ct.getSpans().getConceptBegin(0));
+		assertEquals(18, ct.getSpans().getConceptEnd(0));
+		extractor.close();
+	}
+
+	private static String words(Random random, int count) {
+		String[] words = { "a", "ab", "b", "ba", "abc", "c", "cab", "bc" };
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(random.nextInt(4) == 0 ? ", " : " ");
+			String word = words[random.nextInt(words.length)];
+			sb.append(random.nextBoolean() ? word : word.toUpperCase());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The leftmost longest occurrences, found by trying every entry at every
+	 * offset.
+	 */
+	private static List<String> naive(List<String> entries, String text) {
+		List<String> found = new ArrayList<String>();
+		for (int begin = 0; begin < text.length();) {
+			int end = 0;
+			for (String entry : entries) {
+				if (text.regionMatches(true, begin, entry, 0, entry.length())
+						&& Gazetteer.isBoundary(text, begin)
+						&& Gazetteer.isBoundary(text, begin + entry.length()))
+					end = Math.max(end, begin + entry.length());
+			}
+			if (end == 0)
+				begin++;
+			else {
+				found.add(text.substring(begin, end));
+				begin = end;
+			}
+		}
+		return found;
+	}
+
+}
@@ -0,0 +1,61 @@
+package engine.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import engine.core.CapitalizedWordsExtractor;
+import engine.core.Extractor;
+
+public class ExtractorMetricsTest {
+
+	@Test
+	public void callsArePublished() throws Exception {
+		Extractor extractor = new CapitalizedWordsExtractor();
+		ExtractorMetrics metrics = extractor.getMetrics();
+		metrics.reset();
+
+		extractor.classifyQuestionTokens("How old is Obama?");
+		extractor.classifyAll(Arrays.asList("Where is Paris?", "Who is Bob?"),
+				2);
+		try {
+			extractor.classifyQuestionTokens("please fail");
+		} catch (IllegalStateException e) {
+			// counted as a failure
+		}
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(
+				"engine:type=Extractor,name=CapitalizedWordsExtractor");
+		assertEquals(4L, server.getAttribute(name, "Calls"));
+		assertEquals(1L, server.getAttribute(name, "Failures"));
+		ObjectName total = new ObjectName(
+				"engine:type=Extractor,name=CapitalizedWordsExtractor,stage="
+						+ ExtractorMetrics.TOTAL);
+		assertEquals(4L, server.getAttribute(total, "Count"));
+		assertTrue(metrics.getAllocatedBytesMax() > 0);
+	}
+
+	@Test
+	public void stagesKeepTheirOrder() {
+		ExtractorMetrics metrics = ExtractorMetrics.get("StagesTest");
+		long time = System.nanoTime();
+		time = metrics.recordStage("tokenize", time);
+		time = metrics.recordStage("pos", time);
+		metrics.recordStage("grouping", time);
+		metrics.countWordNetLookups(3);
+
+		assertEquals(Arrays.asList(ExtractorMetrics.TOTAL, "tokenize", "pos",
+				"grouping"), Arrays.asList(metrics.getStages()));
+		assertEquals(1, metrics.stage("pos").getCount());
+		assertEquals(3, metrics.getWordNetLookups());
+	}
+
+}
@@ -0,0 +1,66 @@
+package engine.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class FlightEventsTest {
+
+	@Test
+	public void eventsAreRecorded() throws IOException {
+		assumeTrue(FlightEvents.isAvailable());
+		assertNull(FlightEvents.beginStage());
+
+		ExtractorMetrics metrics = ExtractorMetrics.get("FlightEventsTest");
+		File file = File.createTempFile("events", ".jfr");
+		file.deleteOnExit();
+		Recording recording = new Recording();
+		try {
+			recording.enable("engine.ExtractionStage");
+			recording.enable("engine.WordNetLookup");
+			recording.start();
+			Object stage = FlightEvents.beginStage();
+			Object lookup = FlightEvents.beginLookup();
+			FlightEvents.endLookup(lookup, new StringBuilder("car"),
+					FlightEvents.INDEX, -1, 8.5);
+			FlightEvents.endStage(stage, metrics, "depths", 17, 5);
+			recording.stop();
+			recording.dump(file.toPath());
+		} finally {
+			recording.close();
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+		int found = 0;
+		for (RecordedEvent event : events) {
+			String name = event.getEventType().getName();
+			if (name.equals("engine.ExtractionStage")) {
+				assertEquals("FlightEventsTest", event.getString("extractor"));
+				assertEquals("depths", event.getString("stage"));
+				assertEquals(17, event.getInt("questionLength"));
+				assertEquals(5, event.getInt("tokenCount"));
+				found++;
+			} else if (name.equals("engine.WordNetLookup")) {
+				assertEquals("car", event.getString("word"));
+				assertEquals("index", event.getString("source"));
+				assertEquals(-1, event.getInt("synsetCount"));
+				assertEquals(8.5, event.getDouble("depth"), 0);
+				found++;
+			}
+		}
+		assertEquals(2, found);
+		assertTrue(file.delete());
+	}
+
+}
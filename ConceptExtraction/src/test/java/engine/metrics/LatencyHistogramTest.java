@@ -0,0 +1,54 @@
+package engine.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesWithinPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long v = 1; v <= 100000; v++)
+			histogram.record(v * 1000);
+
+		assertEquals(100000, histogram.getCount());
+		assertEquals(100000000L, histogram.getMax());
+		assertClose(50000000L, histogram.getPercentile(50));
+		assertClose(99000000L, histogram.getPercentile(99));
+		assertClose(99900000L, histogram.getPercentile(99.9));
+		assertEquals(100000000L, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void bucketsCoverEveryValue() {
+		long[] values = { 0, 1, 63, 64, 65, 127, 128, 1000, 123456789,
+				Long.MAX_VALUE };
+		for (long v : values) {
+			int bucket = LatencyHistogram.bucket(v);
+			assertTrue(v <= LatencyHistogram.highestEquivalent(bucket));
+			if (bucket > 0)
+				assertTrue(v > LatencyHistogram.highestEquivalent(bucket - 1));
+		}
+	}
+
+	@Test
+	public void addMergesCounts() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		a.record(10);
+		b.record(20);
+		b.record(30);
+		a.add(b);
+		assertEquals(3, a.getCount());
+		assertEquals(30, a.getMax());
+		assertEquals(20.0, a.getMean(), 0.0);
+	}
+
+	private static void assertClose(long expected, long actual) {
+		assertTrue(expected + " ~ " + actual,
+				Math.abs(expected - actual) <= expected / 50);
+	}
+
+}
@@ -0,0 +1,168 @@
+package engine.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import engine.service.AdmissionController.Ticket;
+
+public class AdmissionControllerTest {
+
+	/**
+	 * Wait in the controller from another thread, releasing at once.
+	 */
+	private static Thread waiter(AdmissionController admission,
+			CountDownLatch done) {
+		return waiter(admission, done, false);
+	}
+
+	/**
+	 * Wait in the controller from another thread, releasing at once, and
+	 * served in degraded mode when the ticket says so if
+	 * <code>serveDegraded</code>.
+	 */
+	private static Thread waiter(final AdmissionController admission,
+			final CountDownLatch done, final boolean serveDegraded) {
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					Ticket ticket = admission.admit();
+					if (serveDegraded && ticket.isDegraded())
+						ticket.servedDegraded();
+					ticket.release();
+				} catch (RejectedExecutionException e) {
+					// counted by the controller
+				}
+				done.countDown();
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	private static void awaitQueued(AdmissionController admission, int queued)
+			throws InterruptedException {
+		while (admission.getQueued() < queued)
+			Thread.sleep(1);
+	}
+
+	@Test(timeout = 10000)
+	public void waitingRequestsGoFirst() throws InterruptedException {
+		final AdmissionController admission = new AdmissionController(1, 4,
+				10, TimeUnit.SECONDS);
+		Ticket running = admission.admit();
+		final CountDownLatch checked = new CountDownLatch(1);
+		final Ticket[] waiting = new Ticket[1];
+		Thread waiter = new Thread() {
+			public void run() {
+				waiting[0] = admission.admit();
+				try {
+					// hold the permit until the other request was refused
+					checked.await();
+				} catch (InterruptedException e) {
+					// released below
+				}
+				waiting[0].release();
+			}
+		};
+		waiter.setDaemon(true);
+		waiter.start();
+		while (!admission.hasWaiters())
+			Thread.sleep(1);
+
+		running.release();
+		try {
+			admission.admit(0, TimeUnit.NANOSECONDS).release();
+			fail("Admitted ahead of a waiting request");
+		} catch (RejectedExecutionException e) {
+			// the permit belongs to the waiter
+		} finally {
+			checked.countDown();
+		}
+		waiter.join();
+		assertEquals(2, admission.getAdmitted());
+		assertEquals(0, admission.getShedQueueFull());
+		assertEquals(1, admission.getShedDeadline());
+	}
+
+	@Test
+	public void shedsAtOnceWhenTheQueueIsFull() throws InterruptedException {
+		AdmissionController admission = new AdmissionController(1, 1, 10,
+				TimeUnit.SECONDS);
+		Ticket running = admission.admit();
+		CountDownLatch done = new CountDownLatch(1);
+		waiter(admission, done);
+		awaitQueued(admission, 1);
+
+		long start = System.nanoTime();
+		try {
+			admission.admit();
+			fail("The queue is full");
+		} catch (RejectedExecutionException e) {
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		}
+		running.release();
+		running.release();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(3, admission.getRequests());
+		assertEquals(2, admission.getAdmitted());
+		assertEquals(1, admission.getShedQueueFull());
+		assertEquals(1.0 / 3, admission.getShedRate(), 1e-9);
+	}
+
+	@Test
+	public void shedsAtTheDeadline() {
+		AdmissionController admission = new AdmissionController(1, 10, 10,
+				TimeUnit.SECONDS);
+		Ticket running = admission.admit();
+		try {
+			admission.admit(20, TimeUnit.MILLISECONDS);
+			fail("No permit before the deadline");
+		} catch (RejectedExecutionException e) {
+			assertEquals(1, admission.getShedDeadline());
+		}
+		running.release();
+		admission.admit(0, TimeUnit.MILLISECONDS).release();
+		assertEquals(0, admission.getQueued());
+	}
+
+	@Test(timeout = 10000)
+	public void degradesUnderSustainedOverloadAndRecovers()
+			throws InterruptedException {
+		assertEquals(1.0 / 3, degradedRate(true), 1e-9);
+		// degraded tickets the full extractor served are not counted
+		assertEquals(0.0, degradedRate(false), 0.0);
+	}
+
+	private static double degradedRate(boolean serveDegraded)
+			throws InterruptedException {
+		AdmissionController admission = new AdmissionController(1, 10, 10,
+				TimeUnit.SECONDS);
+		admission.setDegradation(2, 0, 0, TimeUnit.MILLISECONDS);
+		Ticket running = admission.admit();
+		assertFalse(running.isDegraded());
+		CountDownLatch done = new CountDownLatch(2);
+		waiter(admission, done, serveDegraded);
+		waiter(admission, done, serveDegraded);
+		awaitQueued(admission, 2);
+		while (!admission.isDegraded())
+			Thread.sleep(1);
+		running.release();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		// the first waiter still saw the second one, the second an empty queue
+		assertFalse(admission.isDegraded());
+		assertEquals(2, admission.getModeSwitches());
+		assertEquals(0, admission.getShedRate(), 0.0);
+		return admission.getDegradedRate();
+	}
+
+}
@@ -0,0 +1,41 @@
+package engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedLinesReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void linesSpanningWindows() throws IOException {
+		File file = folder.newFile("questions.txt");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("How old is Obama?\r\n\nEgypt population?\nCaf\u00e9 in Z\u00fcrich"
+				.getBytes("UTF-8"));
+		out.close();
+
+		// a window smaller than most lines forces them to span windows
+		MappedLinesReader reader = new MappedLinesReader(file, 3);
+		try {
+			assertEquals("How old is Obama?", reader.readLine());
+			assertEquals("", reader.readLine());
+			assertEquals("Egypt population?", reader.readLine());
+			assertEquals("Caf\u00e9 in Z\u00fcrich", reader.readLine());
+			assertNull(reader.readLine());
+			assertEquals(reader.getSize(), reader.getPosition());
+		} finally {
+			reader.close();
+		}
+	}
+
+}
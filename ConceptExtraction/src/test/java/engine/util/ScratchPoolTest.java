@@ -0,0 +1,90 @@
+package engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ScratchPoolTest {
+
+	private static class Counter {
+
+		final AtomicInteger holders = new AtomicInteger();
+	}
+
+	private static ScratchPool<Counter> pool(int capacity) {
+		return new ScratchPool<Counter>(capacity) {
+			@Override
+			protected Counter create() {
+				return new Counter();
+			}
+		};
+	}
+
+	@Test
+	public void reusesReleasedObjects() {
+		ScratchPool<Counter> pool = pool(2);
+		Counter first = pool.lease();
+		pool.release(first);
+		assertSame(first, pool.lease());
+		pool.release(first);
+
+		List<Counter> leased = new ArrayList<Counter>();
+		for (int i = 0; i < 5; i++)
+			leased.add(pool.lease());
+		for (Counter counter : leased)
+			pool.release(counter);
+		assertEquals(2, pool.getIdle());
+		assertEquals(5, pool.getCreated());
+	}
+
+	@Test
+	public void neverLeasesAnObjectTwice() throws InterruptedException {
+		final ScratchPool<Counter> pool = pool(4);
+		final AtomicInteger shared = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 20000; i++) {
+						Counter counter = pool.lease();
+						if (counter.holders.incrementAndGet() != 1)
+							shared.incrementAndGet();
+						counter.holders.decrementAndGet();
+						pool.release(counter);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, shared.get());
+		assertTrue(pool.getIdle() <= 4);
+	}
+
+	@Test
+	public void rejectsNull() {
+		try {
+			pool(1).release(null);
+			fail("null released");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
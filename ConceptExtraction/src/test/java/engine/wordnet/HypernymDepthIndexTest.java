@@ -0,0 +1,79 @@
+package engine.wordnet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HypernymDepthIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HypernymDepthIndex index;
+
+	@Before
+	public void buildIndex() throws IOException {
+		File dict = folder.newFolder("dict");
+		write(new File(dict, "data.noun"),
+				"  1 license header\n"
+						+ "00000001 03 n 01 entity 0 000 | root\n"
+						+ "00000002 03 n 01 organism 0 001 @ 00000001 n 0000 | living\n"
+						+ "00000003 05 n 01 dog 0 001 @ 00000002 n 0000 | animal\n"
+						+ "00000004 18 n 01 person 0 001 @ 00000002 n 0000 | human\n"
+						+ "00000005 18 n 01 Barack_Obama 0 001 @i 00000004 n 0000 | president\n"
+						+ "00000006 18 n 01 frump 0 002 ~ 00000001 n 0000 @ 00000004 n 0000 | woman\n"
+						+ "00000007 05 n 01 mouse 0 001 @ 00000002 n 0000 | rodent\n");
+		write(new File(dict, "index.noun"),
+				"  1 license header\n"
+						+ "barack_obama n 1 1 @i 1 0 00000005  \n"
+						+ "dog n 2 1 @ 2 0 00000003 00000006  \n"
+						+ "entity n 1 0 1 0 00000001  \n"
+						+ "mouse n 1 1 @ 1 0 00000007  \n"
+						+ "person n 1 1 @ 1 0 00000004  \n");
+		write(new File(dict, "noun.exc"), "mice mouse\n");
+
+		File out = new File(dict, "noun.depth");
+		new HypernymDepthIndexBuilder(dict).build(out);
+		index = HypernymDepthIndex.open(out);
+	}
+
+	@Test
+	public void depthOfLemmas() {
+		assertEquals(1.0, index.averageDepth("entity"), 0.0);
+		assertEquals(3.0, index.averageDepth("person"), 0.0);
+		assertEquals(3.5, index.averageDepth("Dog"), 0.0);
+		assertEquals(4.0, index.averageDepth("Barack Obama"), 0.0);
+	}
+
+	@Test
+	public void depthOfInflectedForms() {
+		assertEquals(3.5, index.averageDepth("dogs"), 0.0);
+		assertEquals(3.0, index.averageDepth("mice"), 0.0);
+		assertEquals(3.0, index.averageDepth("persons"), 0.0);
+	}
+
+	@Test
+	public void unknownWords() {
+		assertTrue(Double.isNaN(index.averageDepth("unicorn")));
+		assertTrue(Double.isNaN(index.averageDepth("s")));
+		assertTrue(Double.isNaN(index.averageDepth("")));
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
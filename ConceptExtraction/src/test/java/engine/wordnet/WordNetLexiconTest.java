@@ -0,0 +1,164 @@
+package engine.wordnet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.smu.tspell.wordnet.SynsetType;
+
+public class WordNetLexiconTest {
+
+	private static final String HEADER = "  1 license header\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dict;
+	private WordNetLexicon lexicon;
+	private int[] nouns;
+	private int[] adjectives;
+
+	@Before
+	public void openLexicon() throws IOException {
+		dict = folder.newFolder("dict");
+		nouns = writeData("data.noun",
+				"%08d 03 n 01 entity 0 000 | root",
+				"%08d 03 n 01 organism 0 001 @ {0} n 0000 | living",
+				"%08d 05 n 01 dog 0 001 @ {1} n 0000 | animal",
+				"%08d 18 n 01 person 0 001 @ {1} n 0000 | human",
+				"%08d 18 n 01 Barack_Obama 0 001 @i {3} n 0000 | president",
+				"%08d 18 n 01 frump 0 002 ~ {0} n 0000 @ {3} n 0000 | woman",
+				"%08d 05 n 01 mouse 0 001 @ {1} n 0000 | rodent");
+		write("index.noun", HEADER
+				+ String.format("barack_obama n 1 1 @i 1 0 %08d  \n", nouns[4])
+				+ String.format("dog n 2 1 @ 2 0 %08d %08d  \n", nouns[2],
+						nouns[5])
+				+ String.format("entity n 1 0 1 0 %08d  \n", nouns[0])
+				+ String.format("mouse n 1 1 @ 1 0 %08d  \n", nouns[6])
+				+ String.format("person n 1 1 @ 1 0 %08d  \n", nouns[3]));
+		write("noun.exc", "mice mouse\n");
+
+		int[] verbs = writeData("data.verb", "%08d 29 v 01 walk 0 000 | go",
+				"%08d 29 v 01 run 0 000 | go fast");
+		write("index.verb", HEADER
+				+ String.format("run v 1 0 1 0 %08d  \n", verbs[1])
+				+ String.format("walk v 1 0 1 0 %08d  \n", verbs[0]));
+		write("verb.exc", "ran run\n");
+
+		adjectives = writeData("data.adj", "%08d 00 a 01 big 0 000 | large",
+				"%08d 00 s 01 big 0 000 | important");
+		write("index.adj", HEADER
+				+ String.format("big a 2 0 2 0 %08d %08d  \n", adjectives[0],
+						adjectives[1]));
+		write("adj.exc", "bigger big\n");
+
+		lexicon = WordNetLexicon.open(dict);
+	}
+
+	@Test
+	public void synsetsOfLemmas() {
+		assertArrayEquals(new int[] { nouns[2], nouns[5] },
+				lexicon.getSynsetOffsets("Dog", SynsetType.NOUN));
+		assertArrayEquals(new int[] { nouns[4] },
+				lexicon.getSynsetOffsets("Barack Obama", SynsetType.NOUN));
+		assertEquals(0,
+				lexicon.getSynsetOffsets("unicorn", SynsetType.NOUN).length);
+		assertEquals(0,
+				lexicon.getSynsetOffsets("", SynsetType.NOUN).length);
+		assertEquals(0,
+				lexicon.getSynsetOffsets("dog", SynsetType.ADVERB).length);
+	}
+
+	@Test
+	public void synsetsOfInflectedForms() {
+		assertArrayEquals(new int[] { nouns[2], nouns[5] },
+				lexicon.getSynsetOffsets("Dogs", SynsetType.NOUN));
+		assertArrayEquals(new int[] { nouns[6] },
+				lexicon.getSynsetOffsets("Mice", SynsetType.NOUN));
+		// JAWS only detaches lower-case suffixes
+		assertEquals(0,
+				lexicon.getSynsetOffsets("DOGS", SynsetType.NOUN).length);
+
+		assertEquals(1,
+				lexicon.getSynsetOffsets("walked", SynsetType.VERB).length);
+		assertEquals(1,
+				lexicon.getSynsetOffsets("ran", SynsetType.VERB).length);
+		assertEquals(1,
+				lexicon.getSynsetOffsets("walks", SynsetType.VERB).length);
+	}
+
+	@Test
+	public void adjectivesAndSatellites() {
+		assertArrayEquals(new int[] { adjectives[0] },
+				lexicon.getSynsetOffsets("bigger", SynsetType.ADJECTIVE));
+		assertArrayEquals(new int[] { adjectives[1] },
+				lexicon.getSynsetOffsets("big",
+						SynsetType.ADJECTIVE_SATELLITE));
+	}
+
+	@Test
+	public void depthsMatchTheIndex() throws IOException {
+		File out = new File(dict, "noun.depth");
+		new HypernymDepthIndexBuilder(dict).build(out);
+		HypernymDepthIndex index = HypernymDepthIndex.open(out);
+		for (String word : new String[] { "entity", "person", "Dog", "dogs",
+				"Barack Obama", "mice", "persons", "unicorn" }) {
+			assertEquals(word, index.averageDepth(word),
+					lexicon.averageDepth(word), 0.0);
+		}
+		assertEquals(4, lexicon.hypernymDepth(nouns[4]));
+		assertTrue(Double.isNaN(lexicon.averageDepth("unicorn")));
+
+		int[] synsetCount = { -1 };
+		assertEquals(index.averageDepth("dogs"),
+				lexicon.averageDepth("dogs", synsetCount), 0.0);
+		assertEquals(lexicon.getSynsetOffsets("dogs", SynsetType.NOUN).length,
+				synsetCount[0]);
+		assertTrue(synsetCount[0] > 0);
+		lexicon.averageDepth("unicorn", synsetCount);
+		assertEquals(0, synsetCount[0]);
+	}
+
+	/**
+	 * Write a data file whose lines refer to the offset of the n-th synset as
+	 * <code>{n}</code>, and return the offsets.
+	 */
+	private int[] writeData(String name, String... lines) throws IOException {
+		int[] offsets = new int[lines.length];
+		int offset = HEADER.length();
+		for (int i = 0; i < lines.length; i++) {
+			offsets[i] = offset;
+			offset += String.format(lines[i], 0).replaceAll("\\{\\d\\}",
+					"00000000").length() + 1;
+		}
+		StringBuilder sb = new StringBuilder(HEADER);
+		for (int i = 0; i < lines.length; i++) {
+			String line = String.format(lines[i], offsets[i]);
+			for (int j = 0; j < offsets.length; j++)
+				line = line.replace("{" + j + "}",
+						String.format("%08d", offsets[j]));
+			sb.append(line).append('\n');
+		}
+		write(name, sb.toString());
+		return offsets;
+	}
+
+	private void write(String name, String content) throws IOException {
+		FileWriter writer = new FileWriter(new File(dict, name));
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+}